@@ -0,0 +1,248 @@
+package com.xuecheng.base.utils;
+
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * HLS 打包：把视频转为多码率 HLS（每个清晰度一个 index.m3u8 + TS 分段，外加主播放列表 master.m3u8）
+ * 1、每个清晰度一次 ffmpeg 调用，在调用方提供的线程池中并行执行
+ * 2、各清晰度按固定间隔强制关键帧，分段边界对齐，播放器切换清晰度时不花屏
+ * 3、主播放列表最后写入，列出各清晰度的带宽和分辨率，供播放器自适应选择
+ * <p>
+ * 输出目录结构：
+ * <pre>
+ * master.m3u8
+ * 720p/index.m3u8, 720p/seg_0000.ts, ...
+ * 480p/index.m3u8, 480p/seg_0000.ts, ...
+ * </pre>
+ */
+public class HlsPackager extends VideoUtil {
+
+    /**
+     * 主播放列表文件名
+     */
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+
+    private final List<Rendition> renditions;
+
+    private final int segmentSeconds;
+
+    private final long timeoutMillis;
+
+    /**
+     * @param ffmpeg_path    ffmpeg 路径
+     * @param renditions     清晰度列表（从高到低）
+     * @param segmentSeconds 分段时长（秒）
+     * @param timeout        每次 ffmpeg 调用的最长运行时间
+     * @param unit           时间单位
+     */
+    public HlsPackager(String ffmpeg_path, List<Rendition> renditions, int segmentSeconds, long timeout, TimeUnit unit) {
+        super(ffmpeg_path);
+        if (renditions.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个清晰度");
+        }
+        this.renditions = new ArrayList<>(renditions);
+        this.segmentSeconds = segmentSeconds;
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * 打包为 HLS
+     *
+     * @param source   源视频
+     * @param outDir   输出目录（已存在时先清空）
+     * @param executor 各清晰度转码使用的线程池
+     * @param listener 整体进度回调（可为空）
+     * @return 主播放列表文件
+     */
+    public File pack(File source, File outDir, Executor executor, ProcessSupervisor.ProgressListener listener)
+            throws IOException, InterruptedException {
+        FileSystemUtils.deleteRecursively(outDir);
+        if (!outDir.mkdirs()) {
+            throw new IOException("创建HLS输出目录失败：" + outDir);
+        }
+
+        AtomicLongArray processed = new AtomicLongArray(renditions.size());
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < renditions.size(); i++) {
+            int index = i;
+            Rendition rendition = renditions.get(i);
+            futures.add(CompletableFuture.runAsync(() -> {
+                if (firstError.get() != null) {
+                    return;
+                }
+                try {
+                    File dir = new File(outDir, rendition.getName());
+                    if (!dir.mkdirs()) {
+                        throw new IOException("创建清晰度目录失败：" + dir);
+                    }
+                    ProcessSupervisor.Result result = ProcessSupervisor.run(command(source, rendition, dir),
+                            timeoutMillis, TimeUnit.MILLISECONDS, (millis, total) -> {
+                                processed.set(index, millis);
+                                report(processed, total, listener);
+                            });
+                    check(result, rendition.getName() + " HLS 打包");
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    firstError.compareAndSet(null, e);
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = firstError.get() != null ? firstError.get() : e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+
+        for (Rendition rendition : renditions) {
+            if (!new File(new File(outDir, rendition.getName()), "index.m3u8").isFile()) {
+                throw new IOException(rendition.getName() + " 未生成播放列表");
+            }
+        }
+        File master = new File(outDir, MASTER_PLAYLIST);
+        Files.write(master.toPath(), masterPlaylist(), StandardCharsets.UTF_8);
+        return master;
+    }
+
+    private List<String> command(File source, Rendition rendition, File dir) {
+        return new ArrayList<>(Arrays.asList(ffmpeg_path, "-i", source.getAbsolutePath(),
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-c:v", "libx264", "-s", rendition.getResolution(), "-pix_fmt", "yuv420p",
+                "-b:v", rendition.getVideoBitrate(), "-maxrate", rendition.getVideoBitrate(),
+                "-bufsize", rendition.getVideoBitrate(),
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")", "-sc_threshold", "0",
+                "-c:a", "aac", "-b:a", rendition.getAudioBitrate(), "-ac", "2",
+                "-f", "hls", "-hls_time", String.valueOf(segmentSeconds), "-hls_playlist_type", "vod",
+                "-hls_segment_filename", new File(dir, "seg_%04d.ts").getAbsolutePath(),
+                "-y", new File(dir, "index.m3u8").getAbsolutePath()));
+    }
+
+    private List<String> masterPlaylist() {
+        List<String> lines = new ArrayList<>();
+        lines.add("#EXTM3U");
+        lines.add("#EXT-X-VERSION:3");
+        for (Rendition rendition : renditions) {
+            lines.add("#EXT-X-STREAM-INF:BANDWIDTH=" + rendition.getBandwidth() + ",RESOLUTION="
+                    + rendition.getResolution() + ",NAME=\"" + rendition.getName() + "\"");
+            lines.add(rendition.getName() + "/index.m3u8");
+        }
+        return lines;
+    }
+
+    private static void report(AtomicLongArray processed, long totalMillis,
+                               ProcessSupervisor.ProgressListener listener) {
+        if (listener == null || totalMillis <= 0) {
+            return;
+        }
+        // 各清晰度并行执行，整体进度取平均
+        long sum = 0;
+        for (int i = 0; i < processed.length(); i++) {
+            sum += processed.get(i);
+        }
+        listener.onProgress(sum / processed.length(), totalMillis);
+    }
+
+    private static void check(ProcessSupervisor.Result result, String step) throws IOException {
+        if (result.isTimedOut()) {
+            throw new IOException(step + "超时");
+        }
+        if (result.getExitCode() != 0) {
+            String output = result.getOutput().trim();
+            if (output.length() > 512) {
+                output = output.substring(output.length() - 512);
+            }
+            throw new IOException(step + "失败，ffmpeg 退出码 " + result.getExitCode() + "：" + output);
+        }
+    }
+
+    /**
+     * 清晰度
+     */
+    public static class Rendition {
+
+        private final String name;
+
+        private final int width;
+
+        private final int height;
+
+        private final String videoBitrate;
+
+        private final String audioBitrate;
+
+        public Rendition(int width, int height, String videoBitrate, String audioBitrate) {
+            this.name = height + "p";
+            this.width = width;
+            this.height = height;
+            this.videoBitrate = videoBitrate;
+            this.audioBitrate = audioBitrate;
+        }
+
+        /**
+         * 解析 宽x高:视频码率:音频码率，如 1280x720:753k:63k
+         */
+        public static Rendition parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            String[] size = parts.length == 3 ? parts[0].split("x") : new String[0];
+            if (size.length != 2) {
+                throw new IllegalArgumentException("清晰度格式应为 宽x高:视频码率:音频码率，实际为：" + spec);
+            }
+            return new Rendition(Integer.parseInt(size[0]), Integer.parseInt(size[1]), parts[1], parts[2]);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getResolution() {
+            return width + "x" + height;
+        }
+
+        public String getVideoBitrate() {
+            return videoBitrate;
+        }
+
+        public String getAudioBitrate() {
+            return audioBitrate;
+        }
+
+        /**
+         * 峰值带宽（bit/s），视频与音频码率之和
+         */
+        public long getBandwidth() {
+            return toBits(videoBitrate) + toBits(audioBitrate);
+        }
+
+        private static long toBits(String bitrate) {
+            String value = bitrate.trim().toLowerCase();
+            long unit = 1;
+            if (value.endsWith("k")) {
+                unit = 1000;
+                value = value.substring(0, value.length() - 1);
+            } else if (value.endsWith("m")) {
+                unit = 1000_000;
+                value = value.substring(0, value.length() - 1);
+            }
+            return Math.round(Double.parseDouble(value) * unit);
+        }
+    }
+}
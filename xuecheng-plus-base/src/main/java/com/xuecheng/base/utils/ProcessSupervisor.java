@@ -0,0 +1,392 @@
+package com.xuecheng.base.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 外部进程（ffmpeg 等）监管工具类
+ * 1、异步读取 stdout/stderr，只保留末尾若干字符（环形缓冲），输出再多也不会写满管道阻塞子进程
+ * 2、进程结束时完成 CompletableFuture，调用方不必轮询 exitValue
+ * 3、超时后结束进程（先正常结束，5秒后强制结束），进程退出即返回，不等待仍持有管道的孙进程
+ * 4、解析 ffmpeg 输出中的 Duration: 和 time=，回调转码进度
+ * <p>
+ * 项目以 Java 8 编译，没有 Process.onExit()：每个输出流由共享线程池中的一个线程阻塞读取，
+ * 两个流都读到末尾后取退出码；超时由一个共享的定时线程处理。
+ */
+public class ProcessSupervisor {
+
+    /**
+     * 每个输出流默认保留的字符数
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 超时后正常结束进程，等待该时长后仍未退出则强制结束
+     */
+    private static final long KILL_GRACE_MILLIS = 5000;
+
+    private static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+
+    private static final Pattern TIME = Pattern.compile("time=\\s*(-?\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+
+    private static final ExecutorService PUMPS = Executors.newCachedThreadPool(daemon("process-pump-"));
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemon("process-timer-"));
+
+    private ProcessSupervisor() {
+    }
+
+    /**
+     * 启动并监管进程
+     *
+     * @param command  命令及参数
+     * @param timeout  最长运行时间（小于等于0表示不限）
+     * @param unit     时间单位
+     * @param listener 进度回调（可为空）
+     */
+    public static Execution start(List<String> command, long timeout, TimeUnit unit, ProgressListener listener)
+            throws IOException {
+        return supervise(new ProcessBuilder(command).start(), timeout, unit, listener);
+    }
+
+    /**
+     * 启动进程并等待结束
+     *
+     * @see #start(List, long, TimeUnit, ProgressListener)
+     */
+    public static Result run(List<String> command, long timeout, TimeUnit unit, ProgressListener listener)
+            throws IOException, InterruptedException {
+        return start(command, timeout, unit, listener).await();
+    }
+
+    /**
+     * 监管已启动的进程
+     */
+    public static Execution supervise(Process process, long timeout, TimeUnit unit, ProgressListener listener) {
+        return supervise(process, timeout, unit, listener, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 监管已启动的进程
+     *
+     * @param bufferSize 每个输出流保留的字符数
+     */
+    public static Execution supervise(Process process, long timeout, TimeUnit unit, ProgressListener listener,
+                                      int bufferSize) {
+        Execution execution = new Execution(process, listener, bufferSize);
+        execution.begin(timeout, unit);
+        return execution;
+    }
+
+    /**
+     * 把 ffmpeg 的时间（时:分:秒.小数）换算为毫秒
+     */
+    public static long toMillis(String hours, String minutes, String seconds) {
+        return Long.parseLong(hours) * 3600_000 + Long.parseLong(minutes) * 60_000
+                + Math.round(Double.parseDouble(seconds) * 1000);
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 进度回调（在读取输出的线程中调用，应尽快返回）
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param processedMillis 已处理的时长（毫秒）
+         * @param totalMillis     总时长（毫秒），未知时为 -1
+         */
+        void onProgress(long processedMillis, long totalMillis);
+    }
+
+    /**
+     * 一次进程执行
+     */
+    public static class Execution {
+
+        private final Process process;
+
+        private final ProgressListener listener;
+
+        private final RingBuffer stdout;
+
+        private final RingBuffer stderr;
+
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+
+        private final long startNanos = System.nanoTime();
+
+        private volatile long durationMillis = -1;
+
+        private volatile boolean timedOut;
+
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        private Execution(Process process, ProgressListener listener, int bufferSize) {
+            this.process = process;
+            this.listener = listener;
+            this.stdout = new RingBuffer(bufferSize);
+            this.stderr = new RingBuffer(bufferSize);
+        }
+
+        private void begin(long timeout, TimeUnit unit) {
+            if (timeout > 0) {
+                timeoutTask = TIMER.schedule(this::kill, timeout, unit);
+            }
+            CompletableFuture<Void> out = CompletableFuture.runAsync(() -> pump(process.getInputStream(), stdout), PUMPS);
+            CompletableFuture<Void> err = CompletableFuture.runAsync(() -> pump(process.getErrorStream(), stderr), PUMPS);
+            CompletableFuture.allOf(out, err).whenCompleteAsync((ignored, e) -> finish(), PUMPS);
+        }
+
+        /**
+         * 进程结束时完成（超时被结束时 Result.isTimedOut() 为 true）
+         */
+        public CompletableFuture<Result> future() {
+            return future;
+        }
+
+        /**
+         * 等待进程结束
+         */
+        public Result await() throws InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("进程监管失败", e.getCause());
+            }
+        }
+
+        /**
+         * 结束进程（调用方取消任务时使用）
+         */
+        public void destroy() {
+            process.destroy();
+            TIMER.schedule(process::destroyForcibly, KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        public boolean isAlive() {
+            return process.isAlive();
+        }
+
+        private void kill() {
+            if (process.isAlive()) {
+                timedOut = true;
+                destroy();
+            }
+            awaitExit();
+        }
+
+        /**
+         * 超时后不再等输出读到末尾：子进程派生的进程可能仍持有管道，进程退出后直接完成
+         */
+        private void awaitExit() {
+            if (future.isDone()) {
+                return;
+            }
+            if (process.isAlive()) {
+                TIMER.schedule(this::awaitExit, 100, TimeUnit.MILLISECONDS);
+            } else {
+                finish();
+            }
+        }
+
+        private void pump(InputStream in, RingBuffer buffer) {
+            StringBuilder line = new StringBuilder();
+            char[] chars = new char[4096];
+            try (Reader reader = new InputStreamReader(in)) {
+                int n;
+                while ((n = reader.read(chars)) > 0) {
+                    buffer.append(chars, n);
+                    for (int i = 0; i < n; i++) {
+                        char c = chars[i];
+                        // ffmpeg 的进度行以 \r 结尾
+                        if (c == '\n' || c == '\r') {
+                            parse(line);
+                            line.setLength(0);
+                        } else if (line.length() < 4096) {
+                            line.append(c);
+                        }
+                    }
+                }
+                parse(line);
+            } catch (IOException e) {
+                // 进程被结束时流会关闭，已读到的内容仍保留
+            }
+        }
+
+        private void parse(CharSequence line) {
+            if (line.length() == 0) {
+                return;
+            }
+            if (durationMillis < 0) {
+                Matcher duration = DURATION.matcher(line);
+                if (duration.find()) {
+                    durationMillis = toMillis(duration.group(1), duration.group(2), duration.group(3));
+                }
+            }
+            if (listener != null) {
+                Matcher time = TIME.matcher(line);
+                if (time.find() && !time.group(1).startsWith("-")) {
+                    try {
+                        listener.onProgress(toMillis(time.group(1), time.group(2), time.group(3)), durationMillis);
+                    } catch (RuntimeException e) {
+                        // 回调异常不影响读取输出
+                    }
+                }
+            }
+        }
+
+        private void finish() {
+            try {
+                int exitCode = process.waitFor();
+                ScheduledFuture<?> task = timeoutTask;
+                if (task != null) {
+                    task.cancel(false);
+                }
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                future.complete(new Result(exitCode, timedOut, stdout.toString(), stderr.toString(), elapsed,
+                        durationMillis));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 进程执行结果
+     */
+    public static class Result {
+
+        private final int exitCode;
+
+        private final boolean timedOut;
+
+        private final String stdout;
+
+        private final String stderr;
+
+        private final long elapsedMillis;
+
+        private final long durationMillis;
+
+        Result(int exitCode, boolean timedOut, String stdout, String stderr, long elapsedMillis, long durationMillis) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.elapsedMillis = elapsedMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * 正常退出且退出码为0
+         */
+        public boolean isSuccess() {
+            return !timedOut && exitCode == 0;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * stdout 末尾内容
+         */
+        public String getStdout() {
+            return stdout;
+        }
+
+        /**
+         * stderr 末尾内容
+         */
+        public String getStderr() {
+            return stderr;
+        }
+
+        /**
+         * stdout 与 stderr 末尾内容（合并输出时 stderr 为空）
+         */
+        public String getOutput() {
+            return stderr.isEmpty() ? stdout : stdout + stderr;
+        }
+
+        /**
+         * 运行耗时（毫秒）
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * 从 ffmpeg 输出中解析的媒体时长（毫秒），未解析到时为 -1
+         */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    /**
+     * 只保留最后 capacity 个字符的缓冲区
+     */
+    static class RingBuffer {
+
+        private final char[] chars;
+
+        private int next;
+
+        private boolean full;
+
+        RingBuffer(int capacity) {
+            this.chars = new char[Math.max(1, capacity)];
+        }
+
+        synchronized void append(char[] source, int length) {
+            int offset = 0;
+            if (length >= chars.length) {
+                offset = length - chars.length;
+                length = chars.length;
+            }
+            int first = Math.min(length, chars.length - next);
+            System.arraycopy(source, offset, chars, next, first);
+            System.arraycopy(source, offset + first, chars, 0, length - first);
+            if (next + length >= chars.length) {
+                full = true;
+            }
+            next = (next + length) % chars.length;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (!full) {
+                return new String(chars, 0, next);
+            }
+            return new String(chars, next, chars.length - next) + new String(chars, 0, next);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.xuecheng.base.utils;
+
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分段并行转码：长视频在关键帧处切为若干段（不重新编码），各段并行转为 mp4，再无损拼接并校验时长
+ * 1、切分：ffmpeg -i 源文件 -map 0 -c copy -f segment -segment_time 秒数 -reset_timestamps 1 seg_%04d.mkv
+ * 2、转码：每段使用相同的编码参数，在调用方提供的线程池中并行执行（某段失败时结束其余各段）
+ * 3、拼接：ffmpeg -f concat -safe 0 -i 分段列表 -c copy 目标文件
+ * 4、校验：check_video_time 比较源文件与结果的时长（允许帧级误差）
+ * <p>
+ * 转码耗时约为 单段耗时 × 段数 / 并行数，适合远长于分段时长的视频；短视频直接整段转码即可。
+ */
+public class SegmentedMp4Transcoder extends VideoUtil {
+
+    /**
+     * 拼接结果与源文件允许的时长误差（毫秒）
+     */
+    public static final long DEFAULT_TOLERANCE_MILLIS = 2000;
+
+    private final List<String> encodeArgs;
+
+    private final int segmentSeconds;
+
+    private final long timeoutMillis;
+
+    private long toleranceMillis = DEFAULT_TOLERANCE_MILLIS;
+
+    /**
+     * @param ffmpeg_path    ffmpeg 路径
+     * @param encodeArgs     编码参数（不含 -i 输入和输出文件，如 -c:v libx264 -s 1280x720 ...）
+     * @param segmentSeconds 分段时长（秒），实际在该时长之后的第一个关键帧处切分
+     * @param timeout        每次 ffmpeg 调用的最长运行时间
+     * @param unit           时间单位
+     */
+    public SegmentedMp4Transcoder(String ffmpeg_path, List<String> encodeArgs, int segmentSeconds, long timeout,
+                                  TimeUnit unit) {
+        super(ffmpeg_path);
+        this.encodeArgs = new ArrayList<>(encodeArgs);
+        this.segmentSeconds = segmentSeconds;
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    public void setToleranceMillis(long toleranceMillis) {
+        this.toleranceMillis = toleranceMillis;
+    }
+
+    /**
+     * 分段并行转码
+     *
+     * @param source   源文件
+     * @param target   目标 mp4 文件
+     * @param workDir  工作目录（在其中创建分段目录，结束后删除）
+     * @param executor 各段转码使用的线程池，并行数即线程数
+     * @param listener 整体进度回调（可为空）
+     * @return 分段数
+     */
+    public int transcode(File source, File target, File workDir, Executor executor,
+                         ProcessSupervisor.ProgressListener listener) throws IOException, InterruptedException {
+        File segmentDir = new File(workDir, "segments");
+        FileSystemUtils.deleteRecursively(segmentDir);
+        if (!segmentDir.mkdirs()) {
+            throw new IOException("创建分段目录失败：" + segmentDir);
+        }
+        try {
+            long totalMillis = split(source, segmentDir);
+            File[] segments = segmentDir.listFiles((dir, name) -> name.startsWith("seg_") && name.endsWith(".mkv"));
+            if (segments == null || segments.length == 0) {
+                throw new IOException("视频切分未生成分段：" + source);
+            }
+            Arrays.sort(segments);
+
+            List<File> outputs = encodeAll(segments, executor, totalMillis, listener);
+            concat(outputs, new File(segmentDir, "segments.txt"), target);
+
+            if (!check_video_time(source.getAbsolutePath(), target.getAbsolutePath(), toleranceMillis)) {
+                throw new IOException("分段转码后时长与源文件不一致：" + source);
+            }
+            return segments.length;
+        } finally {
+            FileSystemUtils.deleteRecursively(segmentDir);
+        }
+    }
+
+    /**
+     * 按关键帧切分（流复制，不重新编码）
+     *
+     * @return 源文件时长（毫秒），未知时为 -1
+     */
+    private long split(File source, File segmentDir) throws IOException, InterruptedException {
+        List<String> command = Arrays.asList(ffmpeg_path, "-i", source.getAbsolutePath(), "-map", "0", "-c", "copy",
+                "-f", "segment", "-segment_time", String.valueOf(segmentSeconds), "-reset_timestamps", "1",
+                new File(segmentDir, "seg_%04d.mkv").getAbsolutePath());
+        ProcessSupervisor.Result result = ProcessSupervisor.run(command, timeoutMillis, TimeUnit.MILLISECONDS, null);
+        check(result, "视频切分");
+        return result.getDurationMillis();
+    }
+
+    /**
+     * 并行转码各段
+     */
+    private List<File> encodeAll(File[] segments, Executor executor, long totalMillis,
+                                 ProcessSupervisor.ProgressListener listener) throws IOException, InterruptedException {
+        AtomicLongArray processed = new AtomicLongArray(segments.length);
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Queue<ProcessSupervisor.Execution> running = new ConcurrentLinkedQueue<>();
+        List<File> outputs = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < segments.length; i++) {
+            int index = i;
+            File output = new File(segments[i].getParentFile(), String.format("out_%04d.mp4", i));
+            outputs.add(output);
+            futures.add(CompletableFuture.runAsync(() -> {
+                if (failed.get()) {
+                    throw new CompletionException(new IOException("其他分段转码失败，已取消"));
+                }
+                try {
+                    List<String> command = new ArrayList<>();
+                    command.add(ffmpeg_path);
+                    command.add("-i");
+                    command.add(segments[index].getAbsolutePath());
+                    command.addAll(encodeArgs);
+                    command.add("-y");
+                    command.add(output.getAbsolutePath());
+                    ProcessSupervisor.Execution execution = ProcessSupervisor.start(command, timeoutMillis,
+                            TimeUnit.MILLISECONDS, (millis, ignored) -> {
+                                processed.set(index, millis);
+                                report(processed, totalMillis, listener);
+                            });
+                    running.add(execution);
+                    if (failed.get()) {
+                        execution.destroy();
+                    }
+                    ProcessSupervisor.Result result = execution.await();
+                    running.remove(execution);
+                    check(result, "分段" + index + "转码");
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    if (failed.compareAndSet(false, true)) {
+                        firstError.set(e);
+                        running.forEach(ProcessSupervisor.Execution::destroy);
+                    }
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // 报告最先失败的分段，而不是被取消的分段
+            Throwable cause = firstError.get() != null ? firstError.get() : e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        return outputs;
+    }
+
+    /**
+     * 无损拼接（各段编码参数一致，直接复制流）
+     */
+    private void concat(List<File> outputs, File listFile, File target) throws IOException, InterruptedException {
+        List<String> lines = new ArrayList<>();
+        for (File output : outputs) {
+            lines.add("file '" + output.getAbsolutePath().replace("'", "'\\''") + "'");
+        }
+        Files.write(listFile.toPath(), lines, StandardCharsets.UTF_8);
+        List<String> command = Arrays.asList(ffmpeg_path, "-f", "concat", "-safe", "0", "-i",
+                listFile.getAbsolutePath(), "-c", "copy", "-movflags", "+faststart", "-y", target.getAbsolutePath());
+        check(ProcessSupervisor.run(command, timeoutMillis, TimeUnit.MILLISECONDS, null), "分段拼接");
+        if (!target.isFile() || target.length() == 0) {
+            throw new IOException("分段拼接未生成文件：" + target);
+        }
+    }
+
+    private static void report(AtomicLongArray processed, long totalMillis,
+                               ProcessSupervisor.ProgressListener listener) {
+        if (listener == null) {
+            return;
+        }
+        long sum = 0;
+        for (int i = 0; i < processed.length(); i++) {
+            sum += processed.get(i);
+        }
+        listener.onProgress(sum, totalMillis);
+    }
+
+    private static void check(ProcessSupervisor.Result result, String step) throws IOException {
+        if (result.isTimedOut()) {
+            throw new IOException(step + "超时");
+        }
+        if (result.getExitCode() != 0) {
+            String output = result.getOutput().trim();
+            if (output.length() > 512) {
+                output = output.substring(output.length() - 512);
+            }
+            throw new IOException(step + "失败，ffmpeg 退出码 " + result.getExitCode() + "：" + output);
+        }
+    }
+}
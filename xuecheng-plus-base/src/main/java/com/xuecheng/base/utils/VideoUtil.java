@@ -1,9 +1,9 @@
 package com.xuecheng.base.utils;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 此文件作为视频文件处理父类，提供：
@@ -23,20 +23,39 @@ public class VideoUtil {
     //检查视频时间是否一致
     public Boolean check_video_time(String source,String target) {
         String source_time = get_video_time(source);
-        //取出时分秒
-        source_time = source_time.substring(0,source_time.lastIndexOf("."));
         String target_time = get_video_time(target);
-        //取出时分秒
-        target_time = target_time.substring(0,target_time.lastIndexOf("."));
         if(source_time == null || target_time == null){
             return false;
         }
+        //取出时分秒
+        source_time = source_time.substring(0,source_time.lastIndexOf("."));
+        target_time = target_time.substring(0,target_time.lastIndexOf("."));
         if(source_time.equals(target_time)){
             return true;
         }
         return false;
     }
 
+    //检查视频时长是否一致（允许相差toleranceMillis毫秒，分段转码拼接后时长会有帧级误差）
+    public Boolean check_video_time(String source, String target, long toleranceMillis) {
+        String source_time = get_video_time(source);
+        String target_time = get_video_time(target);
+        if (source_time == null || target_time == null) {
+            return false;
+        }
+        try {
+            return Math.abs(to_millis(source_time) - to_millis(target_time)) <= toleranceMillis;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    //时:分:秒.小数 换算为毫秒
+    private long to_millis(String time) {
+        String[] parts = time.split(":");
+        return ProcessSupervisor.toMillis(parts[0], parts[1], parts[2]);
+    }
+
     //获取视频时间(时：分：秒：毫秒)
     public String get_video_time(String video_path) {
         /*
@@ -54,9 +73,9 @@ public class VideoUtil {
             Process p = builder.start();
             String outstring = waitFor(p);
             System.out.println(outstring);
-            int start = outstring.trim().indexOf("Duration: ");
+            int start = outstring.indexOf("Duration: ");
             if(start>=0){
-                int end = outstring.trim().indexOf(", start:");
+                int end = outstring.indexOf(", start:", start);
                 if(end>=0){
                     String time = outstring.substring(start+10,end);
                     if(time!=null && !time.equals("")){
@@ -73,56 +92,21 @@ public class VideoUtil {
         return null;
     }
 
+    /**
+     * 等待进程结束并返回输出（最长10分钟，超时结束进程并返回 error）
+     */
     public String waitFor(Process p) {
-        InputStream in = null;
-        InputStream error = null;
-        String result = "error";
-        int exitValue = -1;
-        StringBuffer outputString = new StringBuffer();
         try {
-            in = p.getInputStream();
-            error = p.getErrorStream();
-            boolean finished = false;
-            int maxRetry = 600;//每次休眠1秒，最长执行时间10分种
-            int retry = 0;
-            while (!finished) {
-                if (retry > maxRetry) {
-                    return "error";
-                }
-                try {
-                    while (in.available() > 0) {
-                        Character c = new Character((char) in.read());
-                        outputString.append(c);
-                        System.out.print(c);
-                    }
-                    while (error.available() > 0) {
-                        Character c = new Character((char) in.read());
-                        outputString.append(c);
-                        System.out.print(c);
-                    }
-                    //进程未结束时调用exitValue将抛出异常
-                    exitValue = p.exitValue();
-                    finished = true;
-
-                } catch (IllegalThreadStateException e) {
-                    Thread.currentThread().sleep(1000);//休眠1秒
-                    retry++;
-                }
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    System.out.println(e.getMessage());
-                }
+            ProcessSupervisor.Result result = ProcessSupervisor.supervise(p, 600, TimeUnit.SECONDS, null).await();
+            if (result.isTimedOut()) {
+                return "error";
             }
+            return result.getOutput();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.destroyForcibly();
+            return "error";
         }
-        return outputString.toString();
-
     }
 
 
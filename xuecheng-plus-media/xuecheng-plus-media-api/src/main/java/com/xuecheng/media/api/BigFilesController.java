@@ -1,15 +1,18 @@
 package com.xuecheng.media.api;
 
 import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.media.model.dto.MergeJobDto;
 import com.xuecheng.media.model.dto.UploadFileParamsDto;
 import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.impl.MergeJobManager;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import java.io.InputStream;
+import java.util.List;
 
 /**
  * 大文件上传控制器
@@ -17,7 +20,7 @@ import java.io.File;
  * 功能说明:
  * 该控制器实现了大文件分块上传的完整流程,主要包括:
  * 1. 文件秒传检查 - 检查文件是否已存在,避免重复上传
- * 2. 分块检查 - 检查某个分块是否已上传,支持断点续传
+ * 2. 分块检查 - 检查某个分块是否已上传,或一次查询所有缺失分块,支持断点续传
  * 3. 分块上传 - 上传单个文件分块
  * 4. 分块合并 - 将所有分块合并成完整文件
  * 
@@ -34,6 +37,9 @@ public class BigFilesController {
     @Autowired
     private MediaFileService mediaFileService;
 
+    @Autowired
+    private MergeJobManager mergeJobManager;
+
     /**
      * 检查文件是否已存在(秒传功能)
      * 
@@ -75,44 +81,63 @@ public class BigFilesController {
         return mediaFileService.checkChunk(fileMd5, chunk);
     }
 
+    /**
+     * 查询缺失的分块(批量断点续传)
+     * 
+     * 工作原理:
+     * 1. 续传前前端调用一次此接口,传入分块总数
+     * 2. 后端根据分块清单(已收到分块位图)返回所有缺失的分块序号
+     * 3. 前端只上传返回的分块,无需对每个分块调用 checkchunk
+     * 4. sparse 模式下前端需同时传入分块大小(和文件大小),后端据此预分配目标文件,分块可乱序并发上传
+     * 
+     * @param fileMd5    文件的 MD5 值
+     * @param chunkTotal 分块总数
+     * @param chunkSize  分块大小(可选,除最后一块外每块的字节数)
+     * @param fileSize   文件大小(可选)
+     * @return RestResponse<List<Integer>> 缺失的分块序号(升序),为空表示分块已齐全
+     */
+    @ApiOperation("查询缺失的分块")
+    @RequestMapping(value = "/missingchunks", method = { RequestMethod.GET, RequestMethod.POST })
+    public RestResponse<List<Integer>> missingchunks(@RequestParam("fileMd5") String fileMd5,
+            @RequestParam("chunkTotal") int chunkTotal,
+            @RequestParam(value = "chunkSize", required = false, defaultValue = "0") long chunkSize,
+            @RequestParam(value = "fileSize", required = false, defaultValue = "0") long fileSize) {
+        // 设置机构 ID（新上传按机构配额准入）
+        Long companyId = 1232141425L;
+        return mediaFileService.missingChunks(companyId, fileMd5, chunkTotal, chunkSize, fileSize);
+    }
+
     /**
      * 上传文件分块
      * 
      * 工作流程:
      * 1. 接收前端上传的分块文件
-     * 2. 将分块临时保存到系统临时目录
-     * 3. 调用 service 层将分块上传到 MinIO 存储
-     * 4. 删除本地临时文件,释放磁盘空间
+     * 2. 将请求流直接交给 service 层写入分块存储(media.chunk.mode 选择 local/multipart/oss/sparse)
      * 
      * 技术细节:
-     * - 使用系统临时目录存储分块,避免占用项目空间
-     * - 使用纳秒时间戳生成唯一文件名,避免文件名冲突
-     * - 上传完成后立即删除临时文件,节省磁盘空间
+     * - 不再先保存到临时文件再复制,每个分块只写一次
+     * - sparse 模式下分块直接定位写入预分配的目标文件,合并时无需拷贝
+     * - 分块存储按全局和机构配额准入新上传,空间不足时返回失败,前端稍后重试
      * 
      * @param file    分块文件对象
      * @param fileMd5 文件的 MD5 值
      * @param chunk   当前分块序号
+     * @param fileName 原始文件名(可选,分片直传模式下用于确定OSS对象扩展名)
+     * @param chunkMd5 分块的 MD5 值(可选,传入时后端边写边校验,不一致立即拒绝,只需重传该分块)
      * @return RestResponse 上传结果
      */
     @ApiOperation("上传分块")
     @PostMapping("/uploadchunk")
     public RestResponse uploadchunk(@RequestParam("file") MultipartFile file,
             @RequestParam("fileMd5") String fileMd5,
-            @RequestParam("chunk") int chunk) {
-        try {
-            // 获取系统临时目录路径
-            String tempDir = System.getProperty("java.io.tmpdir");
-            // 生成唯一的临时文件名,使用纳秒时间戳确保唯一性
-            String localFilePath = tempDir + File.separator + "xc-chunk-" + System.nanoTime();
-            // 创建临时文件对象
-            File temp = new File(localFilePath);
-            // 将上传的分块保存到临时文件
-            file.transferTo(temp);
-            // 调用 service 层上传分块到 MinIO
-            RestResponse resp = mediaFileService.uploadChunk(fileMd5, chunk, localFilePath);
-            // 删除临时文件,释放磁盘空间
-            temp.delete();
-            return resp;
+            @RequestParam("chunk") int chunk,
+            @RequestParam(value = "fileName", required = false) String fileName,
+            @RequestParam(value = "chunkMd5", required = false) String chunkMd5) {
+        // 设置机构 ID（新上传按机构配额准入）
+        Long companyId = 1232141425L;
+        try (InputStream in = file.getInputStream()) {
+            // 请求流直接写入分块存储（不再先 transferTo 临时文件再复制，分块只写一次）
+            return mediaFileService.uploadChunk(companyId, fileMd5, chunk, in, file.getSize(), fileName, chunkMd5);
         } catch (Exception e) {
             // 捕获异常,返回友好的错误信息
             return RestResponse.validfail(false, "上传分块失败");
@@ -145,7 +170,9 @@ public class BigFilesController {
      * @param fileName   文件名
      * @param chunkTotal 分块总数
      * @param fileType   文件类型(可选)
-     * @return RestResponse 合并结果,包含文件信息
+     * @param chunksDigest 组合摘要(可选):按分块顺序拼接各分块 MD5(32位小写)后再做一次 MD5
+     * @param async      是否异步合并(可选):为 true 时只提交合并任务并返回任务状态,前端轮询 /mergeprogress
+     * @return RestResponse 合并结果,包含文件信息;异步合并时为任务状态
      */
     @ApiOperation("合并分块")
     @PostMapping("/mergechunks")
@@ -153,7 +180,9 @@ public class BigFilesController {
             @RequestParam("fileName") String fileName,
             @RequestParam("chunkTotal") int chunkTotal,
             @RequestParam(value = "fileType", required = false) String fileType,
-            @RequestParam(value = "fileSize", required = false) Long fileSize) {
+            @RequestParam(value = "fileSize", required = false) Long fileSize,
+            @RequestParam(value = "chunksDigest", required = false) String chunksDigest,
+            @RequestParam(value = "async", required = false, defaultValue = "false") boolean async) {
         // 构建上传文件参数对象
         UploadFileParamsDto params = new UploadFileParamsDto();
         params.setFilename(fileName);
@@ -169,7 +198,34 @@ public class BigFilesController {
         }
         // 设置机构 ID
         Long companyId = 1232141425L;
+        if (async) {
+            // 异步合并:同一文件重复提交返回已有任务的状态
+            MergeJobDto job = mergeJobManager.submit(companyId, fileMd5, chunkTotal, params, chunksDigest);
+            if (job == null) {
+                return RestResponse.validfail("合并任务繁忙，请稍后重试");
+            }
+            return RestResponse.success(job);
+        }
         // 调用 service 层执行分块合并
-        return mediaFileService.mergechunks(companyId, fileMd5, chunkTotal, params);
+        return mediaFileService.mergechunks(companyId, fileMd5, chunkTotal, params, chunksDigest);
+    }
+
+    /**
+     * 查询异步合并进度
+     * 
+     * 返回任务状态(QUEUED/RUNNING/SUCCESS/FAILED)、所处阶段以及已合并、已上传的字节数,
+     * 失败时 message 为失败原因,前端可重新调用 /mergechunks 提交
+     * 
+     * @param fileMd5 文件的 MD5 值
+     * @return RestResponse<MergeJobDto> 任务状态
+     */
+    @ApiOperation("查询合并进度")
+    @GetMapping("/mergeprogress")
+    public RestResponse<MergeJobDto> mergeprogress(@RequestParam("fileMd5") String fileMd5) {
+        MergeJobDto job = mergeJobManager.getStatus(fileMd5);
+        if (job == null) {
+            return RestResponse.validfail("合并任务不存在");
+        }
+        return RestResponse.success(job);
     }
 }
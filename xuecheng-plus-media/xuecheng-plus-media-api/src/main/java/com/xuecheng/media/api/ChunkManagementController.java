@@ -1,5 +1,6 @@
 package com.xuecheng.media.api;
 
+import com.xuecheng.media.service.impl.MediaExistenceCache;
 import com.xuecheng.media.task.ChunkCleanupTask;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -16,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
  * 📊 接口列表：
  * 1. 查询分块文件统计信息
  * 2. 手动触发清理任务
+ * 3. 查询秒传存在性缓存命中统计
  * 
  * ⚠️ 注意：
  * 此接口仅供管理员使用，生产环境应添加权限控制
@@ -33,6 +35,9 @@ public class ChunkManagementController {
     @Autowired
     private ChunkCleanupTask cleanupTask;
 
+    @Autowired
+    private MediaExistenceCache mediaExistenceCache;
+
     /**
      * 查询当前分块文件统计信息
      * 
@@ -68,4 +73,18 @@ public class ChunkManagementController {
         cleanupTask.manualCleanup();
         return "清理任务已执行，请查看日志了解详情";
     }
+
+    /**
+     * 查询秒传存在性缓存命中统计
+     * 
+     * 返回：布隆过滤器拦截次数、LRU命中次数、查库命中/未命中次数
+     * 
+     * 访问示例：
+     * GET http://localhost:63050/media/admin/chunk/existcache
+     */
+    @ApiOperation("查询存在性缓存统计")
+    @GetMapping("/existcache")
+    public String getExistCacheStatistics() {
+        return mediaExistenceCache.getStatistics();
+    }
 }
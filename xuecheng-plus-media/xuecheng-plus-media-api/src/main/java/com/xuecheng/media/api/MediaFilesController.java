@@ -7,14 +7,17 @@ import com.xuecheng.media.model.dto.UploadFileParamsDto;
 import com.xuecheng.media.model.dto.UploadFileResultDto;
 import com.xuecheng.media.model.po.MediaFiles;
 import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.UploadContext;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Mr.M
@@ -29,6 +32,12 @@ public class MediaFilesController {
     @Autowired
     MediaFileService mediaFileService;
 
+    /**
+     * 普通上传在内存中处理的最大文件大小（字节），超过时写入临时文件，默认8MB
+     */
+    @Value("${media.upload.memory-threshold:8388608}")
+    private long memoryThreshold;
+
     @ApiOperation("媒资列表查询接口")
     @PostMapping("/files")
     public PageResult<MediaFiles> list(PageParams pageParams, @RequestBody QueryMediaParamsDto queryMediaParamsDto) {
@@ -63,17 +72,18 @@ public class MediaFilesController {
         uploadFileParamsDto.setFileSize(filedata.getSize());
         uploadFileParamsDto.setFileType(fileType != null ? fileType : "001001"); // 默认图片类型
         uploadFileParamsDto.setUsername("系统管理员"); // 暂时写死，后续从登录用户获取
+        UploadContext context;
         try {
-            String tempDir = System.getProperty("java.io.tmpdir");
-            String tempFilePath = tempDir + File.separator + filedata.getOriginalFilename();
-            File tempFile = new File(tempFilePath);
-            filedata.transferTo(tempFile);
-            UploadFileResultDto resultDto = mediaFileService.uploadFile(companyId, uploadFileParamsDto, tempFilePath);
-            tempFile.delete();
-            return resultDto;
+            // 读取的同时计算MD5；小文件留在内存直接上传OSS，大文件才写入随机命名的临时文件
+            context = UploadContext.receive(filedata, memoryThreshold);
         } catch (IOException e) {
             throw new RuntimeException("上传文件失败：" + e.getMessage());
         }
+        try {
+            return mediaFileService.uploadFile(companyId, uploadFileParamsDto, context);
+        } finally {
+            context.release();
+        }
     }
 
     /**
@@ -85,4 +95,16 @@ public class MediaFilesController {
         return mediaFileService.getPreviewUrl(mediaId);
     }
 
+    /**
+     * 批量预览接口：课程页面一次获取全部课时的签名URL
+     *
+     * @param mediaIds 媒资ID列表
+     * @return 媒资ID -> 签名URL，不存在的媒资不在结果中
+     */
+    @ApiOperation("批量预览媒资地址")
+    @PostMapping("/preview")
+    public Map<String, String> previews(@RequestBody List<String> mediaIds) {
+        return mediaFileService.getPreviewUrls(mediaIds);
+    }
+
 }
@@ -0,0 +1,122 @@
+package com.xuecheng.media.api;
+
+import com.xuecheng.media.service.ByteRange;
+import com.xuecheng.media.service.impl.MediaStreamService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 媒资播放/下载代理接口（私有 bucket 不能直接访问 OSS 时使用）
+ * <p>
+ * - 支持单个 Range（206 / 416），播放器拖动进度、下载工具断点续传都只读需要的字节
+ * - 响应 ETag，If-None-Match 命中时返回 304；If-Range 与 ETag 不一致时忽略 Range 返回整个对象
+ * - HLS 播放地址为 /stream/{mediaId}，主播放列表里的相对路径（720p/index.m3u8 等）同样经本接口访问
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Api(value = "媒资播放接口", tags = "媒资播放接口")
+@RestController
+public class MediaStreamController {
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    @Autowired
+    MediaStreamService mediaStreamService;
+
+    @ApiOperation("媒资播放/下载（支持 Range 和 ETag）")
+    @RequestMapping(value = {"/stream/{mediaId}", "/stream/{mediaId}/**"}, method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void stream(@PathVariable("mediaId") String mediaId, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        String objectName = mediaStreamService.resolve(mediaId, subPath(request));
+        MediaStreamService.ObjectInfo info = objectName != null ? mediaStreamService.describe(objectName) : null;
+        if (info == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + info.getEtag() + "\"";
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "private");
+        if (info.getLastModified() > 0) {
+            response.setDateHeader("Last-Modified", info.getLastModified());
+        }
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = info.getSize();
+        ByteRange range = null;
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(etag)) {
+            range = ByteRange.parse(request.getHeader("Range"), size);
+        }
+        if (range != null && !range.isSatisfiable()) {
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        long start = 0;
+        long end = size - 1;
+        if (range != null) {
+            start = range.getStart();
+            end = range.getEnd();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        response.setContentType(info.getContentType() != null ? info.getContentType() : "application/octet-stream");
+        response.setContentLengthLong(end - start + 1);
+        if (size == 0 || "HEAD".equals(request.getMethod())) {
+            return;
+        }
+        try {
+            mediaStreamService.copy(objectName, info, start, end, response.getOutputStream());
+        } catch (IOException e) {
+            // 多为客户端关闭连接（拖动进度、关闭页面），响应头已发出，无需返回错误
+            log.debug("媒资流式传输中断：{}，{}", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * /stream/{mediaId}/ 之后的路径
+     */
+    private static String subPath(HttpServletRequest request) {
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        String pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (path == null || pattern == null || !pattern.endsWith("/**")) {
+            return null;
+        }
+        return PATH_MATCHER.extractPathWithinPattern(pattern, path);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
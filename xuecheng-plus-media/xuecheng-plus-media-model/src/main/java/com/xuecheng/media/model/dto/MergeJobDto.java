@@ -0,0 +1,60 @@
+package com.xuecheng.media.model.dto;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分块合并任务状态DTO（异步合并时前端轮询）
+ *
+ * @author 学成在线项目组
+ */
+@Data
+@ToString
+public class MergeJobDto {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    /**
+     * 文件MD5（任务标识）
+     */
+    private String fileMd5;
+
+    /**
+     * 任务状态：QUEUED 排队中，RUNNING 执行中，SUCCESS 成功，FAILED 失败（可重新提交）
+     */
+    private String status;
+
+    /**
+     * 所处阶段：QUEUED / CHECKING / MERGING / UPLOADING / SAVING / DONE
+     */
+    private String stage;
+
+    /**
+     * 已合并字节数
+     */
+    private long bytesMerged;
+
+    /**
+     * 已上传到OSS的字节数
+     */
+    private long bytesUploaded;
+
+    /**
+     * 文件总字节数（按已收到的分块估算，未知时为0）
+     */
+    private long totalBytes;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+}
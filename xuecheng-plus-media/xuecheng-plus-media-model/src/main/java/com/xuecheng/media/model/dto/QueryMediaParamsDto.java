@@ -4,6 +4,8 @@ import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
 import lombok.ToString;
 
+import java.time.LocalDateTime;
+
 /**
  * @author Mr.M
  * @version 1.0
@@ -26,4 +28,16 @@ public class QueryMediaParamsDto {
 
     @ApiModelProperty("排序方向，可选：asc/desc")
     private String sortOrder;
+
+    @ApiModelProperty("文件名匹配方式，可选：contains（包含，默认）/prefix（前缀，可走文件名索引）/search（全文检索文件名、标签、备注，按相关度排序）")
+    private String filenameMatch;
+
+    @ApiModelProperty("游标分页：上一页最后一条的上传时间（与 afterId 一起传入时按游标取下一页，忽略页码）")
+    private LocalDateTime afterCreateDate;
+
+    @ApiModelProperty("游标分页：上一页最后一条的ID")
+    private String afterId;
+
+    @ApiModelProperty("是否查询总记录数；默认页码分页查询、游标分页不查询（不查询时总记录数返回-1）")
+    private Boolean withCount;
 }
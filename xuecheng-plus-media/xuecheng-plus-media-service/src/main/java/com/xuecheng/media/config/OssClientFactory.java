@@ -0,0 +1,64 @@
+package com.xuecheng.media.config;
+
+import com.aliyun.oss.ClientBuilderConfiguration;
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSClientBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * OSS客户端工厂
+ * <p>
+ * 按 aliyun.oss.client 配置创建客户端：连接池大小、空闲连接回收、连接/读写超时、失败重试次数、CRC64校验。
+ * 每个客户端有自己的连接池，不要按请求创建。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+public class OssClientFactory {
+
+    private final String endpoint;
+
+    private final String accessKeyId;
+
+    private final String accessKeySecret;
+
+    private final OssConfig.Client client;
+
+    public OssClientFactory(String endpoint, String accessKeyId, String accessKeySecret, OssConfig.Client client) {
+        this.endpoint = endpoint;
+        this.accessKeyId = accessKeyId;
+        this.accessKeySecret = accessKeySecret;
+        this.client = client;
+    }
+
+    /**
+     * 创建客户端
+     *
+     * @param crcCheckEnabled 是否校验上传、下载内容的CRC64（关闭时只对已由 Content-MD5 校验的上传使用）
+     * @return OSS客户端
+     */
+    public OSS create(boolean crcCheckEnabled) {
+        ClientBuilderConfiguration configuration = buildConfiguration(crcCheckEnabled);
+        log.info("创建OSS客户端：{}，最大连接数：{}，连接超时：{}ms，读写超时：{}ms，空闲连接回收：{}ms，重试：{} 次，CRC校验：{}",
+                endpoint, configuration.getMaxConnections(), configuration.getConnectionTimeout(),
+                configuration.getSocketTimeout(), configuration.getIdleConnectionTime(),
+                configuration.getMaxErrorRetry(), crcCheckEnabled);
+        return new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret, configuration);
+    }
+
+    ClientBuilderConfiguration buildConfiguration(boolean crcCheckEnabled) {
+        ClientBuilderConfiguration configuration = new ClientBuilderConfiguration();
+        configuration.setMaxConnections(client.getMaxConnections());
+        configuration.setConnectionTimeout(client.getConnectionTimeout());
+        configuration.setSocketTimeout(client.getSocketTimeout());
+        configuration.setConnectionRequestTimeout(client.getConnectionRequestTimeout());
+        configuration.setIdleConnectionTime(client.getIdleConnectionTime());
+        configuration.setMaxErrorRetry(client.getMaxErrorRetry());
+        if (client.getRequestTimeout() > 0) {
+            configuration.setRequestTimeoutEnabled(true);
+            configuration.setRequestTimeout(client.getRequestTimeout());
+        }
+        configuration.setCrcCheckEnabled(crcCheckEnabled);
+        return configuration;
+    }
+}
@@ -0,0 +1,164 @@
+package com.xuecheng.media.config;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.UploadPartRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OSS客户端指标（装饰 OSS 接口，OssService 和并行分片上传的请求都会经过）
+ * <p>
+ * - oss.client.requests：按 operation（put/get/head/delete/list/presign/multipart）、outcome（success/error）
+ * 记录请求耗时，发布直方图供计算分位数；get 的耗时到收到响应头为止
+ * - oss.client.bytes：按 operation 累计传输字节数，put 按请求声明的长度，get 按实际读取的字节数
+ * <p>
+ * 未列出的方法（shutdown 等）直接转发，不记录。
+ *
+ * @author 学成在线项目组
+ */
+public final class OssClientMetrics {
+
+    public static final String REQUESTS = "oss.client.requests";
+
+    public static final String BYTES = "oss.client.bytes";
+
+    private static final Map<String, String> OPERATIONS = new HashMap<>();
+
+    static {
+        for (String method : new String[]{"putObject", "appendObject", "uploadPart", "uploadPartCopy", "copyObject"}) {
+            OPERATIONS.put(method, "put");
+        }
+        OPERATIONS.put("getObject", "get");
+        for (String method : new String[]{"getObjectMetadata", "getSimplifiedObjectMeta", "doesObjectExist"}) {
+            OPERATIONS.put(method, "head");
+        }
+        OPERATIONS.put("deleteObject", "delete");
+        OPERATIONS.put("deleteObjects", "delete");
+        for (String method : new String[]{"listObjects", "listObjectsV2", "listParts", "listMultipartUploads"}) {
+            OPERATIONS.put(method, "list");
+        }
+        OPERATIONS.put("generatePresignedUrl", "presign");
+        for (String method : new String[]{"initiateMultipartUpload", "completeMultipartUpload",
+                "abortMultipartUpload"}) {
+            OPERATIONS.put(method, "multipart");
+        }
+    }
+
+    private OssClientMetrics() {
+    }
+
+    /**
+     * 包装客户端
+     */
+    public static OSS wrap(OSS target, MeterRegistry registry) {
+        Map<String, Timer> timers = new HashMap<>();
+        Map<String, Counter> bytes = new HashMap<>();
+        for (String operation : OPERATIONS.values()) {
+            for (String outcome : new String[]{"success", "error"}) {
+                timers.computeIfAbsent(operation + "/" + outcome, key -> Timer.builder(REQUESTS)
+                        .description("OSS请求耗时")
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry));
+            }
+            bytes.computeIfAbsent(operation, key -> Counter.builder(BYTES)
+                    .description("OSS传输字节数")
+                    .baseUnit("bytes")
+                    .tag("operation", operation)
+                    .register(registry));
+        }
+
+        return (OSS) Proxy.newProxyInstance(OSS.class.getClassLoader(), new Class[]{OSS.class},
+                (proxy, method, args) -> {
+                    String operation = OPERATIONS.get(method.getName());
+                    if (operation == null) {
+                        return invoke(target, method, args);
+                    }
+                    long start = System.nanoTime();
+                    String outcome = "error";
+                    try {
+                        Object result = invoke(target, method, args);
+                        outcome = "success";
+                        Counter counter = bytes.get(operation);
+                        if (result instanceof OSSObject && ((OSSObject) result).getObjectContent() != null) {
+                            // 下载的字节数在读取响应内容时累计
+                            OSSObject object = (OSSObject) result;
+                            object.setObjectContent(new ProxyInputStream(object.getObjectContent()) {
+                                @Override
+                                protected void afterRead(int n) {
+                                    if (n > 0) {
+                                        counter.increment(n);
+                                    }
+                                }
+                            });
+                        } else {
+                            long size = transferred(method.getName(), args);
+                            if (size > 0) {
+                                counter.increment(size);
+                            }
+                        }
+                        return result;
+                    } finally {
+                        timers.get(operation + "/" + outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                });
+    }
+
+    private static Object invoke(OSS target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 请求成功后按参数估算传输的字节数（未知时为0）
+     */
+    private static long transferred(String method, Object[] args) {
+        if (args == null) {
+            return 0;
+        }
+        if ("uploadPart".equals(method)) {
+            return ((UploadPartRequest) args[0]).getPartSize();
+        }
+        if ("getObject".equals(method) && args[0] instanceof GetObjectRequest && args.length > 1) {
+            // 下载到本地文件
+            return args[1] instanceof File ? ((File) args[1]).length() : 0;
+        }
+        if (!"putObject".equals(method) && !"appendObject".equals(method)) {
+            return 0;
+        }
+        if (args[0] instanceof PutObjectRequest) {
+            PutObjectRequest request = (PutObjectRequest) args[0];
+            if (request.getFile() != null) {
+                return request.getFile().length();
+            }
+            return request.getMetadata() != null ? request.getMetadata().getContentLength() : 0;
+        }
+        for (Object arg : args) {
+            if (arg instanceof File) {
+                return ((File) arg).length();
+            }
+            if (arg instanceof ObjectMetadata) {
+                return ((ObjectMetadata) arg).getContentLength();
+            }
+        }
+        return 0;
+    }
+}
@@ -1,18 +1,22 @@
 package com.xuecheng.media.config;
 
 import com.aliyun.oss.OSS;
-import com.aliyun.oss.OSSClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * 阿里云OSS配置类
  * 
  * 功能：
  * 1. 读取Nacos中的OSS配置
- * 2. 创建OSS客户端Bean
+ * 2. 创建OSS客户端Bean（连接池、超时、重试按 aliyun.oss.client 配置）
+ * 3. 有 MeterRegistry 时按操作记录请求耗时和传输字节数（/actuator/metrics/oss.client.requests）
  * 
  * @author 学成在线项目组
  */
@@ -42,6 +46,11 @@ public class OssConfig {
      */
     private String bucketName;
 
+    /**
+     * 客户端连接池、超时、重试配置
+     */
+    private Client client = new Client();
+
     /**
      * 创建OSS客户端Bean
      * 
@@ -51,7 +60,80 @@ public class OssConfig {
      * @return OSS客户端实例
      */
     @Bean
-    public OSS ossClient() {
-        return new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret);
+    @Primary
+    public OSS ossClient(ObjectProvider<MeterRegistry> meterRegistry) {
+        return metered(clientFactory().create(client.isCrcCheckEnabled()), meterRegistry);
+    }
+
+    /**
+     * 不做CRC64校验的客户端，只用于带 Content-MD5 的上传（内容已由OSS按MD5校验，不必再算一遍CRC64）
+     * <p>
+     * aliyun.oss.client.skip-crc-for-verified-uploads=true 时创建，单独占用一个连接池
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "aliyun.oss.client", name = "skip-crc-for-verified-uploads", havingValue = "true")
+    public OSS ossVerifiedUploadClient(ObjectProvider<MeterRegistry> meterRegistry) {
+        return metered(clientFactory().create(false), meterRegistry);
+    }
+
+    private OssClientFactory clientFactory() {
+        return new OssClientFactory(endpoint, accessKeyId, accessKeySecret, client);
+    }
+
+    private static OSS metered(OSS ossClient, ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return registry == null ? ossClient : OssClientMetrics.wrap(ossClient, registry);
+    }
+
+    /**
+     * 客户端配置（默认值与SDK一致）
+     */
+    @Data
+    public static class Client {
+
+        /**
+         * 连接池最大连接数（上传、下载、分片并发的总和）
+         */
+        private int maxConnections = 1024;
+
+        /**
+         * 建立连接超时（毫秒）
+         */
+        private int connectionTimeout = 50000;
+
+        /**
+         * 读写数据超时（毫秒）
+         */
+        private int socketTimeout = 50000;
+
+        /**
+         * 从连接池获取连接的超时（毫秒，-1 表示不限）
+         */
+        private int connectionRequestTimeout = -1;
+
+        /**
+         * 空闲超过该时长（毫秒）的连接由后台线程回收
+         */
+        private long idleConnectionTime = 60000;
+
+        /**
+         * 可重试错误（网络异常、5xx）的最大重试次数
+         */
+        private int maxErrorRetry = 3;
+
+        /**
+         * 整个请求的超时（毫秒，0 表示不限；大文件上传下载不要设置过小）
+         */
+        private int requestTimeout = 0;
+
+        /**
+         * 上传、下载时校验CRC64
+         */
+        private boolean crcCheckEnabled = true;
+
+        /**
+         * 带 Content-MD5 的上传使用不校验CRC64的客户端
+         */
+        private boolean skipCrcForVerifiedUploads = false;
     }
 }
@@ -2,6 +2,9 @@ package com.xuecheng.media.job;
 
 import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
+import com.xuecheng.media.service.impl.MediaIntegrityVerifier;
+import com.xuecheng.media.service.impl.OssOrphanSweeper;
+import com.xuecheng.media.service.impl.VideoTranscodeEngine;
 import com.xuecheng.media.task.ChunkCleanupTask;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +25,15 @@ public class MediaProcessJob {
     @Autowired
     private ChunkCleanupTask chunkCleanupTask;
 
+    @Autowired
+    private VideoTranscodeEngine videoTranscodeEngine;
+
+    @Autowired
+    private OssOrphanSweeper ossOrphanSweeper;
+
+    @Autowired
+    private MediaIntegrityVerifier mediaIntegrityVerifier;
+
     /**
      * 测试任务
      * JobHandler: testJob
@@ -76,9 +88,70 @@ public class MediaProcessJob {
     }
 
     /**
-     * 视频转码任务（待实现）
+     * OSS孤立对象清理任务（重新上传后不再被 media_files 引用的旧对象）
+     * JobHandler: ossOrphanSweepJob
+     * Cron: 0 0 3 * * ? (每天凌晨3点执行，错开分块清理)
+     *
+     * 任务参数为 dryRun 时只统计孤立对象，不删除
+     */
+    @XxlJob("ossOrphanSweepJob")
+    public void ossOrphanSweepJob() {
+        log.info("========== OSS孤立对象清理任务开始 ==========");
+        log.info("执行时间：{}", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+
+        boolean dryRun = "dryRun".equalsIgnoreCase(String.valueOf(XxlJobHelper.getJobParam()).trim());
+        try {
+            OssOrphanSweeper.Summary summary = ossOrphanSweeper.sweep(dryRun, message -> XxlJobHelper.log(message));
+            log.info("清理结果：{}", summary);
+            XxlJobHelper.handleSuccess("OSS孤立对象清理成功：" + summary);
+        } catch (Exception e) {
+            log.error("OSS孤立对象清理失败", e);
+            XxlJobHelper.handleFail("OSS孤立对象清理失败：" + e.getMessage());
+        }
+
+        log.info("========== OSS孤立对象清理任务完成 ==========");
+    }
+
+    /**
+     * 媒资完整性抽检任务（抽样比对 OSS 对象MD5与媒资ID，优先用对象元信息，不下载到本地）
+     * JobHandler: mediaIntegrityVerifyJob
+     * Cron: 0 30 3 * * ? (每天凌晨3点半执行)
+     *
+     * 任务参数为数字时作为本次抽检数量，否则使用 media.verify.max-samples
+     */
+    @XxlJob("mediaIntegrityVerifyJob")
+    public void mediaIntegrityVerifyJob() {
+        log.info("========== 媒资完整性抽检任务开始 ==========");
+        log.info("执行时间：{}", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+
+        int samples = 0;
+        String param = XxlJobHelper.getJobParam();
+        if (param != null && param.trim().matches("\\d+")) {
+            samples = Integer.parseInt(param.trim());
+        }
+        try {
+            MediaIntegrityVerifier.Summary summary = mediaIntegrityVerifier.verify(samples,
+                    message -> XxlJobHelper.log(message));
+            log.info("抽检结果：{}", summary);
+            if (summary.getFailed() > 0 || summary.getMissing() > 0) {
+                XxlJobHelper.handleFail("媒资完整性抽检发现问题：" + summary + "，媒资：" + summary.getProblems());
+            } else {
+                XxlJobHelper.handleSuccess("媒资完整性抽检完成：" + summary);
+            }
+        } catch (Exception e) {
+            log.error("媒资完整性抽检失败", e);
+            XxlJobHelper.handleFail("媒资完整性抽检失败：" + e.getMessage());
+        }
+
+        log.info("========== 媒资完整性抽检任务完成 ==========");
+    }
+
+    /**
+     * 视频转码任务
      * JobHandler: videoTranscodeJob
      * Cron: 0 0/5 * * * ? (每5分钟执行一次)
+     *
+     * 路由策略：分片广播（SHARDING_BROADCAST），每个执行器处理 id % 分片总数 = 分片序号 的任务
      */
     @XxlJob("videoTranscodeJob")
     public void videoTranscodeJob() {
@@ -92,16 +165,17 @@ public class MediaProcessJob {
         log.info("分片参数：当前分片 = {}/{}", shardIndex + 1, shardTotal);
 
         try {
-            // TODO: 实现视频转码逻辑
-            // 1. 查询待转码视频（根据分片参数筛选）
-            // 2. 调用FFmpeg转码
-            // 3. 更新视频状态
-
-            log.info("TODO: 查询待转码视频（分片索引: {}）", shardIndex);
-            log.info("TODO: 调用FFmpeg转码工具");
-            log.info("TODO: 更新视频转码状态");
+            // 查询本分片待转码视频 → 领取 → FFmpeg转码 → 上传OSS → 更新状态
+            // 等待期间的转码进度写入调度中心的执行日志
+            VideoTranscodeEngine.Summary summary = videoTranscodeEngine.run(shardIndex, shardTotal,
+                    message -> XxlJobHelper.log(message));
+            log.info("转码结果：{}", summary);
 
-            XxlJobHelper.handleSuccess("视频转码任务执行成功（待实现）");
+            if (summary.getFailed() > 0) {
+                XxlJobHelper.handleFail("视频转码部分失败：" + summary);
+            } else {
+                XxlJobHelper.handleSuccess("视频转码任务执行成功：" + summary);
+            }
         } catch (Exception e) {
             log.error("视频转码任务失败", e);
             XxlJobHelper.handleFail("视频转码任务失败：" + e.getMessage());
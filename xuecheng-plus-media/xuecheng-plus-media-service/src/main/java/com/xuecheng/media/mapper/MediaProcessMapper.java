@@ -2,14 +2,58 @@ package com.xuecheng.media.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xuecheng.media.model.po.MediaProcess;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 /**
  * <p>
  *  Mapper 接口
  * </p>
  *
+ * 任务状态：1-未处理，2-处理成功，3-处理失败，4-处理中。
+ * 处理中的任务 finish_date 记录领取时间，超过租约时长仍未完成视为执行节点宕机，可被重新领取（计一次失败）
+ *
  * @author itcast
  */
 public interface MediaProcessMapper extends BaseMapper<MediaProcess> {
 
+    /**
+     * 可领取的条件：未处理/失败且未超过重试次数，或处理中但租约已过期
+     */
+    String CLAIMABLE = "fail_count < #{maxRetries} AND (status IN ('1', '3') "
+            + "OR (status = '4' AND finish_date < DATE_SUB(NOW(), INTERVAL #{leaseSeconds} SECOND)))";
+
+    /**
+     * 查询本分片可领取的任务（id % shardTotal = shardIndex）
+     *
+     * @param shardTotal   分片总数
+     * @param shardIndex   分片序号
+     * @param maxRetries   最大失败次数
+     * @param leaseSeconds 领取租约时长（秒）
+     * @param count        最多返回条数
+     */
+    @Select("SELECT * FROM media_process WHERE id % #{shardTotal} = #{shardIndex} AND " + CLAIMABLE
+            + " ORDER BY id LIMIT #{count}")
+    List<MediaProcess> selectShardTasks(@Param("shardTotal") int shardTotal, @Param("shardIndex") int shardIndex,
+                                        @Param("maxRetries") int maxRetries, @Param("leaseSeconds") long leaseSeconds,
+                                        @Param("count") int count);
+
+    /**
+     * 乐观领取任务：状态仍满足可领取条件时改为处理中；接管过期租约时计一次失败
+     *
+     * @return 1-领取成功，0-已被其他执行器领取
+     */
+    @Update("UPDATE media_process SET fail_count = fail_count + IF(status = '4', 1, 0), status = '4', "
+            + "finish_date = NOW() WHERE id = #{id} AND " + CLAIMABLE)
+    int claim(@Param("id") long id, @Param("maxRetries") int maxRetries, @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * 记录处理失败（只更新本执行器领取的任务）
+     */
+    @Update("UPDATE media_process SET status = '3', fail_count = fail_count + 1, errormsg = #{errormsg}, "
+            + "finish_date = NOW() WHERE id = #{id} AND status = '4'")
+    int markFailed(@Param("id") long id, @Param("errormsg") String errormsg);
 }
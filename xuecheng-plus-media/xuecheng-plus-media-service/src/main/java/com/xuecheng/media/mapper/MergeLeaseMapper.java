@@ -0,0 +1,50 @@
+package com.xuecheng.media.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * <p>
+ * 合并租约 Mapper 接口（多节点部署时同一文件同时只有一个节点执行合并/上传）
+ * </p>
+ *
+ * 表结构：
+ * <pre>
+ * CREATE TABLE media_merge_lease (
+ *   lease_key   VARCHAR(64) NOT NULL PRIMARY KEY COMMENT '租约标识（操作:文件MD5）',
+ *   owner       VARCHAR(128) NOT NULL COMMENT '持有节点',
+ *   expire_time DATETIME NOT NULL COMMENT '过期时间（持有节点宕机时到期后可被接管）'
+ * ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+ * </pre>
+ * 过期时间统一用数据库时间计算，不受各节点时钟偏差影响
+ *
+ * @author itcast
+ */
+public interface MergeLeaseMapper {
+
+    /**
+     * 创建租约（已存在时不插入）
+     *
+     * @return 1-获得租约，0-租约已存在
+     */
+    @Insert("INSERT IGNORE INTO media_merge_lease (lease_key, owner, expire_time) "
+            + "VALUES (#{leaseKey}, #{owner}, DATE_ADD(NOW(), INTERVAL #{seconds} SECOND))")
+    int insert(@Param("leaseKey") String leaseKey, @Param("owner") String owner, @Param("seconds") long seconds);
+
+    /**
+     * 接管已过期的租约（或续期自己持有的租约）
+     *
+     * @return 1-获得租约，0-租约被其他节点持有且未过期
+     */
+    @Update("UPDATE media_merge_lease SET owner = #{owner}, expire_time = DATE_ADD(NOW(), INTERVAL #{seconds} SECOND) "
+            + "WHERE lease_key = #{leaseKey} AND (owner = #{owner} OR expire_time < NOW())")
+    int takeOver(@Param("leaseKey") String leaseKey, @Param("owner") String owner, @Param("seconds") long seconds);
+
+    /**
+     * 释放自己持有的租约
+     */
+    @Delete("DELETE FROM media_merge_lease WHERE lease_key = #{leaseKey} AND owner = #{owner}")
+    int release(@Param("leaseKey") String leaseKey, @Param("owner") String owner);
+}
@@ -0,0 +1,93 @@
+package com.xuecheng.media.service;
+
+/**
+ * HTTP Range 请求头解析（只支持单个字节范围）
+ * <p>
+ * - bytes=100-199：第100到199字节
+ * - bytes=100-：第100字节到末尾
+ * - bytes=-500：最后500字节
+ * <p>
+ * 多个范围、格式错误或非 bytes 单位时 parse 返回空，按整个对象响应（RFC 7233 允许忽略 Range）；
+ * 起始位置超出对象大小时返回不可满足的范围，应响应 416。
+ *
+ * @author 学成在线项目组
+ */
+public class ByteRange {
+
+    private static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final long start;
+
+    private final long end;
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 解析 Range 请求头
+     *
+     * @param header Range 请求头
+     * @param size   对象大小（字节）
+     * @return 字节范围（结束位置已截断到对象末尾），无需按范围响应时返回空
+     */
+    public static ByteRange parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // 后缀范围：最后 N 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, Math.min(end, size - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否可满足（不可满足时响应 416，Content-Range: bytes *&#47;大小）
+     */
+    public boolean isSatisfiable() {
+        return start >= 0;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * 结束位置（含）
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+}
@@ -0,0 +1,136 @@
+package com.xuecheng.media.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+/**
+ * 分块存储
+ * <p>
+ * 大文件分块上传时分块的存放位置，由 media.chunk.mode 选择：
+ * - local：本地磁盘（默认），分块直接从请求流写入最终位置，合并时本地拼接后整体上传
+ * - multipart：分块直接作为OSS分片上传，合并时只需 completeMultipartUpload
+ * - oss：分块作为临时对象存入OSS，多个媒资节点共享分块，合并时服务端拷贝拼接
+ * - sparse：预分配目标文件，分块按 分块序号 * 分块大小 定位写入，合并时只需校验并上传
+ *
+ * @author 学成在线项目组
+ */
+public interface ChunkStore {
+
+    /**
+     * 存储模式（与 media.chunk.mode 取值一致）
+     */
+    String mode();
+
+    /**
+     * 准备接收分块（前端登记分块布局后调用，默认不需要准备）
+     *
+     * @param fileMd5   文件MD5
+     * @param chunkSize 分块大小
+     * @param fileSize  文件大小（未知时为0）
+     */
+    default void prepare(String fileMd5, long chunkSize, long fileSize) throws IOException {
+    }
+
+    /**
+     * 从输入流写入一个分块，写入的同时计算分块MD5
+     *
+     * @param fileMd5  文件MD5
+     * @param chunk    分块序号（从0开始）
+     * @param fileName 原始文件名（可为空）
+     * @param in       分块内容
+     * @param size     分块大小
+     * @param chunkMd5 前端计算的分块MD5（可为空，不一致时抛出 {@link ChunkVerificationException}，已有分块不受影响）
+     * @return 写入结果
+     */
+    ChunkWriteResult writeChunk(String fileMd5, int chunk, String fileName, InputStream in, long size,
+                                String chunkMd5) throws IOException;
+
+    /**
+     * 已存储的分块（没有分块清单时用于续传协商）
+     */
+    BitSet listChunks(String fileMd5) throws IOException;
+
+    /**
+     * 是否已存储某个分块（没有分块清单时用于逐块续传协商，默认从 listChunks 判断；
+     * 列出全部分块代价高的存储应逐块检查，否则 N 个分块的上传要列出 O(N²) 次分块）
+     *
+     * @param fileMd5 文件MD5
+     * @param chunk   分块序号（从0开始）
+     */
+    default boolean hasChunk(String fileMd5, int chunk) throws IOException {
+        return listChunks(fileMd5).get(chunk);
+    }
+
+    /**
+     * 是否存有该文件的分块
+     */
+    boolean hasUpload(String fileMd5);
+
+    /**
+     * 合并分块并上传为正式对象
+     *
+     * @param fileMd5       文件MD5
+     * @param chunkTotal    分块总数
+     * @param fileName      原始文件名
+     * @param chunksChecked 调用方是否已通过分块清单确认分块齐全
+     * @param skipDigest    是否跳过整文件MD5计算（分块已逐块校验且组合摘要一致时）
+     * @param progress      合并进度（合并、上传的字节数和所处阶段）
+     * @return 合并后的对象
+     * @throws ChunkVerificationException 缺少分块或文件校验失败
+     * @throws IOException                读写失败
+     */
+    StoredFile merge(String fileMd5, int chunkTotal, String fileName, boolean chunksChecked, boolean skipDigest,
+                     MergeProgress progress) throws IOException;
+
+    /**
+     * 删除该文件的全部分块
+     */
+    void delete(String fileMd5);
+
+    /**
+     * 分块是否只存放在当前节点（是则由本节点的分块清单记录；多节点共享的存储以存储中的分块为准）
+     */
+    default boolean isNodeLocal() {
+        return true;
+    }
+
+    /**
+     * 分块写入结果
+     */
+    @Getter
+    @AllArgsConstructor
+    class ChunkWriteResult {
+
+        /**
+         * 分块大小
+         */
+        private final long size;
+
+        /**
+         * 分块MD5（32位小写十六进制）
+         */
+        private final String md5;
+    }
+
+    /**
+     * 合并后的对象
+     */
+    @Getter
+    @AllArgsConstructor
+    class StoredFile {
+
+        /**
+         * OSS对象名
+         */
+        private final String objectName;
+
+        /**
+         * 文件大小
+         */
+        private final long size;
+    }
+}
@@ -0,0 +1,45 @@
+package com.xuecheng.media.service;
+
+import java.io.IOException;
+
+/**
+ * 分块校验失败：分块MD5或大小不一致、缺少分块、合并后的文件校验不一致
+ * <p>
+ * 由分块存储抛出，调用方按类型区分校验失败（返回给前端，由前端重传分块或重新上传）
+ * 和读写失败，不依赖异常信息的文字。
+ *
+ * @author 学成在线项目组
+ */
+public class ChunkVerificationException extends IOException {
+
+    public ChunkVerificationException(String message) {
+        super(message);
+    }
+
+    public ChunkVerificationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * 分块内容与前端给出的分块MD5不一致
+     */
+    public static ChunkVerificationException chunkMismatch() {
+        return new ChunkVerificationException("分块校验失败");
+    }
+
+    /**
+     * 合并时缺少分块
+     *
+     * @param chunk 第一个缺少的分块序号
+     */
+    public static ChunkVerificationException missingChunk(int chunk) {
+        return new ChunkVerificationException("缺少分块：" + chunk);
+    }
+
+    /**
+     * 合并后的文件与文件MD5、登记的大小或服务端CRC64不一致
+     */
+    public static ChunkVerificationException fileMismatch() {
+        return new ChunkVerificationException("文件校验失败");
+    }
+}
@@ -9,7 +9,9 @@ import com.xuecheng.media.model.po.MediaFiles;
 import com.xuecheng.base.model.RestResponse;
 import org.springframework.web.bind.annotation.RequestBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @description 媒资文件管理业务类
@@ -43,6 +45,16 @@ public interface MediaFileService {
         public UploadFileResultDto uploadFile(Long companyId, UploadFileParamsDto uploadFileParamsDto,
                         String localFilePath);
 
+        /**
+         * @description 上传文件（使用落盘时已算好的MD5，不再重复计算摘要）
+         * @param companyId           机构ID
+         * @param uploadFileParamsDto 上传文件参数
+         * @param context             上传上下文（本地文件路径、MD5、大小、文件类型）
+         * @return UploadFileResultDto 上传结果（包含文件访问地址）
+         */
+        public UploadFileResultDto uploadFile(Long companyId, UploadFileParamsDto uploadFileParamsDto,
+                        UploadContext context);
+
         /**
          * @description 将文件信息保存到数据库（事务方法）
          * 
@@ -73,6 +85,39 @@ public interface MediaFileService {
          */
         RestResponse<Boolean> checkChunk(String fileMd5, int chunkIndex);
 
+        /**
+         * 查询缺失的分块（断点续传时一次取回，替代逐个 checkChunk）
+         * 
+         * @param fileMd5    文件MD5
+         * @param chunkTotal 分块总数
+         * @return 缺失的分块序号（升序）
+         */
+        RestResponse<List<Integer>> missingChunks(String fileMd5, int chunkTotal);
+
+        /**
+         * 查询缺失的分块并登记分块布局（sparse 模式按布局预分配目标文件）
+         * 
+         * @param fileMd5    文件MD5
+         * @param chunkTotal 分块总数
+         * @param chunkSize  分块大小（为0时不登记）
+         * @param fileSize   文件大小（未知时为0）
+         * @return 缺失的分块序号（升序）
+         */
+        RestResponse<List<Integer>> missingChunks(String fileMd5, int chunkTotal, long chunkSize, long fileSize);
+
+        /**
+         * 查询缺失的分块并登记分块布局，新上传按机构配额准入（分块存储空间不足时拒绝）
+         * 
+         * @param companyId  机构ID（为空时只检查全局配额）
+         * @param fileMd5    文件MD5
+         * @param chunkTotal 分块总数
+         * @param chunkSize  分块大小（为0时不登记）
+         * @param fileSize   文件大小（未知时为0）
+         * @return 缺失的分块序号（升序）
+         */
+        RestResponse<List<Integer>> missingChunks(Long companyId, String fileMd5, int chunkTotal, long chunkSize,
+                        long fileSize);
+
         /**
          * 上传单个分块到本地临时目录
          * 
@@ -82,6 +127,55 @@ public interface MediaFileService {
          */
         RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath);
 
+        /**
+         * 上传单个分块（分片直传模式下需要原始文件名来确定OSS对象扩展名）
+         * 
+         * @param fileMd5            文件MD5
+         * @param chunk              分块序号
+         * @param localChunkFilePath 分块本地临时路径
+         * @param fileName           原始文件名（可为空）
+         */
+        RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath, String fileName);
+
+        /**
+         * 上传单个分块并校验分块MD5（不一致时立即拒绝该分块）
+         * 
+         * @param fileMd5            文件MD5
+         * @param chunk              分块序号
+         * @param localChunkFilePath 分块本地临时路径
+         * @param fileName           原始文件名（可为空）
+         * @param chunkMd5           前端计算的分块MD5（可为空）
+         */
+        RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath, String fileName,
+                        String chunkMd5);
+
+        /**
+         * 从输入流上传单个分块（请求流直接写入分块存储，不落临时文件）
+         * 
+         * @param fileMd5  文件MD5
+         * @param chunk    分块序号
+         * @param in       分块内容
+         * @param size     分块大小
+         * @param fileName 原始文件名（可为空）
+         * @param chunkMd5 前端计算的分块MD5（可为空）
+         */
+        RestResponse uploadChunk(String fileMd5, int chunk, InputStream in, long size, String fileName,
+                        String chunkMd5);
+
+        /**
+         * 从输入流上传单个分块，新上传按机构配额准入（分块存储空间不足时拒绝）
+         * 
+         * @param companyId 机构ID（为空时只检查全局配额）
+         * @param fileMd5   文件MD5
+         * @param chunk     分块序号
+         * @param in        分块内容
+         * @param size      分块大小
+         * @param fileName  原始文件名（可为空）
+         * @param chunkMd5  前端计算的分块MD5（可为空）
+         */
+        RestResponse uploadChunk(Long companyId, String fileMd5, int chunk, InputStream in, long size,
+                        String fileName, String chunkMd5);
+
         /**
          * 合并所有分块、上传至OSS并入库
          * 
@@ -93,10 +187,40 @@ public interface MediaFileService {
         RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
                         UploadFileParamsDto uploadFileParamsDto);
 
+        /**
+         * 合并所有分块、上传至OSS并入库（带组合摘要，与分块清单不一致时直接失败）
+         * 
+         * @param companyId           机构ID
+         * @param fileMd5             文件MD5
+         * @param chunkTotal          分块总数
+         * @param uploadFileParamsDto 文件元信息
+         * @param chunksDigest        组合摘要：按序拼接各分块MD5后再做MD5（可为空）
+         */
+        RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
+                        UploadFileParamsDto uploadFileParamsDto, String chunksDigest);
+
+        /**
+         * 合并所有分块并报告进度（异步合并任务使用）
+         * 
+         * @param progress 合并进度（阶段、已合并字节数、已上传字节数）
+         */
+        RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
+                        UploadFileParamsDto uploadFileParamsDto, String chunksDigest, MergeProgress progress);
+
         /**
          * 获取媒资预览路径（对象名/相对路径）。
-         * 前端将使用 OSS 前缀拼接成可访问的完整 URL。
+         * 前端将使用 OSS 前缀拼接成可访问的完整 URL；需要签名URL时使用 {@link #getPreviewUrls}。
+         *
+         * @return 对象路径，媒资不存在时返回空
          */
         String getPreviewUrl(String mediaId);
 
+        /**
+         * 批量获取媒资预览地址（OSS 签名URL，可直接访问，有效期见 media.preview.expire-seconds；课程页面一次获取全部课时）
+         *
+         * @param mediaIds 媒资ID列表
+         * @return 媒资ID -> 签名URL，不存在的媒资不在结果中
+         */
+        Map<String, String> getPreviewUrls(List<String> mediaIds);
+
 }
@@ -0,0 +1,42 @@
+package com.xuecheng.media.service;
+
+import com.xuecheng.media.model.po.MediaProcess;
+
+import java.util.List;
+
+/**
+ * @description 媒资处理任务（视频转码）业务类
+ * @author 学成在线项目组
+ */
+public interface MediaProcessService {
+
+        /**
+         * @description 查询本分片待处理的任务
+         * @param shardIndex 分片序号
+         * @param shardTotal 分片总数
+         * @param count      最多返回条数
+         */
+        List<MediaProcess> getShardTasks(int shardIndex, int shardTotal, int count);
+
+        /**
+         * @description 领取任务（状态改为处理中），多个执行器同时领取时只有一个成功
+         * @param id 任务id
+         * @return 是否领取成功
+         */
+        boolean claim(long id);
+
+        /**
+         * @description 处理成功：更新媒资访问地址，任务移入历史表
+         * @param mediaProcess 任务
+         * @param url          mp4 在OSS中的路径（记入历史表）
+         * @param playUrl      HLS 主播放列表在OSS中的路径，未打包时为空（媒资访问地址优先取该值）
+         */
+        void saveSuccess(MediaProcess mediaProcess, String url, String playUrl);
+
+        /**
+         * @description 处理失败：失败次数加一，未超过重试次数的任务下次调度重新领取
+         * @param id       任务id
+         * @param errormsg 失败原因
+         */
+        void saveFailed(long id, String errormsg);
+}
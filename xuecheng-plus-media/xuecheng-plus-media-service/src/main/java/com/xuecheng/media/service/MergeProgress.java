@@ -0,0 +1,77 @@
+package com.xuecheng.media.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并进度（由合并线程更新，查询进度时读取）
+ * <p>
+ * 阶段：
+ * - QUEUED：排队中
+ * - WAITING：相同文件的合并正在执行，等待其结果
+ * - CHECKING：检查分块清单、组合摘要
+ * - MERGING：拼接分块 / 校验预分配文件 / 服务端拷贝分块
+ * - UPLOADING：上传到OSS
+ * - SAVING：写入数据库
+ * - DONE：完成
+ * <p>
+ * 等待本节点上进行中的相同合并时，通过 follow 读取该合并的进度。
+ *
+ * @author 学成在线项目组
+ */
+public class MergeProgress {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String WAITING = "WAITING";
+    public static final String CHECKING = "CHECKING";
+    public static final String MERGING = "MERGING";
+    public static final String UPLOADING = "UPLOADING";
+    public static final String SAVING = "SAVING";
+    public static final String DONE = "DONE";
+
+    private volatile String stage = QUEUED;
+
+    private final AtomicLong bytesMerged = new AtomicLong();
+
+    private final AtomicLong bytesUploaded = new AtomicLong();
+
+    /**
+     * 正在执行的相同合并的进度（等待其结果时读取它）
+     */
+    private volatile MergeProgress leader;
+
+    /**
+     * 跟随正在执行的相同合并的进度
+     */
+    public void follow(MergeProgress leader) {
+        if (leader != this) {
+            this.leader = leader;
+        }
+    }
+
+    public String getStage() {
+        MergeProgress leader = this.leader;
+        return leader != null ? leader.getStage() : stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public long getBytesMerged() {
+        MergeProgress leader = this.leader;
+        return leader != null ? leader.getBytesMerged() : bytesMerged.get();
+    }
+
+    public long getBytesUploaded() {
+        MergeProgress leader = this.leader;
+        return leader != null ? leader.getBytesUploaded() : bytesUploaded.get();
+    }
+
+    public void addMerged(long bytes) {
+        bytesMerged.addAndGet(bytes);
+    }
+
+    public void addUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+    }
+}
@@ -0,0 +1,185 @@
+package com.xuecheng.media.service;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * 上传上下文：在各层之间传递已经算好的文件摘要和元信息
+ * <p>
+ * 文件落到本地临时文件时顺带计算MD5，之后 MediaFileServiceImpl（秒传判断、入库主键）
+ * 和 OssService（对象名）直接使用，不再各自读一遍文件计算摘要。
+ * <p>
+ * 小文件（不超过内存阈值）通过 {@link #receive} 直接读入内存，不落临时文件；
+ * 大文件才写入临时目录，文件名随机生成，避免同名文件并发上传互相覆盖。
+ *
+ * @author 学成在线项目组
+ */
+@Data
+public class UploadContext {
+
+    /**
+     * 本地临时文件路径（内容在内存中时为空）
+     */
+    private String localFilePath;
+
+    /**
+     * 文件内容（小文件直接保存在内存中，此时没有本地文件）
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] content;
+
+    /**
+     * 本地文件是否为 receive 时生成的临时文件（release 时删除）
+     */
+    private boolean spooled;
+
+    /**
+     * 原始文件名（决定对象扩展名与ContentType）
+     */
+    private String originalFilename;
+
+    /**
+     * 文件MD5（小写十六进制）
+     */
+    private String fileMd5;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long fileSize;
+
+    /**
+     * 文件类型，为空或为通用字节流时由 OssService 按扩展名判断
+     */
+    private String contentType;
+
+    /**
+     * 将上传的文件写入目标文件，写入的同时计算MD5（替代 MultipartFile.transferTo）
+     *
+     * @param multipartFile 上传的文件
+     * @param target        目标文件
+     * @return 上传上下文
+     */
+    public static UploadContext transfer(MultipartFile multipartFile, File target) throws IOException {
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        long size;
+        try (InputStream in = new DigestInputStream(multipartFile.getInputStream(), md5);
+             OutputStream out = Files.newOutputStream(target.toPath())) {
+            size = copy(in, out);
+        }
+        UploadContext context = new UploadContext();
+        context.setLocalFilePath(target.getAbsolutePath());
+        context.setOriginalFilename(multipartFile.getOriginalFilename());
+        context.setFileMd5(Hex.encodeHexString(md5.digest()));
+        context.setFileSize(size);
+        context.setContentType(multipartFile.getContentType());
+        return context;
+    }
+
+    /**
+     * 接收上传的文件：边读边计算MD5，不超过内存阈值时留在内存中，否则写入随机命名的临时文件
+     *
+     * @param multipartFile   上传的文件
+     * @param memoryThreshold 内存阈值（字节）
+     * @return 上传上下文，使用完后调用 {@link #release()}
+     */
+    public static UploadContext receive(MultipartFile multipartFile, long memoryThreshold) throws IOException {
+        if (multipartFile.getSize() > memoryThreshold) {
+            String originalFilename = multipartFile.getOriginalFilename();
+            String suffix = originalFilename != null && originalFilename.contains(".")
+                    ? originalFilename.substring(originalFilename.lastIndexOf(".")) : ".tmp";
+            Path tempFile = Files.createTempFile("xc-upload-", suffix);
+            try {
+                UploadContext context = transfer(multipartFile, tempFile.toFile());
+                context.setSpooled(true);
+                return context;
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+        }
+
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(multipartFile.getSize(), 32));
+        try (InputStream in = new DigestInputStream(multipartFile.getInputStream(), md5)) {
+            copy(in, out);
+        }
+        UploadContext context = new UploadContext();
+        context.setContent(out.toByteArray());
+        context.setOriginalFilename(multipartFile.getOriginalFilename());
+        context.setFileMd5(Hex.encodeHexString(md5.digest()));
+        context.setFileSize(context.getContent().length);
+        context.setContentType(multipartFile.getContentType());
+        return context;
+    }
+
+    /**
+     * 是否在内存中（没有本地文件）
+     */
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    /**
+     * 打开文件内容输入流
+     */
+    public InputStream openStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(new File(localFilePath).toPath());
+    }
+
+    /**
+     * 释放资源：删除 receive 生成的临时文件、丢弃内存中的内容
+     */
+    public void release() {
+        content = null;
+        if (spooled && localFilePath != null) {
+            new File(localFilePath).delete();
+        }
+    }
+
+    /**
+     * 为已经在本地的文件创建上下文（需要读一遍文件计算MD5）
+     *
+     * @param localFilePath    本地文件路径
+     * @param originalFilename 原始文件名，为空时使用本地文件名
+     * @return 上传上下文
+     */
+    public static UploadContext ofLocalFile(String localFilePath, String originalFilename) throws IOException {
+        File file = new File(localFilePath);
+        UploadContext context = new UploadContext();
+        context.setLocalFilePath(localFilePath);
+        context.setOriginalFilename(originalFilename != null ? originalFilename : file.getName());
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            context.setFileMd5(DigestUtils.md5Hex(in));
+        }
+        context.setFileSize(file.length());
+        return context;
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+}
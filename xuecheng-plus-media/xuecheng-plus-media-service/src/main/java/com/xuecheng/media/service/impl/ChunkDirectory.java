@@ -0,0 +1,46 @@
+package com.xuecheng.media.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 本节点分块根目录（media.chunk.root，默认 临时目录/xc-chunks）
+ * <p>
+ * 每个上传一个子目录：分块根目录/文件MD5，local、multipart、sparse 分块存储、分块清单、
+ * 上传会话登记和清理任务都按这里解析，不再各自拼接路径。
+ *
+ * @author 学成在线项目组
+ */
+@Component
+public class ChunkDirectory {
+
+    @Value("${media.chunk.root:${java.io.tmpdir}/xc-chunks}")
+    String root = System.getProperty("java.io.tmpdir") + "/xc-chunks";
+
+    public ChunkDirectory() {
+    }
+
+    public ChunkDirectory(String root) {
+        this.root = root;
+    }
+
+    /**
+     * 分块根目录
+     */
+    public Path getRoot() {
+        return Paths.get(root);
+    }
+
+    /**
+     * 一个上传的分块目录
+     *
+     * @param fileMd5 文件MD5
+     * @return 分块根目录/文件MD5
+     */
+    public Path resolve(String fileMd5) {
+        return getRoot().resolve(fileMd5);
+    }
+}
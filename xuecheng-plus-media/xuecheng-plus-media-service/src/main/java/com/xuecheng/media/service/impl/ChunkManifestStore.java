@@ -0,0 +1,335 @@
+package com.xuecheng.media.service.impl;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分块清单（每个上传一份，记录已收到的分块）
+ * <p>
+ * 旧的断点续传：前端每个分块调用一次 /upload/checkchunk，后端每次 Files.exists + Files.size，
+ * 2000个分块就是2000次请求和4000次文件系统调用。现在由 uploadChunk 维护清单：
+ * - 分块总数、分块大小
+ * - 已收到分块的位图
+ * - 每个分块的大小和校验值
+ * <p>
+ * 断点续传只需一次 /upload/missingchunks 取回缺失分块列表；mergechunks 也直接用位图判断分块是否齐全。
+ * <p>
+ * 持久化：分块目录下的 manifest.log，每收到一个分块追加一行（分块号,大小,校验值），
+ * 分块总数以 "total,分块总数" 行记录，前端登记的分块布局以 "layout,分块大小,文件大小" 行记录，
+ * 校验失败需要重传的分块以 "drop,分块号" 行撤销。追加写入不需要改写整个文件，重传的分块以最后一行为准；
+ * 节点重启后首次访问时从日志重建位图。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class ChunkManifestStore {
+
+    private static final String MANIFEST_FILE = "manifest.log";
+
+    private static final String TOTAL_PREFIX = "total,";
+
+    private static final String LAYOUT_PREFIX = "layout,";
+
+    private static final String DROP_PREFIX = "drop,";
+
+    /**
+     * 分块根目录
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    /**
+     * 清单缓存（fileMd5 -> 清单）
+     */
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+
+    /**
+     * 记录收到一个分块
+     *
+     * @param fileMd5  文件MD5
+     * @param chunk    分块序号（从0开始）
+     * @param size     分块大小
+     * @param checksum 分块校验值（可为空）
+     */
+    public void record(String fileMd5, int chunk, long size, String checksum) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            append(fileMd5, chunk + "," + size + "," + (checksum != null ? checksum : "-"));
+            manifest.put(chunk, size, checksum);
+        }
+    }
+
+    /**
+     * 记录分块总数（前端在续传协商或合并时告知）
+     */
+    public void recordTotal(String fileMd5, int chunkTotal) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            if (manifest.getChunkTotal() != chunkTotal) {
+                append(fileMd5, TOTAL_PREFIX + chunkTotal);
+                manifest.chunkTotal = chunkTotal;
+            }
+        }
+    }
+
+    /**
+     * 记录前端登记的分块布局（sparse 模式按 分块序号 * 分块大小 定位写入）
+     *
+     * @param fileMd5   文件MD5
+     * @param chunkSize 分块大小（除最后一块外每块大小）
+     * @param fileSize  文件大小（未知时为0）
+     */
+    public void recordLayout(String fileMd5, long chunkSize, long fileSize) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            if (!manifest.layoutDeclared || manifest.chunkSize != chunkSize || manifest.fileSize != fileSize) {
+                append(fileMd5, LAYOUT_PREFIX + chunkSize + "," + fileSize);
+                manifest.declareLayout(chunkSize, fileSize);
+            }
+        }
+    }
+
+    /**
+     * 撤销一个分块（内容已被覆盖但未通过校验，需要重传）
+     */
+    public void drop(String fileMd5, int chunk) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            append(fileMd5, DROP_PREFIX + chunk);
+            manifest.remove(chunk);
+        }
+    }
+
+    /**
+     * 分块是否已收到
+     */
+    public boolean hasChunk(String fileMd5, int chunk) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            return manifest.received.get(chunk);
+        }
+    }
+
+    /**
+     * 是否存在清单（升级前上传的分块没有清单）
+     */
+    public boolean exists(String fileMd5) {
+        return manifests.containsKey(fileMd5)
+                || Files.exists(chunkDirectory.resolve(fileMd5).resolve(MANIFEST_FILE));
+    }
+
+    /**
+     * 缺失的分块序号（升序）
+     *
+     * @param fileMd5    文件MD5
+     * @param chunkTotal 分块总数
+     */
+    public List<Integer> missingChunks(String fileMd5, int chunkTotal) throws IOException {
+        Manifest manifest = load(fileMd5);
+        List<Integer> missing = new ArrayList<>();
+        synchronized (manifest) {
+            for (int i = manifest.received.nextClearBit(0); i < chunkTotal; i = manifest.received.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 获取清单快照
+     */
+    public Manifest get(String fileMd5) throws IOException {
+        Manifest manifest = load(fileMd5);
+        synchronized (manifest) {
+            return manifest.copy();
+        }
+    }
+
+    /**
+     * 组合摘要：按分块序号顺序拼接各分块MD5（32位小写十六进制）后再做一次MD5
+     * <p>
+     * 前端按同样规则计算后在合并时传入，两边一致说明服务端保存的每个分块都与前端一致。
+     *
+     * @param fileMd5    文件MD5
+     * @param chunkTotal 分块总数
+     * @return 组合摘要；有分块缺失或缺少校验值时返回空
+     */
+    public String combinedDigest(String fileMd5, int chunkTotal) throws IOException {
+        Manifest manifest = load(fileMd5);
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        synchronized (manifest) {
+            for (int i = 0; i < chunkTotal; i++) {
+                String checksum = manifest.checksums.get(i);
+                if (checksum == null) {
+                    return null;
+                }
+                md5.update(checksum.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        return Hex.encodeHexString(md5.digest());
+    }
+
+    /**
+     * 丢弃清单（合并完成或清理过期分块后调用）
+     */
+    public void discard(String fileMd5) {
+        manifests.remove(fileMd5);
+        try {
+            Files.deleteIfExists(chunkDirectory.resolve(fileMd5).resolve(MANIFEST_FILE));
+        } catch (IOException e) {
+            log.warn("删除分块清单失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+    }
+
+    /**
+     * 只清除内存缓存（目录已被整体删除时调用）
+     */
+    public void evict(String fileMd5) {
+        manifests.remove(fileMd5);
+    }
+
+    private Manifest load(String fileMd5) throws IOException {
+        Manifest manifest = manifests.get(fileMd5);
+        if (manifest != null) {
+            return manifest;
+        }
+        manifest = new Manifest();
+        Path manifestFile = chunkDirectory.resolve(fileMd5).resolve(MANIFEST_FILE);
+        if (Files.exists(manifestFile)) {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                if (line.startsWith(TOTAL_PREFIX) && fields.length == 2) {
+                    manifest.chunkTotal = Integer.parseInt(fields[1]);
+                } else if (line.startsWith(LAYOUT_PREFIX) && fields.length == 3) {
+                    manifest.declareLayout(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+                } else if (line.startsWith(DROP_PREFIX) && fields.length == 2) {
+                    manifest.remove(Integer.parseInt(fields[1]));
+                } else if (fields.length == 3) {
+                    manifest.put(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                            "-".equals(fields[2]) ? null : fields[2]);
+                }
+                // 其余为写入中断留下的半行，忽略
+            }
+        }
+        Manifest existing = manifests.putIfAbsent(fileMd5, manifest);
+        return existing != null ? existing : manifest;
+    }
+
+    private void append(String fileMd5, String line) throws IOException {
+        Path root = Files.createDirectories(chunkDirectory.resolve(fileMd5));
+        Files.write(root.resolve(MANIFEST_FILE), (line + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 一个上传的分块清单
+     */
+    @Getter
+    public static class Manifest {
+
+        /**
+         * 分块总数（未告知时为0）
+         */
+        private int chunkTotal;
+
+        /**
+         * 分块大小（登记了分块布局时为登记值，否则为已收到分块中的最大值，即非末尾分块的大小）
+         */
+        private long chunkSize;
+
+        /**
+         * 文件大小（登记了分块布局且前端给出时有值，否则为0）
+         */
+        private long fileSize;
+
+        /**
+         * 是否登记了分块布局
+         */
+        private boolean layoutDeclared;
+
+        /**
+         * 已收到分块的位图
+         */
+        private BitSet received = new BitSet();
+
+        /**
+         * 每个分块的大小
+         */
+        private Map<Integer, Long> sizes = new HashMap<>();
+
+        /**
+         * 每个分块的校验值
+         */
+        private Map<Integer, String> checksums = new HashMap<>();
+
+        public int getReceivedCount() {
+            return received.cardinality();
+        }
+
+        /**
+         * 已收到分块的总字节数
+         */
+        public long getReceivedBytes() {
+            long total = 0;
+            for (long size : sizes.values()) {
+                total += size;
+            }
+            return total;
+        }
+
+        private void put(int chunk, long size, String checksum) {
+            received.set(chunk);
+            sizes.put(chunk, size);
+            if (checksum != null) {
+                checksums.put(chunk, checksum);
+            } else {
+                checksums.remove(chunk);
+            }
+            if (!layoutDeclared) {
+                chunkSize = Math.max(chunkSize, size);
+            }
+        }
+
+        private void remove(int chunk) {
+            received.clear(chunk);
+            sizes.remove(chunk);
+            checksums.remove(chunk);
+        }
+
+        private void declareLayout(long chunkSize, long fileSize) {
+            this.chunkSize = chunkSize;
+            this.fileSize = fileSize;
+            this.layoutDeclared = true;
+        }
+
+        private Manifest copy() {
+            Manifest copy = new Manifest();
+            copy.chunkTotal = chunkTotal;
+            copy.chunkSize = chunkSize;
+            copy.fileSize = fileSize;
+            copy.layoutDeclared = layoutDeclared;
+            copy.received = (BitSet) received.clone();
+            copy.sizes = new HashMap<>(sizes);
+            copy.checksums = new HashMap<>(checksums);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.media.service.ChunkVerificationException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.function.LongConsumer;
+
+/**
+ * 分块合并工具（单遍合并 + 增量MD5）
+ * <p>
+ * 旧流程对合并文件要读三遍：合并写入、重新读取计算MD5、上传前OssService再算一次MD5。
+ * 这里在顺序拼接分块的同时更新MD5，合并完成即得到摘要，后续上传直接复用，不再回读文件。
+ * <p>
+ * 说明：FileChannel.transferTo 走内核零拷贝，数据不经过用户态，无法同时计算摘要；
+ * 因此这里用可复用的直接缓冲区做 channel→channel 拷贝，每个字节只从磁盘读取一次。
+ *
+ * @author 学成在线项目组
+ */
+public final class ChunkMerger {
+
+    /**
+     * 拷贝缓冲区大小（直接内存，避免堆内 byte[] 的额外拷贝）
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private ChunkMerger() {
+    }
+
+    /**
+     * 按序号顺序合并分块，并在拷贝过程中计算MD5
+     *
+     * @param chunkRoot  分块目录（分块文件以序号命名：0、1、2...）
+     * @param chunkTotal 分块总数
+     * @param target     合并后的目标文件
+     * @return 合并结果（MD5 + 文件大小）
+     * @throws IOException 缺少分块或读写失败
+     */
+    public static MergeResult merge(Path chunkRoot, int chunkTotal, Path target) throws IOException {
+        return merge(chunkRoot, chunkTotal, target, true);
+    }
+
+    /**
+     * 按序号顺序合并分块，并在拷贝过程中计算MD5
+     *
+     * @param chunkRoot   分块目录（分块文件以序号命名：0、1、2...）
+     * @param chunkTotal  分块总数
+     * @param target      合并后的目标文件
+     * @param checkChunks 是否先逐个检查分块文件存在；调用方已通过分块清单确认齐全时传 false
+     * @return 合并结果（MD5 + 文件大小）
+     * @throws IOException 缺少分块或读写失败
+     */
+    public static MergeResult merge(Path chunkRoot, int chunkTotal, Path target, boolean checkChunks)
+            throws IOException {
+        return merge(chunkRoot, chunkTotal, target, checkChunks, true);
+    }
+
+    /**
+     * 按序号顺序合并分块
+     *
+     * @param chunkRoot   分块目录（分块文件以序号命名：0、1、2...）
+     * @param chunkTotal  分块总数
+     * @param target      合并后的目标文件
+     * @param checkChunks 是否先逐个检查分块文件存在；调用方已通过分块清单确认齐全时传 false
+     * @param digest      是否计算整文件MD5；分块已逐块校验且组合摘要一致时可传 false，结果中MD5为空
+     * @return 合并结果（MD5 + 文件大小）
+     * @throws IOException 缺少分块或读写失败
+     */
+    public static MergeResult merge(Path chunkRoot, int chunkTotal, Path target, boolean checkChunks,
+                                    boolean digest) throws IOException {
+        return merge(chunkRoot, chunkTotal, target, checkChunks, digest, null);
+    }
+
+    /**
+     * 按序号顺序合并分块，并报告合并进度
+     *
+     * @param progress 每写入一段数据回调一次写入的字节数（可为空）
+     * @see #merge(Path, int, Path, boolean, boolean)
+     */
+    public static MergeResult merge(Path chunkRoot, int chunkTotal, Path target, boolean checkChunks,
+                                    boolean digest, LongConsumer progress) throws IOException {
+        // 先确认分块齐全，避免合并到一半才发现缺块
+        if (checkChunks) {
+            for (int i = 0; i < chunkTotal; i++) {
+                if (!Files.exists(chunkRoot.resolve(String.valueOf(i)))) {
+                    throw ChunkVerificationException.missingChunk(i);
+                }
+            }
+        }
+
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long size = 0;
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < chunkTotal; i++) {
+                try (FileChannel in = FileChannel.open(chunkRoot.resolve(String.valueOf(i)), StandardOpenOption.READ)) {
+                    while (in.read(buffer) != -1) {
+                        buffer.flip();
+                        // 先更新摘要（不移动position），再写入目标文件
+                        if (digest) {
+                            md5.update(buffer.duplicate());
+                        }
+                        int written = 0;
+                        while (buffer.hasRemaining()) {
+                            written += out.write(buffer);
+                        }
+                        size += written;
+                        if (progress != null) {
+                            progress.accept(written);
+                        }
+                        buffer.clear();
+                    }
+                }
+            }
+        }
+
+        return new MergeResult(digest ? Hex.encodeHexString(md5.digest()) : null, size);
+    }
+
+    /**
+     * 合并结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class MergeResult {
+
+        /**
+         * 合并文件的MD5（32位小写十六进制，未计算时为空）
+         */
+        private final String md5;
+
+        /**
+         * 合并文件大小（字节）
+         */
+        private final long size;
+    }
+}
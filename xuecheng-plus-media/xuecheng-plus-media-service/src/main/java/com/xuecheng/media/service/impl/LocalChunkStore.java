@@ -0,0 +1,189 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.ChunkVerificationException;
+import com.xuecheng.media.service.MergeProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.BitSet;
+
+/**
+ * 本地磁盘分块存储
+ * <p>
+ * 分块目录：分块根目录（media.chunk.root）/文件MD5/分块序号
+ * <p>
+ * 分块从请求流直接写入分块目录下的临时文件 "序号-随机串.part"，大小和MD5校验通过后原子重命名为 "序号"，
+ * 每个分块只写一次磁盘（原先是先 transferTo 临时文件、再复制到分块目录，写两次）；
+ * 同一分块的并发上传或重试各写各的临时文件，校验失败或写入中断不会破坏已经收到的同一分块。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class LocalChunkStore implements ChunkStore {
+
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    @Autowired
+    OssService ossService;
+
+    /**
+     * 分块根目录
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    @Override
+    public String mode() {
+        return "local";
+    }
+
+    @Override
+    public ChunkWriteResult writeChunk(String fileMd5, int chunk, String fileName, InputStream in, long size,
+                                       String chunkMd5) throws IOException {
+        Path root = Files.createDirectories(chunkDirectory.resolve(fileMd5));
+        Path partial = Files.createTempFile(root, chunk + "-", PARTIAL_SUFFIX);
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        long written;
+        try (InputStream digesting = new DigestInputStream(in, md5)) {
+            written = Files.copy(digesting, partial, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        if (size > 0 && written != size) {
+            Files.deleteIfExists(partial);
+            log.warn("分块大小不一致，MD5：{}，分块：{}，期望：{}，实际：{}", fileMd5, chunk, size, written);
+            throw new ChunkVerificationException("分块大小不一致");
+        }
+        String actualMd5 = Hex.encodeHexString(md5.digest());
+
+        if (chunkMd5 != null && !chunkMd5.isEmpty() && !chunkMd5.equalsIgnoreCase(actualMd5)) {
+            Files.deleteIfExists(partial);
+            log.warn("分块校验失败，MD5：{}，分块：{}，期望：{}，实际：{}", fileMd5, chunk, chunkMd5, actualMd5);
+            throw ChunkVerificationException.chunkMismatch();
+        }
+        Files.move(partial, root.resolve(String.valueOf(chunk)), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return new ChunkWriteResult(written, actualMd5);
+    }
+
+    @Override
+    public BitSet listChunks(String fileMd5) throws IOException {
+        BitSet chunks = new BitSet();
+        Path root = chunkDirectory.resolve(fileMd5);
+        if (!Files.isDirectory(root)) {
+            return chunks;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path path : stream) {
+                Integer chunk = parseChunk(path);
+                if (chunk != null && Files.size(path) > 0) {
+                    chunks.set(chunk);
+                }
+            }
+        }
+        return chunks;
+    }
+
+    @Override
+    public boolean hasChunk(String fileMd5, int chunk) throws IOException {
+        Path path = chunkDirectory.resolve(fileMd5).resolve(String.valueOf(chunk));
+        return Files.isRegularFile(path) && Files.size(path) > 0;
+    }
+
+    /**
+     * 分块目录下有以序号命名的分块文件（分块目录与 sparse、multipart 模式共用，
+     * 只有预分配文件、分块清单或分片会话的目录不算本存储的上传）
+     */
+    @Override
+    public boolean hasUpload(String fileMd5) {
+        Path root = chunkDirectory.resolve(fileMd5);
+        if (!Files.isDirectory(root)) {
+            return false;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path path : stream) {
+                if (parseChunk(path) != null) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取分块目录失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public StoredFile merge(String fileMd5, int chunkTotal, String fileName, boolean chunksChecked,
+                            boolean skipDigest, MergeProgress progress) throws IOException {
+        Path chunkRoot = chunkDirectory.resolve(fileMd5);
+        if (!Files.exists(chunkRoot)) {
+            throw new IOException("分块目录不存在");
+        }
+
+        // 单遍合并：FileChannel + 直接缓冲区顺序拼接，拷贝的同时增量计算MD5
+        Path merged = Files.createTempFile("xc-merge-", ".tmp");
+        try {
+            progress.setStage(MergeProgress.MERGING);
+            ChunkMerger.MergeResult mergeResult = ChunkMerger.merge(chunkRoot, chunkTotal, merged, !chunksChecked,
+                    !skipDigest, progress::addMerged);
+
+            // 跳过整文件MD5时，分块已逐块校验且组合摘要一致，采用前端给出的MD5
+            String mergedMd5 = skipDigest ? fileMd5.toLowerCase() : mergeResult.getMd5();
+            if (!fileMd5.equalsIgnoreCase(mergedMd5)) {
+                log.error("文件MD5校验失败，原始MD5：{}，合并后MD5：{}", fileMd5, mergedMd5);
+                throw ChunkVerificationException.fileMismatch();
+            }
+            log.info("合并后文件大小：{} 字节", mergeResult.getSize());
+
+            // 上传到OSS（复用已校验的MD5，不再重复计算）
+            progress.setStage(MergeProgress.UPLOADING);
+            String objectName = ossService.uploadFile(merged.toString(), fileName, mergedMd5, progress::addUploaded);
+            log.info("合并文件上传到OSS成功，对象名：{}", objectName);
+            return new StoredFile(objectName, mergeResult.getSize());
+        } finally {
+            Files.deleteIfExists(merged);
+        }
+    }
+
+    @Override
+    public void delete(String fileMd5) {
+        Path root = chunkDirectory.resolve(fileMd5);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (parseChunk(path) != null || name.endsWith(PARTIAL_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("删除分块失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+    }
+
+    private Integer parseChunk(Path path) {
+        String name = path.getFileName().toString();
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return null;
+            }
+        }
+        return name.isEmpty() ? null : Integer.valueOf(name);
+    }
+}
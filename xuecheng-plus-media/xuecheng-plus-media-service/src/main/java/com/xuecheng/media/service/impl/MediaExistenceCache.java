@@ -0,0 +1,275 @@
+package com.xuecheng.media.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 媒资文件存在性缓存（秒传检查前置缓存）
+ * <p>
+ * 上传页面频繁调用 /upload/checkfile，uploadFile 也要先查一次文件是否已存在，每次都是一次 selectById。
+ * 绝大多数答案是“还没上传过”，其次是同一文件的重复查询，这两类都不需要访问数据库：
+ * <p>
+ * - 布隆过滤器：启动时（及定期）用 media_files 的全部ID构建，判定“不存在”时一定不存在，直接返回
+ * - LRU缓存：最近查到的已存在记录，重复查询直接返回
+ * - 布隆过滤器判定“可能存在”且LRU未命中时才查数据库
+ * <p>
+ * addMediaFilesToDb 入库时把MD5加入布隆过滤器并使LRU中的旧记录失效。
+ * 多节点部署时其他节点新入库的文件要等下次重建才进入本节点的布隆过滤器，
+ * 期间本节点可能答“不存在”，客户端会重新上传，入库时按已存在记录更新，结果仍然正确。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MediaExistenceCache {
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    /**
+     * 预计文件数（决定布隆过滤器大小）
+     */
+    @Value("${media.exist-cache.expected-files:1000000}")
+    long expectedFiles = 1000000;
+
+    /**
+     * 布隆过滤器误判率
+     */
+    @Value("${media.exist-cache.false-positive-rate:0.01}")
+    double falsePositiveRate = 0.01;
+
+    /**
+     * LRU缓存的已存在记录数
+     */
+    @Value("${media.exist-cache.positive-size:10000}")
+    int positiveSize = 10000;
+
+    /**
+     * 重建时每批从数据库读取的ID数
+     */
+    @Value("${media.exist-cache.rebuild-batch-size:5000}")
+    int batchSize = 5000;
+
+    /**
+     * 当前布隆过滤器（未构建完成时为空，所有查询走数据库）
+     */
+    private volatile BloomFilter bloom;
+
+    /**
+     * 重建中的布隆过滤器（重建期间入库的MD5同时加入）
+     */
+    private volatile BloomFilter building;
+
+    private final Map<String, MediaFiles> positives = new LinkedHashMap<String, MediaFiles>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MediaFiles> eldest) {
+            return size() > positiveSize;
+        }
+    };
+
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final LongAdder positiveHits = new LongAdder();
+    private final LongAdder dbHits = new LongAdder();
+    private final LongAdder dbMisses = new LongAdder();
+
+    /**
+     * 查询媒资文件
+     *
+     * @param fileMd5 文件MD5
+     * @return 媒资文件，不存在时返回空
+     */
+    public MediaFiles find(String fileMd5) {
+        BloomFilter current = bloom;
+        if (current != null && !current.mightContain(fileMd5)) {
+            bloomNegatives.increment();
+            return null;
+        }
+        synchronized (positives) {
+            MediaFiles cached = positives.get(fileMd5);
+            if (cached != null) {
+                positiveHits.increment();
+                return cached;
+            }
+        }
+        MediaFiles mediaFiles = mediaFilesMapper.selectById(fileMd5);
+        if (mediaFiles == null) {
+            // 布隆过滤器误判（或尚未构建）
+            dbMisses.increment();
+            return null;
+        }
+        dbHits.increment();
+        synchronized (positives) {
+            positives.put(fileMd5, mediaFiles);
+        }
+        return mediaFiles;
+    }
+
+    /**
+     * 文件是否存在
+     */
+    public boolean exists(String fileMd5) {
+        return find(fileMd5) != null;
+    }
+
+    /**
+     * 文件入库或更新（addMediaFilesToDb 调用）：加入布隆过滤器，使缓存的旧记录失效
+     * <p>
+     * 在事务中调用时提交后再失效一次，避免提交前被其他请求读到旧记录重新缓存
+     */
+    public void onSaved(String fileMd5) {
+        BloomFilter current = bloom;
+        if (current != null) {
+            current.put(fileMd5);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(fileMd5);
+        }
+        evict(fileMd5);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(fileMd5);
+                }
+            });
+        }
+    }
+
+    /**
+     * 用数据库中的全部文件ID重建布隆过滤器（启动后执行一次，之后定期执行）；按主键分批读取，不一次加载全部ID
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${media.exist-cache.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        BloomFilter next = new BloomFilter(expectedFiles, falsePositiveRate);
+        building = next;
+        try {
+            long files = 0;
+            String lastId = null;
+            while (true) {
+                LambdaQueryWrapper<MediaFiles> wrapper = new LambdaQueryWrapper<MediaFiles>()
+                        .select(MediaFiles::getId)
+                        .gt(lastId != null, MediaFiles::getId, lastId)
+                        .orderByAsc(MediaFiles::getId)
+                        .last("LIMIT " + batchSize);
+                List<Object> ids = mediaFilesMapper.selectObjs(wrapper);
+                for (Object id : ids) {
+                    next.put(String.valueOf(id));
+                }
+                files += ids.size();
+                if (ids.size() < batchSize) {
+                    break;
+                }
+                lastId = String.valueOf(ids.get(ids.size() - 1));
+            }
+            bloom = next;
+            log.info("媒资存在性布隆过滤器已重建，文件数：{}，位数：{}，哈希函数数：{}", files, next.bitSize, next.hashes);
+        } catch (Exception e) {
+            // 保留旧的过滤器（首次构建失败时所有查询走数据库）
+            log.warn("重建媒资存在性布隆过滤器失败：{}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * 命中统计
+     */
+    public String getStatistics() {
+        return String.format("布隆过滤器拦截：%d，缓存命中：%d，数据库命中：%d，数据库未命中（误判）：%d，缓存记录数：%d，过滤器：%s",
+                bloomNegatives.sum(), positiveHits.sum(), dbHits.sum(), dbMisses.sum(), positivesSize(),
+                bloom != null ? "已构建" : "未构建");
+    }
+
+    private int positivesSize() {
+        synchronized (positives) {
+            return positives.size();
+        }
+    }
+
+    private void evict(String fileMd5) {
+        synchronized (positives) {
+            positives.remove(fileMd5);
+        }
+    }
+
+    /**
+     * 布隆过滤器：k 个位置由两个64位哈希组合得出（Kirsch-Mitzenmacher），位数组可并发读写
+     */
+    static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+
+        private final long bitSize;
+
+        private final int hashes;
+
+        BloomFilter(long expected, double fpp) {
+            long n = Math.max(1, expected);
+            long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitSize = (long) words * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        }
+
+        void put(String key) {
+            long h1 = hash(key, 0xcbf29ce484222325L);
+            long h2 = hash(key, 0x84222325cbf29ce4L);
+            for (int i = 0; i < hashes; i++) {
+                long index = Math.floorMod(h1 + i * h2, bitSize);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long old;
+                do {
+                    old = bits.get(word);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(String key) {
+            long h1 = hash(key, 0xcbf29ce484222325L);
+            long h2 = hash(key, 0x84222325cbf29ce4L);
+            for (int i = 0; i < hashes; i++) {
+                long index = Math.floorMod(h1 + i * h2, bitSize);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * FNV-1a 64 位哈希，末尾再做一次混淆使低位分布均匀
+         */
+        private static long hash(String key, long seed) {
+            long h = seed;
+            for (byte b : key.toLowerCase().getBytes(StandardCharsets.UTF_8)) {
+                h ^= b;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -2,30 +2,42 @@ package com.xuecheng.media.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xuecheng.base.exception.XuechengPlusException;
 import com.xuecheng.base.model.PageParams;
 import com.xuecheng.base.model.PageResult;
 import com.xuecheng.base.model.RestResponse;
 import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.mapper.MediaProcessMapper;
 import com.xuecheng.media.model.dto.QueryMediaParamsDto;
 import com.xuecheng.media.model.dto.UploadFileParamsDto;
 import com.xuecheng.media.model.dto.UploadFileResultDto;
 import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.model.po.MediaProcess;
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.ChunkVerificationException;
 import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.MergeProgress;
+import com.xuecheng.media.service.UploadContext;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 媒资文件管理业务实现类
@@ -83,6 +95,12 @@ public class MediaFileServiceImpl implements MediaFileService {
   @Autowired
  MediaFilesMapper mediaFilesMapper;
 
+    /**
+     * 媒资处理任务（需要转码的视频入库时登记，由 videoTranscodeJob 处理）
+     */
+    @Autowired
+    MediaProcessMapper mediaProcessMapper;
+
     /**
      * OSS文件服务（阿里云对象存储服务）
      * 
@@ -183,10 +201,90 @@ public class MediaFileServiceImpl implements MediaFileService {
     @Autowired
     MediaFileService currentProxy;
 
-    // public static void main(String[] args) {
-    // System.out.println(new MediaFileServiceImpl().getFileMd5(new
-    // File("D:\\project\\java\\xuecheng-plus-project\\.git\\config")));
-    // }
+    /**
+     * 分块存储（local / multipart / oss，按 media.chunk.mode 选择）
+     */
+    @Autowired
+    List<ChunkStore> chunkStores;
+
+    /**
+     * 分块清单（已收到分块位图 + 每块大小和校验值），断点续传和合并前的完整性检查都查它
+     */
+    @Autowired
+    ChunkManifestStore chunkManifestStore;
+
+    /**
+     * 分块根目录（media.chunk.root，每个上传一个 文件MD5 子目录）
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    /**
+     * 分块上传会话登记（清理任务按最后访问时间取出过期会话，不再遍历分块目录）
+     */
+    @Autowired
+    UploadSessionRegistry uploadSessionRegistry;
+
+    /**
+     * 同一文件的并发合并/上传只执行一次（重试、多标签页重复提交时加入进行中的操作）
+     */
+    @Autowired
+    SingleFlight singleFlight;
+
+    /**
+     * 本节点正在执行的合并的进度（fileMd5 -> 进度），加入进行中的合并时读取它
+     */
+    private final Map<String, MergeProgress> mergeProgresses = new ConcurrentHashMap<>();
+
+    /**
+     * 媒资文件存在性缓存（布隆过滤器 + LRU），秒传检查不必每次查数据库
+     */
+    @Autowired
+    MediaExistenceCache mediaExistenceCache;
+
+    /**
+     * 媒资全文检索索引（文件名、标签、备注），列表查询 filenameMatch=search 时使用
+     */
+    @Autowired
+    MediaSearchIndex mediaSearchIndex;
+
+    /**
+     * 预览地址缓存（OSS 签名URL），访问地址变化时失效
+     */
+    @Autowired
+    PreviewUrlCache previewUrlCache;
+
+    /**
+     * 分块上传模式
+     * - local：分块落本地临时目录，合并时拼接后整体上传（默认）
+     * - multipart：分块直接作为OSS分片上传，免本地合并
+     * - oss：分块作为临时对象存入OSS，多节点共享，合并时服务端拷贝拼接
+     * - sparse：预分配目标文件，分块定位写入，合并时只需校验并上传（前端需在续传协商时登记分块大小）
+     */
+    @Value("${media.chunk.mode:local}")
+    private String chunkMode;
+
+    /**
+     * 合并时是否允许跳过整文件MD5计算
+     * <p>
+     * 每个分块上传时都已按前端给出的分块MD5校验过，合并时前端传入的组合摘要与清单一致，
+     * 即可确认服务端的分块与前端文件逐块相同，此时直接采用前端给出的 fileMd5。
+     * 注意 fileMd5 同时是秒传去重的主键，开启后等于信任前端对整文件MD5的声明，默认关闭。
+     */
+    @Value("${media.chunk.skip-merge-digest:false}")
+    private boolean skipMergeDigest;
+
+    /**
+     * 是否打包 HLS（与 VideoTranscodeEngine 共用配置，默认关闭），开启时 mp4 视频入库也登记处理任务
+     */
+    @Value("${media.transcode.hls.enabled:false}")
+    private boolean hlsEnabled;
+
+    /**
+     * 批量获取预览地址时一次最多的媒资数
+     */
+    @Value("${media.preview.max-batch:1000}")
+    private int maxPreviewBatch = 1000;
 
     /**
      * 媒资文件查询方法（分页）
@@ -208,6 +306,16 @@ public class MediaFileServiceImpl implements MediaFileService {
      * - 可以在queryWrapper中添加更多查询条件
      * - 例如：按文件名模糊查询、按文件类型筛选、按上传时间排序等
      * 
+     * ⚡ 大表分页：
+     * - 页码分页（LIMIT offset）越往后越慢，且每次都要 COUNT(*)
+     * - 游标分页：传入上一页最后一条的 (afterCreateDate, afterId)，条件改为 (create_date, id) 在游标之后，
+     *   只扫描一页的数据，默认不查总数
+     * - 文件名前缀匹配（filenameMatch=prefix）：LIKE 'abc%' 可以使用文件名索引，包含匹配（LIKE '%abc%'）不能
+     * - 全文检索（filenameMatch=search）：查进程内倒排索引（文件名、标签、备注），按相关度排序，
+     *   只按主键取当前页的记录；索引未就绪时退回包含匹配
+     * - 建议索引：idx_create_date(create_date)（InnoDB 二级索引自带主键 id，即 (create_date, id)），
+     *   idx_filename(filename)
+     * 
      * @param companyId           机构ID（用于数据隔离，每个机构只能查询自己的文件）
      * @param pageParams          分页参数对象
      *                            - pageNo: 当前页码（从1开始）
@@ -216,9 +324,12 @@ public class MediaFileServiceImpl implements MediaFileService {
      *                            - filename: 文件名（支持模糊查询）
      *                            - fileType: 文件类型（001001:图片 001002:视频 001003:文档）
      *                            - auditStatus: 审核状态
+     *                            - filenameMatch: 文件名匹配方式（contains / prefix）
+     *                            - afterCreateDate、afterId: 游标（游标分页时使用）
+     *                            - withCount: 是否查询总记录数
      * @return PageResult<MediaFiles> 分页结果对象
      *         - items: 当前页的数据列表
-     *         - counts: 总记录数
+     *         - counts: 总记录数（未查询时为-1；游标分页查询时为游标之后的记录数）
      *         - page: 当前页码
      *         - pageSize: 每页条数
      */
@@ -226,6 +337,19 @@ public class MediaFileServiceImpl implements MediaFileService {
     public PageResult<MediaFiles> queryMediaFiels(Long companyId, PageParams pageParams,
             QueryMediaParamsDto queryMediaParamsDto) {
 
+        // ===== 全文检索：走倒排索引，不扫描 media_files =====
+        if (queryMediaParamsDto != null && "search".equalsIgnoreCase(queryMediaParamsDto.getFilenameMatch())
+                && queryMediaParamsDto.getFilename() != null && !queryMediaParamsDto.getFilename().isEmpty()) {
+            MediaSearchIndex.SearchHits hits = mediaSearchIndex.search(queryMediaParamsDto.getFilename(),
+                    queryMediaParamsDto.getFileType(), queryMediaParamsDto.getAuditStatus(), pageParams.getPageNo(),
+                    pageParams.getPageSize());
+            if (hits != null) {
+                return new PageResult<>(loadInOrder(hits.getIds()), hits.getTotal(), pageParams.getPageNo(),
+                        pageParams.getPageSize());
+            }
+            log.debug("检索索引未就绪，退回数据库查询：{}", queryMediaParamsDto.getFilename());
+        }
+
         // ===== 步骤1：构建查询条件对象 =====
         // LambdaQueryWrapper：MyBatis Plus提供的Lambda表达式查询构造器
         // 优点：类型安全，编译期检查，避免字段名写错
@@ -233,9 +357,16 @@ public class MediaFileServiceImpl implements MediaFileService {
   
         // 💡 机构隔离与条件查询
         // queryWrapper.eq(MediaFiles::getCompanyId, companyId);
+        boolean keyset = false;
+        boolean withCount = true;
         if (queryMediaParamsDto != null) {
             if (queryMediaParamsDto.getFilename() != null && !queryMediaParamsDto.getFilename().isEmpty()) {
-                queryWrapper.like(MediaFiles::getFilename, queryMediaParamsDto.getFilename());
+                if ("prefix".equalsIgnoreCase(queryMediaParamsDto.getFilenameMatch())) {
+                    // 前缀匹配：filename LIKE 'abc%'，可以使用文件名索引
+                    queryWrapper.likeRight(MediaFiles::getFilename, queryMediaParamsDto.getFilename());
+                } else {
+                    queryWrapper.like(MediaFiles::getFilename, queryMediaParamsDto.getFilename());
+                }
             }
             if (queryMediaParamsDto.getFileType() != null && !queryMediaParamsDto.getFileType().isEmpty()) {
                 queryWrapper.eq(MediaFiles::getFileType, queryMediaParamsDto.getFileType());
@@ -246,16 +377,29 @@ public class MediaFileServiceImpl implements MediaFileService {
             // 服务端排序：createDate ASC/DESC，附加次键id保证稳定性
             String sortBy = queryMediaParamsDto.getSortBy();
             String sortOrder = queryMediaParamsDto.getSortOrder();
-            if ("createDate".equalsIgnoreCase(sortBy)) {
-                boolean asc = "asc".equalsIgnoreCase(sortOrder);
-                queryWrapper.orderBy(true, asc, MediaFiles::getCreateDate);
-                // 次键，避免同时间戳翻页抖动
-                queryWrapper.orderBy(true, asc, MediaFiles::getId);
-            } else {
-                // 默认：按上传时间降序 + 次键id降序
-                queryWrapper.orderByDesc(MediaFiles::getCreateDate);
-                queryWrapper.orderByDesc(MediaFiles::getId);
+            // 默认：按上传时间降序 + 次键id降序
+            boolean asc = "createDate".equalsIgnoreCase(sortBy) && "asc".equalsIgnoreCase(sortOrder);
+
+            // 游标分页：(create_date, id) 严格在游标之后，与排序方向一致
+            LocalDateTime afterCreateDate = queryMediaParamsDto.getAfterCreateDate();
+            String afterId = queryMediaParamsDto.getAfterId();
+            if (afterCreateDate != null && afterId != null && !afterId.isEmpty()) {
+                keyset = true;
+                // 降序时写成 create_date < ? OR (create_date = ? AND id < ?)，可以走 create_date 索引的范围扫描
+                if (asc) {
+                    queryWrapper.and(w -> w.gt(MediaFiles::getCreateDate, afterCreateDate)
+                            .or(x -> x.eq(MediaFiles::getCreateDate, afterCreateDate).gt(MediaFiles::getId, afterId)));
+                } else {
+                    queryWrapper.and(w -> w.lt(MediaFiles::getCreateDate, afterCreateDate)
+                            .or(x -> x.eq(MediaFiles::getCreateDate, afterCreateDate).lt(MediaFiles::getId, afterId)));
+                }
             }
+            // 页码分页默认查询总数，游标分页默认不查询
+            withCount = queryMediaParamsDto.getWithCount() != null ? queryMediaParamsDto.getWithCount() : !keyset;
+
+            queryWrapper.orderBy(true, asc, MediaFiles::getCreateDate);
+            // 次键，避免同时间戳翻页抖动（也是游标的第二个字段）
+            queryWrapper.orderBy(true, asc, MediaFiles::getId);
         } else {
             queryWrapper.orderByDesc(MediaFiles::getCreateDate);
             queryWrapper.orderByDesc(MediaFiles::getId);
@@ -265,7 +409,8 @@ public class MediaFileServiceImpl implements MediaFileService {
         // Page对象：MyBatis Plus的分页对象
         // 参数1：当前页码（从1开始）
         // 参数2：每页显示条数
-  Page<MediaFiles> page = new Page<>(pageParams.getPageNo(), pageParams.getPageSize());
+        // 游标分页总是取游标之后的第一页；不需要总数时跳过 COUNT 查询
+  Page<MediaFiles> page = new Page<>(keyset ? 1 : pageParams.getPageNo(), pageParams.getPageSize(), withCount);
 
         // ===== 步骤3：执行分页查询 =====
         // selectPage方法：MyBatis Plus提供的分页查询方法
@@ -284,7 +429,7 @@ public class MediaFileServiceImpl implements MediaFileService {
   List<MediaFiles> list = pageResult.getRecords();
 
         // getTotal()：获取总记录数（用于前端计算总页数）
-  long total = pageResult.getTotal();
+  long total = withCount ? pageResult.getTotal() : -1;
 
         // ===== 步骤5：构建标准的分页结果对象 =====
         // PageResult：项目自定义的分页结果对象
@@ -295,6 +440,28 @@ public class MediaFileServiceImpl implements MediaFileService {
   return mediaListResult;
     }
 
+    /**
+     * 按主键批量查询，并保持给定的顺序（检索结果按相关度排序）
+     */
+    private List<MediaFiles> loadInOrder(List<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, MediaFiles> byId = new HashMap<>();
+        for (MediaFiles mediaFiles : mediaFilesMapper.selectBatchIds(ids)) {
+            byId.put(mediaFiles.getId(), mediaFiles);
+        }
+        List<MediaFiles> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            MediaFiles mediaFiles = byId.get(id);
+            // 索引中有而库中已没有的记录（如其他节点删除）跳过
+            if (mediaFiles != null) {
+                list.add(mediaFiles);
+            }
+        }
+        return list;
+    }
+
     /**
      * 上传文件（核心方法）
      * 
@@ -419,6 +586,34 @@ public class MediaFileServiceImpl implements MediaFileService {
     @Override
     public UploadFileResultDto uploadFile(Long companyId, UploadFileParamsDto uploadFileParamsDto,
             String localFilePath) {
+        UploadContext context;
+        try {
+            context = UploadContext.ofLocalFile(localFilePath, uploadFileParamsDto.getFilename());
+        } catch (IOException e) {
+            log.error("计算文件MD5失败", e);
+            throw new RuntimeException("上传文件失败：" + e.getMessage());
+        }
+        return uploadFile(companyId, uploadFileParamsDto, context);
+    }
+
+    /**
+     * 上传文件（MD5已在文件落盘时算好，整个流程不再重复读取文件计算摘要）
+     *
+     * @param companyId           机构ID
+     * @param uploadFileParamsDto 上传文件参数对象
+     * @param context             上传上下文（本地文件路径、MD5、大小、文件类型）
+     * @return UploadFileResultDto 上传结果对象
+     */
+    @Override
+    public UploadFileResultDto uploadFile(Long companyId, UploadFileParamsDto uploadFileParamsDto,
+            UploadContext context) {
+        // 同一内容的并发上传只上传一次，其余调用拿到同一个结果
+        return singleFlight.execute("upload:" + context.getFileMd5(),
+                () -> doUploadFile(companyId, uploadFileParamsDto, context));
+    }
+
+    private UploadFileResultDto doUploadFile(Long companyId, UploadFileParamsDto uploadFileParamsDto,
+            UploadContext context) {
         try {
             // ===== 步骤1：计算文件MD5值（无需事务） =====
             //
@@ -432,8 +627,9 @@ public class MediaFileServiceImpl implements MediaFileService {
             // - 固定长度：32位十六进制字符串
             // - 唯一性：内容不同，MD5值不同（碰撞概率极低）
             // - 不可逆：无法从MD5值还原原始文件
-            File file = new File(localFilePath);
-            String fileMd5 = getFileMd5(file);
+            //
+            // ⚡ MD5在文件写入临时目录时已经顺带算好（见 UploadContext），这里直接使用
+            String fileMd5 = context.getFileMd5();
             log.debug("文件MD5值：{}", fileMd5);
 
             // ===== 步骤2：检查文件是否已存在（秒传功能，无需事务） =====
@@ -448,7 +644,7 @@ public class MediaFileServiceImpl implements MediaFileService {
             // - 节省存储空间：相同文件只存储一份
             // - 节省带宽：无需重复上传
             // - 提升速度：秒级完成
-            MediaFiles existFile = mediaFilesMapper.selectById(fileMd5);
+            MediaFiles existFile = mediaExistenceCache.find(fileMd5);
             UploadFileResultDto resultDto = new UploadFileResultDto();
             if (existFile != null) {
                 // 文件已存在，执行秒传
@@ -472,7 +668,7 @@ public class MediaFileServiceImpl implements MediaFileService {
             // ⏱️ 耗时操作：
             // - 网络传输，可能需要几秒到几十秒
             // - 所以不能放在事务中（会长时间占用数据库连接）
-            String objectName = ossService.uploadFile(localFilePath);
+            String objectName = ossService.uploadFile(context);
             log.info("文件上传到OSS成功：{}", objectName);
 
             // ===== 步骤4：保存文件信息到数据库（通过代理对象调用，确保事务生效） =====
@@ -573,6 +769,9 @@ public class MediaFileServiceImpl implements MediaFileService {
             existingFile.setChangeDate(LocalDateTime.now());
             existingFile.setRemark(uploadFileParamsDto.getRemark());
             mediaFilesMapper.updateById(existingFile);
+            mediaExistenceCache.onSaved(fileMd5);
+            previewUrlCache.evict(fileMd5);
+            mediaSearchIndex.onSaved(existingFile);
             return existingFile;
         }
 
@@ -716,6 +915,14 @@ public class MediaFileServiceImpl implements MediaFileService {
             throw new RuntimeException("保存文件信息到数据库失败");
         }
 
+        // ===== 加入存在性缓存（后续秒传检查不再查库）和检索索引，预览地址失效 =====
+        mediaExistenceCache.onSaved(fileMd5);
+        previewUrlCache.evict(fileMd5);
+        mediaSearchIndex.onSaved(mediaFiles);
+
+        // ===== 需要转码的视频登记处理任务 =====
+        addWaitingTask(mediaFiles);
+
         // ===== 记录成功日志 =====
         log.info("文件信息保存到数据库成功：{}", fileMd5);
 
@@ -724,6 +931,28 @@ public class MediaFileServiceImpl implements MediaFileService {
         return mediaFiles;
     }
 
+    /**
+     * 登记视频转码任务：浏览器不能直接播放的 avi 视频入库时加入 media_process，由 videoTranscodeJob 转为 mp4；
+     * 开启 HLS 打包时 mp4 视频也登记，由 videoTranscodeJob 打包为多码率 HLS
+     */
+    private void addWaitingTask(MediaFiles mediaFiles) {
+        String filename = mediaFiles.getFilename();
+        String lower = filename == null ? "" : filename.toLowerCase();
+        if (!lower.endsWith(".avi") && !(hlsEnabled && lower.endsWith(".mp4"))) {
+            return;
+        }
+        MediaProcess mediaProcess = new MediaProcess();
+        mediaProcess.setFileId(mediaFiles.getId());
+        mediaProcess.setFilename(filename);
+        mediaProcess.setBucket(mediaFiles.getBucket());
+        mediaProcess.setFilePath(mediaFiles.getFilePath());
+        mediaProcess.setStatus("1");
+        mediaProcess.setCreateDate(LocalDateTime.now());
+        mediaProcess.setFailCount(0);
+        mediaProcessMapper.insert(mediaProcess);
+        log.info("登记视频转码任务，文件：{}，MD5：{}", filename, mediaFiles.getId());
+    }
+
     // =================== 大文件分块上传实现 ===================
     //
     // 🎯 功能说明：
@@ -746,42 +975,9 @@ public class MediaFileServiceImpl implements MediaFileService {
     //
     // 🔧 技术实现：
     // - 使用临时目录存储分块
-    // - 使用RandomAccessFile合并分块
+    // - 使用FileChannel单遍合并分块（同时计算MD5）
     // - 使用MD5校验文件完整性
 
-    /**
-     * 获取分块文件的根目录
-     * 
-     * 🎯 功能说明：
-     * 为每个文件创建一个独立的临时目录，用于存储分块文件
-     * 
-     * 📁 目录结构：
-     * /tmp/xc-chunks/abc123.../
-     * ├── 0 (第1个分块)
-     * ├── 1 (第2个分块)
-     * ├── 2 (第3个分块)
-     * └── ...
-     * 
-     * 💡 设计要点：
-     * 1. 使用系统临时目录（跨平台兼容）
-     * 2. 使用文件MD5作为目录名（唯一标识）
-     * 3. 分块文件以序号命名（0、1、2...）
-     * 
-     * @param fileMd5 文件MD5值（用作目录名）
-     * @return Path 分块文件的根目录路径
-     */
-    private Path getChunkRootPath(String fileMd5) {
-        // 获取系统临时目录
-        // Windows: C:\Users\用户名\AppData\Local\Temp
-        // Linux: /tmp
-        // Mac: /var/folders/...
-        String base = System.getProperty("java.io.tmpdir");
-
-        // 构建分块目录路径
-        // 例如：/tmp/xc-chunks/abc123.../
-        return Paths.get(base, "xc-chunks", fileMd5);
-    }
-
     /**
      * 检查文件是否已存在
      * 
@@ -806,8 +1002,8 @@ public class MediaFileServiceImpl implements MediaFileService {
      */
     @Override
     public RestResponse<Boolean> checkFile(String fileMd5) {
-        // 通过MD5值查询数据库
-        MediaFiles mediaFiles = mediaFilesMapper.selectById(fileMd5);
+        // 通过MD5值查询（先经过存在性缓存，未上传过的文件通常不访问数据库）
+        MediaFiles mediaFiles = mediaExistenceCache.find(fileMd5);
 
         if (mediaFiles != null) {
             // 文件已存在，返回true
@@ -848,14 +1044,14 @@ public class MediaFileServiceImpl implements MediaFileService {
     @Override
     public RestResponse<Boolean> checkChunk(String fileMd5, int chunkIndex) {
         try {
-            // 构建分块文件路径
-            // 例如：/tmp/xc-chunks/abc123.../0
-            Path chunkPath = getChunkRootPath(fileMd5).resolve(String.valueOf(chunkIndex));
-
-            // 检查分块文件是否存在且大小大于0
-            boolean exists = Files.exists(chunkPath) && Files.size(chunkPath) > 0;
+            ChunkStore store = chunkStore();
+            // 有分块清单时直接查位图，不访问分块文件
+            if (store.isNodeLocal() && chunkManifestStore.exists(fileMd5)) {
+                return RestResponse.success(chunkManifestStore.hasChunk(fileMd5, chunkIndex));
+            }
 
-            return RestResponse.success(exists);
+            // 没有清单时以分块存储中实际存在的分块为准（逐块检查，不列出全部分块）
+            return RestResponse.success(store.hasChunk(fileMd5, chunkIndex));
         } catch (Exception e) {
             // 异常情况返回false（需要重新上传）
             return RestResponse.success(false);
@@ -866,22 +1062,23 @@ public class MediaFileServiceImpl implements MediaFileService {
      * 上传分块文件
      * 
      * 🎯 功能说明：
-     * 接收前端上传的分块文件，保存到临时目录
+     * 接收前端上传的分块文件，写入分块存储（ChunkStore）
      * 
      * 📊 业务流程：
-     * 1. 接收分块文件（已保存到临时位置）
-     * 2. 创建分块存储目录
-     * 3. 将分块文件移动到标准位置
+     * 1. 打开分块内容（请求流或本地文件）
+     * 2. 写入当前模式的分块存储，写入的同时计算分块MD5
+     * 3. 登记到分块清单
      * 4. 返回上传结果
      * 
-     * 📁 文件存储：
-     * 源文件：/tmp/upload_temp_123.tmp（临时位置）
-     * 目标文件：/tmp/xc-chunks/abc123.../0（标准位置）
+     * 📁 文件存储（local模式）：
+     * 请求流 → 分块根目录/abc123.../0-随机串.part → 校验通过后原子重命名为 0
      * 
      * 💡 设计要点：
      * 1. 使用文件序号作为文件名（0、1、2...）
-     * 2. 如果文件已存在，先删除再复制（覆盖）
-     * 3. 使用Files.copy()方法（高效、安全）
+     * 2. 分块只写一次：直接从请求流写入最终位置，不再先 transferTo 临时文件再复制
+     * 3. 校验失败或写入中断只删除自己的 .part 文件，已有的同一分块不受影响
+     * 4. 分片直传模式（multipart）直接转发为OSS分片；oss模式写为OSS临时对象，多节点共享
+     * 5. 每收到一个分块都登记到分块清单（位图 + 大小 + MD5），续传协商和合并前检查都不再逐个访问分块文件
      * 
      * @param fileMd5            文件MD5值
      * @param chunk              分块序号（从0开始）
@@ -892,32 +1089,129 @@ public class MediaFileServiceImpl implements MediaFileService {
      */
     @Override
     public RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath) {
-        try {
-            // ===== 步骤1：创建分块存储目录 =====
-            Path root = getChunkRootPath(fileMd5);
-            Files.createDirectories(root); // 递归创建目录（如果不存在）
+        return uploadChunk(fileMd5, chunk, localChunkFilePath, null);
+    }
 
-            // ===== 步骤2：构建目标文件路径 =====
-            Path target = root.resolve(String.valueOf(chunk));
+    @Override
+    public RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath, String fileName) {
+        return uploadChunk(fileMd5, chunk, localChunkFilePath, fileName, null);
+    }
 
-            // ===== 步骤3：检查源文件是否存在 =====
-            Path source = Paths.get(localChunkFilePath);
-            if (!Files.exists(source)) {
-                return RestResponse.validfail(false, "分块文件不存在");
-            }
+    /**
+     * 上传分块并按前端给出的分块MD5校验（边写边算，不一致立即拒绝，只需重传这一个分块）
+     */
+    @Override
+    public RestResponse uploadChunk(String fileMd5, int chunk, String localChunkFilePath, String fileName,
+            String chunkMd5) {
+        Path source = Paths.get(localChunkFilePath);
+        if (!Files.exists(source)) {
+            return RestResponse.validfail(false, "分块文件不存在");
+        }
+        try (InputStream in = Files.newInputStream(source)) {
+            return uploadChunk(fileMd5, chunk, in, Files.size(source), fileName, chunkMd5);
+        } catch (IOException e) {
+            log.error("读取分块文件失败，MD5：{}，分块：{}，错误：{}", fileMd5, chunk, e.getMessage(), e);
+            return RestResponse.validfail(false, "上传分块文件失败");
+        }
+    }
 
-            // ===== 步骤4：移动/复制分块文件 =====
-            // 如果目标文件已存在，先删除（覆盖）
-            Files.deleteIfExists(target);
-            // 复制文件到目标位置
-            Files.copy(source, target);
+    /**
+     * 从输入流上传分块（控制器直接传入请求流，分块只写一次）
+     */
+    @Override
+    public RestResponse uploadChunk(String fileMd5, int chunk, InputStream in, long size, String fileName,
+            String chunkMd5) {
+        return uploadChunk(null, fileMd5, chunk, in, size, fileName, chunkMd5);
+    }
 
+    /**
+     * 从输入流上传分块，新上传先按配额准入（未调用续传协商直接上传分块时，按分块大小占用配额）
+     */
+    @Override
+    public RestResponse uploadChunk(Long companyId, String fileMd5, int chunk, InputStream in, long size,
+            String fileName, String chunkMd5) {
+        ChunkStore store = chunkStore();
+        if (store.isNodeLocal() && !uploadSessionRegistry.admit(fileMd5, companyId, size)) {
+            return RestResponse.validfail(false, "分块存储空间不足，请稍后重试");
+        }
+        try {
+            // 写入分块存储（同时计算分块MD5，带分块MD5时不一致立即拒绝）
+            ChunkStore.ChunkWriteResult result = store.writeChunk(fileMd5, chunk, fileName, in, size, chunkMd5);
+
+            // 登记到分块清单（oss模式的分块由多个节点接收，以OSS上的分块为准，不登记本地清单）
+            if (store.isNodeLocal()) {
+                chunkManifestStore.record(fileMd5, chunk, result.getSize(), result.getMd5());
+                uploadSessionRegistry.recordChunk(fileMd5, chunk, result.getSize());
+            }
             return RestResponse.success(true);
+        } catch (ChunkVerificationException e) {
+            log.warn("分块校验失败，MD5：{}，分块：{}，原因：{}", fileMd5, chunk, e.getMessage());
+            return RestResponse.validfail(false, e.getMessage());
         } catch (Exception e) {
+            log.error("上传分块文件失败，MD5：{}，分块：{}，错误：{}", fileMd5, chunk, e.getMessage(), e);
             return RestResponse.validfail(false, "上传分块文件失败");
         }
     }
 
+    /**
+     * 查询缺失的分块（断点续传协商，一次请求取回所有需要重传的分块）
+     * 
+     * 有分块清单时直接按位图计算；升级前开始的上传或 oss 模式没有清单，退回列出分块存储中的分块
+     * 
+     * @param fileMd5    文件MD5值
+     * @param chunkTotal 分块总数
+     * @return 缺失的分块序号（升序）
+     */
+    @Override
+    public RestResponse<List<Integer>> missingChunks(String fileMd5, int chunkTotal) {
+        return missingChunks(fileMd5, chunkTotal, 0, 0);
+    }
+
+    /**
+     * 查询缺失的分块，同时登记分块布局（sparse 模式据此预分配目标文件并定位写入分块）
+     * 
+     * @param chunkSize 分块大小（未给出时为0，不登记布局）
+     * @param fileSize  文件大小（未知时为0）
+     */
+    @Override
+    public RestResponse<List<Integer>> missingChunks(String fileMd5, int chunkTotal, long chunkSize, long fileSize) {
+        return missingChunks(null, fileMd5, chunkTotal, chunkSize, fileSize);
+    }
+
+    /**
+     * 查询缺失的分块，登记分块布局时新上传按声明的文件大小占用配额
+     */
+    @Override
+    public RestResponse<List<Integer>> missingChunks(Long companyId, String fileMd5, int chunkTotal, long chunkSize,
+            long fileSize) {
+        try {
+            ChunkStore store = chunkStore();
+            if (chunkSize > 0 && store.isNodeLocal()) {
+                if (!uploadSessionRegistry.admit(fileMd5, companyId, fileSize)) {
+                    return RestResponse.validfail("分块存储空间不足，请稍后重试");
+                }
+                chunkManifestStore.recordTotal(fileMd5, chunkTotal);
+                chunkManifestStore.recordLayout(fileMd5, chunkSize, fileSize);
+                store.prepare(fileMd5, chunkSize, fileSize);
+            }
+            if (store.isNodeLocal() && chunkManifestStore.exists(fileMd5)) {
+                chunkManifestStore.recordTotal(fileMd5, chunkTotal);
+                return RestResponse.success(chunkManifestStore.missingChunks(fileMd5, chunkTotal));
+            }
+
+            // 没有清单时一次列出分块存储中的分块
+            BitSet received = store.listChunks(fileMd5);
+            List<Integer> missing = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < chunkTotal; i = received.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+            return RestResponse.success(missing);
+        } catch (Exception e) {
+            log.error("查询缺失分块失败，MD5：{}，错误：{}", fileMd5, e.getMessage(), e);
+            return RestResponse.validfail("查询缺失分块失败");
+        }
+    }
+
     /**
      * 合并分块文件
      * 
@@ -931,16 +1225,16 @@ public class MediaFileServiceImpl implements MediaFileService {
      * 
      * 步骤2：合并分块到临时文件
      * - 创建一个临时文件用于存储合并结果
-     * - 使用RandomAccessFile顺序写入每个分块
-     * - 使用缓冲区提高读写效率（1MB缓冲区）
+     * - 使用FileChannel顺序写入每个分块
+     * - 拷贝的同时增量计算MD5（单遍读取）
      * 
      * 步骤3：MD5校验
-     * - 计算合并后文件的MD5值
+     * - 使用合并过程中得到的MD5值
      * - 与前端传入的MD5值对比
      * - 如果不一致，说明文件损坏，返回失败
      * 
      * 步骤4：上传到OSS
-     * - 调用ossService.uploadFile()方法
+     * - 调用ossService.uploadFile()方法，传入已校验的MD5
      * - 将合并后的文件上传到阿里云OSS
      * 
      * 步骤5：保存到数据库
@@ -956,14 +1250,14 @@ public class MediaFileServiceImpl implements MediaFileService {
      * 
      * 🔍 技术细节：
      * 
-     * RandomAccessFile：
-     * - 支持随机访问文件（读写位置可以任意移动）
-     * - 适合文件合并场景
-     * - 模式："rw"（读写模式）、"r"（只读模式）
+     * 单遍合并（见ChunkMerger）：
+     * - 旧实现：合并写入 → 回读算MD5 → 上传前再算一次MD5，合并文件被读三遍
+     * - 新实现：拷贝分块时同步更新MD5，摘要随合并完成一起得到
+     * - 上传时把MD5交给OssService，整个文件端到端只读一次
      * 
      * 缓冲区：
-     * - 使用1MB缓冲区（1024 * 1024字节）
-     * - 减少磁盘I/O次数，提高效率
+     * - 使用1MB直接内存缓冲区（1024 * 1024字节），循环复用
+     * - 减少磁盘I/O次数和堆内拷贝
      * 
      * MD5校验：
      * - 确保文件完整性
@@ -984,100 +1278,142 @@ public class MediaFileServiceImpl implements MediaFileService {
     @Override
     public RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
             UploadFileParamsDto uploadFileParamsDto) {
+        return mergechunks(companyId, fileMd5, chunkTotal, uploadFileParamsDto, null);
+    }
 
-        // ===== 步骤1：检查分块目录是否存在 =====
-        Path chunkRoot = getChunkRootPath(fileMd5);
-        if (!Files.exists(chunkRoot)) {
-            return RestResponse.validfail(false, "分块目录不存在");
-        }
+    /**
+     * 合并分块文件（带组合摘要）
+     * 
+     * 组合摘要与分块清单不一致时直接失败，不再做整文件合并；
+     * 一致且开启 media.chunk.skip-merge-digest 时，合并过程不再计算整文件MD5
+     * 
+     * @param chunksDigest 前端计算的组合摘要（见 ChunkManifestStore.combinedDigest），可为空
+     */
+    @Override
+    public RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
+            UploadFileParamsDto uploadFileParamsDto, String chunksDigest) {
+        return mergechunks(companyId, fileMd5, chunkTotal, uploadFileParamsDto, chunksDigest, new MergeProgress());
+    }
 
+    /**
+     * 合并分块文件并报告进度（异步合并任务调用，见 MergeJobManager）
+     * 
+     * @param progress 合并进度（阶段、已合并字节数、已上传字节数）
+     */
+    @Override
+    public RestResponse mergechunks(Long companyId, String fileMd5, int chunkTotal,
+            UploadFileParamsDto uploadFileParamsDto, String chunksDigest, MergeProgress progress) {
+        // 合并期间固定上传会话，配额淘汰和清理任务不会删除正在合并的分块
+        uploadSessionRegistry.pin(fileMd5);
         try {
-            // ===== 步骤2：合并分块到临时文件 =====
-            //
-            // 创建临时文件用于存储合并结果
-            // 文件名格式：xc-merge-随机数.tmp
-            Path merged = Files.createTempFile("xc-merge-", ".tmp");
-
-            // 使用RandomAccessFile进行文件合并
-            // "rw"模式：可读可写
-            try (java.io.RandomAccessFile raf_rw = new java.io.RandomAccessFile(merged.toFile(), "rw")) {
-                // 创建1MB缓冲区，提高读写效率
-                byte[] buffer = new byte[1024 * 1024];
-
-                // 遍历所有分块，按顺序合并
-                for (int i = 0; i < chunkTotal; i++) {
-                    // 构建分块文件路径
-                    Path part = chunkRoot.resolve(String.valueOf(i));
-
-                    // 检查分块是否存在
-                    if (!Files.exists(part)) {
-                        return RestResponse.validfail(false, "缺少分块：" + i);
-                    }
-
-                    // 读取分块文件并写入合并文件
-                    // "r"模式：只读
-                    try (java.io.RandomAccessFile raf_r = new java.io.RandomAccessFile(part.toFile(), "r")) {
-                        int len;
-                        // 循环读取分块内容
-                        while ((len = raf_r.read(buffer)) != -1) {
-                            // 写入合并文件
-                            raf_rw.write(buffer, 0, len);
-                        }
-                    }
+            // 同一文件的并发合并只执行一次，其余调用等待并拿到同一个结果（不会重复拼接、上传和入库），
+            // 等待期间读取执行中的合并的进度
+            return singleFlight.execute("merge:" + fileMd5, () -> {
+                mergeProgresses.put(fileMd5, progress);
+                try {
+                    return doMergechunks(companyId, fileMd5, chunkTotal, uploadFileParamsDto, chunksDigest, progress);
+                } finally {
+                    mergeProgresses.remove(fileMd5, progress);
+                }
+            }, () -> {
+                MergeProgress leader = mergeProgresses.get(fileMd5);
+                if (leader != null) {
+                    progress.follow(leader);
+                } else {
+                    progress.setStage(MergeProgress.WAITING);
                 }
+            });
+        } finally {
+            uploadSessionRegistry.unpin(fileMd5);
+        }
+    }
+
+    private RestResponse doMergechunks(Long companyId, String fileMd5, int chunkTotal,
+            UploadFileParamsDto uploadFileParamsDto, String chunksDigest, MergeProgress progress) {
+
+        // ===== 步骤1：找到存有分块的存储（优先当前模式，兼容切换模式前开始的上传） =====
+        ChunkStore store = mergeStore(fileMd5);
+        if (store == null) {
+            // 分块已被清理且文件已入库：重复的合并请求刚好错过了进行中的合并（或由其他节点完成）
+            if (mediaExistenceCache.exists(fileMd5)) {
+                log.info("文件已合并入库，MD5：{}", fileMd5);
+                progress.setStage(MergeProgress.DONE);
+                return RestResponse.success(true);
             }
+            return RestResponse.validfail(false, "分块目录不存在");
+        }
 
-            // ===== 步骤3：MD5校验 =====
-            //
-            // 计算合并后文件的MD5值
-            String mergedMd5;
-            try (FileInputStream fis = new FileInputStream(merged.toFile())) {
-                mergedMd5 = DigestUtils.md5Hex(fis);
+        try {
+            progress.setStage(MergeProgress.CHECKING);
+
+            // ===== 步骤1.5：用分块清单检查分块是否齐全（不逐个访问分块文件） =====
+            boolean checkedByManifest = store.isNodeLocal() && chunkManifestStore.exists(fileMd5);
+            if (checkedByManifest) {
+                chunkManifestStore.recordTotal(fileMd5, chunkTotal);
+                List<Integer> missing = chunkManifestStore.missingChunks(fileMd5, chunkTotal);
+                if (!missing.isEmpty()) {
+                    log.error("合并分块失败，MD5：{}，缺少分块数：{}", fileMd5, missing.size());
+                    return RestResponse.validfail(false, "缺少分块：" + missing.get(0));
+                }
             }
 
-            // 对比MD5值
-            if (!fileMd5.equalsIgnoreCase(mergedMd5)) {
-                // MD5不一致，文件损坏
-                Files.deleteIfExists(merged); // 删除损坏的文件
-                log.error("文件MD5校验失败，原始MD5：{}，合并后MD5：{}", fileMd5, mergedMd5);
-                return RestResponse.validfail(false, "文件校验失败");
+            // ===== 步骤1.6：组合摘要校验（分块上传时已逐块校验，这里确认整体一致） =====
+            boolean digestVerified = false;
+            if (checkedByManifest && chunksDigest != null && !chunksDigest.isEmpty()) {
+                String expected = chunkManifestStore.combinedDigest(fileMd5, chunkTotal);
+                if (expected != null && !expected.equalsIgnoreCase(chunksDigest)) {
+                    log.error("组合摘要校验失败，MD5：{}，前端：{}，服务端：{}", fileMd5, chunksDigest, expected);
+                    return RestResponse.validfail(false, "文件校验失败");
+                }
+                digestVerified = expected != null;
             }
+            boolean skipDigest = skipMergeDigest && digestVerified;
 
-            // 回填合并后文件大小，确保入库时有完整数据
+            // ===== 步骤2~4：合并分块、MD5校验并上传到OSS（由分块存储完成） =====
+            // local：单遍拼接 + 增量MD5 → 整体上传；multipart：completeMultipartUpload + 组合CRC64校验；
+            // oss：UploadPartCopy 服务端拷贝拼接
+            ChunkStore.StoredFile stored;
             try {
-                long mergedSize = Files.size(merged);
-                uploadFileParamsDto.setFileSize(mergedSize);
-                log.info("合并后文件大小：{} 字节", mergedSize);
-            } catch (Exception e) {
-                log.warn("获取合并文件大小失败", e);
+                stored = store.merge(fileMd5, chunkTotal, uploadFileParamsDto.getFilename(), checkedByManifest,
+                        skipDigest, progress);
+            } catch (ChunkVerificationException e) {
+                log.error("合并分块校验失败，MD5：{}，原因：{}", fileMd5, e.getMessage());
+                return RestResponse.validfail(false, e.getMessage());
+            } catch (IOException e) {
+                log.error("合并分块失败，MD5：{}，原因：{}", fileMd5, e.getMessage(), e);
+                return RestResponse.validfail(false, "合并分块失败：" + e.getMessage());
             }
 
-            // ===== 步骤4：上传到OSS =====
-            String objectName = ossService.uploadFile(merged.toString(), uploadFileParamsDto.getFilename());
-            log.info("合并文件上传到OSS成功，对象名：{}", objectName);
+            // 回填合并后文件大小，确保入库时有完整数据
+            uploadFileParamsDto.setFileSize(stored.getSize());
+            log.info("合并完成，对象名：{}，大小：{} 字节", stored.getObjectName(), stored.getSize());
 
             // ===== 步骤5：保存到数据库（事务） =====
+            progress.setStage(MergeProgress.SAVING);
             log.info("准备保存文件信息到数据库，MD5：{}，文件名：{}，大小：{}", fileMd5, uploadFileParamsDto.getFilename(),
                     uploadFileParamsDto.getFileSize());
-            MediaFiles mediaFiles = currentProxy.addMediaFilesToDb(companyId, fileMd5, uploadFileParamsDto, objectName);
+            MediaFiles mediaFiles = currentProxy.addMediaFilesToDb(companyId, fileMd5, uploadFileParamsDto,
+                    stored.getObjectName());
             if (mediaFiles == null || mediaFiles.getId() == null) {
                 log.error("文件入库失败，MD5：{}，文件名：{}", fileMd5, uploadFileParamsDto.getFilename());
                 return RestResponse.validfail(false, "文件入库失败");
             }
             log.info("文件入库成功，ID：{}，文件名：{}", mediaFiles.getId(), mediaFiles.getFilename());
 
-            // ===== 步骤6：清理临时文件 =====
-            //
-            // 删除所有分块文件
-            for (int i = 0; i < chunkTotal; i++) {
-                Files.deleteIfExists(chunkRoot.resolve(String.valueOf(i)));
+            // ===== 步骤6：清理分块、分块清单和分块目录 =====
+            store.delete(fileMd5);
+            chunkManifestStore.discard(fileMd5);
+            try {
+                Files.deleteIfExists(chunkDirectory.resolve(fileMd5));
+                uploadSessionRegistry.finish(fileMd5);
+            } catch (IOException e) {
+                // 目录中还有其他文件（如切换模式前留下的分块），保留会话交给清理任务处理
+                log.warn("删除分块目录失败：{}，错误：{}", fileMd5, e.getMessage());
+                uploadSessionRegistry.touch(fileMd5);
             }
-            // 删除分块目录
-            Files.deleteIfExists(chunkRoot);
-            // 删除合并后的临时文件
-            Files.deleteIfExists(merged);
 
             // ===== 步骤7：返回成功结果 =====
+            progress.setStage(MergeProgress.DONE);
             return RestResponse.success(true);
         } catch (Exception e) {
             log.error("合并文件异常，MD5：{}，错误信息：{}", fileMd5, e.getMessage(), e);
@@ -1086,80 +1422,54 @@ public class MediaFileServiceImpl implements MediaFileService {
     }
 
     /**
-     * 获取用于预览的对象路径（相对路径）。
+     * 当前模式的分块存储
+     */
+    private ChunkStore chunkStore() {
+        for (ChunkStore store : chunkStores) {
+            if (store.mode().equalsIgnoreCase(chunkMode)) {
+                return store;
+            }
+        }
+        throw new IllegalStateException("不支持的分块存储模式：" + chunkMode);
+    }
+
+    /**
+     * 存有该文件分块的存储：优先当前模式，其次其他模式（切换模式前开始的上传仍可合并）
+     */
+    private ChunkStore mergeStore(String fileMd5) {
+        ChunkStore current = chunkStore();
+        if (current.hasUpload(fileMd5)) {
+            return current;
+        }
+        for (ChunkStore store : chunkStores) {
+            if (store != current && store.hasUpload(fileMd5)) {
+                return store;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取用于预览的对象路径（相对路径，优先 url，其次 filePath）。
      */
     @Override
     public String getPreviewUrl(String mediaId) {
         MediaFiles mediaFiles = mediaFilesMapper.selectById(mediaId);
-        if (mediaFiles == null) {
-            return null;
-        }
-        // 优先返回url（已存相对路径）
-        if (mediaFiles.getUrl() != null && !mediaFiles.getUrl().isEmpty()) {
-            return mediaFiles.getUrl();
-        }
-        // 其次返回filePath
-        return mediaFiles.getFilePath();
+        return mediaFiles == null ? null : PreviewUrlCache.objectName(mediaFiles);
     }
 
     /**
-     * 计算文件MD5值
-     * 
-     * 🎯 功能说明：
-     * 读取文件内容，计算MD5哈希值
-     * 
-     * 📚 MD5（Message Digest Algorithm 5）：
-     * 
-     * 什么是MD5？
-     * - 一种广泛使用的密码散列函数
-     * - 可以产生一个128位（16字节）的散列值
-     * - 通常表示为32位十六进制数字
-     * 
-     * MD5的特点：
-     * 1. 固定长度：无论输入多大，输出都是32位字符串
-     * 2. 唯一性：内容不同，MD5值不同（碰撞概率极低）
-     * 3. 不可逆：无法从MD5值还原原始内容
-     * 4. 雪崩效应：输入微小变化，输出完全不同
-     * 
-     * MD5的应用场景：
-     * 1. 文件去重：相同文件MD5相同
-     * 2. 文件完整性校验：传输前后MD5对比
-     * 3. 数据库主键：使用MD5作为唯一标识
-     * 4. 秒传功能：通过MD5判断文件是否存在
-     * 
-     * 🔧 技术实现：
-     * - 使用Apache Commons Codec库
-     * - DigestUtils.md5Hex()方法
-     * - 自动处理文件流的读取和MD5计算
-     * 
-     * 💡 性能优化：
-     * - 使用流式读取，不会一次性加载整个文件到内存
-     * - 适合大文件的MD5计算
-     * 
-     * 🛡️ 异常处理：
-     * - 捕获所有异常（文件不存在、读取失败等）
-     * - 记录错误日志
-     * - 抛出运行时异常
-     * 
-     * @param file 文件对象
-     * @return String MD5值（32位小写十六进制字符串）
-     *         例如：abc123def456789...（32位）
+     * 批量获取预览地址（OSS 签名URL，按媒资ID缓存至临近过期）：缓存未命中的媒资合并查库
      */
-    private String getFileMd5(File file) {
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            // 使用Apache Commons Codec的DigestUtils工具类计算MD5
-            //
-            // md5Hex()方法：
-            // 1. 读取输入流的所有内容
-            // 2. 计算MD5哈希值
-            // 3. 转换为32位十六进制字符串
-            // 4. 自动关闭输入流（try-with-resources）
-            return DigestUtils.md5Hex(fileInputStream);
-        } catch (Exception e) {
-            // 异常处理：记录日志并抛出运行时异常
-            log.error("计算文件MD5失败", e);
-            throw new RuntimeException("计算文件MD5失败");
+    @Override
+    public Map<String, String> getPreviewUrls(List<String> mediaIds) {
+        if (mediaIds == null || mediaIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (mediaIds.size() > maxPreviewBatch) {
+            XuechengPlusException.cast("一次最多获取 " + maxPreviewBatch + " 个预览地址");
         }
+        return previewUrlCache.getAll(mediaIds);
     }
 
 }
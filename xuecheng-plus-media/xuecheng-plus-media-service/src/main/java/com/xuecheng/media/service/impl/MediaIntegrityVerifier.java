@@ -0,0 +1,207 @@
+package com.xuecheng.media.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 媒资文件完整性抽检
+ * <p>
+ * 媒资ID即文件MD5，抽检时比对 OSS 对象（file_path）的 MD5 与媒资ID：
+ * <p>
+ * - 按 id 分页扫描 media_files，每条以 sample-rate 的概率入选，再用蓄水池抽样保留最多 max-samples 条
+ * （内存只保留样本，样本在全表中均匀分布）
+ * - 多个对象并行校验（verifyObjectMd5：优先比对对象元信息，不可用时流式读取计算，不落盘）
+ * - 不一致、对象不存在的媒资ID写入结果，交由人工处理
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MediaIntegrityVerifier {
+
+    /**
+     * 结果中最多列出的问题媒资数
+     */
+    private static final int MAX_REPORTED = 20;
+
+    @Autowired
+    OssService ossService;
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    /**
+     * 抽检比例
+     */
+    @Value("${media.verify.sample-rate:0.01}")
+    double sampleRate = 0.01;
+
+    /**
+     * 每次最多抽检的媒资数
+     */
+    @Value("${media.verify.max-samples:200}")
+    int maxSamples = 200;
+
+    /**
+     * 并行校验线程数
+     */
+    @Value("${media.verify.threads:4}")
+    int threads = 4;
+
+    /**
+     * 扫描 media_files 时每页的记录数
+     */
+    @Value("${media.verify.batch-size:1000}")
+    int batchSize = 1000;
+
+    /**
+     * 抽检
+     *
+     * @param samples  本次抽检的媒资数（不大于0时使用 max-samples）
+     * @param progress 进度（写入调度中心执行日志，可为空）
+     * @return 抽检结果
+     */
+    public Summary verify(int samples, Consumer<String> progress) throws InterruptedException {
+        List<MediaFiles> sampled = sample(samples > 0 ? samples : maxSamples, ThreadLocalRandom.current());
+        Summary summary = new Summary();
+        summary.sampled = sampled.size();
+        if (sampled.isEmpty()) {
+            return summary;
+        }
+
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger threadSeq = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sampled.size())), r -> {
+            Thread thread = new Thread(r, "media-verify-" + threadSeq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (MediaFiles mediaFiles : sampled) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return ossService.verifyObjectMd5(mediaFiles.getFilePath(), mediaFiles.getId());
+                    } finally {
+                        int n = done.incrementAndGet();
+                        if (progress != null && n % 50 == 0) {
+                            progress.accept("已校验 " + n + "/" + sampled.size());
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                String id = sampled.get(i).getId();
+                try {
+                    Boolean matched = futures.get(i).get();
+                    if (matched == null) {
+                        summary.missing++;
+                        summary.report(id);
+                    } else if (matched) {
+                        summary.passed++;
+                    } else {
+                        summary.failed++;
+                        summary.report(id);
+                    }
+                } catch (ExecutionException e) {
+                    summary.errors++;
+                    log.warn("校验媒资失败：{}，{}", id, e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (summary.failed > 0 || summary.missing > 0) {
+            log.error("媒资完整性抽检发现问题：{}，媒资：{}", summary, summary.problems);
+        } else {
+            log.info("媒资完整性抽检完成：{}", summary);
+        }
+        return summary;
+    }
+
+    /**
+     * 按 id 分页扫描，伯努利抽样后蓄水池抽样保留最多 limit 条
+     */
+    List<MediaFiles> sample(int limit, Random random) {
+        List<MediaFiles> reservoir = new ArrayList<>(limit);
+        long seen = 0;
+        String lastId = null;
+        while (true) {
+            List<MediaFiles> batch = mediaFilesMapper.selectList(new LambdaQueryWrapper<MediaFiles>()
+                    .select(MediaFiles::getId, MediaFiles::getFilePath)
+                    .gt(lastId != null, MediaFiles::getId, lastId)
+                    .orderByAsc(MediaFiles::getId)
+                    .last("LIMIT " + batchSize));
+            for (MediaFiles mediaFiles : batch) {
+                if (mediaFiles.getFilePath() == null || random.nextDouble() >= sampleRate) {
+                    continue;
+                }
+                seen++;
+                if (reservoir.size() < limit) {
+                    reservoir.add(mediaFiles);
+                } else {
+                    long slot = (long) (random.nextDouble() * seen);
+                    if (slot < limit) {
+                        reservoir.set((int) slot, mediaFiles);
+                    }
+                }
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+        return reservoir;
+    }
+
+    /**
+     * 一次抽检的结果
+     */
+    @Getter
+    public static class Summary {
+
+        private int sampled;
+
+        private int passed;
+
+        private int failed;
+
+        private int missing;
+
+        private int errors;
+
+        /**
+         * 不一致或对象不存在的媒资ID（最多 20 个）
+         */
+        private final List<String> problems = new ArrayList<>();
+
+        private void report(String id) {
+            if (problems.size() < MAX_REPORTED) {
+                problems.add(id);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("抽检 %d 个，一致 %d，不一致 %d，对象不存在 %d，校验出错 %d",
+                    sampled, passed, failed, missing, errors);
+        }
+    }
+}
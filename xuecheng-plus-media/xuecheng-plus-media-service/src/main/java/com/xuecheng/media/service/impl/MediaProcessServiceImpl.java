@@ -0,0 +1,108 @@
+package com.xuecheng.media.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.mapper.MediaProcessHistoryMapper;
+import com.xuecheng.media.mapper.MediaProcessMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.model.po.MediaProcess;
+import com.xuecheng.media.model.po.MediaProcessHistory;
+import com.xuecheng.media.service.MediaProcessService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 媒资处理任务（视频转码）
+ * <p>
+ * 多个执行器按 id % 分片总数 = 分片序号 各自查询任务，领取时用状态做乐观锁（UPDATE ... WHERE status 可领取），
+ * 调度重叠或分片变化时同一任务也只会被一个执行器处理。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Service
+public class MediaProcessServiceImpl implements MediaProcessService {
+
+    @Autowired
+    MediaProcessMapper mediaProcessMapper;
+
+    @Autowired
+    MediaProcessHistoryMapper mediaProcessHistoryMapper;
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    @Autowired
+    MediaExistenceCache mediaExistenceCache;
+
+    @Autowired
+    PreviewUrlCache previewUrlCache;
+
+    /**
+     * 最大失败次数，达到后不再重试（需人工处理）
+     */
+    @Value("${media.transcode.max-retries:3}")
+    int maxRetries = 3;
+
+    /**
+     * 领取租约时长（秒），应大于单个任务的最长处理时间；执行节点宕机时到期后可被重新领取
+     */
+    @Value("${media.transcode.lease-seconds:10800}")
+    long leaseSeconds = 10800;
+
+    @Override
+    public List<MediaProcess> getShardTasks(int shardIndex, int shardTotal, int count) {
+        return mediaProcessMapper.selectShardTasks(shardTotal, shardIndex, maxRetries, leaseSeconds, count);
+    }
+
+    @Override
+    public boolean claim(long id) {
+        return mediaProcessMapper.claim(id, maxRetries, leaseSeconds) > 0;
+    }
+
+    @Override
+    @Transactional
+    public void saveSuccess(MediaProcess mediaProcess, String url, String playUrl) {
+        // 只删除本执行器仍持有的任务，租约已被接管时由接管方入历史表
+        int deleted = mediaProcessMapper.delete(new LambdaQueryWrapper<MediaProcess>()
+                .eq(MediaProcess::getId, mediaProcess.getId())
+                .eq(MediaProcess::getStatus, "4"));
+        if (deleted == 0) {
+            log.warn("转码任务已不属于本执行器，放弃保存结果，任务id：{}", mediaProcess.getId());
+            return;
+        }
+
+        MediaFiles mediaFiles = mediaFilesMapper.selectById(mediaProcess.getFileId());
+        if (mediaFiles != null) {
+            mediaFiles.setUrl(playUrl != null ? playUrl : url);
+            mediaFiles.setChangeDate(LocalDateTime.now());
+            mediaFilesMapper.updateById(mediaFiles);
+            mediaExistenceCache.onSaved(mediaFiles.getId());
+            previewUrlCache.evict(mediaFiles.getId());
+        }
+
+        MediaProcessHistory history = new MediaProcessHistory();
+        BeanUtils.copyProperties(mediaProcess, history);
+        history.setId(null);
+        history.setStatus("2");
+        history.setUrl(url);
+        history.setFinishDate(LocalDateTime.now());
+        history.setErrormsg(null);
+        mediaProcessHistoryMapper.insert(history);
+    }
+
+    @Override
+    public void saveFailed(long id, String errormsg) {
+        if (errormsg != null && errormsg.length() > 1024) {
+            errormsg = errormsg.substring(errormsg.length() - 1024);
+        }
+        mediaProcessMapper.markFailed(id, errormsg);
+    }
+}
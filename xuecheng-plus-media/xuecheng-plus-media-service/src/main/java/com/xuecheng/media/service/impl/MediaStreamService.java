@@ -0,0 +1,483 @@
+package com.xuecheng.media.service.impl;
+
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 媒资流式读取（私有 bucket 的播放/下载代理）
+ * <p>
+ * 接口层负责 HTTP 语义（Range、If-None-Match、ETag），这里负责：
+ * <p>
+ * - 媒资ID到对象的映射：/stream/{mediaId} 为访问地址（转码结果或原始文件），
+ *   /stream/{mediaId}/720p/seg_0001.ts 等为 HLS 主播放列表所在目录下的对象，相对路径经代理也能访问
+ * - 媒资记录、对象元信息（大小、ETag、类型）短时缓存，播放器连续的 Range 请求不必每次查库和 HEAD；
+ *   其他节点转码完成后改写的访问地址最多 meta-ttl-seconds 后生效
+ * - 大对象按请求的字节范围从 OSS 做 Range GET，以固定大小的缓冲区边读边写，每个连接占用的内存恒定
+ * - 小对象（HLS 分段、播放列表）整个缓存到本地磁盘（按 对象名+ETag 命名，LRU 按总字节数淘汰），
+ *   同一对象同时只下载一次，多个观众观看同一课时只回源一次
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MediaStreamService {
+
+    @Autowired
+    OssService ossService;
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    /**
+     * 每个连接的读写缓冲区大小（字节）
+     */
+    @Value("${media.stream.buffer-size:65536}")
+    int bufferSize = 65536;
+
+    /**
+     * 媒资记录、对象元信息缓存时长（秒）
+     */
+    @Value("${media.stream.meta-ttl-seconds:30}")
+    long metaTtlSeconds = 30;
+
+    /**
+     * 媒资记录、对象元信息缓存条数
+     */
+    @Value("${media.stream.meta-cache-size:10000}")
+    int metaCacheSize = 10000;
+
+    /**
+     * 是否启用本地磁盘缓存
+     */
+    @Value("${media.stream.cache.enabled:true}")
+    boolean cacheEnabled = true;
+
+    /**
+     * 磁盘缓存目录（启动后首次使用时清空）
+     */
+    @Value("${media.stream.cache.dir:${java.io.tmpdir}/xc-stream-cache}")
+    String cacheDir = System.getProperty("java.io.tmpdir") + "/xc-stream-cache";
+
+    /**
+     * 磁盘缓存总大小上限（字节）
+     */
+    @Value("${media.stream.cache.max-bytes:1073741824}")
+    long cacheMaxBytes = 1073741824L;
+
+    /**
+     * 不超过该大小（字节）的对象才缓存到磁盘
+     */
+    @Value("${media.stream.cache.max-object-bytes:8388608}")
+    long cacheMaxObjectBytes = 8388608L;
+
+    private final Map<String, Meta> metas = new LinkedHashMap<String, Meta>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Meta> eldest) {
+            return size() > metaCacheSize;
+        }
+    };
+
+    /**
+     * 媒资记录缓存（媒资ID -> 记录）
+     */
+    private final Map<String, Media> medias = new LinkedHashMap<String, Media>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Media> eldest) {
+            return size() > metaCacheSize;
+        }
+    };
+
+    /**
+     * 磁盘缓存索引（缓存键 -> 文件大小），按访问顺序排列
+     */
+    private final LinkedHashMap<String, Long> cached = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedBytes;
+
+    /**
+     * 正在下载到磁盘缓存的对象（同一对象的并发请求等待同一次下载）
+     */
+    private final Map<String, CompletableFuture<File>> filling = new ConcurrentHashMap<>();
+
+    private volatile File cacheRoot;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheFills = new LongAdder();
+    private final LongAdder rangeReads = new LongAdder();
+    private final LongAdder bytesFromOss = new LongAdder();
+
+    /**
+     * 媒资对应的对象名
+     *
+     * @param mediaId 媒资ID
+     * @param path    HLS 主播放列表目录下的相对路径，为空时取媒资访问地址
+     * @return 对象名，媒资不存在或路径不合法时返回空
+     */
+    public String resolve(String mediaId, String path) {
+        MediaFiles mediaFiles = findMedia(mediaId);
+        if (mediaFiles == null) {
+            return null;
+        }
+        String url = mediaFiles.getUrl();
+        if (path == null || path.isEmpty()) {
+            return url != null && !url.isEmpty() ? url : mediaFiles.getFilePath();
+        }
+        // 只允许访问本媒资 HLS 目录下的对象
+        String hlsDir = "hls/" + mediaId + "/";
+        if (url == null || !url.startsWith(hlsDir) || path.startsWith("/") || path.contains("\\")) {
+            return null;
+        }
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return null;
+            }
+        }
+        return hlsDir + path;
+    }
+
+    /**
+     * 媒资记录（短时缓存，不存在的媒资不缓存）
+     * <p>
+     * 不使用 MediaExistenceCache 的LRU：那里的记录没有过期时间，其他节点转码完成后改写的访问地址在本节点不会生效
+     */
+    private MediaFiles findMedia(String mediaId) {
+        long now = System.currentTimeMillis();
+        synchronized (medias) {
+            Media media = medias.get(mediaId);
+            if (media != null && media.expiresAt > now) {
+                return media.mediaFiles;
+            }
+        }
+        MediaFiles mediaFiles = mediaFilesMapper.selectById(mediaId);
+        if (mediaFiles != null) {
+            synchronized (medias) {
+                medias.put(mediaId, new Media(mediaFiles, now + metaTtlSeconds * 1000));
+            }
+        }
+        return mediaFiles;
+    }
+
+    /**
+     * 对象元信息（短时缓存）
+     *
+     * @return 元信息，对象不存在时返回空
+     */
+    public ObjectInfo describe(String objectName) {
+        long now = System.currentTimeMillis();
+        synchronized (metas) {
+            Meta meta = metas.get(objectName);
+            if (meta != null && meta.expiresAt > now) {
+                return meta.info;
+            }
+        }
+        ObjectMetadata metadata = ossService.findFileInfo(objectName);
+        if (metadata == null) {
+            return null;
+        }
+        Date lastModified = metadata.getLastModified();
+        ObjectInfo info = new ObjectInfo(metadata.getContentLength(), unquote(metadata.getETag()),
+                metadata.getContentType(), lastModified != null ? lastModified.getTime() : -1);
+        synchronized (metas) {
+            metas.put(objectName, new Meta(info, now + metaTtlSeconds * 1000));
+        }
+        return info;
+    }
+
+    /**
+     * 把对象的 [start, end] 字节写入输出流
+     *
+     * @param objectName 对象名
+     * @param info       describe 返回的元信息
+     * @param start      起始字节（含）
+     * @param end        结束字节（含）
+     * @param out        输出流（客户端断开时写入抛出 IOException）
+     */
+    public void copy(String objectName, ObjectInfo info, long start, long end, OutputStream out) throws IOException {
+        if (cacheEnabled && info.getSize() <= cacheMaxObjectBytes) {
+            File file = cachedFile(objectName, info);
+            if (file != null) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    raf.seek(start);
+                    copy(raf, end - start + 1, out);
+                    return;
+                } catch (FileNotFoundException e) {
+                    // 刚被淘汰，回源读取
+                }
+            }
+        }
+        rangeReads.increment();
+        OSSObject object = ossService.getFileRange(objectName, start, end);
+        boolean complete = false;
+        try {
+            bytesFromOss.add(copy(object.getObjectContent(), end - start + 1, out));
+            complete = true;
+        } finally {
+            close(object, complete);
+        }
+    }
+
+    /**
+     * 命中统计
+     */
+    public String getStatistics() {
+        int count;
+        long bytes;
+        synchronized (cached) {
+            count = cached.size();
+            bytes = cachedBytes;
+        }
+        return String.format("磁盘缓存命中：%d，回源缓存：%d，范围读取：%d，回源字节数：%d，缓存对象数：%d，缓存字节数：%d",
+                cacheHits.sum(), cacheFills.sum(), rangeReads.sum(), bytesFromOss.sum(), count, bytes);
+    }
+
+    /**
+     * 取磁盘缓存文件，未缓存时下载整个对象（同一对象并发请求只下载一次）
+     *
+     * @return 缓存文件，下载失败时返回空（改为直接回源）
+     */
+    private File cachedFile(String objectName, ObjectInfo info) throws IOException {
+        String key = DigestUtils.md5Hex(objectName + "\n" + info.getEtag());
+        File root = getCacheRoot();
+        File file = new File(root, key);
+        if (isCached(key, file)) {
+            return file;
+        }
+
+        CompletableFuture<File> mine = new CompletableFuture<>();
+        CompletableFuture<File> running = filling.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待缓存下载被中断", e);
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+        try {
+            // 判断未命中之后、登记下载之前，其他请求可能刚好下载完成
+            if (isCached(key, file)) {
+                mine.complete(file);
+                return file;
+            }
+            File temp = new File(root, key + ".tmp");
+            OSSObject object = ossService.getFileRange(objectName, 0, Math.max(0, info.getSize() - 1));
+            boolean complete = false;
+            try (OutputStream out = new FileOutputStream(temp)) {
+                bytesFromOss.add(copy(object.getObjectContent(), info.getSize(), out));
+                complete = true;
+            } finally {
+                close(object, complete);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            cacheFills.increment();
+            admit(key, file.length());
+            mine.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            log.warn("下载对象到磁盘缓存失败，直接回源：{}，{}", objectName, e.getMessage());
+            mine.completeExceptionally(e);
+            return null;
+        } finally {
+            filling.remove(key);
+        }
+    }
+
+    private boolean isCached(String key, File file) {
+        synchronized (cached) {
+            if (cached.get(key) != null && file.isFile()) {
+                cacheHits.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 加入缓存索引，超出总大小时按最久未访问淘汰
+     */
+    private void admit(String key, long length) {
+        File root = getCacheRoot();
+        synchronized (cached) {
+            Long old = cached.put(key, length);
+            cachedBytes += length - (old != null ? old : 0);
+            Iterator<Map.Entry<String, Long>> it = cached.entrySet().iterator();
+            while (cachedBytes > cacheMaxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                cachedBytes -= eldest.getValue();
+                // 正在读取该文件的连接不受影响（已打开的文件句柄仍可读）
+                new File(root, eldest.getKey()).delete();
+            }
+        }
+    }
+
+    private File getCacheRoot() {
+        if (cacheRoot == null) {
+            synchronized (this) {
+                if (cacheRoot == null) {
+                    File root = new File(cacheDir);
+                    // 缓存索引不持久化，上次运行留下的文件清掉
+                    FileSystemUtils.deleteRecursively(root);
+                    if (!root.mkdirs() && !root.isDirectory()) {
+                        throw new IllegalStateException("创建磁盘缓存目录失败：" + root);
+                    }
+                    cacheRoot = root;
+                }
+            }
+        }
+        return cacheRoot;
+    }
+
+    private long copy(InputStream in, long length, OutputStream out) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new IOException("对象内容提前结束，还差 " + remaining + " 字节");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        return length;
+    }
+
+    private long copy(RandomAccessFile in, long length, OutputStream out) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new IOException("缓存文件内容提前结束，还差 " + remaining + " 字节");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        return length;
+    }
+
+    /**
+     * 读完时正常关闭（连接可复用）；未读完时断开连接，close 会读完剩余内容，客户端断开后不必再从 OSS 读整个范围
+     */
+    private static void close(OSSObject object, boolean complete) throws IOException {
+        if (complete) {
+            object.close();
+            return;
+        }
+        try {
+            object.forcedClose();
+        } catch (IOException | RuntimeException e) {
+            try {
+                object.close();
+            } catch (IOException ignored) {
+                // 已断开
+            }
+        }
+    }
+
+    private static String unquote(String etag) {
+        if (etag == null) {
+            return "";
+        }
+        return etag.startsWith("\"") && etag.endsWith("\"") && etag.length() > 1
+                ? etag.substring(1, etag.length() - 1) : etag;
+    }
+
+    private static final class Media {
+
+        private final MediaFiles mediaFiles;
+
+        private final long expiresAt;
+
+        Media(MediaFiles mediaFiles, long expiresAt) {
+            this.mediaFiles = mediaFiles;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Meta {
+
+        private final ObjectInfo info;
+
+        private final long expiresAt;
+
+        Meta(ObjectInfo info, long expiresAt) {
+            this.info = info;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 对象元信息
+     */
+    public static final class ObjectInfo {
+
+        private final long size;
+
+        private final String etag;
+
+        private final String contentType;
+
+        private final long lastModified;
+
+        public ObjectInfo(long size, String etag, String contentType, long lastModified) {
+            this.size = size;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * OSS ETag（不含引号）
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * 最后修改时间（毫秒），未知时为 -1
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.base.utils.JsonUtil;
+import com.xuecheng.media.model.dto.MergeJobDto;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.MergeProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步合并任务
+ * <p>
+ * 大文件合并（拼接、计算摘要、上传OSS、入库）可能持续几分钟，同步执行会长时间占用 Tomcat 线程，
+ * 并触发 LogInterceptor 的慢请求告警。异步合并时请求只负责提交任务，合并在有界线程池中执行，
+ * 前端轮询 /upload/mergeprogress 获取阶段和字节进度。
+ * <p>
+ * - 有界：线程数和排队数都有上限，队列满时拒绝提交，由前端稍后重试
+ * - 幂等：同一 fileMd5 排队中、执行中或已成功的任务直接返回当前状态，只有失败的任务会重新执行
+ * - 持久化：任务状态在每次状态变化时写入 {状态目录}/文件MD5.json；节点重启后未完成的任务标记为失败，可重新提交
+ * - 排队期间固定上传会话：从提交到任务结束，配额淘汰和清理任务不会删除等待合并的分块
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MergeJobManager {
+
+    @Autowired
+    MediaFileService mediaFileService;
+
+    @Autowired
+    ChunkManifestStore chunkManifestStore;
+
+    @Autowired
+    UploadSessionRegistry uploadSessionRegistry;
+
+    /**
+     * 同时执行的合并任务数
+     */
+    @Value("${media.merge.threads:2}")
+    int threads = 2;
+
+    /**
+     * 排队等待的合并任务数上限
+     */
+    @Value("${media.merge.queue-capacity:16}")
+    int queueCapacity = 16;
+
+    /**
+     * 任务状态目录
+     */
+    @Value("${media.merge.state-dir:${java.io.tmpdir}/xc-merge-jobs}")
+    String stateDir = System.getProperty("java.io.tmpdir") + "/xc-merge-jobs";
+
+    /**
+     * 本节点的任务（fileMd5 -> 任务）
+     */
+    private final Map<String, MergeJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 合并线程池（首次提交时创建）
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * 提交合并任务
+     *
+     * @return 任务状态；队列已满时返回空
+     */
+    public MergeJobDto submit(Long companyId, String fileMd5, int chunkTotal, UploadFileParamsDto uploadFileParamsDto,
+                              String chunksDigest) {
+        // 状态文件读写和提交线程池都不放在 jobs 的 compute 中（会占住同一分段的其他 fileMd5），
+        // 先用 putIfAbsent / replace 占住任务，再保存状态、提交执行
+        while (true) {
+            MergeJob current = find(fileMd5);
+            if (current != null && !MergeJobDto.FAILED.equals(current.state.getStatus())) {
+                // 排队中、执行中或已成功：直接返回当前状态
+                return current.snapshot();
+            }
+            MergeJob job = new MergeJob(newState(fileMd5, chunkTotal));
+            boolean claimed = current == null ? jobs.putIfAbsent(fileMd5, job) == null
+                    : jobs.replace(fileMd5, current, job);
+            if (!claimed) {
+                // 并发提交已占住该任务，按它的状态重新判断
+                continue;
+            }
+
+            save(job.state);
+            uploadSessionRegistry.pin(fileMd5);
+            try {
+                getExecutor().execute(() -> run(job, companyId, chunkTotal, uploadFileParamsDto, chunksDigest));
+            } catch (RejectedExecutionException e) {
+                log.warn("合并任务队列已满，MD5：{}", fileMd5);
+                uploadSessionRegistry.unpin(fileMd5);
+                if (current != null) {
+                    jobs.replace(fileMd5, job, current);
+                    save(current.state);
+                } else {
+                    jobs.remove(fileMd5, job);
+                    deleteState(fileMd5);
+                }
+                return null;
+            }
+            return job.snapshot();
+        }
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @return 任务状态；没有该任务时返回空
+     */
+    public MergeJobDto getStatus(String fileMd5) {
+        MergeJob job = find(fileMd5);
+        return job != null ? job.snapshot() : null;
+    }
+
+    /**
+     * 本节点的任务，不在内存中时从状态文件恢复
+     */
+    private MergeJob find(String fileMd5) {
+        MergeJob job = jobs.get(fileMd5);
+        if (job != null) {
+            return job;
+        }
+        job = load(fileMd5);
+        if (job == null) {
+            return null;
+        }
+        MergeJob existing = jobs.putIfAbsent(fileMd5, job);
+        return existing != null ? existing : job;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(MergeJob job, Long companyId, int chunkTotal, UploadFileParamsDto uploadFileParamsDto,
+                     String chunksDigest) {
+        String fileMd5 = job.state.getFileMd5();
+        update(job, MergeJobDto.RUNNING, null);
+        try {
+            RestResponse resp = mediaFileService.mergechunks(companyId, fileMd5, chunkTotal, uploadFileParamsDto,
+                    chunksDigest, job.progress);
+            if (resp.getCode() == 0) {
+                update(job, MergeJobDto.SUCCESS, null);
+            } else {
+                update(job, MergeJobDto.FAILED, resp.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("合并任务异常，MD5：{}，错误：{}", fileMd5, e.getMessage(), e);
+            update(job, MergeJobDto.FAILED, e.getMessage());
+        } finally {
+            uploadSessionRegistry.unpin(fileMd5);
+        }
+    }
+
+    private void update(MergeJob job, String status, String message) {
+        synchronized (job) {
+            job.state.setStatus(status);
+            job.state.setMessage(message);
+            job.state.setStage(job.progress.getStage());
+            job.state.setBytesMerged(job.progress.getBytesMerged());
+            job.state.setBytesUploaded(job.progress.getBytesUploaded());
+            job.state.setUpdateTime(LocalDateTime.now());
+            save(job.state);
+        }
+    }
+
+    private MergeJobDto newState(String fileMd5, int chunkTotal) {
+        MergeJobDto state = new MergeJobDto();
+        state.setFileMd5(fileMd5);
+        state.setStatus(MergeJobDto.QUEUED);
+        state.setStage(MergeProgress.QUEUED);
+        try {
+            if (chunkManifestStore.exists(fileMd5)) {
+                state.setTotalBytes(chunkManifestStore.get(fileMd5).getReceivedBytes());
+            }
+        } catch (IOException e) {
+            log.warn("读取分块清单失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+        state.setCreateTime(LocalDateTime.now());
+        state.setUpdateTime(state.getCreateTime());
+        return state;
+    }
+
+    /**
+     * 从状态文件恢复任务（节点重启后调用）；未完成的任务已随进程中断，标记为失败
+     */
+    private MergeJob load(String fileMd5) {
+        Path file = getStateFile(fileMd5);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            MergeJobDto state = JsonUtil.jsonToObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+                    MergeJobDto.class);
+            MergeJob job = new MergeJob(state);
+            job.progress.setStage(state.getStage());
+            if (MergeJobDto.QUEUED.equals(state.getStatus()) || MergeJobDto.RUNNING.equals(state.getStatus())) {
+                state.setStatus(MergeJobDto.FAILED);
+                state.setMessage("合并任务已中断，请重新提交");
+            }
+            return job;
+        } catch (Exception e) {
+            log.warn("读取合并任务状态失败：{}，错误：{}", fileMd5, e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(MergeJobDto state) {
+        try {
+            Path dir = Files.createDirectories(Paths.get(stateDir));
+            Path tmp = dir.resolve(state.getFileMd5() + ".json.tmp");
+            Files.write(tmp, JsonUtil.objectTojson(state).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, getStateFile(state.getFileMd5()), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存合并任务状态失败：{}，错误：{}", state.getFileMd5(), e.getMessage());
+        }
+    }
+
+    private void deleteState(String fileMd5) {
+        try {
+            Files.deleteIfExists(getStateFile(fileMd5));
+        } catch (IOException e) {
+            log.warn("删除合并任务状态失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除更新时间早于指定时间的已结束任务（清理任务调用）
+     *
+     * @param before 截止时间
+     * @return 删除的任务数
+     */
+    public int deleteFinished(LocalDateTime before) {
+        int deleted = 0;
+        Path dir = Paths.get(stateDir);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : stream) {
+                String fileMd5 = file.getFileName().toString().replace(".json", "");
+                MergeJob job = jobs.containsKey(fileMd5) ? jobs.get(fileMd5) : load(fileMd5);
+                if (job == null || job.state.getUpdateTime() == null) {
+                    continue;
+                }
+                String status = job.state.getStatus();
+                boolean finished = MergeJobDto.SUCCESS.equals(status) || MergeJobDto.FAILED.equals(status);
+                if (finished && job.state.getUpdateTime().isBefore(before)) {
+                    jobs.remove(fileMd5);
+                    deleteState(fileMd5);
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理合并任务状态失败：{}", e.getMessage());
+        }
+        return deleted;
+    }
+
+    private Path getStateFile(String fileMd5) {
+        return Paths.get(stateDir, fileMd5 + ".json");
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    AtomicInteger seq = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                        Thread thread = new Thread(r, "media-merge-" + seq.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 一个合并任务：持久化的状态 + 合并线程实时更新的进度
+     */
+    private static class MergeJob {
+
+        private final MergeJobDto state;
+
+        private final MergeProgress progress = new MergeProgress();
+
+        private MergeJob(MergeJobDto state) {
+            this.state = state;
+        }
+
+        private synchronized MergeJobDto snapshot() {
+            MergeJobDto copy = new MergeJobDto();
+            BeanUtils.copyProperties(state, copy);
+            if (MergeJobDto.RUNNING.equals(state.getStatus())) {
+                copy.setStage(progress.getStage());
+                copy.setBytesMerged(progress.getBytesMerged());
+                copy.setBytesUploaded(progress.getBytesUploaded());
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.xuecheng.media.service.impl;
+
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.PartETag;
+import com.xuecheng.base.utils.JsonUtil;
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.ChunkVerificationException;
+import com.xuecheng.media.service.MergeProgress;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 免合并分块上传（OSS分片上传直传）
+ * <p>
+ * 本地合并模式下，分块先落盘，mergechunks 时再整体拼接、整体上传，大视频合并要等几分钟。
+ * 分片直传模式下，每个分块到达时直接作为 OSS Multipart Upload 的一个分片转发上去，
+ * mergechunks 只需调用 completeMultipartUpload 并做组合校验，秒级完成。
+ * <p>
+ * 持久化（按 fileMd5 存放在分块目录下，节点重启后可继续）：
+ * - multipart.json：uploadId、对象名
+ * - parts.log：每上传成功一个分片追加一行（分片号,ETag,大小,CRC64），重传时以最后一行为准
+ * <p>
+ * 组合校验：每个分片转发时在本地流式计算 CRC64，完成时用 CRC64.combine 拼出整文件的 CRC64，
+ * 与 OSS 服务端返回的整文件 CRC64 比对。注意该模式下服务端不再持有完整文件，
+ * 不会重新计算整文件 MD5，fileMd5 仅作为文件标识使用。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class MultipartChunkUploader implements ChunkStore {
+
+    private static final String SESSION_FILE = "multipart.json";
+
+    private static final String PARTS_FILE = "parts.log";
+
+    @Autowired
+    OssService ossService;
+
+    /**
+     * 分块根目录
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    /**
+     * 分片上传会话缓存（fileMd5 -> 会话），同一文件的并发分块只初始化一次
+     */
+    private final Map<String, MultipartSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 进行中的分片上传初始化（fileMd5 -> 会话）
+     */
+    private final Map<String, CompletableFuture<MultipartSession>> initiating = new ConcurrentHashMap<>();
+
+    /**
+     * 转发一个分块到OSS
+     *
+     * @param fileMd5   文件MD5
+     * @param fileName  原始文件名（用于对象扩展名，可为空）
+     * @param chunk     分块序号（从0开始，对应分片号 chunk + 1）
+     * @param chunkFile 本地分块文件
+     */
+    public void uploadPart(String fileMd5, String fileName, int chunk, Path chunkFile) throws IOException {
+        uploadPart(fileMd5, fileName, chunk, chunkFile, null);
+    }
+
+    /**
+     * 转发一个分块到OSS，并由OSS按分块MD5校验内容
+     *
+     * @param fileMd5   文件MD5
+     * @param fileName  原始文件名（用于对象扩展名，可为空）
+     * @param chunk     分块序号（从0开始，对应分片号 chunk + 1）
+     * @param chunkFile 本地分块文件
+     * @param chunkMd5  前端计算的分块MD5（可为空，不一致时OSS拒绝该分片）
+     */
+    public void uploadPart(String fileMd5, String fileName, int chunk, Path chunkFile, String chunkMd5)
+            throws IOException {
+        try (InputStream in = Files.newInputStream(chunkFile)) {
+            writeChunk(fileMd5, chunk, fileName, in, Files.size(chunkFile), chunkMd5);
+        }
+    }
+
+    @Override
+    public String mode() {
+        return "multipart";
+    }
+
+    /**
+     * 从输入流转发一个分块到OSS（不落本地磁盘），转发的同时计算CRC64和MD5
+     */
+    @Override
+    public ChunkWriteResult writeChunk(String fileMd5, int chunk, String fileName, InputStream source, long size,
+                                       String chunkMd5) throws IOException {
+        MultipartSession session = getOrInitiate(fileMd5, fileName);
+        CRC64 crc64 = new CRC64();
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        PartETag partETag;
+        try (InputStream in = new CheckedInputStream(new DigestInputStream(source, md5), crc64)) {
+            partETag = ossService.uploadPart(session.getObjectName(), session.getUploadId(), chunk + 1, in, size,
+                    chunkMd5);
+        } catch (RuntimeException e) {
+            // 带分块MD5时OSS按 Content-MD5 拒绝内容不一致的分片
+            if (OssService.isDigestMismatch(e)) {
+                log.warn("分块校验失败，MD5：{}，分块：{}，期望：{}", fileMd5, chunk, chunkMd5);
+                throw new ChunkVerificationException("分块校验失败", e);
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+        String line = (chunk + 1) + "," + partETag.getETag() + "," + size + "," + crc64.getValue() + "\n";
+        synchronized (session) {
+            Files.write(chunkDirectory.resolve(fileMd5).resolve(PARTS_FILE), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        log.debug("分块已转发到OSS：{}，分片号：{}，大小：{}", fileMd5, chunk + 1, size);
+        return new ChunkWriteResult(size, Hex.encodeHexString(md5.digest()));
+    }
+
+    @Override
+    public BitSet listChunks(String fileMd5) throws IOException {
+        BitSet chunks = new BitSet();
+        for (Integer partNumber : readParts(fileMd5).keySet()) {
+            chunks.set(partNumber - 1);
+        }
+        return chunks;
+    }
+
+    @Override
+    public boolean hasUpload(String fileMd5) {
+        return hasSession(fileMd5);
+    }
+
+    /**
+     * 分片直传模式的合并即完成分片上传（组合CRC64校验，不计算整文件MD5）
+     */
+    @Override
+    public StoredFile merge(String fileMd5, int chunkTotal, String fileName, boolean chunksChecked,
+                            boolean skipDigest, MergeProgress progress) throws IOException {
+        // 分片已在上传分块时到达OSS，这里只需完成分片上传
+        progress.setStage(MergeProgress.MERGING);
+        CompleteResult result = complete(fileMd5, chunkTotal);
+        progress.addMerged(result.getSize());
+        return new StoredFile(result.getObjectName(), result.getSize());
+    }
+
+    @Override
+    public void delete(String fileMd5) {
+        abort(fileMd5);
+    }
+
+    /**
+     * 分块是否已转发成功
+     */
+    public boolean hasPart(String fileMd5, int chunk) throws IOException {
+        return readParts(fileMd5).containsKey(chunk + 1);
+    }
+
+    /**
+     * 是否存在分片上传会话
+     */
+    public boolean hasSession(String fileMd5) {
+        return sessions.containsKey(fileMd5) || Files.exists(chunkDirectory.resolve(fileMd5).resolve(SESSION_FILE));
+    }
+
+    /**
+     * 完成分片上传：校验分片齐全 → completeMultipartUpload → 组合CRC64校验
+     *
+     * @param fileMd5    文件MD5
+     * @param chunkTotal 分块总数
+     * @return 完成结果（对象名 + 文件大小）
+     */
+    public CompleteResult complete(String fileMd5, int chunkTotal) throws IOException {
+        MultipartSession session = loadSession(fileMd5);
+        if (session == null) {
+            throw new IOException("分片上传会话不存在");
+        }
+
+        Map<Integer, PartRecord> parts = readParts(fileMd5);
+        List<PartETag> partETags = new ArrayList<>(chunkTotal);
+        long combinedCrc = 0;
+        long size = 0;
+        for (int partNumber = 1; partNumber <= chunkTotal; partNumber++) {
+            PartRecord part = parts.get(partNumber);
+            if (part == null) {
+                throw ChunkVerificationException.missingChunk(partNumber - 1);
+            }
+            partETags.add(new PartETag(partNumber, part.getETag(), part.getSize(), part.getCrc64()));
+            combinedCrc = partNumber == 1 ? part.getCrc64() : CRC64.combine(combinedCrc, part.getCrc64(), part.getSize());
+            size += part.getSize();
+        }
+
+        CompleteMultipartUploadResult result = ossService.completeMultipartUpload(session.getObjectName(),
+                session.getUploadId(), partETags);
+
+        Long serverCrc = result.getServerCRC();
+        if (serverCrc != null && serverCrc != combinedCrc) {
+            log.error("分片组合校验失败，MD5：{}，本地CRC64：{}，服务端CRC64：{}", fileMd5, combinedCrc, serverCrc);
+            ossService.deleteFile(session.getObjectName());
+            discard(fileMd5);
+            throw ChunkVerificationException.fileMismatch();
+        }
+
+        discard(fileMd5);
+        return new CompleteResult(session.getObjectName(), size);
+    }
+
+    /**
+     * 取消分片上传并删除本地会话（清理任务调用）
+     */
+    public void abort(String fileMd5) {
+        try {
+            MultipartSession session = loadSession(fileMd5);
+            if (session != null) {
+                ossService.abortMultipartUpload(session.getObjectName(), session.getUploadId());
+            }
+        } catch (Exception e) {
+            log.warn("取消分片上传失败：{}，错误：{}", fileMd5, e.getMessage());
+        } finally {
+            sessions.remove(fileMd5);
+        }
+    }
+
+    private MultipartSession getOrInitiate(String fileMd5, String fileName) throws IOException {
+        MultipartSession session = loadSession(fileMd5);
+        if (session != null) {
+            return session;
+        }
+        // 初始化要请求OSS，不放在 sessions 的 computeIfAbsent 中（会占住同一分段的其他 fileMd5），
+        // 同一文件的并发分块等待第一个分块的初始化结果
+        CompletableFuture<MultipartSession> mine = new CompletableFuture<>();
+        CompletableFuture<MultipartSession> inFlight = initiating.putIfAbsent(fileMd5, mine);
+        if (inFlight != null) {
+            return awaitInitiate(inFlight);
+        }
+        try {
+            session = loadSession(fileMd5);
+            if (session == null) {
+                session = initiate(fileMd5, fileName);
+            }
+            mine.complete(session);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            initiating.remove(fileMd5, mine);
+        }
+    }
+
+    private MultipartSession initiate(String fileMd5, String fileName) throws IOException {
+        MultipartSession created = new MultipartSession();
+        created.setFileMd5(fileMd5);
+        created.setObjectName(ossService.buildObjectName(fileMd5, fileName));
+        try {
+            created.setUploadId(ossService.initiateMultipartUpload(created.getObjectName(), fileName, fileMd5));
+        } catch (RuntimeException e) {
+            throw new IOException("初始化分片上传失败：" + e.getMessage(), e);
+        }
+        created.setCreateTime(System.currentTimeMillis());
+        // 先写临时文件再改名，其他分块不会读到写了一半的会话文件
+        Path root = Files.createDirectories(chunkDirectory.resolve(fileMd5));
+        Path tmp = root.resolve(SESSION_FILE + ".tmp");
+        Files.write(tmp, JsonUtil.objectTojson(created).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, root.resolve(SESSION_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        MultipartSession existing = sessions.putIfAbsent(fileMd5, created);
+        return existing != null ? existing : created;
+    }
+
+    private MultipartSession awaitInitiate(CompletableFuture<MultipartSession> inFlight) throws IOException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待分片上传初始化被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private MultipartSession loadSession(String fileMd5) throws IOException {
+        MultipartSession session = sessions.get(fileMd5);
+        if (session != null) {
+            return session;
+        }
+        Path sessionFile = chunkDirectory.resolve(fileMd5).resolve(SESSION_FILE);
+        if (!Files.exists(sessionFile)) {
+            return null;
+        }
+        session = JsonUtil.jsonToObject(new String(Files.readAllBytes(sessionFile), StandardCharsets.UTF_8),
+                MultipartSession.class);
+        MultipartSession existing = sessions.putIfAbsent(fileMd5, session);
+        return existing != null ? existing : session;
+    }
+
+    private Map<Integer, PartRecord> readParts(String fileMd5) throws IOException {
+        Map<Integer, PartRecord> parts = new TreeMap<>();
+        Path partsFile = chunkDirectory.resolve(fileMd5).resolve(PARTS_FILE);
+        if (!Files.exists(partsFile)) {
+            return parts;
+        }
+        for (String line : Files.readAllLines(partsFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length != 4) {
+                // 写入中断留下的半行，忽略
+                continue;
+            }
+            int partNumber = Integer.parseInt(fields[0]);
+            parts.put(partNumber, new PartRecord(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+        }
+        return parts;
+    }
+
+    private void discard(String fileMd5) throws IOException {
+        sessions.remove(fileMd5);
+        Path root = chunkDirectory.resolve(fileMd5);
+        Files.deleteIfExists(root.resolve(SESSION_FILE));
+        Files.deleteIfExists(root.resolve(PARTS_FILE));
+    }
+
+    /**
+     * 分片上传会话（持久化到 multipart.json）
+     */
+    @Data
+    public static class MultipartSession {
+        private String fileMd5;
+        private String objectName;
+        private String uploadId;
+        private long createTime;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PartRecord {
+        private final String eTag;
+        private final long size;
+        private final long crc64;
+    }
+
+    /**
+     * 分片上传完成结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CompleteResult {
+        private final String objectName;
+        private final long size;
+    }
+}
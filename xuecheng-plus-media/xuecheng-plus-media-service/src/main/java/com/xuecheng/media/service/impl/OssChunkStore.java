@@ -0,0 +1,218 @@
+package com.xuecheng.media.service.impl;
+
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.PartETag;
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.ChunkVerificationException;
+import com.xuecheng.media.service.MergeProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OSS分块存储（多节点共享分块）
+ * <p>
+ * 每个分块作为临时对象存放在 {前缀}/文件MD5/分块序号，任何一个媒资节点收到的分块，
+ * 其他节点都能看到，续传协商和合并可以落在不同节点上。
+ * <p>
+ * 合并时不下载分块：新建分片上传，用 UploadPartCopy 把每个分块对象在服务端拷贝为一个分片，
+ * 完成后删除分块对象。分块写入时带 Content-MD5 由OSS校验；与 multipart 模式相同，
+ * 合并后不再计算整文件MD5，fileMd5 仅作为文件标识。
+ * <p>
+ * 注意：OSS要求除最后一个分片外每个分片不小于100KB，前端分块大小需满足该限制。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class OssChunkStore implements ChunkStore {
+
+    @Autowired
+    OssService ossService;
+
+    /**
+     * 分块对象前缀
+     */
+    @Value("${media.chunk.oss-prefix:xc-chunks/}")
+    String prefix = "xc-chunks/";
+
+    @Override
+    public String mode() {
+        return "oss";
+    }
+
+    @Override
+    public boolean isNodeLocal() {
+        return false;
+    }
+
+    @Override
+    public ChunkWriteResult writeChunk(String fileMd5, int chunk, String fileName, InputStream in, long size,
+                                       String chunkMd5) throws IOException {
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        try (InputStream digesting = new DigestInputStream(in, md5)) {
+            ossService.putObject(getChunkKey(fileMd5, chunk), digesting, size, chunkMd5);
+        } catch (RuntimeException e) {
+            // 带 Content-MD5 时OSS会拒绝内容不一致的分块
+            if (OssService.isDigestMismatch(e)) {
+                log.warn("分块校验失败，MD5：{}，分块：{}，期望：{}", fileMd5, chunk, chunkMd5);
+                throw new ChunkVerificationException("分块校验失败", e);
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+        String actualMd5 = Hex.encodeHexString(md5.digest());
+        if (chunkMd5 != null && !chunkMd5.isEmpty() && !chunkMd5.equalsIgnoreCase(actualMd5)) {
+            throw ChunkVerificationException.chunkMismatch();
+        }
+        return new ChunkWriteResult(size, actualMd5);
+    }
+
+    @Override
+    public BitSet listChunks(String fileMd5) {
+        BitSet chunks = new BitSet();
+        listChunkSizes(fileMd5).keySet().forEach(chunks::set);
+        return chunks;
+    }
+
+    /**
+     * 单个分块对象是否存在（一次 HEAD，不列出全部分块）
+     */
+    @Override
+    public boolean hasChunk(String fileMd5, int chunk) {
+        return ossService.fileExists(getChunkKey(fileMd5, chunk));
+    }
+
+    /**
+     * 分块前缀下有任意分块对象（只列出1个，分块乱序到达或分块0上传失败时也能找到该上传）
+     */
+    @Override
+    public boolean hasUpload(String fileMd5) {
+        try {
+            return !ossService.listObjectPage(getChunkPrefix(fileMd5), null, 1).getObjectSummaries().isEmpty();
+        } catch (RuntimeException e) {
+            log.warn("查询分块对象失败：{}，错误：{}", fileMd5, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public StoredFile merge(String fileMd5, int chunkTotal, String fileName, boolean chunksChecked,
+                            boolean skipDigest, MergeProgress progress) throws IOException {
+        Map<Integer, Long> sizes = listChunkSizes(fileMd5);
+        for (int i = 0; i < chunkTotal; i++) {
+            if (!sizes.containsKey(i)) {
+                throw ChunkVerificationException.missingChunk(i);
+            }
+        }
+
+        String objectName = ossService.buildObjectName(fileMd5, fileName);
+        String uploadId = ossService.initiateMultipartUpload(objectName, fileName, fileMd5);
+        try {
+            // 服务端拷贝，拷贝的字节数计入合并进度
+            progress.setStage(MergeProgress.MERGING);
+            List<PartETag> partETags = new ArrayList<>(chunkTotal);
+            long size = 0;
+            for (int i = 0; i < chunkTotal; i++) {
+                partETags.add(ossService.uploadPartCopy(getChunkKey(fileMd5, i), objectName, uploadId, i + 1,
+                        sizes.get(i)));
+                size += sizes.get(i);
+                progress.addMerged(sizes.get(i));
+            }
+            ossService.completeMultipartUpload(objectName, uploadId, partETags);
+            log.info("分块服务端拷贝合并完成：{}，分块数：{}，大小：{}", objectName, chunkTotal, size);
+            return new StoredFile(objectName, size);
+        } catch (RuntimeException e) {
+            try {
+                ossService.abortMultipartUpload(objectName, uploadId);
+            } catch (RuntimeException abortError) {
+                log.warn("取消分片上传失败：{}，错误：{}", objectName, abortError.getMessage());
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String fileMd5) {
+        try {
+            List<String> keys = new ArrayList<>();
+            for (OSSObjectSummary summary : ossService.listObjectSummaries(getChunkPrefix(fileMd5))) {
+                keys.add(summary.getKey());
+            }
+            deleteKeys(keys);
+        } catch (RuntimeException e) {
+            log.warn("删除分块对象失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除过期上传的分块对象（清理任务调用，处理中断的上传）
+     * <p>
+     * 按文件MD5整体判断：一个上传最新的分块早于指定时间才删除它的全部分块，
+     * 仍在进行的上传即使早期分块已很旧也不受影响。
+     *
+     * @param before 截止时间
+     * @return 删除的对象数
+     */
+    public int deleteExpired(Date before) {
+        Map<String, List<OSSObjectSummary>> uploads = new LinkedHashMap<>();
+        for (OSSObjectSummary summary : ossService.listObjectSummaries(prefix)) {
+            String name = summary.getKey().substring(prefix.length());
+            int slash = name.indexOf('/');
+            if (slash > 0) {
+                uploads.computeIfAbsent(name.substring(0, slash), k -> new ArrayList<>()).add(summary);
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        for (List<OSSObjectSummary> chunks : uploads.values()) {
+            boolean expired = chunks.stream()
+                    .allMatch(c -> c.getLastModified() != null && c.getLastModified().before(before));
+            if (expired) {
+                chunks.forEach(c -> keys.add(c.getKey()));
+            }
+        }
+        deleteKeys(keys);
+        return keys.size();
+    }
+
+    private void deleteKeys(List<String> keys) {
+        // 批量删除单次最多1000个对象
+        for (int from = 0; from < keys.size(); from += 1000) {
+            ossService.deleteFiles(keys.subList(from, Math.min(from + 1000, keys.size())));
+        }
+    }
+
+    private Map<Integer, Long> listChunkSizes(String fileMd5) {
+        Map<Integer, Long> sizes = new TreeMap<>();
+        String chunkPrefix = getChunkPrefix(fileMd5);
+        for (OSSObjectSummary summary : ossService.listObjectSummaries(chunkPrefix)) {
+            String name = summary.getKey().substring(chunkPrefix.length());
+            if (!name.isEmpty() && name.chars().allMatch(Character::isDigit)) {
+                sizes.put(Integer.valueOf(name), summary.getSize());
+            }
+        }
+        return sizes;
+    }
+
+    private String getChunkPrefix(String fileMd5) {
+        return prefix + fileMd5 + "/";
+    }
+
+    private String getChunkKey(String fileMd5, int chunk) {
+        return getChunkPrefix(fileMd5) + chunk;
+    }
+}
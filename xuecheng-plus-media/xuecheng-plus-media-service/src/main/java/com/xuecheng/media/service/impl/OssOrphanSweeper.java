@@ -0,0 +1,328 @@
+package com.xuecheng.media.service.impl;
+
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.mapper.MediaProcessHistoryMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.model.po.MediaProcessHistory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * OSS 孤立对象清理
+ * <p>
+ * 重新上传同一文件时 addMediaFilesToDb 覆盖 file_path，旧对象不再被任何记录引用，但一直留在 bucket 中计费。
+ * 清理过程不把对象列表和数据库记录整体加载到内存：
+ * <p>
+ * 1. 按 marker 逐页列出 bucket 中的对象（对象名升序）
+ * 2. 同时按 file_path 升序分页读取 media_files（WHERE file_path > 上一页最后一个），与对象列表归并比较，
+ * 对不上的对象作为候选
+ * 3. 候选攒满一批后再按对象名查一次 media_files（file_path / url）、media_process_history（url），
+ * hls/{媒资ID}/ 下的对象按媒资ID是否存在判断；数据库排序规则与对象名排序不一致时，多出的候选在这一步排除
+ * 4. 确认无引用的对象用 DeleteObjects 批量删除（每批最多1000个），按 deletes-per-second 限速
+ * <p>
+ * 修改时间在 min-age-hours 以内的对象跳过（上传完成到入库之间的对象），exclude-prefixes 下的对象
+ * （如 oss 模式的分块临时对象，由分块清理任务负责）跳过。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class OssOrphanSweeper {
+
+    private static final String HLS_PREFIX = "hls/";
+
+    @Autowired
+    OssService ossService;
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    @Autowired
+    MediaProcessHistoryMapper mediaProcessHistoryMapper;
+
+    /**
+     * 最近修改的对象不清理（小时）
+     */
+    @Value("${media.sweeper.min-age-hours:24}")
+    long minAgeHours = 24;
+
+    /**
+     * 每秒最多删除的对象数
+     */
+    @Value("${media.sweeper.deletes-per-second:1000}")
+    int deletesPerSecond = 1000;
+
+    /**
+     * 每页对象数、每批确认和删除的对象数、每页读取的 file_path 数（最多1000）
+     */
+    @Value("${media.sweeper.batch-size:1000}")
+    int batchSize = 1000;
+
+    /**
+     * 不清理的对象名前缀（逗号分隔）
+     */
+    @Value("${media.sweeper.exclude-prefixes:${media.chunk.oss-prefix:xc-chunks/}}")
+    String excludePrefixes = "xc-chunks/";
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * 清理孤立对象
+     *
+     * @param dryRun   只统计不删除
+     * @param progress 每批处理后的进度（写入调度中心执行日志）
+     * @return 清理结果
+     */
+    public Summary sweep(boolean dryRun, Consumer<String> progress) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("孤立对象清理正在执行");
+        }
+        try {
+            return doSweep(dryRun, progress);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Summary doSweep(boolean dryRun, Consumer<String> progress) {
+        int size = Math.max(1, Math.min(batchSize, OssService.DELETE_BATCH_SIZE));
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(minAgeHours);
+        List<String> excludes = new ArrayList<>();
+        for (String prefix : excludePrefixes.split(",")) {
+            if (!prefix.trim().isEmpty()) {
+                excludes.add(prefix.trim());
+            }
+        }
+
+        Summary summary = new Summary();
+        summary.dryRun = dryRun;
+        FilePathCursor paths = new FilePathCursor(size);
+        Map<String, Long> candidates = new LinkedHashMap<>();
+        long nextDeleteAt = System.nanoTime();
+        String marker = null;
+        ObjectListing listing;
+        do {
+            listing = ossService.listObjectPage("", marker, size);
+            for (OSSObjectSummary object : listing.getObjectSummaries()) {
+                summary.scanned++;
+                String key = object.getKey();
+                if (excluded(key, excludes)) {
+                    summary.skipped++;
+                    continue;
+                }
+                if (object.getLastModified() == null || object.getLastModified().getTime() > cutoff) {
+                    summary.recent++;
+                    continue;
+                }
+                if (!paths.contains(key)) {
+                    candidates.put(key, object.getSize());
+                }
+                if (candidates.size() >= size) {
+                    nextDeleteAt = flush(candidates, summary, nextDeleteAt, progress);
+                }
+            }
+            marker = listing.getNextMarker();
+        } while (listing.isTruncated() && marker != null);
+        flush(candidates, summary, nextDeleteAt, progress);
+        log.info("OSS孤立对象清理完成：{}", summary);
+        return summary;
+    }
+
+    /**
+     * 确认一批候选对象确实没有引用，删除并限速
+     *
+     * @return 下一批最早可以开始删除的时间（System.nanoTime）
+     */
+    private long flush(Map<String, Long> candidates, Summary summary, long nextDeleteAt, Consumer<String> progress) {
+        if (candidates.isEmpty()) {
+            return nextDeleteAt;
+        }
+        Set<String> referenced = referenced(candidates.keySet());
+        List<String> orphans = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            if (!referenced.contains(entry.getKey())) {
+                orphans.add(entry.getKey());
+                summary.orphanBytes += entry.getValue();
+            }
+        }
+        candidates.clear();
+        summary.orphans += orphans.size();
+        if (orphans.isEmpty() || summary.dryRun) {
+            return nextDeleteAt;
+        }
+
+        long wait = nextDeleteAt - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("孤立对象清理被中断");
+            }
+        }
+        summary.deleted += ossService.deleteFiles(orphans);
+        if (progress != null) {
+            progress.accept("已扫描 " + summary.scanned + " 个对象，已删除 " + summary.deleted + " 个孤立对象");
+        }
+        long pause = deletesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(orphans.size()) / deletesPerSecond : 0;
+        return System.nanoTime() + pause;
+    }
+
+    /**
+     * 候选对象中仍被引用的对象名
+     */
+    private Set<String> referenced(Set<String> keys) {
+        Set<String> referenced = new HashSet<>();
+        List<MediaFiles> files = mediaFilesMapper.selectList(new LambdaQueryWrapper<MediaFiles>()
+                .select(MediaFiles::getFilePath, MediaFiles::getUrl)
+                .in(MediaFiles::getFilePath, keys)
+                .or()
+                .in(MediaFiles::getUrl, keys));
+        for (MediaFiles file : files) {
+            referenced.add(file.getFilePath());
+            referenced.add(file.getUrl());
+        }
+        List<MediaProcessHistory> histories = mediaProcessHistoryMapper.selectList(
+                new LambdaQueryWrapper<MediaProcessHistory>()
+                        .select(MediaProcessHistory::getUrl)
+                        .in(MediaProcessHistory::getUrl, keys));
+        for (MediaProcessHistory history : histories) {
+            referenced.add(history.getUrl());
+        }
+
+        // HLS 输出按媒资ID判断：媒资存在则 hls/{媒资ID}/ 下的对象都保留
+        Map<String, List<String>> hlsKeys = new LinkedHashMap<>();
+        for (String key : keys) {
+            int slash = key.indexOf('/', HLS_PREFIX.length());
+            if (key.startsWith(HLS_PREFIX) && slash > HLS_PREFIX.length()) {
+                hlsKeys.computeIfAbsent(key.substring(HLS_PREFIX.length(), slash), id -> new ArrayList<>()).add(key);
+            }
+        }
+        if (!hlsKeys.isEmpty()) {
+            for (MediaFiles file : mediaFilesMapper.selectList(new LambdaQueryWrapper<MediaFiles>()
+                    .select(MediaFiles::getId)
+                    .in(MediaFiles::getId, hlsKeys.keySet()))) {
+                List<String> owned = hlsKeys.get(file.getId());
+                if (owned != null) {
+                    referenced.addAll(owned);
+                }
+            }
+        }
+        return referenced;
+    }
+
+    private static boolean excluded(String key, List<String> excludes) {
+        for (String prefix : excludes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按 file_path 升序分页读取 media_files，与对象列表归并（只保留当前一页）
+     */
+    private class FilePathCursor {
+
+        private final int pageSize;
+
+        private List<String> page = new ArrayList<>();
+
+        private int position;
+
+        private String last;
+
+        private boolean exhausted;
+
+        FilePathCursor(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * 对象名是否等于某个 file_path（对象名需按升序传入）
+         */
+        boolean contains(String key) {
+            while (true) {
+                if (position == page.size() && !fetch()) {
+                    return false;
+                }
+                int cmp = page.get(position).compareTo(key);
+                if (cmp == 0) {
+                    return true;
+                }
+                if (cmp > 0) {
+                    return false;
+                }
+                position++;
+            }
+        }
+
+        private boolean fetch() {
+            if (exhausted) {
+                return false;
+            }
+            List<MediaFiles> rows = mediaFilesMapper.selectList(new LambdaQueryWrapper<MediaFiles>()
+                    .select(MediaFiles::getFilePath)
+                    .isNotNull(last == null, MediaFiles::getFilePath)
+                    .gt(last != null, MediaFiles::getFilePath, last)
+                    .orderByAsc(MediaFiles::getFilePath)
+                    .last("LIMIT " + pageSize));
+            page = new ArrayList<>(rows.size());
+            for (MediaFiles row : rows) {
+                page.add(row.getFilePath());
+            }
+            position = 0;
+            exhausted = rows.size() < pageSize;
+            if (page.isEmpty()) {
+                return false;
+            }
+            last = page.get(page.size() - 1);
+            return true;
+        }
+    }
+
+    /**
+     * 一次清理的结果
+     */
+    @Getter
+    public static class Summary {
+
+        private boolean dryRun;
+
+        private long scanned;
+
+        private long skipped;
+
+        private long recent;
+
+        private long orphans;
+
+        private long orphanBytes;
+
+        private long deleted;
+
+        @Override
+        public String toString() {
+            return String.format("扫描对象 %d 个，跳过 %d，最近修改 %d，孤立 %d 个（%dMB），%s %d 个",
+                    scanned, skipped, recent, orphans, orphanBytes / 1024 / 1024, dryRun ? "试运行未删除" : "已删除",
+                    deleted);
+        }
+    }
+}
@@ -1,26 +1,47 @@
 package com.xuecheng.media.service.impl;
 
 import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.common.utils.CRC64;
 import com.aliyun.oss.model.*;
 import com.j256.simplemagic.ContentInfo;
 import com.j256.simplemagic.ContentInfoUtil;
+import com.xuecheng.media.service.UploadContext;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.zip.CheckedInputStream;
 
 /**
  * 阿里云OSS文件服务
@@ -32,6 +53,8 @@ import java.util.List;
  * 4. 文件列表查询
  * 5. 生成临时访问URL
  * 6. MD5文件完整性校验
+ * 7. 分片上传（初始化 / 上传分片 / 完成 / 取消）
+ * 8. 大文件自动并行分片上传（超过阈值时，支持断点续传）
  *
  * @author 学成在线项目组
  */
@@ -39,15 +62,79 @@ import java.util.List;
 @Service
 public class OssService {
 
+    /**
+     * DeleteObjects 单次请求的最大对象数
+     */
+    public static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * 上传时记录的文件MD5（用户元信息 x-oss-meta-md5）
+     * <p>
+     * 只作为标识（如分片上传断点续传的检查点），不作为内容校验的依据：分片直传、跳过整文件MD5等模式下
+     * 记录的是前端给出、未经服务端验证的MD5
+     */
+    public static final String MD5_METADATA = "md5";
+
     @Autowired
     private OSS ossClient;
 
+    /**
+     * 不校验CRC64的客户端（aliyun.oss.client.skip-crc-for-verified-uploads=true 时才有），
+     * 只用于带 Content-MD5 的上传
+     */
+    @Autowired(required = false)
+    @Qualifier("ossVerifiedUploadClient")
+    private OSS ossVerifiedUploadClient;
+
     @Value("${aliyun.oss.endpoint}")
     private String endpoint;
 
     @Value("${aliyun.oss.bucketName}")
     private String bucketName;
 
+    /**
+     * 超过该大小（字节）的文件改用并行分片上传，默认100MB
+     */
+    @Value("${aliyun.oss.multipart.threshold:104857600}")
+    private long multipartThreshold;
+
+    /**
+     * 并行分片上传的分片大小（字节），默认10MB
+     */
+    @Value("${aliyun.oss.multipart.part-size:10485760}")
+    private long multipartPartSize;
+
+    /**
+     * 并行分片上传线程数（所有上传共用）
+     */
+    @Value("${aliyun.oss.multipart.threads:4}")
+    private int multipartThreads;
+
+    /**
+     * 单个分片失败后的重试次数
+     */
+    @Value("${aliyun.oss.multipart.max-retries:3}")
+    private int multipartMaxRetries;
+
+    /**
+     * 断点续传检查点目录
+     */
+    @Value("${aliyun.oss.multipart.checkpoint-dir:${java.io.tmpdir}/xc-oss-checkpoint}")
+    private String multipartCheckpointDir;
+
+    /**
+     * 并行分片上传线程池（首次使用时创建）
+     */
+    private volatile ExecutorService multipartExecutor;
+
+    private final ParallelMultipartUploader.Metrics multipartMetrics = new ParallelMultipartUploader.Metrics();
+
+    /**
+     * 元信息无法校验时按范围流式读取计算MD5，每次请求的字节数（默认8MB）
+     */
+    @Value("${aliyun.oss.verify.range-size:8388608}")
+    private long verifyRangeSize = 8L * 1024 * 1024;
+
     /**
      * 上传文件到OSS（按日期分目录）
      * <p>
@@ -81,13 +168,7 @@ public class OssService {
             String contentType = getMimeType(extension);
 
             // 5. 上传文件
-            FileInputStream inputStream = new FileInputStream(file);
-            ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentType(contentType);
-            metadata.setContentLength(file.length());
-
-            ossClient.putObject(bucketName, objectName, inputStream, metadata);
-            inputStream.close();
+            putFile(file, objectName, contentType, fileMd5, null);
 
             log.info("文件上传成功：{}", objectName);
             return objectName;
@@ -102,6 +183,28 @@ public class OssService {
      * 使用原始文件名决定对象扩展名与ContentType，避免.tmp 后缀。
      */
     public String uploadFile(String localFilePath, String originalFileName) {
+        return uploadFile(localFilePath, originalFileName, null);
+    }
+
+    /**
+     * 使用调用方已校验过的MD5上传，避免再读一遍文件计算摘要。
+     *
+     * @param localFilePath    本地文件路径
+     * @param originalFileName 原始文件名（决定扩展名与ContentType）
+     * @param fileMd5          已计算好的文件MD5，为空时在此计算
+     * @return OSS中的文件路径
+     */
+    public String uploadFile(String localFilePath, String originalFileName, String fileMd5) {
+        return uploadFile(localFilePath, originalFileName, fileMd5, null);
+    }
+
+    /**
+     * 使用已校验过的MD5上传，并报告上传进度
+     *
+     * @param progress 每上传一段数据回调一次字节数（可为空）
+     * @see #uploadFile(String, String, String)
+     */
+    public String uploadFile(String localFilePath, String originalFileName, String fileMd5, LongConsumer progress) {
         try {
             File file = new File(localFilePath);
             if (!file.exists()) {
@@ -113,19 +216,88 @@ public class OssService {
                 extension = originalFileName.substring(originalFileName.lastIndexOf("."));
             }
 
-            String dateFolder = getDateFolder();
-            String fileMd5 = getFileMd5(file);
-            String objectName = dateFolder + fileMd5 + extension;
+            if (fileMd5 == null || fileMd5.isEmpty()) {
+                fileMd5 = getFileMd5(file);
+            }
+            String objectName = buildObjectName(fileMd5, originalFileName);
 
             String contentType = getMimeType(extension);
 
-            FileInputStream inputStream = new FileInputStream(file);
-            ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentType(contentType);
-            metadata.setContentLength(file.length());
+            putFile(file, objectName, contentType, fileMd5, progress);
 
-            ossClient.putObject(bucketName, objectName, inputStream, metadata);
-            inputStream.close();
+            log.info("文件上传成功：{}", objectName);
+            return objectName;
+        } catch (Exception e) {
+            log.error("文件上传失败：{}", e.getMessage(), e);
+            throw new RuntimeException("文件上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 上传本地文件到指定对象名（HLS 分段、播放列表等对象名由调用方决定的文件）
+     *
+     * @param localFilePath 本地文件路径
+     * @param objectName    OSS对象名
+     * @param contentType   ContentType（为空时按扩展名识别）
+     */
+    public void putFile(String localFilePath, String objectName, String contentType) {
+        try {
+            File file = new File(localFilePath);
+            if (!file.exists()) {
+                throw new RuntimeException("文件不存在：" + localFilePath);
+            }
+            if (contentType == null) {
+                String extension = objectName.contains(".") ? objectName.substring(objectName.lastIndexOf(".")) : "";
+                contentType = getMimeType(extension);
+            }
+            putFile(file, objectName, contentType, null, null);
+        } catch (Exception e) {
+            log.error("文件上传失败：{}，错误：{}", objectName, e.getMessage(), e);
+            throw new RuntimeException("文件上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 使用上传上下文中已算好的MD5、大小和文件类型上传，不再读取文件计算摘要。
+     *
+     * @param context 上传上下文
+     * @return OSS中的文件路径
+     */
+    public String uploadFile(UploadContext context) {
+        try {
+            File file = null;
+            if (!context.isInMemory()) {
+                file = new File(context.getLocalFilePath());
+                if (!file.exists()) {
+                    throw new RuntimeException("文件不存在：" + context.getLocalFilePath());
+                }
+            }
+
+            String objectName = buildObjectName(context.getFileMd5(), context.getOriginalFilename());
+
+            String contentType = context.getContentType();
+            if (contentType == null || contentType.isEmpty()
+                    || MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentType)) {
+                String originalFileName = context.getOriginalFilename();
+                String extension = originalFileName != null && originalFileName.contains(".")
+                        ? originalFileName.substring(originalFileName.lastIndexOf(".")) : "";
+                contentType = getMimeType(extension);
+            }
+
+            if (file != null) {
+                putFile(file, objectName, contentType, context.getFileMd5(), null);
+            } else {
+                // 内存中的小文件直接上传，不经过磁盘
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentType(contentType);
+                metadata.setContentLength(context.getFileSize());
+                if (context.getFileMd5() != null) {
+                    metadata.addUserMetadata(MD5_METADATA, context.getFileMd5().toLowerCase());
+                }
+                try (InputStream inputStream = context.openStream()) {
+                    ossClient.putObject(bucketName, objectName, inputStream, metadata);
+                }
+            }
 
             log.info("文件上传成功：{}", objectName);
             return objectName;
@@ -135,6 +307,291 @@ public class OssService {
         }
     }
 
+    /**
+     * 上传本地文件：小文件直接 putObject，超过阈值的大文件并行分片上传
+     *
+     * @param md5 内容MD5（已知时记录到用户元信息，供 verifyFileMd5 免下载校验，可为空）
+     */
+    private void putFile(File file, String objectName, String contentType, String md5, LongConsumer progress)
+            throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        if (md5 != null && !md5.isEmpty()) {
+            metadata.addUserMetadata(MD5_METADATA, md5.toLowerCase());
+        }
+
+        if (multipartThreshold > 0 && file.length() >= multipartThreshold) {
+            new ParallelMultipartUploader(ossClient, bucketName, getMultipartExecutor(), multipartPartSize,
+                    multipartMaxRetries, Paths.get(multipartCheckpointDir), multipartMetrics)
+                    .upload(file, objectName, metadata, progress);
+            return;
+        }
+
+        metadata.setContentLength(file.length());
+        try (InputStream inputStream = progress == null ? new FileInputStream(file)
+                : new ProxyInputStream(new FileInputStream(file)) {
+                    @Override
+                    protected void afterRead(int n) {
+                        if (n > 0) {
+                            progress.accept(n);
+                        }
+                    }
+                }) {
+            ossClient.putObject(bucketName, objectName, inputStream, metadata);
+        }
+    }
+
+    /**
+     * 已知内容MD5时：Content-MD5 交由OSS校验内容，同时记录到用户元信息
+     */
+    private static void setMd5(ObjectMetadata metadata, String md5) {
+        if (md5 == null || md5.isEmpty()) {
+            return;
+        }
+        try {
+            metadata.setContentMD5(Base64.getEncoder().encodeToString(Hex.decodeHex(md5.toCharArray())));
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("MD5格式错误：" + md5);
+        }
+        metadata.addUserMetadata(MD5_METADATA, md5.toLowerCase());
+    }
+
+    /**
+     * 是否因内容与 Content-MD5 不一致被OSS拒绝（uploadPart、putObject 抛出的异常保留了原始异常）
+     */
+    public static boolean isDigestMismatch(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OSSException
+                    && OSSErrorCode.INVALID_DIGEST.equals(((OSSException) cause).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 带 Content-MD5 的上传可以使用不校验CRC64的客户端
+     */
+    private OSS uploadClient(ObjectMetadata metadata) {
+        return metadata.getContentMD5() != null && ossVerifiedUploadClient != null ? ossVerifiedUploadClient : ossClient;
+    }
+
+    /**
+     * 取消失败后一直没有重试的并行分片上传（检查点最后修改时间早于 before），删除其检查点
+     *
+     * @return 取消的上传数
+     */
+    public int abortExpiredMultipartUploads(Date before) {
+        return new ParallelMultipartUploader(ossClient, bucketName, null, multipartPartSize, multipartMaxRetries,
+                Paths.get(multipartCheckpointDir), multipartMetrics).abortExpired(before.getTime());
+    }
+
+    /**
+     * 并行分片上传统计（累计上传字节、上传速率、进行中分片数）
+     */
+    public ParallelMultipartUploader.Metrics getMultipartMetrics() {
+        return multipartMetrics;
+    }
+
+    private ExecutorService getMultipartExecutor() {
+        if (multipartExecutor == null) {
+            synchronized (this) {
+                if (multipartExecutor == null) {
+                    AtomicInteger seq = new AtomicInteger();
+                    multipartExecutor = new ThreadPoolExecutor(multipartThreads, multipartThreads,
+                            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "oss-multipart-" + seq.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return multipartExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (multipartExecutor != null) {
+            multipartExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 生成OSS对象名：2025/01/06/MD5值.扩展名
+     *
+     * @param fileMd5          文件MD5
+     * @param originalFileName 原始文件名（可为空，为空时不带扩展名）
+     * @return OSS对象名
+     */
+    public String buildObjectName(String fileMd5, String originalFileName) {
+        String extension = "";
+        if (originalFileName != null && originalFileName.contains(".")) {
+            extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        }
+        return getDateFolder() + fileMd5 + extension;
+    }
+
+    // =================== 分片上传（Multipart Upload） ===================
+
+    /**
+     * 初始化分片上传
+     *
+     * @param objectName       OSS对象名
+     * @param originalFileName 原始文件名（决定ContentType）
+     * @return uploadId
+     */
+    public String initiateMultipartUpload(String objectName, String originalFileName) {
+        return initiateMultipartUpload(objectName, originalFileName, null);
+    }
+
+    /**
+     * 初始化分片上传
+     *
+     * @param objectName       OSS对象名
+     * @param originalFileName 原始文件名（决定ContentType）
+     * @param md5              整个文件的MD5（已知时记录到用户元信息，分片上传的 ETag 不是内容MD5，可为空）
+     * @return uploadId
+     */
+    public String initiateMultipartUpload(String objectName, String originalFileName, String md5) {
+        try {
+            String extension = "";
+            if (originalFileName != null && originalFileName.contains(".")) {
+                extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(getMimeType(extension));
+            if (md5 != null) {
+                metadata.addUserMetadata(MD5_METADATA, md5.toLowerCase());
+            }
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, objectName, metadata);
+            String uploadId = ossClient.initiateMultipartUpload(request).getUploadId();
+            log.info("初始化分片上传成功：{}，uploadId：{}", objectName, uploadId);
+            return uploadId;
+        } catch (Exception e) {
+            log.error("初始化分片上传失败：{}", e.getMessage(), e);
+            throw new RuntimeException("初始化分片上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 上传一个分片
+     *
+     * @param objectName  OSS对象名
+     * @param uploadId    分片上传ID
+     * @param partNumber  分片号（从1开始）
+     * @param inputStream 分片内容
+     * @param partSize    分片大小
+     * @return 分片ETag
+     */
+    public PartETag uploadPart(String objectName, String uploadId, int partNumber, InputStream inputStream, long partSize) {
+        return uploadPart(objectName, uploadId, partNumber, inputStream, partSize, null);
+    }
+
+    /**
+     * 上传一个分片，并由OSS服务端按 Content-MD5 校验分片内容（不一致时OSS拒绝该分片）
+     *
+     * @param objectName  OSS对象名
+     * @param uploadId    分片上传ID
+     * @param partNumber  分片号（从1开始）
+     * @param inputStream 分片内容
+     * @param partSize    分片大小
+     * @param partMd5     分片MD5（32位十六进制，可为空）
+     * @return 分片ETag
+     */
+    public PartETag uploadPart(String objectName, String uploadId, int partNumber, InputStream inputStream,
+                               long partSize, String partMd5) {
+        try {
+            UploadPartRequest request = new UploadPartRequest(bucketName, objectName, uploadId, partNumber,
+                    inputStream, partSize);
+            if (partMd5 != null && !partMd5.isEmpty()) {
+                request.setMd5Digest(Base64.getEncoder().encodeToString(Hex.decodeHex(partMd5.toCharArray())));
+            }
+            return ossClient.uploadPart(request).getPartETag();
+        } catch (Exception e) {
+            log.error("上传分片失败：{}，分片号：{}，错误：{}", objectName, partNumber, e.getMessage(), e);
+            throw new RuntimeException("上传分片失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 完成分片上传（服务端拼接所有分片）
+     *
+     * @param objectName OSS对象名
+     * @param uploadId   分片上传ID
+     * @param partETags  按分片号升序排列的分片列表
+     * @return 完成结果（包含服务端CRC64）
+     */
+    public CompleteMultipartUploadResult completeMultipartUpload(String objectName, String uploadId, List<PartETag> partETags) {
+        try {
+            CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucketName, objectName,
+                    uploadId, partETags);
+            CompleteMultipartUploadResult result = ossClient.completeMultipartUpload(request);
+            log.info("分片上传完成：{}，分片数：{}", objectName, partETags.size());
+            return result;
+        } catch (Exception e) {
+            log.error("完成分片上传失败：{}", e.getMessage(), e);
+            throw new RuntimeException("完成分片上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 把已有对象复制为分片（服务端拷贝，数据不经过本服务）
+     *
+     * @param sourceKey  源对象名
+     * @param objectName 目标对象名
+     * @param uploadId   分片上传ID
+     * @param partNumber 分片号（从1开始）
+     * @param partSize   源对象大小
+     * @return 分片ETag
+     */
+    public PartETag uploadPartCopy(String sourceKey, String objectName, String uploadId, int partNumber, long partSize) {
+        try {
+            UploadPartCopyRequest request = new UploadPartCopyRequest(bucketName, sourceKey, bucketName, objectName,
+                    uploadId, partNumber, 0L, partSize);
+            return ossClient.uploadPartCopy(request).getPartETag();
+        } catch (Exception e) {
+            log.error("拷贝分片失败：{} -> {}，分片号：{}，错误：{}", sourceKey, objectName, partNumber, e.getMessage(), e);
+            throw new RuntimeException("拷贝分片失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 取消分片上传（释放OSS中已上传的分片）
+     *
+     * @param objectName OSS对象名
+     * @param uploadId   分片上传ID
+     */
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            ossClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectName, uploadId));
+            log.info("取消分片上传：{}，uploadId：{}", objectName, uploadId);
+        } catch (Exception e) {
+            log.error("取消分片上传失败：{}", e.getMessage(), e);
+            throw new RuntimeException("取消分片上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 上传输入流为对象（带 Content-MD5 时由OSS校验内容，不一致会拒绝）
+     *
+     * @param objectName  OSS对象名
+     * @param inputStream 内容
+     * @param size        内容长度
+     * @param md5         内容MD5（32位十六进制，可为空）
+     */
+    public void putObject(String objectName, InputStream inputStream, long size, String md5) {
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(size);
+            setMd5(metadata, md5);
+            uploadClient(metadata).putObject(bucketName, objectName, inputStream, metadata);
+        } catch (Exception e) {
+            log.error("上传对象失败：{}，错误：{}", objectName, e.getMessage(), e);
+            throw new RuntimeException("上传对象失败：" + e.getMessage(), e);
+        }
+    }
+
     /**
      * 上传文件并返回访问URL
      *
@@ -191,17 +648,24 @@ public class OssService {
     }
 
     /**
-     * 批量删除文件
+     * 批量删除文件（每次请求最多1000个对象，超出时分批删除）
      *
      * @param objectNames 文件路径列表
+     * @return 删除的对象数
      */
-    public void deleteFiles(List<String> objectNames) {
+    public int deleteFiles(List<String> objectNames) {
+        int deleted = 0;
         try {
-            DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
-                    .withKeys(objectNames);
-            DeleteObjectsResult result = ossClient.deleteObjects(request);
+            for (int from = 0; from < objectNames.size(); from += DELETE_BATCH_SIZE) {
+                List<String> batch = objectNames.subList(from, Math.min(from + DELETE_BATCH_SIZE, objectNames.size()));
+                DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
+                        .withKeys(new ArrayList<>(batch));
+                DeleteObjectsResult result = ossClient.deleteObjects(request);
+                deleted += result.getDeletedObjects().size();
+            }
 
-            log.info("批量删除文件成功，删除数量：{}", result.getDeletedObjects().size());
+            log.info("批量删除文件成功，删除数量：{}", deleted);
+            return deleted;
 
         } catch (Exception e) {
             log.error("批量删除文件失败：{}", e.getMessage(), e);
@@ -210,29 +674,65 @@ public class OssService {
     }
 
     /**
-     * 列出指定目录下的所有文件
+     * 列出指定目录下的所有文件（按 marker 分页拉取）
      *
      * @param prefix 目录前缀（如：2025/01/06/）
      * @return 文件列表
      */
     public List<String> listFiles(String prefix) {
         List<String> fileList = new ArrayList<>();
+        for (OSSObjectSummary summary : listObjectSummaries(prefix)) {
+            fileList.add(summary.getKey());
+        }
+        log.info("查询文件列表成功，目录：{}，文件数量：{}", prefix, fileList.size());
+        return fileList;
+    }
+
+    /**
+     * 列出一页对象（调用方按 getNextMarker 继续拉取，适合逐页处理整个 bucket，不一次加载全部对象）
+     *
+     * @param prefix  对象名前缀
+     * @param marker  上一页的 nextMarker（第一页为空）
+     * @param maxKeys 每页对象数（最多1000）
+     * @return 对象列表（按对象名升序），isTruncated 为 true 时还有下一页
+     */
+    public ObjectListing listObjectPage(String prefix, String marker, int maxKeys) {
         try {
             ListObjectsRequest request = new ListObjectsRequest(bucketName);
             request.setPrefix(prefix);
-            request.setMaxKeys(1000);
-
-            ObjectListing listing = ossClient.listObjects(request);
-            for (OSSObjectSummary summary : listing.getObjectSummaries()) {
-                fileList.add(summary.getKey());
-            }
-
-            log.info("查询文件列表成功，目录：{}，文件数量：{}", prefix, fileList.size());
-            return fileList;
+            request.setMarker(marker);
+            request.setMaxKeys(Math.min(maxKeys, 1000));
+            return ossClient.listObjects(request);
+        } catch (Exception e) {
+            log.error("查询对象列表失败：{}，错误：{}", prefix, e.getMessage(), e);
+            throw new RuntimeException("查询对象列表失败：" + e.getMessage());
+        }
+    }
 
+    /**
+     * 列出指定前缀下的全部对象（按 marker 分页拉取，不受单页1000个的限制）
+     *
+     * @param prefix 对象名前缀
+     * @return 对象摘要列表（按对象名升序）
+     */
+    public List<OSSObjectSummary> listObjectSummaries(String prefix) {
+        List<OSSObjectSummary> summaries = new ArrayList<>();
+        try {
+            String marker = null;
+            ObjectListing listing;
+            do {
+                ListObjectsRequest request = new ListObjectsRequest(bucketName);
+                request.setPrefix(prefix);
+                request.setMarker(marker);
+                request.setMaxKeys(1000);
+                listing = ossClient.listObjects(request);
+                summaries.addAll(listing.getObjectSummaries());
+                marker = listing.getNextMarker();
+            } while (listing.isTruncated());
+            return summaries;
         } catch (Exception e) {
-            log.error("查询文件列表失败：{}", e.getMessage(), e);
-            throw new RuntimeException("查询文件列表失败：" + e.getMessage());
+            log.error("查询对象列表失败：{}，错误：{}", prefix, e.getMessage(), e);
+            throw new RuntimeException("查询对象列表失败：" + e.getMessage());
         }
     }
 
@@ -306,38 +806,82 @@ public class OssService {
     }
 
     /**
-     * MD5文件完整性校验
+     * 获取文件信息（不存在时返回空，其他错误抛出异常）
+     *
+     * @param objectName OSS中的文件路径
+     * @return 文件元信息
+     */
+    public ObjectMetadata findFileInfo(String objectName) {
+        try {
+            return ossClient.getObjectMetadata(bucketName, objectName);
+        } catch (OSSException e) {
+            if (OSSErrorCode.NO_SUCH_KEY.equals(e.getErrorCode())) {
+                return null;
+            }
+            throw new RuntimeException("获取文件信息失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按字节范围读取文件（流式，不缓冲整个对象）
+     * <p>
+     * 调用方读完后 close；未读完就放弃时应 forcedClose 断开连接，否则 close 会读完剩余内容
+     *
+     * @param objectName OSS中的文件路径
+     * @param start      起始字节（含）
+     * @param end        结束字节（含）
+     * @return 对象内容为该范围的 OSSObject
+     */
+    public OSSObject getFileRange(String objectName, long start, long end) {
+        GetObjectRequest request = new GetObjectRequest(bucketName, objectName);
+        request.setRange(start, end);
+        return ossClient.getObject(request);
+    }
+
+    /**
+     * 校验本地文件与OSS对象内容是否一致（不下载到本地磁盘）
+     * <p>
+     * 先用服务端计算或校验过的元信息比对（HEAD 请求，不读内容）：CRC64、普通上传的 ETag、Content-MD5，
+     * 任一可用即以它为准；都不可用时按范围流式读取对象计算 MD5（只占用一个缓冲区，不写临时文件）。
+     * 本地文件只读一遍，同时计算 MD5 和 CRC64。
      *
      * @param localFilePath 本地文件路径
      * @param objectName    OSS中的文件路径
-     * @return true-完整，false-损坏
+     * @return 是否一致
      */
     public boolean verifyFileMd5(String localFilePath, String objectName) {
         try {
-            // 1. 计算本地文件MD5
-            FileInputStream localStream = new FileInputStream(localFilePath);
-            String localMd5 = DigestUtils.md5Hex(localStream);
-            localStream.close();
-
-            // 2. 下载OSS文件到临时目录
-            String tempFilePath = System.getProperty("java.io.tmpdir") + "/" +
-                    objectName.replace("/", "_");
-            downloadFile(objectName, tempFilePath);
-
-            // 3. 计算下载文件MD5
-            FileInputStream downloadStream = new FileInputStream(tempFilePath);
-            String downloadMd5 = DigestUtils.md5Hex(downloadStream);
-            downloadStream.close();
-
-            // 4. 删除临时文件
-            new File(tempFilePath).delete();
+            // 1. 计算本地文件MD5和CRC64（读一遍）
+            MessageDigest md5 = DigestUtils.getMd5Digest();
+            CRC64 crc64 = new CRC64();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new CheckedInputStream(
+                    new DigestInputStream(new FileInputStream(localFilePath), md5), crc64)) {
+                while (in.read(buffer) > 0) {
+                    // 读取时计算摘要
+                }
+            }
+            String localMd5 = Hex.encodeHexString(md5.digest());
 
-            // 5. 对比MD5
-            boolean isMatch = localMd5.equals(downloadMd5);
-            log.info("MD5校验结果：{}，本地MD5：{}，远程MD5：{}",
-                    isMatch ? "通过" : "失败", localMd5, downloadMd5);
+            // 2. 对象元信息
+            ObjectMetadata metadata = findFileInfo(objectName);
+            if (metadata == null) {
+                log.warn("MD5校验失败，对象不存在：{}", objectName);
+                return false;
+            }
+            if (metadata.getContentLength() != new File(localFilePath).length()) {
+                log.info("MD5校验结果：失败，文件大小不一致，本地：{}，远程：{}", new File(localFilePath).length(),
+                        metadata.getContentLength());
+                return false;
+            }
+            Boolean matched = matchMetadata(metadata, localMd5, crc64.getValue());
 
-            return isMatch;
+            // 3. 元信息无法校验时流式计算远程MD5
+            if (matched == null) {
+                matched = localMd5.equals(streamMd5(objectName, metadata.getContentLength()));
+            }
+            log.info("MD5校验结果：{}，对象：{}，本地MD5：{}", matched ? "通过" : "失败", objectName, localMd5);
+            return matched;
 
         } catch (Exception e) {
             log.error("MD5校验失败：{}", e.getMessage(), e);
@@ -345,6 +889,83 @@ public class OssService {
         }
     }
 
+    /**
+     * 校验OSS对象内容的MD5（没有本地文件时使用，如抽检 media_files：文件MD5即媒资ID）
+     * <p>
+     * 元信息中有服务端计算或校验过的 MD5（普通上传的 ETag、Content-MD5）时直接比对，否则流式读取计算
+     * （分片上传的对象没有这样的 MD5，上传时记录的 md5 不可信，需要读取内容）
+     *
+     * @param objectName  OSS中的文件路径
+     * @param expectedMd5 期望的MD5（32位十六进制）
+     * @return 是否一致，对象不存在时返回空
+     */
+    public Boolean verifyObjectMd5(String objectName, String expectedMd5) {
+        ObjectMetadata metadata = findFileInfo(objectName);
+        if (metadata == null) {
+            return null;
+        }
+        String expected = expectedMd5.toLowerCase();
+        Boolean matched = matchMetadata(metadata, expected, null);
+        if (matched == null) {
+            try {
+                matched = expected.equals(streamMd5(objectName, metadata.getContentLength()));
+            } catch (IOException e) {
+                throw new RuntimeException("读取对象失败：" + objectName + "，" + e.getMessage(), e);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 按服务端计算或校验过的元信息比对（CRC64、普通上传的 ETag、上传时校验过的 Content-MD5），
+     * 不采用上传时记录的 md5（可能未经验证），没有可用元信息时返回空
+     *
+     * @param md5   期望的MD5（小写十六进制）
+     * @param crc64 期望的CRC64（未知时为空）
+     */
+    private static Boolean matchMetadata(ObjectMetadata metadata, String md5, Long crc64) {
+        Long serverCrc = metadata.getServerCRC();
+        if (crc64 != null && serverCrc != null) {
+            return crc64.equals(serverCrc);
+        }
+        // 普通上传（非分片、非追加）的 ETag 就是内容MD5
+        String etag = metadata.getETag();
+        if (etag != null && !etag.contains("-")
+                && (metadata.getObjectType() == null || "Normal".equalsIgnoreCase(metadata.getObjectType()))) {
+            return md5.equalsIgnoreCase(etag.replace("\"", ""));
+        }
+        String contentMd5 = metadata.getContentMD5();
+        if (contentMd5 != null && !contentMd5.isEmpty()) {
+            return md5.equalsIgnoreCase(Hex.encodeHexString(Base64.getDecoder().decode(contentMd5)));
+        }
+        return null;
+    }
+
+    /**
+     * 按范围顺序读取对象计算MD5（每次请求 verifyRangeSize 字节，不落盘）
+     */
+    private String streamMd5(String objectName, long size) throws IOException {
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        byte[] buffer = new byte[64 * 1024];
+        for (long start = 0; start < size; start += verifyRangeSize) {
+            long end = Math.min(start + verifyRangeSize, size) - 1;
+            long expected = end - start + 1;
+            long read = 0;
+            OSSObject object = getFileRange(objectName, start, end);
+            try (InputStream in = object.getObjectContent()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    md5.update(buffer, 0, n);
+                    read += n;
+                }
+            }
+            if (read != expected) {
+                throw new IOException("读取对象范围不完整：" + objectName + "，" + start + "-" + end + "，实际 " + read);
+            }
+        }
+        return Hex.encodeHexString(md5.digest());
+    }
+
     /**
      * 获取当前日期目录：2025/01/06/
      */
@@ -0,0 +1,465 @@
+package com.xuecheng.media.service.impl;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.model.*;
+import com.xuecheng.base.utils.JsonUtil;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 大文件并行分片上传（可断点续传）
+ * <p>
+ * OssService 对超过阈值的本地文件改用此类上传：
+ * 1. 按 partSize 切分，提交到有界线程池并行上传，每个分片独立读取文件区间，不整体加载到内存
+ * 2. 单个分片失败按次数重试（退避等待），不影响其他分片
+ * 3. 每完成一个分片写一次检查点文件；上传中断后再次上传同一内容时，跳过已完成的分片
+ * 4. 完成时用各分片 CRC64 组合出整文件 CRC64，与服务端结果比对
+ * <p>
+ * 检查点按对象名 + 内容MD5（元信息 md5）命名，合并时每次生成的临时文件路径不同也能续传；复用前重新计算
+ * 已完成分片对应本地区间的 CRC64，不一致的分片重新上传。不知道内容MD5的上传无法续传，失败时立即取消分片上传。
+ * 失败后一直没有重试的上传由 abortExpired 取消（分块清理任务调用）。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+public class ParallelMultipartUploader {
+
+    private final OSS ossClient;
+
+    private final String bucketName;
+
+    private final ExecutorService executor;
+
+    private final long partSize;
+
+    private final int maxRetries;
+
+    private final Path checkpointDir;
+
+    private final Metrics metrics;
+
+    public ParallelMultipartUploader(OSS ossClient, String bucketName, ExecutorService executor, long partSize,
+                                     int maxRetries, Path checkpointDir, Metrics metrics) {
+        this.ossClient = ossClient;
+        this.bucketName = bucketName;
+        this.executor = executor;
+        this.partSize = partSize;
+        this.maxRetries = maxRetries;
+        this.checkpointDir = checkpointDir;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 并行分片上传本地文件
+     *
+     * @param file       本地文件
+     * @param objectName OSS对象名
+     * @param metadata   对象元信息（ContentType等）
+     */
+    public void upload(File file, String objectName, ObjectMetadata metadata) throws IOException {
+        upload(file, objectName, metadata, null);
+    }
+
+    /**
+     * 并行分片上传本地文件，并报告本次上传的进度
+     *
+     * @param progress 每完成一个分片回调一次分片大小（续传时已完成的分片在开始时一次报告，可为空）
+     */
+    public void upload(File file, String objectName, ObjectMetadata metadata, LongConsumer progress)
+            throws IOException {
+        long start = System.nanoTime();
+        String contentMd5 = metadata.getUserMetadata().get(OssService.MD5_METADATA);
+        boolean resumable = contentMd5 != null && !contentMd5.isEmpty();
+        Path checkpointFile = resumable
+                ? checkpointDir.resolve(DigestUtils.md5Hex(objectName + "|" + contentMd5.toLowerCase()) + ".json")
+                : null;
+        Checkpoint checkpoint = resumable ? loadCheckpoint(checkpointFile, file, objectName, contentMd5) : null;
+        if (checkpoint == null) {
+            checkpoint = newCheckpoint(file, objectName, metadata, contentMd5);
+            saveCheckpoint(checkpointFile, checkpoint);
+        } else {
+            log.info("复用分片上传检查点：{}，已完成分片：{}", objectName, checkpoint.getParts().size());
+        }
+
+        int partCount = (int) ((file.length() + partSize - 1) / partSize);
+        if (progress != null) {
+            long resumed = 0;
+            for (PartRecord part : checkpoint.getParts().values()) {
+                resumed += part.getSize();
+            }
+            progress.accept(resumed);
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            if (checkpoint.getParts().containsKey(partNumber)) {
+                continue;
+            }
+            final int number = partNumber;
+            final Checkpoint cp = checkpoint;
+            futures.add(executor.submit(() -> {
+                uploadPartWithRetry(file, cp, number, progress);
+                synchronized (cp) {
+                    saveCheckpoint(checkpointFile, cp);
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(false));
+            Throwable cause = e.getCause();
+            abortIfNotResumable(checkpoint, checkpointFile);
+            throw new IOException("分片上传失败：" + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            abortIfNotResumable(checkpoint, checkpointFile);
+            throw new IOException("分片上传被中断", e);
+        }
+
+        try {
+            complete(checkpoint, partCount);
+        } catch (IOException | RuntimeException e) {
+            // 合并失败或校验不一致时已上传的分片不能再用
+            abort(checkpoint);
+            deleteCheckpoint(checkpointFile);
+            throw e;
+        }
+        deleteCheckpoint(checkpointFile);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("并行分片上传完成：{}，大小：{}MB，分片数：{}，耗时：{}s，速率：{}MB/s", objectName,
+                file.length() / 1024 / 1024, partCount, String.format("%.2f", seconds),
+                String.format("%.1f", file.length() / 1024.0 / 1024.0 / Math.max(seconds, 0.001)));
+    }
+
+    /**
+     * 取消检查点最后修改时间早于 before 的分片上传并删除检查点（失败后一直没有重试的上传）
+     *
+     * @return 取消的上传数
+     */
+    public int abortExpired(long before) {
+        if (!Files.isDirectory(checkpointDir)) {
+            return 0;
+        }
+        int aborted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(checkpointDir, "*.json")) {
+            for (Path checkpointFile : files) {
+                try {
+                    if (Files.getLastModifiedTime(checkpointFile).toMillis() >= before) {
+                        continue;
+                    }
+                    Checkpoint checkpoint = JsonUtil.jsonToObject(
+                            new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8), Checkpoint.class);
+                    if (checkpoint != null) {
+                        abort(checkpoint);
+                    }
+                    deleteCheckpoint(checkpointFile);
+                    aborted++;
+                } catch (IOException e) {
+                    log.warn("清理分片上传检查点失败：{}，错误：{}", checkpointFile, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取分片上传检查点目录失败：{}，错误：{}", checkpointDir, e.getMessage());
+        }
+        return aborted;
+    }
+
+    private void abortIfNotResumable(Checkpoint checkpoint, Path checkpointFile) {
+        if (checkpointFile == null) {
+            abort(checkpoint);
+        } else {
+            // 未完成的分片保留在检查点中，下次上传同一内容时续传
+            log.info("分片上传失败，保留检查点供续传：{}，已完成分片：{}", checkpoint.getObjectName(),
+                    checkpoint.getParts().size());
+        }
+    }
+
+    private void abort(Checkpoint checkpoint) {
+        try {
+            ossClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, checkpoint.getObjectName(),
+                    checkpoint.getUploadId()));
+        } catch (OSSException e) {
+            if (!OSSErrorCode.NO_SUCH_UPLOAD.equals(e.getErrorCode())) {
+                log.warn("取消分片上传失败：{}，uploadId：{}，错误：{}", checkpoint.getObjectName(),
+                        checkpoint.getUploadId(), e.getMessage());
+            }
+        } catch (Exception e) {
+            log.warn("取消分片上传失败：{}，uploadId：{}，错误：{}", checkpoint.getObjectName(),
+                    checkpoint.getUploadId(), e.getMessage());
+        }
+    }
+
+    private void deleteCheckpoint(Path checkpointFile) throws IOException {
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+    }
+
+    private void uploadPartWithRetry(File file, Checkpoint checkpoint, int partNumber, LongConsumer progress)
+            throws Exception {
+        long offset = (partNumber - 1) * partSize;
+        long size = Math.min(partSize, file.length() - offset);
+        for (int attempt = 1; ; attempt++) {
+            metrics.partsInFlight.incrementAndGet();
+            try (FileInputStream fis = new FileInputStream(file)) {
+                fis.getChannel().position(offset);
+                CRC64 crc64 = new CRC64();
+                InputStream in = new CheckedInputStream(fis, crc64);
+                UploadPartRequest request = new UploadPartRequest(bucketName, checkpoint.getObjectName(),
+                        checkpoint.getUploadId(), partNumber, in, size);
+                PartETag partETag = ossClient.uploadPart(request).getPartETag();
+                synchronized (checkpoint) {
+                    checkpoint.getParts().put(partNumber, new PartRecord(partETag.getETag(), size, crc64.getValue()));
+                }
+                metrics.bytesUploaded.addAndGet(size);
+                metrics.partsCompleted.incrementAndGet();
+                if (progress != null) {
+                    progress.accept(size);
+                }
+                return;
+            } catch (Exception e) {
+                metrics.partRetries.incrementAndGet();
+                if (attempt > maxRetries) {
+                    throw e;
+                }
+                log.warn("分片上传失败，准备重试：{}，分片号：{}，第{}次，错误：{}", checkpoint.getObjectName(),
+                        partNumber, attempt, e.getMessage());
+                Thread.sleep(200L * attempt);
+            } finally {
+                metrics.partsInFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void complete(Checkpoint checkpoint, int partCount) throws IOException {
+        List<PartETag> partETags = new ArrayList<>(partCount);
+        long combinedCrc = 0;
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            PartRecord part = checkpoint.getParts().get(partNumber);
+            partETags.add(new PartETag(partNumber, part.getEtag(), part.getSize(), part.getCrc64()));
+            combinedCrc = partNumber == 1 ? part.getCrc64() : CRC64.combine(combinedCrc, part.getCrc64(), part.getSize());
+        }
+        CompleteMultipartUploadResult result = ossClient.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                bucketName, checkpoint.getObjectName(), checkpoint.getUploadId(), partETags));
+        Long serverCrc = result.getServerCRC();
+        if (serverCrc != null && serverCrc != combinedCrc) {
+            ossClient.deleteObject(bucketName, checkpoint.getObjectName());
+            throw new IOException("分片上传校验失败，本地CRC64：" + combinedCrc + "，服务端CRC64：" + serverCrc);
+        }
+    }
+
+    private Checkpoint newCheckpoint(File file, String objectName, ObjectMetadata metadata, String contentMd5) {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setContentMd5(contentMd5 == null ? null : contentMd5.toLowerCase());
+        checkpoint.setFileSize(file.length());
+        checkpoint.setObjectName(objectName);
+        checkpoint.setPartSize(partSize);
+        checkpoint.setUploadId(ossClient.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, objectName, metadata)).getUploadId());
+        return checkpoint;
+    }
+
+    private Checkpoint loadCheckpoint(Path checkpointFile, File file, String objectName, String contentMd5) {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        Checkpoint checkpoint = null;
+        try {
+            checkpoint = JsonUtil.jsonToObject(
+                    new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8), Checkpoint.class);
+            boolean valid = checkpoint != null
+                    && objectName.equals(checkpoint.getObjectName())
+                    && contentMd5.equalsIgnoreCase(checkpoint.getContentMd5())
+                    && file.length() == checkpoint.getFileSize()
+                    && partSize == checkpoint.getPartSize();
+            if (!valid) {
+                if (checkpoint != null && checkpoint.getUploadId() != null) {
+                    abort(checkpoint);
+                }
+                Files.deleteIfExists(checkpointFile);
+                return null;
+            }
+            // 确认uploadId在服务端仍然有效
+            ossClient.listParts(new ListPartsRequest(bucketName, objectName, checkpoint.getUploadId()));
+            dropChangedParts(file, checkpoint);
+            return checkpoint;
+        } catch (OSSException e) {
+            if (OSSErrorCode.NO_SUCH_UPLOAD.equals(e.getErrorCode())) {
+                log.info("检查点对应的分片上传已失效，重新上传：{}", objectName);
+            } else {
+                log.warn("校验检查点失败，重新上传：{}，错误：{}", objectName, e.getMessage());
+                abort(checkpoint);
+            }
+            return null;
+        } catch (Exception e) {
+            log.warn("读取检查点失败，重新上传：{}，错误：{}", objectName, e.getMessage());
+            if (checkpoint != null && checkpoint.getUploadId() != null) {
+                abort(checkpoint);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 重新计算已完成分片对应本地区间的 CRC64，与记录不一致的分片（内容MD5相同但本地文件不同）重新上传
+     */
+    private void dropChangedParts(File file, Checkpoint checkpoint) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            Iterator<Map.Entry<Integer, PartRecord>> it = checkpoint.getParts().entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, PartRecord> entry = it.next();
+                long offset = (entry.getKey() - 1) * partSize;
+                long remaining = entry.getValue().getSize();
+                CRC64 crc64 = new CRC64();
+                raf.seek(offset);
+                while (remaining > 0) {
+                    int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        break;
+                    }
+                    crc64.update(buffer, n);
+                    remaining -= n;
+                }
+                if (remaining > 0 || crc64.getValue() != entry.getValue().getCrc64()) {
+                    log.info("分片内容与检查点不一致，重新上传：{}，分片号：{}", checkpoint.getObjectName(), entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void saveCheckpoint(Path checkpointFile, Checkpoint checkpoint) throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        Files.createDirectories(checkpointDir);
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(tmp, JsonUtil.objectTojson(checkpoint).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 断点续传检查点（JSON持久化）
+     */
+    @Data
+    public static class Checkpoint {
+        private String contentMd5;
+        private long fileSize;
+        private String objectName;
+        private String uploadId;
+        private long partSize;
+        private Map<Integer, PartRecord> parts = new TreeMap<>();
+    }
+
+    /**
+     * 已完成的分片
+     */
+    @Data
+    public static class PartRecord {
+        private String etag;
+        private long size;
+        private long crc64;
+
+        public PartRecord() {
+        }
+
+        public PartRecord(String etag, long size, long crc64) {
+            this.etag = etag;
+            this.size = size;
+            this.crc64 = crc64;
+        }
+    }
+
+    /**
+     * 分片上传吞吐指标（进程内累计）
+     */
+    public static class Metrics {
+
+        /**
+         * 已上传字节数
+         */
+        private final AtomicLong bytesUploaded = new AtomicLong();
+
+        /**
+         * 正在上传的分片数
+         */
+        private final AtomicInteger partsInFlight = new AtomicInteger();
+
+        /**
+         * 已完成分片数
+         */
+        private final AtomicLong partsCompleted = new AtomicLong();
+
+        /**
+         * 分片失败（含重试）次数
+         */
+        private final AtomicLong partRetries = new AtomicLong();
+
+        private final long startNanos = System.nanoTime();
+
+        public long getBytesUploaded() {
+            return bytesUploaded.get();
+        }
+
+        public int getPartsInFlight() {
+            return partsInFlight.get();
+        }
+
+        public long getPartsCompleted() {
+            return partsCompleted.get();
+        }
+
+        public long getPartRetries() {
+            return partRetries.get();
+        }
+
+        /**
+         * 自进程启动以来的平均上传速率（字节/秒）
+         */
+        public double getBytesPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds <= 0 ? 0 : bytesUploaded.get() / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("已上传：%dMB，进行中分片：%d，完成分片：%d，失败次数：%d，平均速率：%.1fMB/s",
+                    getBytesUploaded() / 1024 / 1024, getPartsInFlight(), getPartsCompleted(), getPartRetries(),
+                    getBytesPerSecond() / 1024 / 1024);
+        }
+    }
+}
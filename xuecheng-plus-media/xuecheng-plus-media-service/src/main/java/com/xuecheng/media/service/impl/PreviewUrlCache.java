@@ -0,0 +1,216 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 媒资预览地址缓存（OSS 签名URL）
+ * <p>
+ * 课程页面每个课时都要一个预览地址，逐个查库并重新签名代价太高。批量预览接口（POST /preview）经这里取地址：
+ * <p>
+ * - 签名URL按媒资ID缓存，在过期前 refresh-before-seconds 秒视为失效，调用方拿到的地址至少还能用这么久
+ * - 缓存条数有上限，按最近访问淘汰（LRU）
+ * - 批量查询时未命中的媒资ID合并为 selectBatchIds（每批最多 batch-size 个），课程页面一次调用即可拿到全部地址
+ * <p>
+ * 媒资访问地址变化（入库、转码完成）时调用 evict 使缓存失效。
+ * 注意 HLS 主播放列表中的子播放列表和分段是相对路径，签名只对主播放列表本身有效，
+ * hls/ 前缀下的对象需通过公共读、CDN 或播放代理（/stream/{mediaId}）访问。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class PreviewUrlCache {
+
+    @Autowired
+    MediaFilesMapper mediaFilesMapper;
+
+    @Autowired
+    OssService ossService;
+
+    /**
+     * 签名URL有效期（秒）
+     */
+    @Value("${media.preview.expire-seconds:3600}")
+    long expireSeconds = 3600;
+
+    /**
+     * 距过期不足该时长（秒）的签名URL重新签名
+     */
+    @Value("${media.preview.refresh-before-seconds:300}")
+    long refreshBeforeSeconds = 300;
+
+    /**
+     * 缓存的签名URL数
+     */
+    @Value("${media.preview.cache-size:10000}")
+    int cacheSize = 10000;
+
+    /**
+     * 每次批量查库的最大媒资ID数
+     */
+    @Value("${media.preview.batch-size:500}")
+    int batchSize = 500;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder signs = new LongAdder();
+
+    /**
+     * 获取单个媒资的预览地址
+     *
+     * @param mediaId 媒资ID
+     * @return 签名URL，媒资不存在或没有访问路径时返回空
+     */
+    public String get(String mediaId) {
+        return getAll(Collections.singletonList(mediaId)).get(mediaId);
+    }
+
+    /**
+     * 批量获取预览地址
+     *
+     * @param mediaIds 媒资ID（重复的只查一次）
+     * @return 媒资ID -> 签名URL（按传入顺序，不存在的媒资不在结果中）
+     */
+    public Map<String, String> getAll(Collection<String> mediaIds) {
+        long now = System.currentTimeMillis();
+        Map<String, String> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (entries) {
+            for (String mediaId : new LinkedHashSet<>(mediaIds)) {
+                if (mediaId == null || mediaId.isEmpty()) {
+                    continue;
+                }
+                Entry entry = entries.get(mediaId);
+                if (entry != null && entry.refreshAt > now) {
+                    result.put(mediaId, entry.url);
+                } else {
+                    missing.add(mediaId);
+                }
+            }
+        }
+        hits.add(result.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        misses.add(missing.size());
+
+        Map<String, String> loaded = load(missing, now);
+        // 保持传入顺序
+        Map<String, String> ordered = new LinkedHashMap<>();
+        for (String mediaId : new LinkedHashSet<>(mediaIds)) {
+            String url = result.containsKey(mediaId) ? result.get(mediaId) : loaded.get(mediaId);
+            if (url != null) {
+                ordered.put(mediaId, url);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 媒资访问地址变化时使缓存失效（在事务中调用时提交后再失效一次）
+     */
+    public void evict(String mediaId) {
+        remove(mediaId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(mediaId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 命中统计
+     */
+    public String getStatistics() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return String.format("缓存命中：%d，未命中：%d，签名次数：%d，缓存记录数：%d", hits.sum(), misses.sum(), signs.sum(), size);
+    }
+
+    /**
+     * 批量查库并签名，结果写入缓存
+     */
+    private Map<String, String> load(List<String> mediaIds, long now) {
+        Map<String, String> loaded = new LinkedHashMap<>();
+        long expiresAt = now + expireSeconds * 1000;
+        long refreshAt = expiresAt - Math.min(refreshBeforeSeconds, expireSeconds / 2) * 1000;
+        for (int from = 0; from < mediaIds.size(); from += batchSize) {
+            List<String> batch = mediaIds.subList(from, Math.min(mediaIds.size(), from + batchSize));
+            for (MediaFiles mediaFiles : mediaFilesMapper.selectBatchIds(batch)) {
+                String objectName = objectName(mediaFiles);
+                if (objectName == null) {
+                    continue;
+                }
+                String url = ossService.getPresignedUrl(objectName, expireSeconds);
+                signs.increment();
+                loaded.put(mediaFiles.getId(), url);
+            }
+        }
+        synchronized (entries) {
+            for (Map.Entry<String, String> e : loaded.entrySet()) {
+                entries.put(e.getKey(), new Entry(e.getValue(), refreshAt));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 预览对象路径：优先取 url（转码结果），其次取 filePath（原始文件）
+     */
+    static String objectName(MediaFiles mediaFiles) {
+        if (mediaFiles.getUrl() != null && !mediaFiles.getUrl().isEmpty()) {
+            return mediaFiles.getUrl();
+        }
+        String filePath = mediaFiles.getFilePath();
+        return filePath == null || filePath.isEmpty() ? null : filePath;
+    }
+
+    private void remove(String mediaId) {
+        synchronized (entries) {
+            entries.remove(mediaId);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String url;
+
+        /**
+         * 到该时间（毫秒）后重新签名
+         */
+        private final long refreshAt;
+
+        Entry(String url, long refreshAt) {
+            this.url = url;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.media.mapper.MergeLeaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 按文件合并重复操作（single-flight）
+ * <p>
+ * 两个浏览器标签页或重试的客户端同时对同一文件调用 mergechunks 时，会各自拼接、计算MD5并上传同样的字节，
+ * 最后在 addMediaFilesToDb 中互相覆盖。这里按 key（操作:文件MD5）合并并发调用：
+ * <p>
+ * - 本节点：第一个调用执行操作，其余调用等待并拿到同一个结果（或同一个异常）
+ * - 多节点（media.merge.lease.enabled=true）：执行前先在 media_merge_lease 表获取租约，
+ *   其他节点等租约释放后再执行，此时操作通常已完成（如合并会发现文件已入库）；
+ *   持有节点宕机时租约到期后可被接管
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    /**
+     * 等待其他节点释放租约的轮询间隔（毫秒）
+     */
+    private static final long LEASE_POLL_MILLIS = 1000;
+
+    @Autowired(required = false)
+    MergeLeaseMapper mergeLeaseMapper;
+
+    /**
+     * 是否启用数据库租约（单节点部署不需要）
+     */
+    @Value("${media.merge.lease.enabled:false}")
+    boolean leaseEnabled;
+
+    /**
+     * 租约有效期（秒），应大于最长的合并耗时
+     */
+    @Value("${media.merge.lease.seconds:1800}")
+    long leaseSeconds = 1800;
+
+    /**
+     * 等待其他节点释放租约的最长时间（秒）
+     */
+    @Value("${media.merge.lease.wait-seconds:600}")
+    long leaseWaitSeconds = 600;
+
+    /**
+     * 本节点标识（租约持有者）
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + ":"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * 进行中的操作（key -> 结果）
+     */
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 执行操作；同一 key 已有操作在执行时等待并返回它的结果
+     *
+     * @param key  操作标识，如 merge:文件MD5
+     * @param task 操作
+     * @return 操作结果
+     */
+    public <T> T execute(String key, Supplier<T> task) {
+        return execute(key, task, null);
+    }
+
+    /**
+     * 执行操作；同一 key 已有操作在执行时先调用 onJoin，再等待并返回它的结果
+     *
+     * @param key    操作标识，如 merge:文件MD5
+     * @param task   操作
+     * @param onJoin 加入进行中的操作时的回调（如改为读取该操作的进度），可为空
+     * @return 操作结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> task, Runnable onJoin) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = flights.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            log.info("相同操作正在执行，等待其结果：{}", key);
+            if (onJoin != null) {
+                onJoin.run();
+            }
+            return (T) await(inFlight);
+        }
+        try {
+            T result = leaseEnabled && mergeLeaseMapper != null ? executeLeased(key, task) : task.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, mine);
+        }
+    }
+
+    private <T> T executeLeased(String key, Supplier<T> task) {
+        acquireLease(key);
+        try {
+            return task.get();
+        } finally {
+            try {
+                mergeLeaseMapper.release(key, owner);
+            } catch (Exception e) {
+                // 释放失败时租约到期后自动失效
+                log.warn("释放租约失败：{}，错误：{}", key, e.getMessage());
+            }
+        }
+    }
+
+    private void acquireLease(String key) {
+        long deadline = System.currentTimeMillis() + leaseWaitSeconds * 1000;
+        boolean logged = false;
+        while (mergeLeaseMapper.insert(key, owner, leaseSeconds) == 0
+                && mergeLeaseMapper.takeOver(key, owner, leaseSeconds) == 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("相同文件正在其他节点处理，请稍后重试");
+            }
+            if (!logged) {
+                log.info("相同操作正在其他节点执行，等待租约释放：{}", key);
+                logged = true;
+            }
+            try {
+                Thread.sleep(LEASE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待租约被中断");
+            }
+        }
+    }
+
+    private Object await(CompletableFuture<Object> inFlight) {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待进行中的操作被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
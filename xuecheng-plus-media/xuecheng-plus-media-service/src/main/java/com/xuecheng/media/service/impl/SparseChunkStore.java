@@ -0,0 +1,202 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.ChunkVerificationException;
+import com.xuecheng.media.service.MergeProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.BitSet;
+
+/**
+ * 预分配文件分块存储（分块到达即就位，免合并拷贝）
+ * <p>
+ * 前端在续传协商（/upload/missingchunks）时登记分块大小和文件大小，分块清单记录布局并预分配目标文件；
+ * 之后每个分块用 FileChannel 定位写入到 分块序号 * 分块大小 处，分块可以乱序、高并发上传，
+ * 最后一个分块到达时文件已经拼好，mergechunks 只需校验整文件MD5并上传。
+ * <p>
+ * 注意：分块写入即覆盖目标文件中的对应区域，校验失败时无法保留该分块之前的内容，
+ * 因此校验失败的分块会从清单中撤销，需要重传。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class SparseChunkStore implements ChunkStore {
+
+    private static final String DATA_FILE = "assembled.data";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    OssService ossService;
+
+    @Autowired
+    ChunkManifestStore chunkManifestStore;
+
+    /**
+     * 分块根目录
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    @Override
+    public String mode() {
+        return "sparse";
+    }
+
+    /**
+     * 预分配目标文件（文件大小已知时设置长度，未写入的区域在支持稀疏文件的文件系统上不占用磁盘）
+     */
+    @Override
+    public void prepare(String fileMd5, long chunkSize, long fileSize) throws IOException {
+        Path root = Files.createDirectories(chunkDirectory.resolve(fileMd5));
+        try (RandomAccessFile file = new RandomAccessFile(root.resolve(DATA_FILE).toFile(), "rw")) {
+            if (fileSize > 0 && file.length() != fileSize) {
+                file.setLength(fileSize);
+            }
+        }
+    }
+
+    @Override
+    public ChunkWriteResult writeChunk(String fileMd5, int chunk, String fileName, InputStream in, long size,
+                                       String chunkMd5) throws IOException {
+        ChunkManifestStore.Manifest manifest = chunkManifestStore.get(fileMd5);
+        if (!manifest.isLayoutDeclared()) {
+            throw new IOException("未登记分块大小");
+        }
+        long chunkSize = manifest.getChunkSize();
+        long offset = (long) chunk * chunkSize;
+        if (manifest.getFileSize() > 0 && offset >= manifest.getFileSize()) {
+            throw new IOException("分块序号超出文件大小");
+        }
+        // 登记了文件大小时每个分块的大小是确定的（最后一块为余下的部分）
+        long expectedSize = manifest.getFileSize() > 0 ? Math.min(chunkSize, manifest.getFileSize() - offset) : -1;
+
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(chunkDirectory.resolve(fileMd5).resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (written + n > chunkSize) {
+                    throw new ChunkVerificationException("分块大小与登记不一致");
+                }
+                md5.update(buffer, 0, n);
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                while (src.hasRemaining()) {
+                    written += channel.write(src, offset + written);
+                }
+            }
+            if (expectedSize > 0 && written != expectedSize) {
+                throw new ChunkVerificationException("分块大小与登记不一致");
+            }
+        } catch (IOException e) {
+            // 对应区域可能已被部分覆盖
+            chunkManifestStore.drop(fileMd5, chunk);
+            throw e;
+        }
+
+        String actualMd5 = Hex.encodeHexString(md5.digest());
+        if (chunkMd5 != null && !chunkMd5.isEmpty() && !chunkMd5.equalsIgnoreCase(actualMd5)) {
+            chunkManifestStore.drop(fileMd5, chunk);
+            log.warn("分块校验失败，MD5：{}，分块：{}，期望：{}，实际：{}", fileMd5, chunk, chunkMd5, actualMd5);
+            throw ChunkVerificationException.chunkMismatch();
+        }
+        return new ChunkWriteResult(written, actualMd5);
+    }
+
+    /**
+     * 稀疏文件无法区分已写入和未写入的区域，以分块清单为准
+     */
+    @Override
+    public BitSet listChunks(String fileMd5) throws IOException {
+        if (!chunkManifestStore.exists(fileMd5)) {
+            return new BitSet();
+        }
+        return chunkManifestStore.get(fileMd5).getReceived();
+    }
+
+    @Override
+    public boolean hasUpload(String fileMd5) {
+        return Files.exists(chunkDirectory.resolve(fileMd5).resolve(DATA_FILE));
+    }
+
+    @Override
+    public StoredFile merge(String fileMd5, int chunkTotal, String fileName, boolean chunksChecked,
+                            boolean skipDigest, MergeProgress progress) throws IOException {
+        Path data = chunkDirectory.resolve(fileMd5).resolve(DATA_FILE);
+        if (!Files.exists(data)) {
+            throw new IOException("分块目录不存在");
+        }
+        ChunkManifestStore.Manifest manifest = chunkManifestStore.get(fileMd5);
+        if (!chunksChecked) {
+            int missing = manifest.getReceived().nextClearBit(0);
+            if (missing < chunkTotal) {
+                throw ChunkVerificationException.missingChunk(missing);
+            }
+        }
+
+        // 文件大小以实际收到的字节数为准；登记了文件大小时两者必须一致
+        long size = manifest.getReceivedBytes();
+        if (manifest.getFileSize() > 0 && manifest.getFileSize() != size) {
+            log.error("文件大小校验失败，MD5：{}，登记大小：{}，收到：{}", fileMd5, manifest.getFileSize(), size);
+            throw ChunkVerificationException.fileMismatch();
+        }
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        }
+
+        progress.setStage(MergeProgress.MERGING);
+        String fileMd5Actual;
+        if (skipDigest) {
+            // 分块已逐块校验且组合摘要一致，采用前端给出的MD5
+            fileMd5Actual = fileMd5.toLowerCase();
+        } else {
+            // 文件已在分块写入时拼好，这里只需校验（校验的字节数计入合并进度）
+            MessageDigest md5 = DigestUtils.getMd5Digest();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(data), md5)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    progress.addMerged(n);
+                }
+            }
+            fileMd5Actual = Hex.encodeHexString(md5.digest());
+        }
+        if (!fileMd5.equalsIgnoreCase(fileMd5Actual)) {
+            log.error("文件MD5校验失败，原始MD5：{}，合并后MD5：{}", fileMd5, fileMd5Actual);
+            throw ChunkVerificationException.fileMismatch();
+        }
+
+        progress.setStage(MergeProgress.UPLOADING);
+        String objectName = ossService.uploadFile(data.toString(), fileName, fileMd5Actual, progress::addUploaded);
+        log.info("预分配文件上传到OSS成功，对象名：{}，大小：{}", objectName, size);
+        return new StoredFile(objectName, size);
+    }
+
+    @Override
+    public void delete(String fileMd5) {
+        try {
+            Files.deleteIfExists(chunkDirectory.resolve(fileMd5).resolve(DATA_FILE));
+        } catch (IOException e) {
+            log.warn("删除预分配文件失败：{}，错误：{}", fileMd5, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.xuecheng.media.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分块上传会话登记（本节点）
+ * <p>
+ * 清理任务原来每次遍历 xc-chunks 下的所有目录并读取修改时间，统计接口每次递归计算所有分块文件的大小，
+ * 中断的上传积累到几万个时一次就是几分钟的元数据 I/O。现在由 uploadChunk / mergechunks 维护会话：
+ * <p>
+ * - 每个文件MD5一个会话：开始时间、最后访问时间、已收到的字节数（重传的分块不重复计算）
+ * - 按最后访问时间排序的索引，清理时只取出已过期的会话，不再访问未过期的目录
+ * - 会话数、总字节数为计数器，统计为 O(1)
+ * <p>
+ * 会话只保存在内存中：启动完成后在后台扫描一次分块目录对账（以目录修改时间为最后访问时间），
+ * 之后不再扫描。对账期间收到的分块照常登记，对账只补充尚未登记的会话。
+ * <p>
+ * 存储配额：清理任务每天只执行一次，上传高峰时分块可能写满临时目录所在的磁盘。新会话开始前按配额准入
+ * （全局、每个机构），每个会话按 max(已收到字节数, 声明的文件大小) 占用配额：
+ * <p>
+ * - 配额不足时先淘汰超过 stale-minutes 未访问的会话（最久未访问的优先），腾出空间后准入
+ * - 仍不足时等待其他会话结束释放配额，最多等待 wait-millis，超时拒绝
+ * - 已准入会话的后续分块不再检查，不会中断进行中的上传
+ * - 合并中的会话（从提交合并到合并结束，见 {@link #pin}）不会被淘汰或清理，即使排队等待合并期间超过了 stale-minutes
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class UploadSessionRegistry {
+
+    /**
+     * 分块根目录（与各分块存储共用）
+     */
+    @Autowired
+    ChunkDirectory chunkDirectory = new ChunkDirectory();
+
+    /**
+     * 本节点分块存储总配额（字节），0 表示不限制
+     */
+    @Value("${media.chunk.quota.total-bytes:53687091200}")
+    long totalBudget = 50L * 1024 * 1024 * 1024;
+
+    /**
+     * 每个机构的分块存储配额（字节），0 表示不限制
+     */
+    @Value("${media.chunk.quota.company-bytes:0}")
+    long companyBudget;
+
+    /**
+     * 配额不足时可被淘汰的会话的最短未访问时间（分钟）
+     */
+    @Value("${media.chunk.quota.stale-minutes:60}")
+    long staleMinutes = 60;
+
+    /**
+     * 配额不足且没有可淘汰的会话时，新会话等待配额释放的最长时间（毫秒）
+     */
+    @Value("${media.chunk.quota.wait-millis:3000}")
+    long waitMillis = 3000;
+
+    /**
+     * 分片直传组件（淘汰的会话如有未完成的OSS分片上传，需要一并取消）
+     */
+    @Autowired
+    MultipartChunkUploader multipartChunkUploader;
+
+    /**
+     * 分块清单（目录删除后清掉内存中的位图）
+     */
+    @Autowired
+    ChunkManifestStore chunkManifestStore;
+
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    /**
+     * 按最后访问时间排序的索引
+     */
+    private final TreeSet<Session> byLastTouch = new TreeSet<>(
+            Comparator.comparingLong((Session s) -> s.lastTouch).thenComparing(s -> s.fileMd5));
+
+    /**
+     * 各机构占用的配额
+     */
+    private final Map<Long, Long> companyCharged = new HashMap<>();
+
+    private long totalBytes;
+
+    private long totalCharged;
+
+    private volatile boolean reconciled;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * 登记一次访问（续传协商、准备接收分块），会话不存在时开始新会话（不检查配额）
+     */
+    public void touch(String fileMd5) {
+        synchronized (this) {
+            session(fileMd5, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 固定会话：合并提交时调用，合并结束前不会被配额淘汰或清理任务删除（可重入，需与 {@link #unpin} 成对调用）
+     */
+    public void pin(String fileMd5) {
+        synchronized (this) {
+            session(fileMd5, System.currentTimeMillis()).pins++;
+        }
+    }
+
+    /**
+     * 取消固定：合并结束时调用，同时更新最后访问时间（合并失败时保留分块供前端重试）
+     */
+    public void unpin(String fileMd5) {
+        synchronized (this) {
+            Session session = sessions.get(fileMd5);
+            if (session != null) {
+                session(fileMd5, System.currentTimeMillis());
+                session.pins = Math.max(session.pins - 1, 0);
+            }
+        }
+    }
+
+    /**
+     * 新会话准入：会话已存在时只更新访问时间；否则按配额准入，不足时淘汰过期会话或等待配额释放
+     *
+     * @param fileMd5       文件MD5
+     * @param companyId     机构ID（为空时只检查全局配额）
+     * @param expectedBytes 声明的文件大小（未知时传入当前分块大小）
+     * @return 是否准入，false 时应拒绝本次上传，由前端稍后重试
+     */
+    public boolean admit(String fileMd5, Long companyId, long expectedBytes) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            List<Session> victims;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                Session existing = sessions.get(fileMd5);
+                if (existing != null) {
+                    session(fileMd5, now);
+                    return true;
+                }
+                long need = Math.max(expectedBytes, 0);
+                if (fits(companyId, need)) {
+                    Session session = session(fileMd5, now);
+                    session.companyId = companyId;
+                    session.expected = need;
+                    charge(session, need);
+                    return true;
+                }
+                victims = pollStale(companyId, need, now - staleMinutes * 60_000L);
+                if (victims.isEmpty()) {
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        log.warn("分块存储配额不足，拒绝新上传：{}，机构：{}，需要：{}MB，已占用：{}MB", fileMd5,
+                                companyId, need / 1024 / 1024, totalCharged / 1024 / 1024);
+                        return false;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejected.increment();
+                        return false;
+                    }
+                    continue;
+                }
+            }
+            // 删除目录不占用锁
+            for (Session victim : victims) {
+                evicted.increment();
+                log.info("分块存储配额不足，淘汰最久未访问的上传：{}，大小：{}MB", victim.fileMd5,
+                        victim.bytes / 1024 / 1024);
+                purge(victim);
+            }
+        }
+    }
+
+    /**
+     * 登记收到一个分块
+     *
+     * @param fileMd5 文件MD5
+     * @param chunk   分块序号
+     * @param size    分块大小
+     */
+    public void recordChunk(String fileMd5, int chunk, long size) {
+        synchronized (this) {
+            Session session = session(fileMd5, System.currentTimeMillis());
+            if (chunk >= 0 && !session.chunks.get(chunk)) {
+                session.chunks.set(chunk);
+                long before = session.charged();
+                session.bytes += size;
+                totalBytes += size;
+                charge(session, session.charged() - before);
+            }
+        }
+    }
+
+    /**
+     * 上传结束（合并完成、分块已删除）
+     */
+    public void finish(String fileMd5) {
+        synchronized (this) {
+            Session session = sessions.get(fileMd5);
+            if (session != null) {
+                remove(session);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 取出最后访问时间早于 before 的会话（从登记中移除，合并中的会话除外）
+     *
+     * @param before 时间（毫秒）
+     * @return 过期会话，按最后访问时间升序
+     */
+    public List<Session> pollExpired(long before) {
+        List<Session> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Session session : byLastTouch) {
+                if (session.lastTouch >= before) {
+                    break;
+                }
+                if (session.pins == 0) {
+                    expired.add(session);
+                }
+            }
+            for (Session session : expired) {
+                remove(session);
+            }
+            if (!expired.isEmpty()) {
+                notifyAll();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 删除会话的分块：取消未完成的OSS分片上传、删除分块目录、清掉分块清单
+     *
+     * @return 分块目录是否存在并已删除
+     */
+    public boolean purge(Session session) {
+        String fileMd5 = session.fileMd5;
+        boolean deleted = false;
+        try {
+            if (multipartChunkUploader.hasSession(fileMd5)) {
+                multipartChunkUploader.abort(fileMd5);
+            }
+            Path dir = chunkDirectory.resolve(fileMd5);
+            if (Files.isDirectory(dir)) {
+                deleteDirectory(dir);
+                deleted = true;
+            }
+        } catch (Exception e) {
+            log.error("删除分块目录失败：{}，错误：{}", fileMd5, e.getMessage(), e);
+        }
+        chunkManifestStore.evict(fileMd5);
+        return deleted;
+    }
+
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 已占用的配额（已准入会话按 max(已收到字节数, 声明的文件大小) 计算）
+     */
+    public synchronized long getChargedBytes() {
+        return totalCharged;
+    }
+
+    /**
+     * 启动时的对账扫描是否已完成
+     */
+    public boolean isReconciled() {
+        return reconciled;
+    }
+
+    /**
+     * 配额统计
+     */
+    public String getQuotaStatistics() {
+        return String.format("配额占用：%dMB/%s，拒绝：%d，淘汰：%d", getChargedBytes() / 1024 / 1024,
+                totalBudget > 0 ? totalBudget / 1024 / 1024 + "MB" : "不限", rejected.sum(), evicted.sum());
+    }
+
+    /**
+     * 启动完成后在后台对账，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileInBackground() {
+        Thread thread = new Thread(this::reconcile, "upload-session-reconcile");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 扫描分块目录，登记尚未登记的上传（每个目录读取一次修改时间和文件大小）
+     *
+     * @return 新登记的会话数
+     */
+    public int reconcile() {
+        Path root = chunkDirectory.getRoot();
+        int added = 0;
+        if (Files.isDirectory(root)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+                for (Path dir : stream) {
+                    if (!Files.isDirectory(dir)) {
+                        continue;
+                    }
+                    try {
+                        long lastModified = Files.getLastModifiedTime(dir).toMillis();
+                        long bytes = size(dir);
+                        synchronized (this) {
+                            String fileMd5 = dir.getFileName().toString();
+                            if (!sessions.containsKey(fileMd5)) {
+                                Session session = session(fileMd5, lastModified);
+                                session.bytes = bytes;
+                                totalBytes += bytes;
+                                charge(session, bytes);
+                                added++;
+                            }
+                        }
+                    } catch (IOException e) {
+                        log.warn("对账分块目录失败：{}，{}", dir, e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                log.error("扫描分块根目录失败：{}", e.getMessage(), e);
+            }
+        }
+        reconciled = true;
+        log.info("分块上传会话对账完成，新登记：{}，会话数：{}，总大小：{}MB", added, getSessionCount(),
+                getTotalBytes() / 1024 / 1024);
+        return added;
+    }
+
+    /**
+     * 配额是否足够（调用方持有锁）
+     */
+    private boolean fits(Long companyId, long need) {
+        if (totalBudget > 0 && totalCharged + need > totalBudget) {
+            return false;
+        }
+        return companyId == null || companyBudget <= 0
+                || companyCharged.getOrDefault(companyId, 0L) + need <= companyBudget;
+    }
+
+    /**
+     * 按最后访问时间从旧到新取出可淘汰的会话，直到配额足够（调用方持有锁）
+     * <p>
+     * 合并中的会话不淘汰；机构配额不足时只淘汰该机构的会话；淘汰全部过期会话仍不足时不淘汰，返回空
+     */
+    private List<Session> pollStale(Long companyId, long need, long staleBefore) {
+        List<Session> victims = new ArrayList<>();
+        long total = totalCharged;
+        long company = companyId != null ? companyCharged.getOrDefault(companyId, 0L) : 0;
+        boolean totalShort = totalBudget > 0 && total + need > totalBudget;
+        boolean companyShort = companyId != null && companyBudget > 0 && company + need > companyBudget;
+        Iterator<Session> it = byLastTouch.iterator();
+        while ((totalShort || companyShort) && it.hasNext()) {
+            Session session = it.next();
+            if (session.lastTouch >= staleBefore) {
+                break;
+            }
+            boolean sameCompany = companyId != null && companyId.equals(session.companyId);
+            if (session.pins > 0 || (companyShort && !sameCompany)) {
+                continue;
+            }
+            victims.add(session);
+            total -= session.charged();
+            if (sameCompany) {
+                company -= session.charged();
+            }
+            totalShort = totalBudget > 0 && total + need > totalBudget;
+            companyShort = companyId != null && companyBudget > 0 && company + need > companyBudget;
+        }
+        if (totalShort || companyShort) {
+            return new ArrayList<>();
+        }
+        for (Session victim : victims) {
+            remove(victim);
+        }
+        return victims;
+    }
+
+    /**
+     * 调整会话占用的配额（调用方持有锁）
+     */
+    private void charge(Session session, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        totalCharged += delta;
+        if (session.companyId != null) {
+            companyCharged.merge(session.companyId, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    /**
+     * 移除会话并释放配额（调用方持有锁）
+     */
+    private void remove(Session session) {
+        sessions.remove(session.fileMd5);
+        byLastTouch.remove(session);
+        totalBytes -= session.bytes;
+        charge(session, -session.charged());
+    }
+
+    /**
+     * 取得会话并更新最后访问时间（调用方持有锁）
+     */
+    private Session session(String fileMd5, long now) {
+        Session session = sessions.get(fileMd5);
+        if (session == null) {
+            session = new Session(fileMd5, now);
+            sessions.put(fileMd5, session);
+        } else {
+            byLastTouch.remove(session);
+            session.lastTouch = Math.max(session.lastTouch, now);
+        }
+        byLastTouch.add(session);
+        return session;
+    }
+
+    private static long size(Path dir) throws IOException {
+        long[] size = new long[1];
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    size[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.deleteIfExists(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 上传会话
+     */
+    public static final class Session {
+
+        private final String fileMd5;
+
+        private final long startTime;
+
+        private long lastTouch;
+
+        private long bytes;
+
+        private long expected;
+
+        private Long companyId;
+
+        /**
+         * 进行中的合并数（大于0时不淘汰、不清理）
+         */
+        private int pins;
+
+        private final BitSet chunks = new BitSet();
+
+        Session(String fileMd5, long startTime) {
+            this.fileMd5 = fileMd5;
+            this.startTime = startTime;
+            this.lastTouch = startTime;
+        }
+
+        private long charged() {
+            return Math.max(bytes, expected);
+        }
+
+        public String getFileMd5() {
+            return fileMd5;
+        }
+
+        /**
+         * 开始时间（毫秒，对账登记的会话为目录修改时间）
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * 最后访问时间（毫秒）
+         */
+        public long getLastTouch() {
+            return lastTouch;
+        }
+
+        /**
+         * 已收到的字节数
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * 机构ID（对账登记或未经准入的会话为空）
+         */
+        public Long getCompanyId() {
+            return companyId;
+        }
+    }
+}
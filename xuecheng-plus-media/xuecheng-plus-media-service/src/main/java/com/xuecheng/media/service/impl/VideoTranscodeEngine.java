@@ -0,0 +1,553 @@
+package com.xuecheng.media.service.impl;
+
+import com.xuecheng.base.utils.HlsPackager;
+import com.xuecheng.base.utils.ProcessSupervisor;
+import com.xuecheng.base.utils.SegmentedMp4Transcoder;
+import com.xuecheng.media.model.po.MediaProcess;
+import com.xuecheng.media.service.MediaProcessService;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 视频转码引擎（videoTranscodeJob 调用）
+ * <p>
+ * 每次调度：查询本分片可领取的任务（最多为并发数），每个任务在有界线程池中依次执行
+ * 领取 → 从OSS下载源文件 → ffmpeg 转为 mp4 → 上传OSS → 更新媒资地址并移入历史表；
+ * 失败时失败次数加一，未达到重试上限的任务在下次调度时重新领取。
+ * <p>
+ * 同时运行的 ffmpeg 进程数默认取 CPU 核数的一半（ffmpeg 本身会用多个线程编码），
+ * 调度重叠时线程池已满的任务不领取，留给下次调度。ffmpeg 进程由 ProcessSupervisor 监管，
+ * 解析输出中的 time= 得到转码进度，调度线程等待期间定期输出。
+ * <p>
+ * 时长超过 segment.min-duration-seconds 的视频按关键帧切段，各段在共享的分段线程池中并行转码后无损拼接，
+ * 两小时的课程视频不再由一个 ffmpeg 进程从头转到尾。
+ * <p>
+ * 开启 HLS 时再把 mp4 打包为多码率 HLS，分段并行上传到 hls/文件MD5/ 下，媒资播放地址改为主播放列表，
+ * 播放器只需下载前几个分段即可起播，并按带宽选择清晰度。
+ *
+ * @author 学成在线项目组
+ */
+@Slf4j
+@Component
+public class VideoTranscodeEngine {
+
+    static final String HLS_PLAYLIST_TYPE = "application/vnd.apple.mpegurl";
+
+    static final String HLS_SEGMENT_TYPE = "video/mp2t";
+
+    /**
+     * 转为 mp4 的编码参数（与 Mp4VideoUtil 一致）
+     */
+    static final List<String> MP4_ARGS = Arrays.asList("-c:v", "libx264", "-s", "1280x720", "-pix_fmt", "yuv420p",
+            "-b:a", "63k", "-b:v", "753k", "-r", "18");
+
+    @Autowired
+    MediaProcessService mediaProcessService;
+
+    @Autowired
+    OssService ossService;
+
+    /**
+     * ffmpeg 可执行文件路径
+     */
+    @Value("${media.transcode.ffmpeg-path:${videoprocess.ffmpegpath:ffmpeg}}")
+    String ffmpegPath = "ffmpeg";
+
+    /**
+     * 同时运行的转码进程数，0 表示按 CPU 核数自动计算
+     */
+    @Value("${media.transcode.threads:0}")
+    int threads;
+
+    /**
+     * 单个任务 ffmpeg 的最长运行时间（分钟），超时后结束进程并记为失败
+     */
+    @Value("${media.transcode.timeout-minutes:120}")
+    long timeoutMinutes = 120;
+
+    /**
+     * 调度线程输出转码进度的间隔（秒）
+     */
+    @Value("${media.transcode.progress-interval-seconds:30}")
+    long progressIntervalSeconds = 30;
+
+    /**
+     * 转码工作目录（源文件和转码结果的临时存放位置，任务结束后删除）
+     */
+    @Value("${media.transcode.work-dir:${java.io.tmpdir}/xc-transcode}")
+    String workDir = System.getProperty("java.io.tmpdir") + "/xc-transcode";
+
+    /**
+     * 时长超过该值（秒）的视频分段并行转码，0 表示不分段
+     */
+    @Value("${media.transcode.segment.min-duration-seconds:1200}")
+    long segmentMinDurationSeconds = 1200;
+
+    /**
+     * 分段时长（秒）
+     */
+    @Value("${media.transcode.segment.seconds:300}")
+    int segmentSeconds = 300;
+
+    /**
+     * 同时转码的分段数（所有任务共用），0 表示 CPU 核数
+     */
+    @Value("${media.transcode.segment.threads:0}")
+    int segmentThreads;
+
+    /**
+     * 是否打包为 HLS（多码率 m3u8 + TS 分段），打包后媒资的播放地址为主播放列表；默认关闭，开启前各执行器需安装 ffmpeg
+     */
+    @Value("${media.transcode.hls.enabled:false}")
+    boolean hlsEnabled;
+
+    /**
+     * HLS 分段时长（秒）
+     */
+    @Value("${media.transcode.hls.segment-seconds:6}")
+    int hlsSegmentSeconds = 6;
+
+    /**
+     * HLS 清晰度（宽x高:视频码率:音频码率，逗号分隔，从高到低）
+     */
+    @Value("${media.transcode.hls.renditions:1280x720:753k:63k,854x480:400k:64k,640x360:250k:48k}")
+    String hlsRenditions = "1280x720:753k:63k,854x480:400k:64k,640x360:250k:48k";
+
+    /**
+     * HLS 分段并行上传的线程数
+     */
+    @Value("${media.transcode.hls.upload-threads:8}")
+    int hlsUploadThreads = 8;
+
+    /**
+     * 转码线程池（首次调度时创建）
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * 分段转码线程池（首次分段转码时创建，HLS 各清晰度也在其中转码）
+     */
+    private volatile ThreadPoolExecutor segmentExecutor;
+
+    /**
+     * HLS 上传线程池（首次上传时创建）
+     */
+    private volatile ThreadPoolExecutor uploadExecutor;
+
+    /**
+     * 正在转码的任务进度（任务id -> 百分比）
+     */
+    private final Map<Long, Integer> progress = new ConcurrentHashMap<>();
+
+    /**
+     * 执行一次调度
+     *
+     * @param shardIndex 分片序号（从0开始）
+     * @param shardTotal 分片总数
+     * @return 本次调度的处理结果
+     */
+    public Summary run(int shardIndex, int shardTotal) {
+        return run(shardIndex, shardTotal, null);
+    }
+
+    /**
+     * 执行一次调度，等待期间定期输出转码进度
+     *
+     * @param progressLog 进度输出（在调用线程中调用，可为空）
+     */
+    public Summary run(int shardIndex, int shardTotal, Consumer<String> progressLog) {
+        if (shardTotal <= 0) {
+            shardTotal = 1;
+            shardIndex = 0;
+        }
+        int concurrency = concurrency();
+        List<MediaProcess> tasks = mediaProcessService.getShardTasks(shardIndex, shardTotal, concurrency);
+        Summary summary = new Summary();
+        summary.total = tasks.size();
+        if (tasks.isEmpty()) {
+            return summary;
+        }
+        log.info("分片 {}/{} 查询到 {} 个转码任务，并发数：{}", shardIndex + 1, shardTotal, tasks.size(), concurrency);
+
+        List<Future<Outcome>> futures = new ArrayList<>();
+        for (MediaProcess task : tasks) {
+            try {
+                futures.add(getExecutor().submit(() -> process(task)));
+            } catch (RejectedExecutionException e) {
+                // 上次调度的任务还在执行，留给下次调度
+                summary.skipped++;
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(timeoutMinutes + 10);
+        for (Future<Outcome> future : futures) {
+            try {
+                Outcome outcome = await(future, deadline, progressLog);
+                if (outcome == Outcome.SUCCEEDED) {
+                    summary.succeeded++;
+                } else if (outcome == Outcome.FAILED) {
+                    summary.failed++;
+                } else {
+                    summary.skipped++;
+                }
+            } catch (TimeoutException e) {
+                // 任务继续在后台执行，结果由任务自己保存
+                summary.running++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                summary.running++;
+            } catch (ExecutionException e) {
+                summary.failed++;
+            }
+        }
+        log.info("分片 {}/{} 转码调度结束：{}", shardIndex + 1, shardTotal, summary);
+        return summary;
+    }
+
+    /**
+     * 等待任务结束，每隔 progressInterval 输出一次进度
+     */
+    private Outcome await(Future<Outcome> future, long deadline, Consumer<String> progressLog)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            long wait = progressLog != null ? Math.min(remaining, TimeUnit.SECONDS.toNanos(progressIntervalSeconds))
+                    : remaining;
+            try {
+                return future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw e;
+                }
+                Map<Long, Integer> snapshot = getProgress();
+                if (!snapshot.isEmpty()) {
+                    progressLog.accept("转码进度（任务id=百分比）：" + snapshot);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (segmentExecutor != null) {
+            segmentExecutor.shutdownNow();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 处理一个任务
+     */
+    private Outcome process(MediaProcess task) {
+        if (!mediaProcessService.claim(task.getId())) {
+            log.debug("转码任务已被其他执行器领取，任务id：{}", task.getId());
+            return Outcome.SKIPPED;
+        }
+
+        File dir = new File(workDir, String.valueOf(task.getId()));
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+            if (!dir.mkdirs()) {
+                throw new IOException("创建转码工作目录失败：" + dir);
+            }
+            File source = new File(dir, "source" + extension(task.getFilePath()));
+            String mp4Name = baseName(task.getFilename()) + ".mp4";
+            File target = new File(dir, task.getFileId() + ".mp4");
+
+            ossService.downloadFile(task.getFilePath(), source.getAbsolutePath());
+            progress.put(task.getId(), 0);
+
+            // 已是 mp4 的视频（只为打包 HLS 而登记）不再转 mp4
+            boolean mp4Source = ".mp4".equalsIgnoreCase(extension(task.getFilePath()));
+            String objectName = task.getFilePath();
+            if (!mp4Source) {
+                transcode(task, source, target, 0, hlsEnabled ? 50 : 100);
+                // 对象名沿用源文件的MD5；转码结果的内容与源文件不同，不把源文件MD5记为内容MD5
+                objectName = ossService.buildObjectName(task.getFileId(), mp4Name);
+                ossService.putFile(target.getAbsolutePath(), objectName, null);
+            }
+
+            String playlist = null;
+            if (hlsEnabled) {
+                playlist = packHls(task, mp4Source ? source : target, new File(dir, "hls"), mp4Source ? 0 : 50);
+            }
+
+            mediaProcessService.saveSuccess(task, objectName, playlist);
+            log.info("视频转码成功，任务id：{}，文件：{} -> {}{}", task.getId(), task.getFilePath(), objectName,
+                    playlist != null ? "，HLS：" + playlist : "");
+            return Outcome.SUCCEEDED;
+        } catch (Exception e) {
+            log.error("视频转码失败，任务id：{}，文件：{}", task.getId(), task.getFilePath(), e);
+            try {
+                mediaProcessService.saveFailed(task.getId(), e.getMessage());
+            } catch (Exception saveError) {
+                log.error("保存转码失败状态失败，任务id：{}", task.getId(), saveError);
+            }
+            return Outcome.FAILED;
+        } finally {
+            progress.remove(task.getId());
+            FileSystemUtils.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 转为 mp4：长视频分段并行转码，其余整段转码。ffmpeg 输出由 ProcessSupervisor 异步读取，进度写入 progress
+     *
+     * @param fromPercent 本阶段开始时的进度
+     * @param toPercent   本阶段结束时的进度
+     */
+    private void transcode(MediaProcess task, File source, File target, int fromPercent, int toPercent)
+            throws IOException, InterruptedException {
+        ProcessSupervisor.ProgressListener listener = progressListener(task, fromPercent, toPercent);
+
+        long durationMillis = segmentMinDurationSeconds > 0 ? probeDurationMillis(source) : -1;
+        if (durationMillis >= TimeUnit.SECONDS.toMillis(segmentMinDurationSeconds)) {
+            SegmentedMp4Transcoder transcoder = new SegmentedMp4Transcoder(ffmpegPath, MP4_ARGS, segmentSeconds,
+                    timeoutMinutes, TimeUnit.MINUTES);
+            int segments = transcoder.transcode(source, target, source.getParentFile(), getSegmentExecutor(),
+                    listener);
+            log.info("分段转码完成，任务id：{}，时长：{}秒，分段数：{}", task.getId(), durationMillis / 1000, segments);
+            return;
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        command.add("-i");
+        command.add(source.getAbsolutePath());
+        command.addAll(MP4_ARGS);
+        command.add("-y");
+        command.add(target.getAbsolutePath());
+        ProcessSupervisor.Result result = ProcessSupervisor.run(command, timeoutMinutes, TimeUnit.MINUTES, listener);
+        if (result.isTimedOut()) {
+            throw new IOException("ffmpeg 执行超时（" + timeoutMinutes + "分钟）");
+        }
+        if (result.getExitCode() != 0) {
+            throw new IOException("ffmpeg 退出码 " + result.getExitCode() + "：" + tail(result.getOutput(), 512));
+        }
+        if (!target.isFile() || target.length() == 0) {
+            throw new IOException("ffmpeg 未生成转码文件：" + tail(result.getOutput(), 512));
+        }
+    }
+
+    /**
+     * 打包为多码率 HLS 并上传：各清晰度在分段线程池中并行转码，TS 分段并行上传，
+     * 各清晰度播放列表在分段之后、主播放列表最后上传，播放器不会读到引用缺失分段的播放列表
+     *
+     * @return 主播放列表在OSS中的路径
+     */
+    private String packHls(MediaProcess task, File source, File outDir, int fromPercent)
+            throws IOException, InterruptedException {
+        List<HlsPackager.Rendition> renditions = new ArrayList<>();
+        for (String spec : hlsRenditions.split(",")) {
+            if (!spec.trim().isEmpty()) {
+                renditions.add(HlsPackager.Rendition.parse(spec));
+            }
+        }
+        HlsPackager packager = new HlsPackager(ffmpegPath, renditions, hlsSegmentSeconds, timeoutMinutes,
+                TimeUnit.MINUTES);
+        File master = packager.pack(source, outDir, getSegmentExecutor(), progressListener(task, fromPercent, 99));
+
+        String prefix = "hls/" + task.getFileId() + "/";
+        List<File> segments = new ArrayList<>();
+        List<File> playlists = new ArrayList<>();
+        for (HlsPackager.Rendition rendition : renditions) {
+            File[] files = new File(outDir, rendition.getName()).listFiles();
+            if (files == null) {
+                throw new IOException("HLS 输出目录不存在：" + rendition.getName());
+            }
+            for (File file : files) {
+                (file.getName().endsWith(".m3u8") ? playlists : segments).add(file);
+            }
+        }
+        upload(segments, outDir, prefix);
+        upload(playlists, outDir, prefix);
+        ossService.putFile(master.getAbsolutePath(), prefix + master.getName(), HLS_PLAYLIST_TYPE);
+        return prefix + master.getName();
+    }
+
+    /**
+     * 并行上传 HLS 文件（对象名为 前缀 + 相对输出目录的路径）
+     */
+    private void upload(List<File> files, File baseDir, String prefix) throws IOException, InterruptedException {
+        String base = baseDir.getAbsolutePath() + File.separator;
+        List<Future<?>> futures = new ArrayList<>();
+        for (File file : files) {
+            String objectName = prefix + file.getAbsolutePath().substring(base.length()).replace(File.separatorChar, '/');
+            String contentType = file.getName().endsWith(".m3u8") ? HLS_PLAYLIST_TYPE : HLS_SEGMENT_TYPE;
+            futures.add(getUploadExecutor().submit(() -> ossService.putFile(file.getAbsolutePath(), objectName,
+                    contentType)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IOException("HLS 上传失败：" + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 把某一阶段的 ffmpeg 进度换算为任务整体进度
+     */
+    private ProcessSupervisor.ProgressListener progressListener(MediaProcess task, int fromPercent, int toPercent) {
+        return (processed, total) -> {
+            if (total > 0) {
+                long percent = fromPercent + Math.min(processed, total) * (toPercent - fromPercent) / total;
+                progress.put(task.getId(), (int) Math.min(99, percent));
+            }
+        };
+    }
+
+    /**
+     * 读取视频时长（ffmpeg -i 只输出文件信息，没有输出文件时退出码非0）
+     *
+     * @return 时长（毫秒），无法识别时为 -1
+     */
+    private long probeDurationMillis(File source) throws IOException, InterruptedException {
+        List<String> command = Arrays.asList(ffmpegPath, "-i", source.getAbsolutePath());
+        return ProcessSupervisor.run(command, 1, TimeUnit.MINUTES, null).getDurationMillis();
+    }
+
+    /**
+     * 正在转码的任务进度（任务id -> 百分比）
+     */
+    public Map<Long, Integer> getProgress() {
+        return new TreeMap<>(progress);
+    }
+
+    private int concurrency() {
+        return threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    int size = concurrency();
+                    AtomicInteger seq = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(size), r -> {
+                        Thread thread = new Thread(r, "media-transcode-" + seq.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ThreadPoolExecutor getSegmentExecutor() {
+        if (segmentExecutor == null) {
+            synchronized (this) {
+                if (segmentExecutor == null) {
+                    int size = segmentThreads > 0 ? segmentThreads : Runtime.getRuntime().availableProcessors();
+                    AtomicInteger seq = new AtomicInteger();
+                    // 分段数不固定，排队不设上限；同时运行的分段数由线程数限制
+                    segmentExecutor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "media-transcode-segment-" + seq.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return segmentExecutor;
+    }
+
+    private ThreadPoolExecutor getUploadExecutor() {
+        if (uploadExecutor == null) {
+            synchronized (this) {
+                if (uploadExecutor == null) {
+                    AtomicInteger seq = new AtomicInteger();
+                    uploadExecutor = new ThreadPoolExecutor(hlsUploadThreads, hlsUploadThreads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "media-transcode-upload-" + seq.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return uploadExecutor;
+    }
+
+    /**
+     * 取输出末尾（ffmpeg 的错误信息在最后几行）
+     */
+    private static String tail(String output, int maxChars) {
+        String trimmed = output.trim();
+        return trimmed.length() > maxChars ? trimmed.substring(trimmed.length() - maxChars) : trimmed;
+    }
+
+    private static String extension(String path) {
+        int dot = path != null ? path.lastIndexOf('.') : -1;
+        return dot >= 0 && dot > path.lastIndexOf('/') ? path.substring(dot) : "";
+    }
+
+    private static String baseName(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return "video";
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
+    }
+
+    private enum Outcome {
+        SUCCEEDED, FAILED, SKIPPED
+    }
+
+    /**
+     * 一次调度的处理结果
+     */
+    @Getter
+    public static class Summary {
+
+        private int total;
+
+        private int succeeded;
+
+        private int failed;
+
+        private int skipped;
+
+        private int running;
+
+        @Override
+        public String toString() {
+            return String.format("任务 %d 个，成功 %d，失败 %d，跳过 %d，仍在执行 %d",
+                    total, succeeded, failed, skipped, running);
+        }
+    }
+}
@@ -1,17 +1,20 @@
 package com.xuecheng.media.task;
 
+import com.xuecheng.media.service.impl.MergeJobManager;
+import com.xuecheng.media.service.impl.OssChunkStore;
+import com.xuecheng.media.service.impl.OssService;
+import com.xuecheng.media.service.impl.UploadSessionRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
 
 /**
  * 分块文件定时清理任务
@@ -21,9 +24,9 @@ import java.time.temporal.ChronoUnit;
  * 
  * 📊 清理策略：
  * 1. 每天凌晨2点自动执行
- * 2. 扫描临时分块目录（/tmp/xc-chunks/ 或 C:\Users\...\Temp\xc-chunks\）
- * 3. 检查每个分块目录的最后修改时间
- * 4. 删除超过24小时的分块目录及其所有内容
+ * 2. 从上传会话登记中取出超过24小时未访问的会话（按最后访问时间排序，不遍历分块目录）
+ * 3. 删除这些会话的分块目录（分块根目录 media.chunk.root 下的 {fileMd5}）及其所有内容
+ * 4. 会话登记在启动时对账扫描一次分块目录，之后由上传、合并接口维护
  * 
  * 🔍 判断逻辑：
  * - 正常情况下，视频上传在几分钟到几小时内完成
@@ -45,14 +48,36 @@ import java.time.temporal.ChronoUnit;
 public class ChunkCleanupTask {
 
     /**
-     * 分块文件根目录
+     * 清理阈值（小时）
      */
-    private static final String CHUNK_ROOT = System.getProperty("java.io.tmpdir") + "/xc-chunks";
+    private static final int CLEANUP_THRESHOLD_HOURS = 24;
 
     /**
-     * 清理阈值（小时）
+     * OSS分块存储（oss模式下分块是OSS上的临时对象，中断的上传同样要清理）
      */
-    private static final int CLEANUP_THRESHOLD_HOURS = 24;
+    @Autowired
+    private OssChunkStore ossChunkStore;
+
+    /**
+     * 大文件并行分片上传失败后留下的未完成分片上传和检查点
+     */
+    @Autowired
+    private OssService ossService;
+
+    /**
+     * 异步合并任务（已结束的任务状态文件保留24小时供前端查询）
+     */
+    @Autowired
+    private MergeJobManager mergeJobManager;
+
+    /**
+     * 分块上传会话登记（按最后访问时间排序，清理时只取出过期会话）
+     */
+    @Autowired
+    private UploadSessionRegistry uploadSessionRegistry;
+
+    @Value("${media.chunk.mode:local}")
+    private String chunkMode;
 
     /**
      * 定时清理任务
@@ -71,111 +96,50 @@ public class ChunkCleanupTask {
     public void cleanupOldChunks() {
         log.info("========== 开始执行分块文件清理任务 ==========");
 
-        Path rootPath = Paths.get(CHUNK_ROOT);
+        // oss模式：清理OSS上过期的分块对象
+        if ("oss".equalsIgnoreCase(chunkMode)) {
+            try {
+                Instant threshold = Instant.now().minus(CLEANUP_THRESHOLD_HOURS, ChronoUnit.HOURS);
+                int deleted = ossChunkStore.deleteExpired(Date.from(threshold));
+                log.info("清理过期OSS分块对象：{} 个", deleted);
+            } catch (Exception e) {
+                log.error("清理OSS分块对象失败：{}", e.getMessage(), e);
+            }
+        }
 
-        // 检查根目录是否存在
-        if (!Files.exists(rootPath)) {
-            log.info("分块根目录不存在，无需清理：{}", CHUNK_ROOT);
-            return;
+        try {
+            Instant threshold = Instant.now().minus(CLEANUP_THRESHOLD_HOURS, ChronoUnit.HOURS);
+            int aborted = ossService.abortExpiredMultipartUploads(Date.from(threshold));
+            log.info("取消过期的并行分片上传：{} 个", aborted);
+        } catch (Exception e) {
+            log.error("取消过期的并行分片上传失败：{}", e.getMessage(), e);
         }
 
-        int totalDirs = 0; // 总目录数
+        int deletedJobs = mergeJobManager.deleteFinished(LocalDateTime.now().minusHours(CLEANUP_THRESHOLD_HOURS));
+        log.info("清理已结束的合并任务：{} 个", deletedJobs);
+
+        // 从会话登记中取出超过阈值未访问的上传，只访问这些目录
+        long threshold = Instant.now().minus(CLEANUP_THRESHOLD_HOURS, ChronoUnit.HOURS).toEpochMilli();
+        List<UploadSessionRegistry.Session> expired = uploadSessionRegistry.pollExpired(threshold);
+
         int deletedDirs = 0; // 删除的目录数
         long freedSpace = 0; // 释放的空间（字节）
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootPath)) {
-            for (Path chunkDir : stream) {
-                // 只处理目录
-                if (!Files.isDirectory(chunkDir)) {
-                    continue;
-                }
-
-                totalDirs++;
-
-                try {
-                    // 获取目录的最后修改时间
-                    BasicFileAttributes attrs = Files.readAttributes(chunkDir, BasicFileAttributes.class);
-                    Instant lastModified = attrs.lastModifiedTime().toInstant();
-                    Instant threshold = Instant.now().minus(CLEANUP_THRESHOLD_HOURS, ChronoUnit.HOURS);
-
-                    // 判断是否超过阈值
-                    if (lastModified.isBefore(threshold)) {
-                        // 计算目录大小
-                        long dirSize = calculateDirSize(chunkDir);
-
-                        // 删除目录及其所有内容
-                        deleteDirectory(chunkDir);
-
-                        deletedDirs++;
-                        freedSpace += dirSize;
-
-                        log.info("✅ 清理过期分块目录：{}，大小：{}MB，最后修改时间：{}",
-                                chunkDir.getFileName(),
-                                dirSize / 1024 / 1024,
-                                lastModified);
-                    } else {
-                        log.debug("分块目录未过期，跳过：{}，最后修改时间：{}",
-                                chunkDir.getFileName(), lastModified);
-                    }
-
-                } catch (Exception e) {
-                    log.error("处理分块目录失败：{}，错误：{}", chunkDir, e.getMessage(), e);
-                    // 继续处理下一个目录
-                }
+        for (UploadSessionRegistry.Session session : expired) {
+            // 取消未完成的OSS分片上传、删除目录及其所有内容、清掉分块清单
+            if (uploadSessionRegistry.purge(session)) {
+                deletedDirs++;
             }
-        } catch (IOException e) {
-            log.error("扫描分块根目录失败：{}", e.getMessage(), e);
+            freedSpace += session.getBytes();
+            log.info("✅ 清理过期分块目录：{}，大小：{}MB，最后访问时间：{}",
+                    session.getFileMd5(),
+                    session.getBytes() / 1024 / 1024,
+                    Instant.ofEpochMilli(session.getLastTouch()));
         }
 
         log.info("========== 分块文件清理任务完成 ==========");
-        log.info("扫描目录数：{}，清理目录数：{}，释放空间：{}MB",
-                totalDirs, deletedDirs, freedSpace / 1024 / 1024);
-    }
-
-    /**
-     * 计算目录大小（递归计算所有文件）
-     * 
-     * @param dir 目录路径
-     * @return 目录总大小（字节）
-     */
-    private long calculateDirSize(Path dir) {
-        long size = 0;
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-            for (Path file : stream) {
-                if (Files.isRegularFile(file)) {
-                    size += Files.size(file);
-                } else if (Files.isDirectory(file)) {
-                    // 递归计算子目录大小
-                    size += calculateDirSize(file);
-                }
-            }
-        } catch (IOException e) {
-            log.warn("计算目录大小失败：{}", dir, e);
-        }
-        return size;
-    }
-
-    /**
-     * 递归删除目录及其所有内容
-     * 
-     * @param dir 要删除的目录
-     * @throws IOException 删除失败时抛出异常
-     */
-    private void deleteDirectory(Path dir) throws IOException {
-        // 先删除目录中的所有文件
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-            for (Path file : stream) {
-                if (Files.isDirectory(file)) {
-                    // 递归删除子目录
-                    deleteDirectory(file);
-                } else {
-                    // 删除文件
-                    Files.deleteIfExists(file);
-                }
-            }
-        }
-        // 最后删除空目录
-        Files.deleteIfExists(dir);
+        log.info("过期会话数：{}，清理目录数：{}，释放空间：{}MB，剩余会话数：{}",
+                expired.size(), deletedDirs, freedSpace / 1024 / 1024, uploadSessionRegistry.getSessionCount());
     }
 
     /**
@@ -194,27 +158,9 @@ public class ChunkCleanupTask {
      * @return 统计信息字符串
      */
     public String getStatistics() {
-        Path rootPath = Paths.get(CHUNK_ROOT);
-
-        if (!Files.exists(rootPath)) {
-            return "分块根目录不存在";
-        }
-
-        int dirCount = 0;
-        long totalSize = 0;
-
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootPath)) {
-            for (Path dir : stream) {
-                if (Files.isDirectory(dir)) {
-                    dirCount++;
-                    totalSize += calculateDirSize(dir);
-                }
-            }
-        } catch (IOException e) {
-            log.error("统计分块文件失败", e);
-            return "统计失败：" + e.getMessage();
-        }
-
-        return String.format("分块目录数：%d，总大小：%dMB", dirCount, totalSize / 1024 / 1024);
+        return String.format("分块目录数：%d，总大小：%dMB%s，%s", uploadSessionRegistry.getSessionCount(),
+                uploadSessionRegistry.getTotalBytes() / 1024 / 1024,
+                uploadSessionRegistry.isReconciled() ? "" : "（启动对账中）",
+                uploadSessionRegistry.getQuotaStatistics());
     }
 }
@@ -0,0 +1,122 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.service.impl.ChunkDirectory;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分块清单测试
+ */
+public class ChunkManifestStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String fileMd5;
+
+    private Path chunkRoot;
+
+    @BeforeEach
+    public void setUp() {
+        fileMd5 = UUID.randomUUID().toString().replace("-", "");
+        chunkRoot = tempDir.resolve(fileMd5);
+    }
+
+    @Test
+    public void testMissingChunks() throws IOException {
+        ChunkManifestStore store = newStore();
+        assertFalse(store.exists(fileMd5));
+
+        store.record(fileMd5, 0, 100, "a");
+        store.record(fileMd5, 3, 40, "d");
+
+        assertTrue(store.exists(fileMd5));
+        assertTrue(store.hasChunk(fileMd5, 3));
+        assertFalse(store.hasChunk(fileMd5, 1));
+        assertEquals(Arrays.asList(1, 2, 4), store.missingChunks(fileMd5, 5));
+    }
+
+    /**
+     * 重启后从 manifest.log 重建；重传的分块以最后一行为准，写入中断的半行被忽略
+     */
+    @Test
+    public void testRebuildAfterRestart() throws IOException {
+        ChunkManifestStore before = newStore();
+        before.recordTotal(fileMd5, 3);
+        before.record(fileMd5, 0, 100, "a");
+        before.record(fileMd5, 1, 100, "b");
+        before.record(fileMd5, 1, 100, "b2");
+        Files.write(chunkRoot.resolve("manifest.log"), "2,10".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        ChunkManifestStore after = newStore();
+        ChunkManifestStore.Manifest manifest = after.get(fileMd5);
+
+        assertEquals(3, manifest.getChunkTotal());
+        assertEquals(100, manifest.getChunkSize());
+        assertEquals(2, manifest.getReceivedCount());
+        assertEquals(200, manifest.getReceivedBytes());
+        assertEquals("b2", manifest.getChecksums().get(1));
+        assertEquals(Collections.singletonList(2), after.missingChunks(fileMd5, 3));
+    }
+
+    @Test
+    public void testDiscard() throws IOException {
+        ChunkManifestStore store = newStore();
+        store.record(fileMd5, 0, 1, null);
+
+        store.discard(fileMd5);
+
+        assertFalse(store.exists(fileMd5));
+        assertFalse(Files.exists(chunkRoot.resolve("manifest.log")));
+    }
+
+    /**
+     * uploadChunk 登记清单；续传协商和合并前检查都通过清单完成
+     */
+    @Test
+    public void testServiceUsesManifest() throws IOException {
+        MediaFileServiceFixture fixture = new MediaFileServiceFixture(tempDir);
+        MediaFileServiceImpl service = fixture.service();
+        ChunkManifestStore store = fixture.manifestStore();
+
+        byte[] chunk = "chunk-0".getBytes(StandardCharsets.UTF_8);
+        Path temp = Files.createTempFile(tempDir, "xc-chunk-", ".tmp");
+        Files.write(temp, chunk);
+        try {
+            assertEquals(0, service.uploadChunk(fileMd5, 0, temp.toString()).getCode());
+        } finally {
+            Files.delete(temp);
+        }
+
+        assertEquals(DigestUtils.md5Hex(chunk), store.get(fileMd5).getChecksums().get(0));
+        assertTrue(service.checkChunk(fileMd5, 0).getResult());
+        assertEquals(Arrays.asList(1, 2), service.missingChunks(fileMd5, 3).getResult());
+
+        RestResponse merge = service.mergechunks(1L, fileMd5, 3, new UploadFileParamsDto());
+        assertEquals("缺少分块：1", merge.getMsg());
+    }
+
+    private ChunkManifestStore newStore() {
+        ChunkManifestStore store = new ChunkManifestStore();
+        ReflectionTestUtils.setField(store, "chunkDirectory", new ChunkDirectory(tempDir.toString()));
+        return store;
+    }
+}
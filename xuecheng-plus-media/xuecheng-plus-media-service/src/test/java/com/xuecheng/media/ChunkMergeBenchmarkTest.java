@@ -0,0 +1,175 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.service.impl.ChunkMerger;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 分块合并测试 + 基准对比
+ * <p>
+ * 1. 正确性：单遍合并得到的MD5与直接对原始数据计算的MD5一致
+ * 2. 基准（默认不执行）：旧流程（byte[]合并 + 两次回读算MD5 + 上传读取）对比
+ * 新流程（合并时计算MD5 + 上传读取），统计读盘遍数与吞吐量
+ * <p>
+ * 运行基准（默认 2GB 合成文件，5MB 分块）：
+ * mvn test -Dtest=ChunkMergeBenchmarkTest -Dmerge.bench=true [-Dmerge.bench.mb=2048]
+ */
+public class ChunkMergeBenchmarkTest {
+
+    private static final int CHUNK_SIZE = 5 * 1024 * 1024;
+
+    private Path workDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xc-merge-test-");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(workDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * 合并结果的MD5和大小应与原始数据一致
+     */
+    @Test
+    public void testMergeDigest() throws IOException {
+        Path chunkRoot = Files.createDirectories(workDir.resolve("chunks"));
+        Random random = new Random(42);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        int[] sizes = {CHUNK_SIZE, CHUNK_SIZE, 12345};
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            random.nextBytes(data);
+            expected.write(data);
+            Files.write(chunkRoot.resolve(String.valueOf(i)), data);
+        }
+
+        ChunkMerger.MergeResult result = ChunkMerger.merge(chunkRoot, sizes.length, workDir.resolve("merged"));
+
+        assertEquals(DigestUtils.md5Hex(expected.toByteArray()), result.getMd5());
+        assertEquals(expected.size(), result.getSize());
+        assertEquals(result.getMd5(), md5Of(workDir.resolve("merged")));
+    }
+
+    /**
+     * 缺少分块时应直接失败，不做部分合并
+     */
+    @Test
+    public void testMissingChunk() throws IOException {
+        Path chunkRoot = Files.createDirectories(workDir.resolve("chunks"));
+        Files.write(chunkRoot.resolve("0"), new byte[]{1, 2, 3});
+        Files.write(chunkRoot.resolve("2"), new byte[]{4, 5, 6});
+
+        IOException e = assertThrows(IOException.class,
+                () -> ChunkMerger.merge(chunkRoot, 3, workDir.resolve("merged")));
+        assertEquals("缺少分块：1", e.getMessage());
+    }
+
+    /**
+     * 基准：旧流程 vs 单遍合并
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "merge.bench", matches = "true")
+    public void benchmarkMerge() throws IOException {
+        long totalBytes = Long.getLong("merge.bench.mb", 2048L) * 1024 * 1024;
+        Path chunkRoot = Files.createDirectories(workDir.resolve("chunks"));
+        int chunkTotal = writeSyntheticChunks(chunkRoot, totalBytes);
+
+        // 旧流程：byte[] 拷贝合并 → 回读算MD5 → OssService 再算一次MD5 → putObject 读取上传
+        Path legacyTarget = workDir.resolve("legacy");
+        long start = System.nanoTime();
+        legacyMerge(chunkRoot, chunkTotal, legacyTarget);
+        String legacyMd5 = md5Of(legacyTarget);
+        md5Of(legacyTarget);
+        drain(legacyTarget);
+        long legacyNanos = System.nanoTime() - start;
+        Files.delete(legacyTarget);
+
+        // 新流程：合并时计算MD5 → putObject 读取上传
+        Path target = workDir.resolve("single-pass");
+        start = System.nanoTime();
+        ChunkMerger.MergeResult result = ChunkMerger.merge(chunkRoot, chunkTotal, target);
+        drain(target);
+        long singlePassNanos = System.nanoTime() - start;
+
+        assertEquals(legacyMd5, result.getMd5());
+        report("旧流程", 4, totalBytes, legacyNanos);
+        report("单遍合并", 2, totalBytes, singlePassNanos);
+    }
+
+    private int writeSyntheticChunks(Path chunkRoot, long totalBytes) throws IOException {
+        Random random = new Random(7);
+        byte[] data = new byte[CHUNK_SIZE];
+        int chunk = 0;
+        for (long written = 0; written < totalBytes; written += CHUNK_SIZE, chunk++) {
+            random.nextBytes(data);
+            int len = (int) Math.min(CHUNK_SIZE, totalBytes - written);
+            try (RandomAccessFile raf = new RandomAccessFile(chunkRoot.resolve(String.valueOf(chunk)).toFile(), "rw")) {
+                raf.write(data, 0, len);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * 与改造前 mergechunks 相同的合并方式
+     */
+    private void legacyMerge(Path chunkRoot, int chunkTotal, Path target) throws IOException {
+        try (RandomAccessFile rafRw = new RandomAccessFile(target.toFile(), "rw")) {
+            byte[] buffer = new byte[1024 * 1024];
+            for (int i = 0; i < chunkTotal; i++) {
+                try (RandomAccessFile rafR = new RandomAccessFile(chunkRoot.resolve(String.valueOf(i)).toFile(), "r")) {
+                    int len;
+                    while ((len = rafR.read(buffer)) != -1) {
+                        rafRw.write(buffer, 0, len);
+                    }
+                }
+            }
+        }
+    }
+
+    private String md5Of(Path file) throws IOException {
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            return DigestUtils.md5Hex(in);
+        }
+    }
+
+    /**
+     * 模拟 putObject 读取文件上传
+     */
+    private void drain(Path file) throws IOException {
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            while (in.read(buffer) != -1) {
+                // 丢弃
+            }
+        }
+    }
+
+    private void report(String name, int passes, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s：读盘遍数=%d，耗时=%.2fs，吞吐=%.1fMB/s%n",
+                name, passes, seconds, bytes / 1024.0 / 1024.0 / seconds);
+    }
+}
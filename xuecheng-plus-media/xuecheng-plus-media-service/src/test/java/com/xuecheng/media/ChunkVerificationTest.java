@@ -0,0 +1,162 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分块校验测试：分块MD5不一致时立即拒绝，组合摘要一致时合并可跳过整文件MD5
+ */
+public class ChunkVerificationTest {
+
+    private static final String[] CHUNKS = {"first-chunk|", "second-chunk|", "tail"};
+
+    @TempDir
+    Path tempDir;
+
+    private MediaFileServiceFixture fixture;
+
+    private LocalOssStub oss;
+
+    private MediaFileServiceImpl service;
+
+    private ChunkManifestStore manifestStore;
+
+    private String fileMd5;
+
+    @BeforeEach
+    public void setUp() {
+        // 故意使用与内容无关的MD5：只有跳过整文件MD5计算时合并才会成功
+        fileMd5 = UUID.randomUUID().toString().replace("-", "");
+        fixture = new MediaFileServiceFixture(tempDir);
+        fixture.chunkStores(fixture.localStore(), fixture.multipartUploader());
+        oss = fixture.oss();
+        service = fixture.service();
+        manifestStore = fixture.manifestStore();
+    }
+
+    /**
+     * 分块MD5不一致立即拒绝，已有的正确分块不受影响
+     */
+    @Test
+    public void testRejectCorruptChunk() throws IOException {
+        assertEquals(0, upload(0, CHUNKS[0], md5(CHUNKS[0])).getCode());
+
+        RestResponse resp = upload(0, "corrupted", md5(CHUNKS[0]));
+
+        assertEquals("分块校验失败", resp.getMsg());
+        assertEquals(md5(CHUNKS[0]), manifestStore.get(fileMd5).getChecksums().get(0));
+        Path chunkFile = tempDir.resolve(fileMd5).resolve("0");
+        assertEquals(CHUNKS[0], new String(Files.readAllBytes(chunkFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 请求流提前结束（写入字节数与分块大小不一致）时拒绝，不发布残缺分块，也不留下临时文件
+     */
+    @Test
+    public void testRejectTruncatedChunk() throws IOException {
+        byte[] data = CHUNKS[1].getBytes(StandardCharsets.UTF_8);
+        RestResponse resp = service.uploadChunk(fileMd5, 1, new ByteArrayInputStream(data, 0, 4), data.length,
+                "lesson.mp4", null);
+
+        assertNotEquals(0, resp.getCode());
+        Path root = tempDir.resolve(fileMd5);
+        try (Stream<Path> files = Files.list(root)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testCombinedDigestMismatch() throws IOException {
+        uploadAll();
+
+        RestResponse resp = service.mergechunks(1L, fileMd5, 3, new UploadFileParamsDto(), md5("wrong"));
+
+        assertEquals("文件校验失败", resp.getMsg());
+    }
+
+    /**
+     * 组合摘要一致且开启跳过时，不再计算整文件MD5
+     */
+    @Test
+    public void testSkipFullFileDigest() throws IOException {
+        uploadAll();
+        ReflectionTestUtils.setField(service, "skipMergeDigest", true);
+        UploadFileParamsDto params = new UploadFileParamsDto();
+        params.setFilename("lesson.mp4");
+
+        RestResponse resp = service.mergechunks(1L, fileMd5, 3, params, combinedDigest());
+
+        assertEquals(0, resp.getCode(), resp.getMsg());
+        assertEquals(String.join("", CHUNKS).length(), params.getFileSize());
+    }
+
+    /**
+     * 未开启跳过时仍计算整文件MD5（这里MD5与内容不符，因此失败）
+     */
+    @Test
+    public void testFullFileDigestByDefault() throws IOException {
+        uploadAll();
+
+        RestResponse resp = service.mergechunks(1L, fileMd5, 3, new UploadFileParamsDto(), combinedDigest());
+
+        assertEquals("文件校验失败", resp.getMsg());
+    }
+
+    /**
+     * 分片直传模式下分块MD5交给OSS按 Content-MD5 校验
+     */
+    @Test
+    public void testMultipartModeRejectsCorruptChunk() throws IOException {
+        fixture.chunkMode("multipart");
+
+        assertEquals(0, upload(0, CHUNKS[0], md5(CHUNKS[0])).getCode());
+        assertEquals("分块校验失败", upload(1, "corrupted", md5(CHUNKS[1])).getMsg());
+        assertEquals(Collections.singletonList(1), manifestStore.missingChunks(fileMd5, 2));
+    }
+
+    private void uploadAll() throws IOException {
+        for (int i = 0; i < CHUNKS.length; i++) {
+            assertEquals(0, upload(i, CHUNKS[i], md5(CHUNKS[i])).getCode());
+        }
+    }
+
+    private RestResponse upload(int chunk, String content, String chunkMd5) throws IOException {
+        Path temp = Files.createTempFile(tempDir, "xc-chunk-", ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            return service.uploadChunk(fileMd5, chunk, temp.toString(), "lesson.mp4", chunkMd5);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private String combinedDigest() {
+        StringBuilder sb = new StringBuilder();
+        for (String chunk : CHUNKS) {
+            sb.append(md5(chunk));
+        }
+        return md5(sb.toString());
+    }
+
+    private String md5(String content) {
+        return DigestUtils.md5Hex(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,444 @@
+package com.xuecheng.media;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.model.*;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地内存版OSS替身（仅测试使用）
+ * <p>
+ * 通过动态代理实现 OSS 接口中媒资服务用到的那部分方法，对象保存在内存中，
+ * 行为（ETag、CRC64、分片拼接）与真实OSS保持一致，未实现的方法直接抛异常。
+ */
+public class LocalOssStub {
+
+    public static final String BUCKET = "test-bucket";
+
+    /**
+     * 已提交的对象（key -> 内容）
+     */
+    private final Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+
+    /**
+     * 进行中的分片上传（uploadId -> 分片号 -> 内容）
+     */
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * 对象最后修改时间（key -> 时间）
+     */
+    private final Map<String, Date> lastModified = new ConcurrentHashMap<>();
+
+    private final AtomicInteger uploadIdSeq = new AtomicInteger();
+
+    /**
+     * 为 true 时 completeMultipartUpload 会篡改一个字节（模拟服务端数据损坏）
+     */
+    private volatile boolean corruptOnComplete;
+
+    /**
+     * 模拟 uploadPart 失败（分片号 -> 剩余失败次数，分片号0表示任意分片）
+     */
+    private final Map<Integer, Integer> failingParts = new ConcurrentHashMap<>();
+
+    /**
+     * uploadPart 调用次数（含失败）
+     */
+    private final AtomicInteger uploadPartCalls = new AtomicInteger();
+
+    /**
+     * getObject 调用次数
+     */
+    private final AtomicInteger getObjectCalls = new AtomicInteger();
+
+    /**
+     * listObjects 调用次数
+     */
+    private final AtomicInteger listObjectsCalls = new AtomicInteger();
+
+    /**
+     * 对象类型（key -> Content-Type）
+     */
+    private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+
+    /**
+     * 对象元信息（key -> ETag、对象类型、Content-MD5、用户元信息）
+     */
+    private final Map<String, ObjectMetadata> metadatas = new ConcurrentHashMap<>();
+
+    /**
+     * 分片上传初始化时指定的元信息（uploadId -> 元信息）
+     */
+    private final Map<String, ObjectMetadata> uploadMetadatas = new ConcurrentHashMap<>();
+
+    private final OSS client = (OSS) Proxy.newProxyInstance(OSS.class.getClassLoader(), new Class[]{OSS.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "putObject":
+                        return putObject((String) args[1], (InputStream) args[2],
+                                args.length > 3 ? (ObjectMetadata) args[3] : null);
+                    case "initiateMultipartUpload":
+                        return initiate((InitiateMultipartUploadRequest) args[0]);
+                    case "uploadPart":
+                        return uploadPart((UploadPartRequest) args[0]);
+                    case "listParts":
+                        return listParts((ListPartsRequest) args[0]);
+                    case "uploadPartCopy":
+                        return uploadPartCopy((UploadPartCopyRequest) args[0]);
+                    case "listObjects":
+                        listObjectsCalls.incrementAndGet();
+                        return listObjects((ListObjectsRequest) args[0]);
+                    case "deleteObjects":
+                        return deleteObjects((DeleteObjectsRequest) args[0]);
+                    case "completeMultipartUpload":
+                        return complete((CompleteMultipartUploadRequest) args[0]);
+                    case "abortMultipartUpload":
+                        uploads.remove(((AbortMultipartUploadRequest) args[0]).getUploadId());
+                        uploadMetadatas.remove(((AbortMultipartUploadRequest) args[0]).getUploadId());
+                        return null;
+                    case "deleteObject":
+                        objects.remove((String) args[1]);
+                        lastModified.remove((String) args[1]);
+                        metadatas.remove((String) args[1]);
+                        return new VoidResult();
+                    case "getObject":
+                        return getObject(args);
+                    case "getObjectMetadata":
+                        return getObjectMetadata((String) args[1]);
+                    case "doesObjectExist":
+                        return objects.containsKey((String) args[1]);
+                    case "shutdown":
+                        return null;
+                    case "toString":
+                        return "LocalOssStub";
+                    default:
+                        throw new UnsupportedOperationException("LocalOssStub 未实现：" + method.getName());
+                }
+            });
+
+    public OSS client() {
+        return client;
+    }
+
+    /**
+     * 创建指向本替身的 OssService
+     */
+    public OssService newOssService() {
+        OssService ossService = new OssService();
+        ReflectionTestUtils.setField(ossService, "ossClient", client);
+        ReflectionTestUtils.setField(ossService, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(ossService, "endpoint", "127.0.0.1");
+        ReflectionTestUtils.setField(ossService, "multipartThreshold", 100L * 1024 * 1024);
+        ReflectionTestUtils.setField(ossService, "multipartPartSize", 10L * 1024 * 1024);
+        ReflectionTestUtils.setField(ossService, "multipartThreads", 4);
+        ReflectionTestUtils.setField(ossService, "multipartMaxRetries", 3);
+        ReflectionTestUtils.setField(ossService, "multipartCheckpointDir",
+                System.getProperty("java.io.tmpdir") + "/xc-oss-checkpoint");
+        return ossService;
+    }
+
+    public byte[] getObject(String key) {
+        return objects.get(key);
+    }
+
+    /**
+     * 修改对象的最后修改时间（模拟过期对象）
+     */
+    public void setLastModified(String key, Date date) {
+        lastModified.put(key, date);
+    }
+
+    public boolean hasObject(String key) {
+        return objects.containsKey(key);
+    }
+
+    public int pendingUploads() {
+        return uploads.size();
+    }
+
+    public void setCorruptOnComplete(boolean corruptOnComplete) {
+        this.corruptOnComplete = corruptOnComplete;
+    }
+
+    /**
+     * 让指定分片接下来的 times 次上传失败（partNumber 为0时对任意分片生效）
+     */
+    public void failUploadPart(int partNumber, int times) {
+        failingParts.put(partNumber, times);
+    }
+
+    public void clearFailures() {
+        failingParts.clear();
+    }
+
+    public int getUploadPartCalls() {
+        return uploadPartCalls.get();
+    }
+
+    public int getGetObjectCalls() {
+        return getObjectCalls.get();
+    }
+
+    public int getListObjectsCalls() {
+        return listObjectsCalls.get();
+    }
+
+    private PutObjectResult putObject(String key, InputStream in, ObjectMetadata metadata) throws IOException {
+        byte[] data = IOUtils.toByteArray(in);
+        if (metadata != null && metadata.getContentMD5() != null
+                && !metadata.getContentMD5().equals(Base64.getEncoder().encodeToString(DigestUtils.md5(data)))) {
+            throw new OSSException("digest mismatch", OSSErrorCode.INVALID_DIGEST, null, null, null, null, null);
+        }
+        putObject(key, data);
+        if (metadata != null && metadata.getContentType() != null) {
+            contentTypes.put(key, metadata.getContentType());
+        }
+        recordMetadata(key, metadata, DigestUtils.md5Hex(data).toUpperCase(), "Normal");
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(DigestUtils.md5Hex(data).toUpperCase());
+        result.setServerCRC(crc64(data));
+        return result;
+    }
+
+    private void putObject(String key, byte[] data) {
+        objects.put(key, data);
+        lastModified.put(key, new Date());
+    }
+
+    /**
+     * 记录对象元信息（Content-MD5、用户元信息取自上传请求，ETag、对象类型按上传方式）
+     */
+    private void recordMetadata(String key, ObjectMetadata request, String etag, String objectType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", etag);
+        metadata.setHeader("x-oss-object-type", objectType);
+        if (request != null) {
+            if (request.getContentMD5() != null) {
+                metadata.setContentMD5(request.getContentMD5());
+            }
+            metadata.setUserMetadata(request.getUserMetadata());
+        }
+        metadatas.put(key, metadata);
+    }
+
+    /**
+     * getObject(bucket, key) 或 getObject(GetObjectRequest)，后者支持 Range
+     */
+    private OSSObject getObject(Object[] args) {
+        getObjectCalls.incrementAndGet();
+        String key = args[0] instanceof GetObjectRequest ? ((GetObjectRequest) args[0]).getKey() : (String) args[1];
+        byte[] data = objects.get(key);
+        if (data == null) {
+            throw new OSSException("not found", OSSErrorCode.NO_SUCH_KEY, null, null, null, null, null);
+        }
+        if (args[0] instanceof GetObjectRequest && ((GetObjectRequest) args[0]).getRange() != null) {
+            long[] range = ((GetObjectRequest) args[0]).getRange();
+            data = Arrays.copyOfRange(data, (int) range[0], (int) Math.min(data.length, range[1] + 1));
+        }
+        OSSObject object = new OSSObject();
+        object.setBucketName(LocalOssStub.BUCKET);
+        object.setKey(key);
+        object.setObjectContent(new ByteArrayInputStream(data));
+        return object;
+    }
+
+    private ObjectMetadata getObjectMetadata(String key) {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            throw new OSSException("not found", OSSErrorCode.NO_SUCH_KEY, null, null, null, null, null);
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setHeader("ETag", DigestUtils.md5Hex(data).toUpperCase());
+        metadata.setHeader("x-oss-object-type", "Normal");
+        ObjectMetadata recorded = metadatas.get(key);
+        if (recorded != null) {
+            recorded.getRawMetadata().forEach(metadata::setHeader);
+            metadata.setUserMetadata(new TreeMap<>(recorded.getUserMetadata()));
+        }
+        metadata.setHeader("x-oss-hash-crc64ecma", Long.toUnsignedString(crc64(data)));
+        metadata.setLastModified(lastModified.get(key));
+        if (contentTypes.containsKey(key)) {
+            metadata.setContentType(contentTypes.get(key));
+        }
+        return metadata;
+    }
+
+    private UploadPartCopyResult uploadPartCopy(UploadPartCopyRequest request) {
+        byte[] source = objects.get(request.getSourceKey());
+        Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (source == null || parts == null) {
+            throw new OSSException("not found", OSSErrorCode.NO_SUCH_KEY, null, null, null, null, null);
+        }
+        int begin = request.getBeginIndex() != null ? request.getBeginIndex().intValue() : 0;
+        int length = request.getPartSize() != null ? request.getPartSize().intValue() : source.length - begin;
+        byte[] data = Arrays.copyOfRange(source, begin, begin + length);
+        parts.put(request.getPartNumber(), data);
+        UploadPartCopyResult result = new UploadPartCopyResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5Hex(data).toUpperCase());
+        return result;
+    }
+
+    /**
+     * 按前缀列出对象，支持 marker 分页（每页 maxKeys 个）
+     */
+    private ObjectListing listObjects(ListObjectsRequest request) {
+        String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        int maxKeys = request.getMaxKeys() != null ? request.getMaxKeys() : 1000;
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setPrefix(prefix);
+        for (Map.Entry<String, byte[]> entry : objects.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix) || (request.getMarker() != null && key.compareTo(request.getMarker()) <= 0)) {
+                continue;
+            }
+            if (listing.getObjectSummaries().size() == maxKeys) {
+                listing.setTruncated(true);
+                break;
+            }
+            OSSObjectSummary summary = new OSSObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(key);
+            summary.setSize(entry.getValue().length);
+            summary.setETag(DigestUtils.md5Hex(entry.getValue()).toUpperCase());
+            summary.setLastModified(lastModified.get(key));
+            listing.addObjectSummary(summary);
+            listing.setNextMarker(key);
+        }
+        return listing;
+    }
+
+    private DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        for (String key : request.getKeys()) {
+            objects.remove(key);
+            lastModified.remove(key);
+            metadatas.remove(key);
+        }
+        return new DeleteObjectsResult(request.getKeys());
+    }
+
+    private InitiateMultipartUploadResult initiate(InitiateMultipartUploadRequest request) {
+        String uploadId = "upload-" + uploadIdSeq.incrementAndGet();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        if (request.getObjectMetadata() != null) {
+            uploadMetadatas.put(uploadId, request.getObjectMetadata());
+        }
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    private UploadPartResult uploadPart(UploadPartRequest request) throws IOException {
+        uploadPartCalls.incrementAndGet();
+        if (consumeFailure(request.getPartNumber()) || consumeFailure(0)) {
+            throw new OSSException("injected failure", OSSErrorCode.INTERNAL_ERROR, null, null, null, null, null);
+        }
+        Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw new OSSException("upload not found", OSSErrorCode.NO_SUCH_UPLOAD, null, null, null, null, null);
+        }
+        byte[] data = IOUtils.toByteArray(request.getInputStream(), request.getPartSize());
+        if (request.getMd5Digest() != null
+                && !request.getMd5Digest().equals(Base64.getEncoder().encodeToString(DigestUtils.md5(data)))) {
+            throw new OSSException("digest mismatch", OSSErrorCode.INVALID_DIGEST, null, null, null, null, null);
+        }
+        parts.put(request.getPartNumber(), data);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5Hex(data).toUpperCase());
+        result.setPartSize(data.length);
+        result.setClientCRC(crc64(data));
+        result.setServerCRC(crc64(data));
+        return result;
+    }
+
+    private boolean consumeFailure(int partNumber) {
+        boolean[] failed = new boolean[1];
+        failingParts.computeIfPresent(partNumber, (key, remaining) -> {
+            failed[0] = true;
+            return remaining > 1 ? remaining - 1 : null;
+        });
+        return failed[0];
+    }
+
+    private PartListing listParts(ListPartsRequest request) {
+        Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw new OSSException("upload not found", OSSErrorCode.NO_SUCH_UPLOAD, null, null, null, null, null);
+        }
+        PartListing listing = new PartListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setKey(request.getKey());
+        listing.setUploadId(request.getUploadId());
+        for (Map.Entry<Integer, byte[]> entry : parts.entrySet()) {
+            PartSummary summary = new PartSummary();
+            summary.setPartNumber(entry.getKey());
+            summary.setETag(DigestUtils.md5Hex(entry.getValue()).toUpperCase());
+            summary.setSize(entry.getValue().length);
+            listing.addPart(summary);
+        }
+        return listing;
+    }
+
+    private CompleteMultipartUploadResult complete(CompleteMultipartUploadRequest request) throws IOException {
+        Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw new OSSException("upload not found", OSSErrorCode.NO_SUCH_UPLOAD, null, null, null, null, null);
+        }
+        Map<Integer, PartETag> requested = new TreeMap<>();
+        for (PartETag partETag : request.getPartETags()) {
+            requested.put(partETag.getPartNumber(), partETag);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (PartETag partETag : requested.values()) {
+            byte[] data = parts.get(partETag.getPartNumber());
+            if (data == null || !DigestUtils.md5Hex(data).equalsIgnoreCase(partETag.getETag())) {
+                throw new OSSException("invalid part", OSSErrorCode.INVALID_ARGUMENT, null, null, null, null, null);
+            }
+            out.write(data);
+        }
+        byte[] object = out.toByteArray();
+        if (corruptOnComplete && object.length > 0) {
+            object[0] ^= 0x1;
+        }
+        putObject(request.getKey(), object);
+        recordMetadata(request.getKey(), uploadMetadatas.remove(request.getUploadId()),
+                DigestUtils.md5Hex(object).toUpperCase() + "-" + requested.size(), "Multipart");
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(DigestUtils.md5Hex(object).toUpperCase() + "-" + requested.size());
+        result.setServerCRC(crc64(object));
+        return result;
+    }
+
+    static long crc64(byte[] data) {
+        CRC64 crc64 = new CRC64();
+        crc64.update(data, data.length);
+        return crc64.getValue();
+    }
+}
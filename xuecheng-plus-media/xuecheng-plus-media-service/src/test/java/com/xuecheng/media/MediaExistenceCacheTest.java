@@ -0,0 +1,132 @@
+package com.xuecheng.media;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.impl.MediaExistenceCache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 媒资文件存在性缓存测试：未上传的文件由布隆过滤器拦截，已存在的记录由LRU缓存，入库后失效
+ */
+public class MediaExistenceCacheTest {
+
+    private static final int FILES = 2000;
+
+    private static final int BATCH_SIZE = 500;
+
+    private MediaFilesMapper mapper;
+
+    private MediaExistenceCache cache;
+
+    private List<Object> ids;
+
+    @BeforeAll
+    public static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), MediaFiles.class);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        ids = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            ids.add(DigestUtils.md5Hex("file-" + i));
+        }
+        mapper = mock(MediaFilesMapper.class);
+        // 按批返回（每批500个），模拟按主键分批读取；最后一批之后下次重建从头开始
+        AtomicInteger offset = new AtomicInteger();
+        when(mapper.selectObjs(any())).thenAnswer(inv -> {
+            int from = Math.min(offset.get(), ids.size());
+            List<Object> batch = new ArrayList<>(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())));
+            offset.set(batch.size() < BATCH_SIZE ? 0 : from + BATCH_SIZE);
+            return batch;
+        });
+        when(mapper.selectById(anyString())).thenAnswer(inv -> {
+            String id = inv.getArgument(0);
+            return ids.contains(id) ? mediaFiles(id) : null;
+        });
+
+        cache = new MediaExistenceCache();
+        ReflectionTestUtils.setField(cache, "mediaFilesMapper", mapper);
+        ReflectionTestUtils.setField(cache, "expectedFiles", 10000L);
+        ReflectionTestUtils.setField(cache, "positiveSize", 100);
+        ReflectionTestUtils.setField(cache, "batchSize", BATCH_SIZE);
+    }
+
+    @Test
+    public void testNegativesServedByBloomFilter() {
+        cache.rebuild();
+        // 2000个ID分5批读取（最后一批为空）
+        verify(mapper, times(FILES / BATCH_SIZE + 1)).selectObjs(any());
+
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(cache.exists(DigestUtils.md5Hex("new-" + i)));
+        }
+        long dbLookups = mockingDetails(mapper).getInvocations().stream()
+                .filter(inv -> inv.getMethod().getName().equals("selectById")).count();
+        // 误判率 1%，查库次数应远小于查询次数
+        assertTrue(dbLookups < 50, "查库次数：" + dbLookups);
+    }
+
+    @Test
+    public void testPositivesCachedAndNoFalseNegatives() {
+        cache.rebuild();
+
+        for (Object id : ids) {
+            assertTrue(cache.exists((String) id));
+        }
+        // 最近查过的记录在LRU中（容量100，较早的已被淘汰）
+        String id = (String) ids.get(FILES - 1);
+        cache.find(id);
+        cache.find(id);
+        verify(mapper, times(1)).selectById(id);
+    }
+
+    @Test
+    public void testSavedFileIsVisibleAndEvicted() {
+        cache.rebuild();
+        String newId = DigestUtils.md5Hex("uploaded");
+        assertNull(cache.find(newId));
+
+        ids.add(newId);
+        cache.onSaved(newId);
+        assertNotNull(cache.find(newId));
+        verify(mapper, times(1)).selectById(newId);
+
+        // 记录更新后重新查库
+        cache.onSaved(newId);
+        cache.find(newId);
+        verify(mapper, times(2)).selectById(newId);
+    }
+
+    @Test
+    public void testFallsBackToDatabaseBeforeBuilt() {
+        when(mapper.selectObjs(any())).thenThrow(new RuntimeException("数据库不可用"));
+        cache.rebuild();
+
+        assertTrue(cache.exists((String) ids.get(1)));
+        assertFalse(cache.exists(DigestUtils.md5Hex("new")));
+        verify(mapper, times(2)).selectById(anyString());
+        assertTrue(cache.getStatistics().contains("未构建"));
+    }
+
+    private MediaFiles mediaFiles(String id) {
+        MediaFiles mediaFiles = new MediaFiles();
+        mediaFiles.setId(id);
+        return mediaFiles;
+    }
+}
@@ -0,0 +1,165 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.ChunkStore;
+import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.impl.ChunkDirectory;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.LocalChunkStore;
+import com.xuecheng.media.service.impl.MediaExistenceCache;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import com.xuecheng.media.service.impl.MultipartChunkUploader;
+import com.xuecheng.media.service.impl.OssChunkStore;
+import com.xuecheng.media.service.impl.OssService;
+import com.xuecheng.media.service.impl.PreviewUrlCache;
+import com.xuecheng.media.service.impl.SingleFlight;
+import com.xuecheng.media.service.impl.SparseChunkStore;
+import com.xuecheng.media.service.impl.UploadSessionRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 测试用的 MediaFileServiceImpl 装配（仅测试使用）
+ * <p>
+ * 本地内存版OSS替身 + 真实的分块存储（local、multipart、sparse、oss）、分块清单、上传会话登记、
+ * 存在性缓存和 SingleFlight，分块根目录为测试的临时目录；数据库为 mock 的 MediaFilesMapper，
+ * 入库由 currentProxy 替身完成，返回以文件MD5为ID的记录。
+ * 默认 local 模式，测试只覆盖自己关心的部分（chunkMode、chunkStores、mediaFilesMapper、previewUrlCache）。
+ */
+public class MediaFileServiceFixture {
+
+    private final ChunkDirectory chunkDirectory;
+
+    private final LocalOssStub oss = new LocalOssStub();
+
+    private final OssService ossService = oss.newOssService();
+
+    private final ChunkManifestStore manifestStore = new ChunkManifestStore();
+
+    private final LocalChunkStore localStore = new LocalChunkStore();
+
+    private final MultipartChunkUploader multipartUploader = new MultipartChunkUploader();
+
+    private final SparseChunkStore sparseStore = new SparseChunkStore();
+
+    private final OssChunkStore ossChunkStore = new OssChunkStore();
+
+    private final UploadSessionRegistry sessionRegistry = new UploadSessionRegistry();
+
+    private final MediaExistenceCache existenceCache = new MediaExistenceCache();
+
+    private final MediaFileServiceImpl service = new MediaFileServiceImpl();
+
+    /**
+     * @param chunkRoot 分块根目录（测试的 @TempDir，不使用默认的 临时目录/xc-chunks）
+     */
+    public MediaFileServiceFixture(Path chunkRoot) {
+        chunkDirectory = new ChunkDirectory(chunkRoot.toString());
+        for (Object bean : Arrays.asList(localStore, multipartUploader, sparseStore, manifestStore, sessionRegistry,
+                service)) {
+            ReflectionTestUtils.setField(bean, "chunkDirectory", chunkDirectory);
+        }
+        ReflectionTestUtils.setField(localStore, "ossService", ossService);
+        ReflectionTestUtils.setField(multipartUploader, "ossService", ossService);
+        ReflectionTestUtils.setField(sparseStore, "ossService", ossService);
+        ReflectionTestUtils.setField(sparseStore, "chunkManifestStore", manifestStore);
+        ReflectionTestUtils.setField(ossChunkStore, "ossService", ossService);
+
+        MediaFileService currentProxy = mock(MediaFileService.class);
+        when(currentProxy.addMediaFilesToDb(anyLong(), anyString(), any(), anyString())).thenAnswer(inv -> {
+            MediaFiles saved = new MediaFiles();
+            saved.setId(inv.getArgument(1));
+            return saved;
+        });
+
+        ReflectionTestUtils.setField(service, "ossService", ossService);
+        ReflectionTestUtils.setField(service, "chunkManifestStore", manifestStore);
+        ReflectionTestUtils.setField(service, "uploadSessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(service, "currentProxy", currentProxy);
+        ReflectionTestUtils.setField(service, "mediaExistenceCache", existenceCache);
+        ReflectionTestUtils.setField(service, "singleFlight", new SingleFlight());
+        mediaFilesMapper(mock(MediaFilesMapper.class));
+        chunkStores(localStore, multipartUploader, sparseStore, ossChunkStore);
+        chunkMode("local");
+    }
+
+    /**
+     * 分块上传模式（local、multipart、sparse、oss）
+     */
+    public MediaFileServiceFixture chunkMode(String chunkMode) {
+        ReflectionTestUtils.setField(service, "chunkMode", chunkMode);
+        return this;
+    }
+
+    /**
+     * 可用的分块存储（合并时按顺序查找存有分块的存储）
+     */
+    public MediaFileServiceFixture chunkStores(ChunkStore... chunkStores) {
+        ReflectionTestUtils.setField(service, "chunkStores", Arrays.asList(chunkStores));
+        return this;
+    }
+
+    /**
+     * 媒资表（服务和存在性缓存共用）
+     */
+    public MediaFileServiceFixture mediaFilesMapper(MediaFilesMapper mediaFilesMapper) {
+        ReflectionTestUtils.setField(service, "mediaFilesMapper", mediaFilesMapper);
+        ReflectionTestUtils.setField(existenceCache, "mediaFilesMapper", mediaFilesMapper);
+        return this;
+    }
+
+    /**
+     * 预览地址缓存
+     */
+    public MediaFileServiceFixture previewUrlCache(PreviewUrlCache previewUrlCache) {
+        ReflectionTestUtils.setField(service, "previewUrlCache", previewUrlCache);
+        return this;
+    }
+
+    public MediaFileServiceImpl service() {
+        return service;
+    }
+
+    public ChunkDirectory chunkDirectory() {
+        return chunkDirectory;
+    }
+
+    public LocalOssStub oss() {
+        return oss;
+    }
+
+    public OssService ossService() {
+        return ossService;
+    }
+
+    public ChunkManifestStore manifestStore() {
+        return manifestStore;
+    }
+
+    public UploadSessionRegistry sessionRegistry() {
+        return sessionRegistry;
+    }
+
+    public LocalChunkStore localStore() {
+        return localStore;
+    }
+
+    public MultipartChunkUploader multipartUploader() {
+        return multipartUploader;
+    }
+
+    public SparseChunkStore sparseStore() {
+        return sparseStore;
+    }
+
+    public OssChunkStore ossChunkStore() {
+        return ossChunkStore;
+    }
+}
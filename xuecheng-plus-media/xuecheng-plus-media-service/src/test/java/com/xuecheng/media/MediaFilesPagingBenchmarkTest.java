@@ -0,0 +1,164 @@
+package com.xuecheng.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 媒资列表分页基准（默认不执行）：页码分页 + COUNT 对比游标分页，包含匹配对比前缀匹配
+ * <p>
+ * 在本地 MySQL 的独立库中建 media_files 表（结构与索引同线上：主键 id，idx_create_date，idx_filename），
+ * 灌入合成数据后分别测量第1页和第10000页的耗时。SQL 与 queryMediaFiels 生成的一致。
+ * <p>
+ * 运行（库需事先创建，表会被重建）：
+ * mvn test -Dtest=MediaFilesPagingBenchmarkTest -Dpaging.bench=true
+ *   [-Dpaging.bench.url=jdbc:mysql://localhost:3306/xc_media_bench] [-Dpaging.bench.user=root]
+ *   [-Dpaging.bench.password=] [-Dpaging.bench.rows=1000000]
+ */
+@EnabledIfSystemProperty(named = "paging.bench", matches = "true")
+public class MediaFilesPagingBenchmarkTest {
+
+    private static final int PAGE_SIZE = 30;
+
+    private static final int DEEP_PAGE = 10000;
+
+    private static final int ROUNDS = 5;
+
+    private static final String COLUMNS = "id, company_id, filename, file_type, bucket, file_path, url, create_date, "
+            + "status, audit_status, file_size";
+
+    @Test
+    public void benchmarkPaging() throws SQLException {
+        String url = System.getProperty("paging.bench.url", "jdbc:mysql://localhost:3306/xc_media_bench")
+                + "?useSSL=false&rewriteBatchedStatements=true&serverTimezone=Asia/Shanghai";
+        int rows = Integer.getInteger("paging.bench.rows", 1000000);
+        assertTrue(rows > (long) PAGE_SIZE * DEEP_PAGE, "数据量不足以翻到第" + DEEP_PAGE + "页");
+
+        try (Connection conn = DriverManager.getConnection(url, System.getProperty("paging.bench.user", "root"),
+                System.getProperty("paging.bench.password", ""))) {
+            seed(conn, rows);
+
+            // 第 DEEP_PAGE 页的游标：上一页最后一条（只用于构造游标，不计入耗时）
+            Object[] cursor = cursorBefore(conn, (long) PAGE_SIZE * (DEEP_PAGE - 1));
+
+            String orderBy = " ORDER BY create_date DESC, id DESC";
+            String offsetSql = "SELECT " + COLUMNS + " FROM media_files" + orderBy + " LIMIT ?, " + PAGE_SIZE;
+            String countSql = "SELECT COUNT(*) FROM media_files";
+            String keysetFirst = "SELECT " + COLUMNS + " FROM media_files" + orderBy + " LIMIT " + PAGE_SIZE;
+            String keysetSql = "SELECT " + COLUMNS + " FROM media_files WHERE (create_date < ? OR (create_date = ? AND id < ?))"
+                    + orderBy + " LIMIT " + PAGE_SIZE;
+
+            System.out.println("========== 媒资列表分页基准（" + rows + " 行，每页 " + PAGE_SIZE + " 条）==========");
+            report("页码分页 第1页（含COUNT）", time(conn, countSql) + time(conn, offsetSql, 0));
+            report("页码分页 第" + DEEP_PAGE + "页（含COUNT）",
+                    time(conn, countSql) + time(conn, offsetSql, (long) PAGE_SIZE * (DEEP_PAGE - 1)));
+            report("游标分页 第1页", time(conn, keysetFirst));
+            report("游标分页 第" + DEEP_PAGE + "页", time(conn, keysetSql, cursor[0], cursor[0], cursor[1]));
+
+            String filterOrder = orderBy + " LIMIT " + PAGE_SIZE;
+            report("文件名包含匹配 LIKE '%课程12%'", time(conn,
+                    "SELECT " + COLUMNS + " FROM media_files WHERE filename LIKE ?" + filterOrder, "%课程12%"));
+            report("文件名前缀匹配 LIKE '课程12%'", time(conn,
+                    "SELECT " + COLUMNS + " FROM media_files WHERE filename LIKE ?" + filterOrder, "课程12%"));
+        }
+    }
+
+    private void seed(Connection conn, int rows) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS media_files");
+            st.execute("CREATE TABLE media_files ("
+                    + "id VARCHAR(32) NOT NULL PRIMARY KEY, company_id BIGINT, filename VARCHAR(255), "
+                    + "file_type VARCHAR(12), bucket VARCHAR(128), file_path VARCHAR(512), url VARCHAR(1024), "
+                    + "create_date DATETIME, status VARCHAR(12), audit_status VARCHAR(12), file_size BIGINT, "
+                    + "KEY idx_create_date (create_date), KEY idx_filename (filename)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+        conn.setAutoCommit(false);
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        String sql = "INSERT INTO media_files (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                String id = String.format("%032x", (long) i * 2654435761L);
+                ps.setString(1, id);
+                ps.setLong(2, 1232141425L);
+                ps.setString(3, "课程" + i + ".mp4");
+                ps.setString(4, "001002");
+                ps.setString(5, "bench");
+                ps.setString(6, "2020/01/01/" + id + ".mp4");
+                ps.setString(7, "2020/01/01/" + id + ".mp4");
+                // 每秒约3个文件，制造相同时间戳，验证次键 id
+                ps.setTimestamp(8, Timestamp.valueOf(start.plusSeconds(i / 3)));
+                ps.setString(9, "1");
+                ps.setString(10, "002003");
+                ps.setLong(11, 1024L * i);
+                ps.addBatch();
+                if (i % 5000 == 4999) {
+                    ps.executeBatch();
+                    conn.commit();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute("ANALYZE TABLE media_files");
+        }
+    }
+
+    private Object[] cursorBefore(Connection conn, long offset) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT create_date, id FROM media_files ORDER BY create_date DESC, id DESC LIMIT ?, 1")) {
+            ps.setLong(1, offset - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return new Object[]{rs.getTimestamp(1), rs.getString(2)};
+            }
+        }
+    }
+
+    /**
+     * 执行 ROUNDS 次取中间值（首次执行用于预热缓冲池）
+     *
+     * @return 耗时（微秒）
+     */
+    private long time(Connection conn, String sql, Object... args) throws SQLException {
+        long[] samples = new long[ROUNDS];
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < args.length; i++) {
+                    ps.setObject(i + 1, args[i]);
+                }
+                int count = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        count++;
+                    }
+                }
+                assertTrue(count > 0 || sql.contains("LIKE"), sql);
+            }
+            if (round > 0) {
+                samples[round - 1] = (System.nanoTime() - start) / 1000;
+            }
+        }
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2];
+    }
+
+    private void report(String name, long micros) {
+        System.out.printf("%-40s %10.2f ms%n", name, micros / 1000.0);
+    }
+}
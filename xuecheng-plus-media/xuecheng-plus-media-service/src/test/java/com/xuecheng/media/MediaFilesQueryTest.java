@@ -0,0 +1,119 @@
+package com.xuecheng.media;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xuecheng.base.model.PageParams;
+import com.xuecheng.base.model.PageResult;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.dto.QueryMediaParamsDto;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 媒资列表查询测试：页码分页、游标分页、前缀匹配生成的查询条件
+ */
+public class MediaFilesQueryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MediaFilesMapper mapper;
+
+    private MediaFileServiceImpl service;
+
+    @BeforeAll
+    public static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), MediaFiles.class);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        mapper = mock(MediaFilesMapper.class);
+        when(mapper.selectPage(any(), any())).thenAnswer(inv -> {
+            Page<MediaFiles> page = inv.getArgument(0);
+            page.setTotal(page.isSearchCount() ? 42 : 0);
+            return page;
+        });
+        service = new MediaFileServiceFixture(tempDir).mediaFilesMapper(mapper).service();
+    }
+
+    @Test
+    public void testOffsetPagingCountsByDefault() {
+        PageResult<MediaFiles> result = service.queryMediaFiels(1L, new PageParams(3L, 10L), new QueryMediaParamsDto());
+
+        Page<MediaFiles> page = capturePage();
+        assertEquals(3, page.getCurrent());
+        assertTrue(page.isSearchCount());
+        assertEquals(42, result.getCounts());
+        assertEquals("ORDER BY create_date DESC,id DESC", captureWrapper().getSqlSegment().trim());
+    }
+
+    @Test
+    public void testKeysetPagingSkipsCount() {
+        QueryMediaParamsDto params = new QueryMediaParamsDto();
+        params.setAfterCreateDate(LocalDateTime.of(2025, 1, 1, 12, 0));
+        params.setAfterId("abc");
+
+        PageResult<MediaFiles> result = service.queryMediaFiels(1L, new PageParams(10000L, 10L), params);
+
+        Page<MediaFiles> page = capturePage();
+        assertEquals(1, page.getCurrent());
+        assertFalse(page.isSearchCount());
+        assertEquals(-1, result.getCounts());
+        String sql = captureWrapper().getSqlSegment();
+        assertTrue(sql.matches("\\(\\(create_date < #\\{.+?} OR \\(create_date = #\\{.+?} AND id < #\\{.+?}\\)\\)\\) "
+                + "ORDER BY create_date DESC,id DESC"), sql);
+    }
+
+    @Test
+    public void testKeysetAscendingWithCountAndPrefixMatch() {
+        QueryMediaParamsDto params = new QueryMediaParamsDto();
+        params.setFilename("java");
+        params.setFilenameMatch("prefix");
+        params.setSortBy("createDate");
+        params.setSortOrder("asc");
+        params.setAfterCreateDate(LocalDateTime.of(2025, 1, 1, 12, 0));
+        params.setAfterId("abc");
+        params.setWithCount(true);
+
+        PageResult<MediaFiles> result = service.queryMediaFiels(1L, new PageParams(1L, 10L), params);
+
+        assertTrue(capturePage().isSearchCount());
+        assertEquals(42, result.getCounts());
+        LambdaQueryWrapper<MediaFiles> wrapper = captureWrapper();
+        String sql = wrapper.getSqlSegment();
+        assertTrue(sql.contains("filename LIKE"), sql);
+        assertTrue(sql.contains("create_date > ") && sql.contains("id > "), sql);
+        assertTrue(sql.endsWith("ORDER BY create_date ASC,id ASC"), sql);
+        assertTrue(wrapper.getParamNameValuePairs().containsValue("java%"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page<MediaFiles> capturePage() {
+        ArgumentCaptor<Page<MediaFiles>> captor = ArgumentCaptor.forClass(Page.class);
+        verify(mapper).selectPage(captor.capture(), any());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private LambdaQueryWrapper<MediaFiles> captureWrapper() {
+        ArgumentCaptor<LambdaQueryWrapper<MediaFiles>> captor = ArgumentCaptor.forClass(LambdaQueryWrapper.class);
+        verify(mapper).selectPage(any(), captor.capture());
+        return captor.getValue();
+    }
+}
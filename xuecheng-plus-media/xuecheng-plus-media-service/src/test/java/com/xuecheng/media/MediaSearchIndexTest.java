@@ -0,0 +1,139 @@
+package com.xuecheng.media;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.impl.MediaSearchIndex;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 媒资全文检索索引测试：分词匹配、相关度排序、过滤、分页、增量更新、分批重建
+ */
+public class MediaSearchIndexTest {
+
+    private MediaFilesMapper mapper;
+
+    private MediaSearchIndex index;
+
+    private List<MediaFiles> rows;
+
+    @BeforeAll
+    public static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), MediaFiles.class);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        rows = new ArrayList<>(Arrays.asList(
+                media("a1", "Java基础教程第一讲.mp4", "java,入门", null, "001002", "002003", 1),
+                media("a2", "Spring Boot 实战.mp4", "java,spring", "基础教程配套视频", "001002", "002003", 2),
+                media("a3", "数据库基础教程.pdf", null, null, "001003", "002003", 3),
+                media("a4", "课程封面.png", null, "Java 课程", "001001", "002001", 4)));
+        mapper = mock(MediaFilesMapper.class);
+        // 按批返回（每批2条），模拟按主键分批读取
+        when(mapper.selectList(any())).thenAnswer(new Answer<List<MediaFiles>>() {
+            private int offset;
+
+            @Override
+            public List<MediaFiles> answer(InvocationOnMock inv) {
+                List<MediaFiles> batch = rows.subList(Math.min(offset, rows.size()), Math.min(offset + 2, rows.size()));
+                offset += 2;
+                return new ArrayList<>(batch);
+            }
+        });
+        index = new MediaSearchIndex();
+        ReflectionTestUtils.setField(index, "mediaFilesMapper", mapper);
+        ReflectionTestUtils.setField(index, "batchSize", 2);
+    }
+
+    @Test
+    public void testRankingAndMatching() {
+        assertFalse(index.isReady());
+        assertNull(index.search("java", null, null, 1, 10));
+        index.rebuild();
+        assertTrue(index.isReady());
+        verify(mapper, times(3)).selectList(any());
+
+        // 中文两字匹配；文件名命中排在备注命中之前
+        MediaSearchIndex.SearchHits hits = index.search("基础教程", null, null, 1, 10);
+        assertEquals(3, hits.getTotal());
+        assertEquals("a2", hits.getIds().get(2));
+
+        // 英文前缀、大小写不敏感；标签也参与检索
+        assertEquals(Arrays.asList("a1", "a2", "a4"), sorted(index.search("JAV", null, null, 1, 10).getIds()));
+        // 所有词都要出现
+        assertEquals(Collections.singletonList("a1"), index.search("java 第一讲", null, null, 1, 10).getIds());
+        assertEquals(0, index.search("python", null, null, 1, 10).getTotal());
+    }
+
+    @Test
+    public void testFiltersAndPaging() {
+        index.rebuild();
+
+        MediaSearchIndex.SearchHits hits = index.search("java", "001002", "002003", 1, 10);
+        assertEquals(Arrays.asList("a1", "a2"), sorted(hits.getIds()));
+
+        MediaSearchIndex.SearchHits page1 = index.search("java", null, null, 1, 2);
+        MediaSearchIndex.SearchHits page2 = index.search("java", null, null, 2, 2);
+        assertEquals(3, page1.getTotal());
+        assertEquals(2, page1.getIds().size());
+        assertEquals(1, page2.getIds().size());
+        assertFalse(page1.getIds().contains(page2.getIds().get(0)));
+    }
+
+    @Test
+    public void testIncrementalUpdateReplacesDocument() {
+        index.rebuild();
+
+        index.onSaved(media("a5", "Python 入门.mp4", null, null, "001002", "002003", 5));
+        assertEquals(Collections.singletonList("a5"), index.search("python", null, null, 1, 10).getIds());
+
+        // 同一文件重新入库：旧内容不再命中
+        index.onSaved(media("a1", "Go 语言入门.mp4", null, null, "001002", "002003", 1));
+        assertEquals(Arrays.asList("a2", "a4"), sorted(index.search("java", null, null, 1, 10).getIds()));
+        assertEquals(Arrays.asList("a1", "a5"), sorted(index.search("入门", null, null, 1, 10).getIds()));
+    }
+
+    @Test
+    public void testFailedRebuildKeepsSearchUnavailable() {
+        when(mapper.selectList(any())).thenThrow(new RuntimeException("数据库不可用"));
+        index.rebuild();
+        assertFalse(index.isReady());
+    }
+
+    private List<String> sorted(List<String> ids) {
+        List<String> copy = new ArrayList<>(ids);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private MediaFiles media(String id, String filename, String tags, String remark, String fileType,
+                             String auditStatus, int day) {
+        MediaFiles mediaFiles = new MediaFiles();
+        mediaFiles.setId(id);
+        mediaFiles.setFilename(filename);
+        mediaFiles.setTags(tags);
+        mediaFiles.setRemark(remark);
+        mediaFiles.setFileType(fileType);
+        mediaFiles.setAuditStatus(auditStatus);
+        mediaFiles.setCreateDate(LocalDateTime.of(2025, 1, day, 0, 0));
+        return mediaFiles;
+    }
+}
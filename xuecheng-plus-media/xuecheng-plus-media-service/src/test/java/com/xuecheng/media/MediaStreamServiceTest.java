@@ -0,0 +1,226 @@
+package com.xuecheng.media;
+
+import com.aliyun.oss.model.ObjectMetadata;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.ByteRange;
+import com.xuecheng.media.service.impl.MediaStreamService;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 媒资流式读取测试：Range 解析、大对象范围读取、小对象磁盘缓存（并发只回源一次、按总大小淘汰）、HLS 路径映射
+ */
+public class MediaStreamServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalOssStub oss;
+
+    private MediaStreamService streamService;
+
+    private MediaFilesMapper mediaFilesMapper;
+
+    @BeforeEach
+    public void setUp() {
+        oss = new LocalOssStub();
+        OssService ossService = oss.newOssService();
+        streamService = new MediaStreamService();
+        ReflectionTestUtils.setField(streamService, "ossService", ossService);
+        mediaFilesMapper = mock(MediaFilesMapper.class);
+        ReflectionTestUtils.setField(streamService, "mediaFilesMapper", mediaFilesMapper);
+        ReflectionTestUtils.setField(streamService, "bufferSize", 1024);
+        ReflectionTestUtils.setField(streamService, "cacheDir", tempDir.resolve("cache").toString());
+        ReflectionTestUtils.setField(streamService, "cacheMaxObjectBytes", 64L * 1024);
+    }
+
+    @Test
+    public void testParseRange() {
+        assertRange(ByteRange.parse("bytes=0-99", 1000), 0, 99);
+        assertRange(ByteRange.parse("bytes=900-", 1000), 900, 999);
+        assertRange(ByteRange.parse("bytes=900-5000", 1000), 900, 999);
+        assertRange(ByteRange.parse("bytes=-100", 1000), 900, 999);
+        assertRange(ByteRange.parse("bytes=-5000", 1000), 0, 999);
+        assertFalse(ByteRange.parse("bytes=1000-", 1000).isSatisfiable());
+        assertFalse(ByteRange.parse("bytes=-0", 1000).isSatisfiable());
+        assertFalse(ByteRange.parse("bytes=0-", 0).isSatisfiable());
+        // 忽略后按整个对象响应
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("bytes=0-1,5-9", 1000));
+        assertNull(ByteRange.parse("bytes=9-5", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("items=0-1", 1000));
+    }
+
+    @Test
+    public void testLargeObjectStreamedByRange() throws IOException {
+        byte[] video = put("2025/01/01/lesson.mp4", 300 * 1024, "video/mp4");
+
+        MediaStreamService.ObjectInfo info = streamService.describe("2025/01/01/lesson.mp4");
+        assertEquals(video.length, info.getSize());
+        assertEquals(DigestUtils.md5Hex(video).toUpperCase(), info.getEtag());
+        assertEquals("video/mp4", info.getContentType());
+
+        assertArrayEquals(Arrays.copyOfRange(video, 1000, 200_001), read("2025/01/01/lesson.mp4", info, 1000, 200_000));
+        assertArrayEquals(video, read("2025/01/01/lesson.mp4", info, 0, video.length - 1));
+        // 大对象每次都按范围回源，不写磁盘缓存
+        assertEquals(2, oss.getGetObjectCalls());
+        assertFalse(tempDir.resolve("cache").toFile().exists());
+
+        // 客户端中途断开：写入异常向上抛出，连接被放弃而不是读完
+        OutputStream broken = new OutputStream() {
+            private int written;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (++written > 5000) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+        };
+        assertThrows(IOException.class, () -> streamService.copy("2025/01/01/lesson.mp4", info, 0, video.length - 1,
+                broken));
+        assertNull(streamService.describe("2025/01/01/missing.mp4"));
+    }
+
+    @Test
+    public void testSmallObjectsCachedOnDiskAndFetchedOnce() throws Exception {
+        byte[] segment = put("hls/md5/720p/seg_0000.ts", 40 * 1024, "video/mp2t");
+        MediaStreamService.ObjectInfo info = streamService.describe("hls/md5/720p/seg_0000.ts");
+
+        // 20 个观众同时请求同一分段的不同范围
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int from = i * 1000;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return read("hls/md5/720p/seg_0000.ts", info, from, segment.length - 1);
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(Arrays.copyOfRange(segment, i * 1000, segment.length), futures.get(i).get());
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, oss.getGetObjectCalls());
+        assertTrue(streamService.getStatistics().contains("缓存对象数：1"), streamService.getStatistics());
+    }
+
+    @Test
+    public void testDiskCacheEvictsLeastRecentlyUsed() throws IOException {
+        ReflectionTestUtils.setField(streamService, "cacheMaxBytes", 100L * 1024);
+        List<MediaStreamService.ObjectInfo> infos = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            put("hls/md5/seg_" + i + ".ts", 40 * 1024, "video/mp2t");
+            infos.add(streamService.describe("hls/md5/seg_" + i + ".ts"));
+        }
+        read("hls/md5/seg_0.ts", infos.get(0), 0, 99);
+        read("hls/md5/seg_1.ts", infos.get(1), 0, 99);
+        read("hls/md5/seg_0.ts", infos.get(0), 0, 99);
+        assertEquals(2, oss.getGetObjectCalls());
+
+        // 超过 100KB：淘汰最久未访问的 seg_1
+        read("hls/md5/seg_2.ts", infos.get(2), 0, 99);
+        assertEquals(3, oss.getGetObjectCalls());
+        read("hls/md5/seg_0.ts", infos.get(0), 0, 99);
+        assertEquals(3, oss.getGetObjectCalls());
+        read("hls/md5/seg_1.ts", infos.get(1), 0, 99);
+        assertEquals(4, oss.getGetObjectCalls());
+        assertEquals(2, tempDir.resolve("cache").toFile().list().length);
+    }
+
+    @Test
+    public void testResolveRestrictsSubPathsToHlsDirectory() {
+        when(mediaFilesMapper.selectById("md5hls")).thenReturn(mediaFiles("md5hls", "hls/md5hls/master.m3u8"));
+        when(mediaFilesMapper.selectById("md5mp4")).thenReturn(mediaFiles("md5mp4", null));
+
+        assertEquals("hls/md5hls/master.m3u8", streamService.resolve("md5hls", null));
+        assertEquals("hls/md5hls/720p/seg_0001.ts", streamService.resolve("md5hls", "720p/seg_0001.ts"));
+        assertNull(streamService.resolve("md5hls", "../other/master.m3u8"));
+        assertNull(streamService.resolve("md5hls", "720p/../../x"));
+        assertNull(streamService.resolve("md5hls", "720p//seg.ts"));
+        assertEquals("2025/01/01/md5mp4.mp4", streamService.resolve("md5mp4", ""));
+        // 非 HLS 媒资没有子路径，不能借此访问同目录下的其他对象
+        assertNull(streamService.resolve("md5mp4", "other.mp4"));
+        assertNull(streamService.resolve("unknown", null));
+    }
+
+    /**
+     * 媒资记录短时缓存：重复请求不再查库，过期后能看到其他节点转码完成后改写的访问地址
+     */
+    @Test
+    public void testResolveSeesUrlRewrittenByTranscode() {
+        when(mediaFilesMapper.selectById("md5hot")).thenReturn(mediaFiles("md5hot", "hls/md5hot/master.m3u8"));
+        assertEquals("hls/md5hot/master.m3u8", streamService.resolve("md5hot", null));
+        assertEquals("hls/md5hot/720p/seg_0001.ts", streamService.resolve("md5hot", "720p/seg_0001.ts"));
+        verify(mediaFilesMapper, times(1)).selectById("md5hot");
+
+        ReflectionTestUtils.setField(streamService, "metaTtlSeconds", 0L);
+        when(mediaFilesMapper.selectById("md5new")).thenReturn(mediaFiles("md5new", null));
+        assertEquals("2025/01/01/md5new.mp4", streamService.resolve("md5new", null));
+        assertNull(streamService.resolve("md5new", "720p/seg_0001.ts"));
+
+        // 其他节点转码完成，改写访问地址；缓存过期后生效
+        when(mediaFilesMapper.selectById("md5new")).thenReturn(mediaFiles("md5new", "hls/md5new/master.m3u8"));
+        assertEquals("hls/md5new/master.m3u8", streamService.resolve("md5new", null));
+        assertEquals("hls/md5new/720p/seg_0001.ts", streamService.resolve("md5new", "720p/seg_0001.ts"));
+        assertNull(streamService.resolve("unknown", null));
+    }
+
+    private byte[] put(String key, int size, String contentType) {
+        byte[] data = new byte[size];
+        new Random(key.hashCode()).nextBytes(data);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        oss.client().putObject(LocalOssStub.BUCKET, key, new ByteArrayInputStream(data), metadata);
+        return data;
+    }
+
+    private byte[] read(String objectName, MediaStreamService.ObjectInfo info, long start, long end)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamService.copy(objectName, info, start, end, out);
+        return out.toByteArray();
+    }
+
+    private static void assertRange(ByteRange range, long start, long end) {
+        assertTrue(range.isSatisfiable());
+        assertEquals(start, range.getStart());
+        assertEquals(end, range.getEnd());
+        assertEquals(end - start + 1, range.getLength());
+    }
+
+    private static MediaFiles mediaFiles(String id, String url) {
+        MediaFiles mediaFiles = new MediaFiles();
+        mediaFiles.setId(id);
+        mediaFiles.setFilePath("2025/01/01/" + id + ".mp4");
+        mediaFiles.setUrl(url);
+        return mediaFiles;
+    }
+}
@@ -0,0 +1,262 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.base.utils.JsonUtil;
+import com.xuecheng.media.model.dto.MergeJobDto;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.MediaFileService;
+import com.xuecheng.media.service.MergeProgress;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import com.xuecheng.media.service.impl.MergeJobManager;
+import com.xuecheng.media.service.impl.UploadSessionRegistry;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 异步合并任务测试：进度、幂等提交、队列上限、重启后的状态
+ */
+public class MergeJobManagerTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private Path stateDir;
+
+    private MediaFileServiceFixture fixture;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private MediaFileServiceImpl service;
+
+    private MergeJobManager manager;
+
+    private byte[] content;
+
+    private String fileMd5;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        stateDir = Files.createDirectories(tempDir.resolve("merge-jobs"));
+        content = new byte[CHUNK_SIZE * 3 + 100];
+        new Random(42).nextBytes(content);
+        content[0] = (byte) System.nanoTime();
+        fileMd5 = DigestUtils.md5Hex(content);
+
+        fixture = new MediaFileServiceFixture(tempDir.resolve("chunks"));
+        fixture.chunkStores(fixture.localStore(), fixture.sparseStore()).chunkMode("sparse");
+        oss = fixture.oss();
+        ossService = fixture.ossService();
+        service = fixture.service();
+
+        manager = newManager(service, fixture.manifestStore(), fixture.sessionRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * 异步合并完成后进度为整文件大小，重复提交返回已成功的任务而不再合并
+     */
+    @Test
+    public void testAsyncMergeAndIdempotentResubmit() throws Exception {
+        uploadAll();
+
+        MergeJobDto submitted = manager.submit(1L, fileMd5, chunkTotal(), params(), null);
+        assertNotNull(submitted);
+        MergeJobDto done = awaitFinished(fileMd5);
+
+        assertEquals(MergeJobDto.SUCCESS, done.getStatus(), done.getMessage());
+        assertEquals(MergeProgress.DONE, done.getStage());
+        assertEquals(content.length, done.getBytesMerged());
+        assertEquals(content.length, done.getBytesUploaded());
+        assertEquals(content.length, done.getTotalBytes());
+        assertArrayEquals(content, oss.getObject(ossService.buildObjectName(fileMd5, "lesson.mp4")));
+
+        MergeJobDto again = manager.submit(1L, fileMd5, chunkTotal(), params(), null);
+        assertEquals(MergeJobDto.SUCCESS, again.getStatus());
+        assertEquals(done.getCreateTime(), again.getCreateTime());
+    }
+
+    /**
+     * 失败的任务可以重新提交
+     */
+    @Test
+    public void testFailedJobCanBeResubmitted() throws Exception {
+        // 分块未上传，合并失败
+        manager.submit(1L, fileMd5, chunkTotal(), params(), null);
+        MergeJobDto failed = awaitFinished(fileMd5);
+        assertEquals(MergeJobDto.FAILED, failed.getStatus());
+        assertNotNull(failed.getMessage());
+
+        uploadAll();
+        MergeJobDto resubmitted = manager.submit(1L, fileMd5, chunkTotal(), params(), null);
+        assertNotEquals(MergeJobDto.FAILED, resubmitted.getStatus());
+        assertEquals(MergeJobDto.SUCCESS, awaitFinished(fileMd5).getStatus());
+    }
+
+    /**
+     * 异步任务加入进行中的相同合并时，进度读取执行中的合并，而不是停在排队阶段
+     */
+    @Test
+    public void testJoinedJobFollowsLeaderProgress() throws Exception {
+        uploadAll();
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MediaFileService currentProxy = (MediaFileService) ReflectionTestUtils.getField(service, "currentProxy");
+        when(currentProxy.addMediaFilesToDb(anyLong(), anyString(), any(), anyString())).thenAnswer(inv -> {
+            saving.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            MediaFiles saved = new MediaFiles();
+            saved.setId(inv.getArgument(1));
+            return saved;
+        });
+
+        ExecutorService leader = Executors.newSingleThreadExecutor();
+        try {
+            Future<RestResponse> merged = leader.submit(() -> service.mergechunks(1L, fileMd5, chunkTotal(), params()));
+            assertTrue(saving.await(10, TimeUnit.SECONDS));
+
+            manager.submit(1L, fileMd5, chunkTotal(), params(), null);
+            long deadline = System.currentTimeMillis() + 10_000;
+            MergeJobDto joined = manager.getStatus(fileMd5);
+            while (System.currentTimeMillis() < deadline && !MergeProgress.SAVING.equals(joined.getStage())) {
+                Thread.sleep(20);
+                joined = manager.getStatus(fileMd5);
+            }
+            assertEquals(MergeJobDto.RUNNING, joined.getStatus());
+            assertEquals(MergeProgress.SAVING, joined.getStage());
+            assertEquals(content.length, joined.getBytesUploaded());
+
+            release.countDown();
+            assertEquals(0, merged.get(10, TimeUnit.SECONDS).getCode());
+        } finally {
+            release.countDown();
+            leader.shutdownNow();
+        }
+        assertEquals(MergeJobDto.SUCCESS, awaitFinished(fileMd5).getStatus());
+    }
+
+    /**
+     * 线程和队列都占满时拒绝提交，且不留下状态
+     */
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MediaFileService blocking = mock(MediaFileService.class);
+        when(blocking.mergechunks(anyLong(), anyString(), anyInt(), any(), any(), any())).thenAnswer(inv -> {
+            release.await(10, TimeUnit.SECONDS);
+            return RestResponse.success();
+        });
+        manager.shutdown();
+        manager = newManager(blocking, fixture.manifestStore(), fixture.sessionRegistry());
+        ReflectionTestUtils.setField(manager, "threads", 1);
+        ReflectionTestUtils.setField(manager, "queueCapacity", 1);
+
+        try {
+            assertNotNull(manager.submit(1L, "md5-a", 1, params(), null));
+            assertNotNull(manager.submit(1L, "md5-b", 1, params(), null));
+            assertNull(manager.submit(1L, "md5-c", 1, params(), null));
+            assertNull(manager.getStatus("md5-c"));
+            // 排队中的任务重复提交不占用队列
+            assertNotNull(manager.submit(1L, "md5-b", 1, params(), null));
+        } finally {
+            release.countDown();
+        }
+        assertEquals(MergeJobDto.SUCCESS, awaitFinished("md5-b").getStatus());
+    }
+
+    /**
+     * 节点重启时未完成的任务标记为失败，已结束的任务到期后清理
+     */
+    @Test
+    public void testInterruptedJobAfterRestart() throws Exception {
+        MergeJobDto running = new MergeJobDto();
+        running.setFileMd5(fileMd5);
+        running.setStatus(MergeJobDto.RUNNING);
+        running.setStage(MergeProgress.UPLOADING);
+        running.setCreateTime(LocalDateTime.now().minusDays(2));
+        running.setUpdateTime(LocalDateTime.now().minusDays(2));
+        Files.write(stateDir.resolve(fileMd5 + ".json"), JsonUtil.objectTojson(running).getBytes(StandardCharsets.UTF_8));
+
+        MergeJobDto loaded = manager.getStatus(fileMd5);
+        assertEquals(MergeJobDto.FAILED, loaded.getStatus());
+        assertEquals(MergeProgress.UPLOADING, loaded.getStage());
+
+        assertEquals(1, manager.deleteFinished(LocalDateTime.now().minusDays(1)));
+        assertNull(manager.getStatus(fileMd5));
+    }
+
+    private MergeJobManager newManager(MediaFileService mediaFileService, ChunkManifestStore manifestStore,
+                                       UploadSessionRegistry sessionRegistry) {
+        MergeJobManager jobManager = new MergeJobManager();
+        ReflectionTestUtils.setField(jobManager, "mediaFileService", mediaFileService);
+        ReflectionTestUtils.setField(jobManager, "chunkManifestStore", manifestStore);
+        ReflectionTestUtils.setField(jobManager, "uploadSessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(jobManager, "stateDir", stateDir.toString());
+        return jobManager;
+    }
+
+    private MergeJobDto awaitFinished(String md5) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        MergeJobDto job = manager.getStatus(md5);
+        while (System.currentTimeMillis() < deadline && (MergeJobDto.QUEUED.equals(job.getStatus())
+                || MergeJobDto.RUNNING.equals(job.getStatus()))) {
+            Thread.sleep(20);
+            job = manager.getStatus(md5);
+        }
+        return job;
+    }
+
+    private void uploadAll() {
+        int total = chunkTotal();
+        service.missingChunks(fileMd5, total, CHUNK_SIZE, content.length);
+        for (int i = 0; i < total; i++) {
+            int from = i * CHUNK_SIZE;
+            byte[] data = Arrays.copyOfRange(content, from, Math.min(from + CHUNK_SIZE, content.length));
+            RestResponse resp = service.uploadChunk(fileMd5, i, new ByteArrayInputStream(data), data.length,
+                    "lesson.mp4", null);
+            assertEquals(0, resp.getCode(), resp.getMsg());
+        }
+    }
+
+    private UploadFileParamsDto params() {
+        UploadFileParamsDto params = new UploadFileParamsDto();
+        params.setFilename("lesson.mp4");
+        return params;
+    }
+
+    private int chunkTotal() {
+        return (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+}
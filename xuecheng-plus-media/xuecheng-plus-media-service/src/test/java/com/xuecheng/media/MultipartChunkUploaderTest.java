@@ -0,0 +1,192 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.service.impl.ChunkDirectory;
+import com.xuecheng.media.service.impl.MultipartChunkUploader;
+import com.xuecheng.media.service.impl.OssService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片直传测试（基于本地内存OSS替身，不依赖真实OSS和Spring容器）
+ */
+public class MultipartChunkUploaderTest {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private String fileMd5;
+
+    private Path workDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        oss = new LocalOssStub();
+        ossService = oss.newOssService();
+        fileMd5 = UUID.randomUUID().toString().replace("-", "");
+        workDir = Files.createDirectories(tempDir.resolve("work"));
+    }
+
+    /**
+     * 分块乱序到达，完成后OSS中的对象与原文件一致
+     */
+    @Test
+    public void testUploadOutOfOrderAndComplete() throws IOException {
+        byte[][] chunks = randomChunks(3);
+        MultipartChunkUploader uploader = newUploader();
+
+        for (int chunk : new int[]{2, 0, 1}) {
+            uploader.uploadPart(fileMd5, "lesson.mp4", chunk, writeChunk(chunk, chunks[chunk]));
+        }
+        assertTrue(uploader.hasPart(fileMd5, 1));
+
+        MultipartChunkUploader.CompleteResult result = uploader.complete(fileMd5, 3);
+
+        assertTrue(result.getObjectName().endsWith(fileMd5 + ".mp4"));
+        assertEquals(concat(chunks).length, result.getSize());
+        assertArrayEquals(concat(chunks), oss.getObject(result.getObjectName()));
+        assertFalse(uploader.hasSession(fileMd5));
+    }
+
+    /**
+     * 节点重启（内存会话丢失）后，仍可通过持久化的会话完成上传
+     */
+    @Test
+    public void testCompleteAfterRestart() throws IOException {
+        byte[][] chunks = randomChunks(2);
+        MultipartChunkUploader before = newUploader();
+        before.uploadPart(fileMd5, "lesson.mp4", 0, writeChunk(0, chunks[0]));
+
+        MultipartChunkUploader after = newUploader();
+        after.uploadPart(fileMd5, "lesson.mp4", 1, writeChunk(1, chunks[1]));
+        MultipartChunkUploader.CompleteResult result = after.complete(fileMd5, 2);
+
+        assertArrayEquals(concat(chunks), oss.getObject(result.getObjectName()));
+    }
+
+    @Test
+    public void testMissingChunk() throws IOException {
+        byte[][] chunks = randomChunks(3);
+        MultipartChunkUploader uploader = newUploader();
+        uploader.uploadPart(fileMd5, "lesson.mp4", 0, writeChunk(0, chunks[0]));
+        uploader.uploadPart(fileMd5, "lesson.mp4", 2, writeChunk(2, chunks[2]));
+
+        IOException e = assertThrows(IOException.class, () -> uploader.complete(fileMd5, 3));
+        assertEquals("缺少分块：1", e.getMessage());
+    }
+
+    /**
+     * 服务端拼接结果与本地组合CRC64不一致时，删除对象并失败
+     */
+    @Test
+    public void testCombinedChecksumMismatch() throws IOException {
+        byte[][] chunks = randomChunks(2);
+        MultipartChunkUploader uploader = newUploader();
+        uploader.uploadPart(fileMd5, "lesson.mp4", 0, writeChunk(0, chunks[0]));
+        uploader.uploadPart(fileMd5, "lesson.mp4", 1, writeChunk(1, chunks[1]));
+        oss.setCorruptOnComplete(true);
+
+        IOException e = assertThrows(IOException.class, () -> uploader.complete(fileMd5, 2));
+        assertEquals("文件校验失败", e.getMessage());
+        assertFalse(oss.hasObject(ossService.buildObjectName(fileMd5, "lesson.mp4")));
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        MultipartChunkUploader uploader = newUploader();
+        uploader.uploadPart(fileMd5, "lesson.mp4", 0, writeChunk(0, randomChunks(1)[0]));
+        assertEquals(1, oss.pendingUploads());
+
+        uploader.abort(fileMd5);
+
+        assertEquals(0, oss.pendingUploads());
+    }
+
+    /**
+     * 同一文件的分块并发到达时只初始化一次分片上传
+     */
+    @Test
+    public void testConcurrentChunksInitiateOnce() throws Exception {
+        byte[][] chunks = randomChunks(4);
+        MultipartChunkUploader uploader = newUploader();
+        ExecutorService executor = Executors.newFixedThreadPool(chunks.length);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < chunks.length; i++) {
+                Path chunkFile = writeChunk(i, chunks[i]);
+                int chunk = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    uploader.uploadPart(fileMd5, "lesson.mp4", chunk, chunkFile);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, oss.pendingUploads());
+
+        MultipartChunkUploader.CompleteResult result = uploader.complete(fileMd5, chunks.length);
+
+        assertArrayEquals(concat(chunks), oss.getObject(result.getObjectName()));
+    }
+
+    private MultipartChunkUploader newUploader() {
+        MultipartChunkUploader uploader = new MultipartChunkUploader();
+        ReflectionTestUtils.setField(uploader, "ossService", ossService);
+        ReflectionTestUtils.setField(uploader, "chunkDirectory",
+                new ChunkDirectory(tempDir.resolve("chunks").toString()));
+        return uploader;
+    }
+
+    private byte[][] randomChunks(int count) {
+        Random random = new Random(count);
+        byte[][] chunks = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            // 最后一块不满
+            chunks[i] = new byte[i == count - 1 ? CHUNK_SIZE / 3 : CHUNK_SIZE];
+            random.nextBytes(chunks[i]);
+        }
+        return chunks;
+    }
+
+    private Path writeChunk(int chunk, byte[] data) throws IOException {
+        return Files.write(workDir.resolve("chunk-" + chunk), data);
+    }
+
+    private byte[] concat(byte[][] chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,145 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import com.xuecheng.media.service.impl.OssChunkStore;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OSS分块存储测试：分块存为OSS临时对象，续传协商以OSS上的分块为准，合并为服务端拷贝
+ */
+public class OssChunkStoreTest {
+
+    private static final String[] CHUNKS = {"first-chunk|", "second-chunk|", "tail"};
+
+    @TempDir
+    Path tempDir;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private OssChunkStore chunkStore;
+
+    private MediaFileServiceImpl service;
+
+    private String fileMd5;
+
+    @BeforeEach
+    public void setUp() {
+        fileMd5 = DigestUtils.md5Hex(String.join("", CHUNKS) + UUID.randomUUID());
+        MediaFileServiceFixture fixture = new MediaFileServiceFixture(tempDir);
+        fixture.chunkStores(fixture.localStore(), fixture.multipartUploader(), fixture.ossChunkStore())
+                .chunkMode("oss");
+        oss = fixture.oss();
+        ossService = fixture.ossService();
+        chunkStore = fixture.ossChunkStore();
+        service = fixture.service();
+    }
+
+    /**
+     * 分块乱序到达，缺失分块由OSS上的分块对象得出；合并后分块对象被删除
+     */
+    @Test
+    public void testUploadAndMerge() {
+        assertEquals(0, upload(2, CHUNKS[2], md5(CHUNKS[2])).getCode());
+        assertEquals(0, upload(0, CHUNKS[0], null).getCode());
+
+        assertEquals(Collections.singletonList(1), service.missingChunks(fileMd5, 3).getResult());
+        assertEquals("缺少分块：1", service.mergechunks(1L, fileMd5, 3, new UploadFileParamsDto()).getMsg());
+
+        assertEquals(0, upload(1, CHUNKS[1], md5(CHUNKS[1])).getCode());
+        UploadFileParamsDto params = new UploadFileParamsDto();
+        params.setFilename("lesson.mp4");
+        RestResponse resp = service.mergechunks(1L, fileMd5, 3, params);
+
+        assertEquals(0, resp.getCode(), resp.getMsg());
+        assertEquals(String.join("", CHUNKS).length(), params.getFileSize());
+        String objectName = ossService.buildObjectName(fileMd5, "lesson.mp4");
+        assertEquals(String.join("", CHUNKS), new String(oss.getObject(objectName), StandardCharsets.UTF_8));
+        assertTrue(chunkStore.listChunks(fileMd5).isEmpty());
+        assertEquals(0, oss.pendingUploads());
+    }
+
+    @Test
+    public void testRejectCorruptChunk() {
+        assertEquals(0, upload(0, CHUNKS[0], md5(CHUNKS[0])).getCode());
+
+        RestResponse resp = upload(0, "corrupted", md5(CHUNKS[0]));
+
+        assertEquals("分块校验失败", resp.getMsg());
+        assertEquals(CHUNKS[0], new String(oss.getObject("xc-chunks/" + fileMd5 + "/0"), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 分块0未到达时合并也能找到该上传，报告缺少的分块
+     */
+    @Test
+    public void testMergeReportsMissingFirstChunk() {
+        upload(1, CHUNKS[1], null);
+        upload(2, CHUNKS[2], null);
+
+        assertTrue(chunkStore.hasUpload(fileMd5));
+        assertEquals("缺少分块：0", service.mergechunks(1L, fileMd5, 3, new UploadFileParamsDto()).getMsg());
+    }
+
+    /**
+     * 逐块续传协商只检查单个分块对象，不列出全部分块
+     */
+    @Test
+    public void testCheckChunkDoesNotList() {
+        upload(0, CHUNKS[0], null);
+        upload(2, CHUNKS[2], null);
+        int lists = oss.getListObjectsCalls();
+
+        assertTrue(service.checkChunk(fileMd5, 0).getResult());
+        assertFalse(service.checkChunk(fileMd5, 1).getResult());
+        assertTrue(service.checkChunk(fileMd5, 2).getResult());
+        assertEquals(lists, oss.getListObjectsCalls());
+    }
+
+    /**
+     * 过期按上传整体判断：最新分块未过期的上传保留全部分块，全部分块都过期才删除
+     */
+    @Test
+    public void testDeleteExpired() {
+        upload(0, CHUNKS[0], null);
+        upload(1, CHUNKS[1], null);
+        Date old = new Date(System.currentTimeMillis() - 48L * 3600 * 1000);
+        Date before = new Date(System.currentTimeMillis() - 24L * 3600 * 1000);
+        oss.setLastModified("xc-chunks/" + fileMd5 + "/0", old);
+
+        assertEquals(0, chunkStore.deleteExpired(before));
+        assertTrue(oss.hasObject("xc-chunks/" + fileMd5 + "/0"));
+
+        oss.setLastModified("xc-chunks/" + fileMd5 + "/1", old);
+
+        assertEquals(2, chunkStore.deleteExpired(before));
+        assertFalse(oss.hasObject("xc-chunks/" + fileMd5 + "/0"));
+        assertFalse(oss.hasObject("xc-chunks/" + fileMd5 + "/1"));
+    }
+
+    private RestResponse upload(int chunk, String content, String chunkMd5) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        return service.uploadChunk(fileMd5, chunk, new ByteArrayInputStream(data), data.length, "lesson.mp4",
+                chunkMd5);
+    }
+
+    private String md5(String content) {
+        return DigestUtils.md5Hex(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
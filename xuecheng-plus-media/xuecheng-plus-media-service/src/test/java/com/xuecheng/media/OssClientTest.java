@@ -0,0 +1,233 @@
+package com.xuecheng.media;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.InconsistentException;
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.xuecheng.media.config.OssClientFactory;
+import com.xuecheng.media.config.OssClientMetrics;
+import com.xuecheng.media.config.OssConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OSS客户端测试（本地 HTTP 替身服务）：重试次数、读写超时、CRC64校验开关、按操作记录的耗时和字节数指标
+ */
+public class OssClientTest {
+
+    private static final String BUCKET = "test-bucket";
+
+    private HttpServer server;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * 接下来的请求返回 503 的次数
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile long responseDelayMillis;
+
+    /**
+     * 为 true 时 PUT 响应返回错误的 CRC64
+     */
+    private volatile boolean wrongCrc;
+
+    private OssConfig.Client settings;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        settings = new OssConfig.Client();
+        settings.setMaxConnections(8);
+        settings.setConnectionTimeout(1000);
+        settings.setSocketTimeout(2000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRetriesServerErrorsUpToMaxErrorRetry() {
+        settings.setMaxErrorRetry(2);
+        OSS client = client(true);
+        failures.set(2);
+        client.putObject(BUCKET, "a.mp4", new ByteArrayInputStream(bytes("abc")));
+        assertEquals(3, requests.get());
+        assertArrayEquals(bytes("abc"), objects.get("a.mp4"));
+        client.shutdown();
+
+        settings.setMaxErrorRetry(0);
+        OSS noRetry = client(true);
+        failures.set(1);
+        assertThrows(OSSException.class,
+                () -> noRetry.putObject(BUCKET, "b.mp4", new ByteArrayInputStream(bytes("abc"))));
+        noRetry.shutdown();
+    }
+
+    @Test
+    public void testSocketTimeout() {
+        settings.setSocketTimeout(300);
+        settings.setMaxErrorRetry(0);
+        OSS client = client(true);
+        objects.put("slow.mp4", bytes("slow"));
+        responseDelayMillis = 2000;
+
+        long start = System.currentTimeMillis();
+        assertThrows(ClientException.class, () -> client.getObjectMetadata(BUCKET, "slow.mp4"));
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        client.shutdown();
+    }
+
+    @Test
+    public void testCrcCheckCanBeDisabled() {
+        settings.setMaxErrorRetry(0);
+        wrongCrc = true;
+        OSS checked = client(true);
+        assertThrows(InconsistentException.class,
+                () -> checked.putObject(BUCKET, "a.mp4", new ByteArrayInputStream(bytes("abc"))));
+        checked.shutdown();
+
+        OSS unchecked = client(false);
+        unchecked.putObject(BUCKET, "a.mp4", new ByteArrayInputStream(bytes("abc")));
+        unchecked.shutdown();
+    }
+
+    @Test
+    public void testMetricsRecordLatencyAndBytesPerOperation() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OSS client = OssClientMetrics.wrap(client(true), registry);
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(1000);
+        client.putObject(BUCKET, "a.mp4", new ByteArrayInputStream(new byte[1000]), metadata);
+        try (OSSObject object = client.getObject(BUCKET, "a.mp4")) {
+            assertEquals(1000, IOUtils.toByteArray(object.getObjectContent()).length);
+        }
+        assertThrows(OSSException.class, () -> client.getObject(BUCKET, "missing.mp4"));
+        client.deleteObject(BUCKET, "a.mp4");
+        assertNotNull(client.generatePresignedUrl(BUCKET, "a.mp4", new Date(System.currentTimeMillis() + 60000)));
+
+        assertEquals(1, count(registry, "put", "success"));
+        assertEquals(1, count(registry, "get", "success"));
+        assertEquals(1, count(registry, "get", "error"));
+        assertEquals(1, count(registry, "delete", "success"));
+        assertEquals(1, count(registry, "presign", "success"));
+        assertEquals(1000, registry.get(OssClientMetrics.BYTES).tag("operation", "put").counter().count());
+        assertEquals(1000, registry.get(OssClientMetrics.BYTES).tag("operation", "get").counter().count());
+        assertTrue(registry.get(OssClientMetrics.REQUESTS).tag("operation", "put").tag("outcome", "success")
+                .timer().totalTime(TimeUnit.NANOSECONDS) > 0);
+        client.shutdown();
+    }
+
+    private static long count(SimpleMeterRegistry registry, String operation, String outcome) {
+        return registry.get(OssClientMetrics.REQUESTS).tag("operation", operation).tag("outcome", outcome)
+                .timer().count();
+    }
+
+    private OSS client(boolean crcCheckEnabled) {
+        return new OssClientFactory("http://127.0.0.1:" + server.getAddress().getPort(), "ak", "sk", settings)
+                .create(crcCheckEnabled);
+    }
+
+    /**
+     * 路径形式为 /{bucket}/{key}（endpoint 为 IP 时客户端不使用二级域名）
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = IOUtils.toByteArray(in);
+            if (responseDelayMillis > 0) {
+                Thread.sleep(responseDelayMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            String key = path.startsWith("/" + BUCKET + "/") ? path.substring(BUCKET.length() + 2) : path;
+            exchange.getResponseHeaders().set("x-oss-request-id", "req-" + requests.get());
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                error(exchange, 503, "ServiceUnavailable");
+                return;
+            }
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    objects.put(key, body);
+                    exchange.getResponseHeaders().set("ETag", "\"etag\"");
+                    exchange.getResponseHeaders().set("x-oss-hash-crc64ecma",
+                            Long.toUnsignedString(wrongCrc ? 1L : LocalOssStub.crc64(body)));
+                    exchange.sendResponseHeaders(200, -1);
+                    break;
+                case "GET":
+                case "HEAD":
+                    byte[] data = objects.get(key);
+                    if (data == null) {
+                        error(exchange, 404, "NoSuchKey");
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("ETag", "\"etag\"");
+                    exchange.getResponseHeaders().set("x-oss-hash-crc64ecma",
+                            Long.toUnsignedString(LocalOssStub.crc64(data)));
+                    if ("HEAD".equals(exchange.getRequestMethod())) {
+                        exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                        exchange.sendResponseHeaders(200, -1);
+                    } else {
+                        exchange.sendResponseHeaders(200, data.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            out.write(data);
+                        }
+                    }
+                    break;
+                case "DELETE":
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                    break;
+                default:
+                    error(exchange, 405, "MethodNotAllowed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        byte[] xml = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                + "</Code><Message>" + code + "</Message><RequestId>req</RequestId><HostId>127.0.0.1</HostId></Error>")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, xml.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(xml);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+package com.xuecheng.media;
+
+import com.aliyun.oss.model.ObjectMetadata;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.mapper.MediaProcessHistoryMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.model.po.MediaProcessHistory;
+import com.xuecheng.media.service.impl.OssOrphanSweeper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * OSS 孤立对象清理测试：分页归并、按 url / 转码记录 / HLS 目录确认引用、跳过最近修改和排除前缀、试运行、限速
+ */
+public class OssOrphanSweeperTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private LocalOssStub oss;
+
+    private OssOrphanSweeper sweeper;
+
+    private MediaFilesMapper mediaFilesMapper;
+
+    private final List<MediaFiles> files = new ArrayList<>();
+
+    private final List<MediaProcessHistory> histories = new ArrayList<>();
+
+    @BeforeAll
+    public static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, MediaFiles.class);
+        TableInfoHelper.initTableInfo(assistant, MediaProcessHistory.class);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        oss = new LocalOssStub();
+        mediaFilesMapper = mock(MediaFilesMapper.class);
+        when(mediaFilesMapper.selectList(any())).thenAnswer(inv -> selectFiles(inv.getArgument(0)));
+        MediaProcessHistoryMapper historyMapper = mock(MediaProcessHistoryMapper.class);
+        when(historyMapper.selectList(any())).thenAnswer(inv -> {
+            LambdaQueryWrapper<MediaProcessHistory> wrapper = inv.getArgument(0);
+            // 条件参数在生成 SQL 片段时才登记
+            assertTrue(wrapper.getSqlSegment().contains("url IN"));
+            Collection<Object> values = wrapper.getParamNameValuePairs().values();
+            return histories.stream().filter(h -> values.contains(h.getUrl())).collect(Collectors.toList());
+        });
+
+        sweeper = new OssOrphanSweeper();
+        ReflectionTestUtils.setField(sweeper, "ossService", oss.newOssService());
+        ReflectionTestUtils.setField(sweeper, "mediaFilesMapper", mediaFilesMapper);
+        ReflectionTestUtils.setField(sweeper, "mediaProcessHistoryMapper", historyMapper);
+        ReflectionTestUtils.setField(sweeper, "batchSize", 2);
+        ReflectionTestUtils.setField(sweeper, "deletesPerSecond", 0);
+
+        // a 重新上传过：旧对象 a_old.avi 不再被引用
+        file("a", "2025/01/01/a.mp4", "2025/01/01/a.mp4");
+        // b 转码为 HLS：原文件、转码后的 mp4（转码记录）、HLS 目录都被引用
+        file("b", "2025/01/02/b.avi", "hls/b/master.m3u8");
+        MediaProcessHistory history = new MediaProcessHistory();
+        history.setUrl("2025/01/02/b.mp4");
+        histories.add(history);
+
+        for (String key : Arrays.asList("2025/01/01/a.mp4", "2025/01/01/a_old.avi", "2025/01/02/b.avi",
+                "2025/01/02/b.mp4", "2025/01/03/gone.mp4", "hls/b/720p/index.m3u8", "hls/b/720p/seg_0000.ts",
+                "hls/b/master.m3u8", "hls/zzz/master.m3u8", "xc-chunks/x/0")) {
+            put(key, System.currentTimeMillis() - 2 * DAY);
+        }
+        // 刚上传、尚未入库
+        put("2025/01/04/new.mp4", System.currentTimeMillis());
+    }
+
+    @Test
+    public void testDryRunOnlyCountsOrphans() {
+        OssOrphanSweeper.Summary summary = sweeper.sweep(true, null);
+
+        assertEquals(11, summary.getScanned());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(1, summary.getRecent());
+        assertEquals(3, summary.getOrphans());
+        assertEquals(0, summary.getDeleted());
+        assertTrue(oss.hasObject("2025/01/01/a_old.avi"));
+    }
+
+    @Test
+    public void testDeletesOnlyUnreferencedObjects() {
+        List<String> messages = new ArrayList<>();
+        OssOrphanSweeper.Summary summary = sweeper.sweep(false, messages::add);
+
+        assertEquals(3, summary.getDeleted());
+        for (String orphan : Arrays.asList("2025/01/01/a_old.avi", "2025/01/03/gone.mp4", "hls/zzz/master.m3u8")) {
+            assertFalse(oss.hasObject(orphan), orphan);
+        }
+        for (String kept : Arrays.asList("2025/01/01/a.mp4", "2025/01/02/b.avi", "2025/01/02/b.mp4",
+                "hls/b/720p/index.m3u8", "hls/b/720p/seg_0000.ts", "hls/b/master.m3u8", "xc-chunks/x/0",
+                "2025/01/04/new.mp4")) {
+            assertTrue(oss.hasObject(kept), kept);
+        }
+        assertFalse(messages.isEmpty());
+
+        // 再次执行没有可删除的对象
+        assertEquals(0, sweeper.sweep(false, null).getOrphans());
+    }
+
+    @Test
+    public void testDatabaseOrderDifferentFromKeyOrderDoesNotDeleteReferencedObjects() {
+        // 模拟排序规则不同：归并时读不到任何 file_path，所有对象都成为候选，靠按对象名确认保留
+        doAnswer(inv -> {
+            LambdaQueryWrapper<MediaFiles> wrapper = inv.getArgument(0);
+            return wrapper.getSqlSegment().contains("ORDER BY") ? new ArrayList<>() : selectFiles(wrapper);
+        }).when(mediaFilesMapper).selectList(any());
+
+        assertEquals(3, sweeper.sweep(false, null).getDeleted());
+        assertTrue(oss.hasObject("2025/01/01/a.mp4"));
+        assertTrue(oss.hasObject("2025/01/02/b.avi"));
+    }
+
+    @Test
+    public void testDeletesAreRateLimited() {
+        ReflectionTestUtils.setField(sweeper, "deletesPerSecond", 10);
+
+        long start = System.nanoTime();
+        assertEquals(3, sweeper.sweep(false, null).getDeleted());
+        // 第一批2个对象删除后，第二批至少等待 2/10 秒
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180));
+    }
+
+    /**
+     * 按查询条件在内存中筛选：file_path 升序分页 / 按媒资ID / 按 file_path 或 url
+     */
+    private List<MediaFiles> selectFiles(LambdaQueryWrapper<MediaFiles> wrapper) {
+        String sql = wrapper.getSqlSegment();
+        Collection<Object> values = wrapper.getParamNameValuePairs().values();
+        if (sql.contains("ORDER BY file_path ASC")) {
+            int limit = Integer.parseInt(sql.substring(sql.lastIndexOf("LIMIT ") + 6).trim());
+            String after = values.isEmpty() ? null : (String) values.iterator().next();
+            return files.stream()
+                    .filter(f -> after == null || f.getFilePath().compareTo(after) > 0)
+                    .sorted(Comparator.comparing(MediaFiles::getFilePath))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+        if (sql.contains("file_path IN")) {
+            assertTrue(sql.contains("url IN"), sql);
+            return files.stream()
+                    .filter(f -> values.contains(f.getFilePath()) || values.contains(f.getUrl()))
+                    .collect(Collectors.toList());
+        }
+        assertTrue(sql.contains("id IN"), sql);
+        return files.stream().filter(f -> values.contains(f.getId())).collect(Collectors.toList());
+    }
+
+    private void file(String id, String filePath, String url) {
+        MediaFiles mediaFiles = new MediaFiles();
+        mediaFiles.setId(id);
+        mediaFiles.setFilePath(filePath);
+        mediaFiles.setUrl(url);
+        files.add(mediaFiles);
+    }
+
+    private void put(String key, long lastModified) {
+        oss.client().putObject(LocalOssStub.BUCKET, key, new ByteArrayInputStream(new byte[16]), new ObjectMetadata());
+        oss.setLastModified(key, new Date(lastModified));
+    }
+}
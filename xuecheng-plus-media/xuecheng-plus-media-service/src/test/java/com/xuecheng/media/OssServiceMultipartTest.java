@@ -0,0 +1,219 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.service.impl.OssService;
+import com.xuecheng.media.service.impl.ParallelMultipartUploader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 大文件并行分片上传测试（基于本地内存OSS替身）
+ */
+public class OssServiceMultipartTest {
+
+    private static final int PART_SIZE = 256 * 1024;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private Path workDir;
+
+    private Path checkpointDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("xc-oss-multipart-test-");
+        checkpointDir = workDir.resolve("checkpoint");
+        oss = new LocalOssStub();
+        ossService = oss.newOssService();
+        ReflectionTestUtils.setField(ossService, "multipartThreshold", 1024L * 1024);
+        ReflectionTestUtils.setField(ossService, "multipartPartSize", (long) PART_SIZE);
+        ReflectionTestUtils.setField(ossService, "multipartMaxRetries", 1);
+        ReflectionTestUtils.setField(ossService, "multipartCheckpointDir", checkpointDir.toString());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        ossService.shutdown();
+        try (Stream<Path> paths = Files.walk(workDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLargeFileUsesParallelMultipart() throws IOException {
+        byte[] data = randomBytes(5 * PART_SIZE + 1234);
+        Path file = Files.write(workDir.resolve("lesson.tmp"), data);
+
+        String objectName = ossService.uploadFile(file.toString(), "lesson.mp4", "abc123");
+
+        assertTrue(objectName.endsWith("abc123.mp4"));
+        assertArrayEquals(data, oss.getObject(objectName));
+        assertEquals(6, oss.getUploadPartCalls());
+        assertEquals(0, oss.pendingUploads());
+        assertFalse(Files.exists(checkpointDir) && Files.list(checkpointDir).findAny().isPresent());
+
+        ParallelMultipartUploader.Metrics metrics = ossService.getMultipartMetrics();
+        assertEquals(data.length, metrics.getBytesUploaded());
+        assertEquals(0, metrics.getPartsInFlight());
+        assertTrue(metrics.getBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testSmallFileUsesPutObject() throws IOException {
+        byte[] data = randomBytes(PART_SIZE);
+        Path file = Files.write(workDir.resolve("cover.tmp"), data);
+
+        String objectName = ossService.uploadFile(file.toString(), "cover.png", "def456");
+
+        assertArrayEquals(data, oss.getObject(objectName));
+        assertEquals(0, oss.getUploadPartCalls());
+    }
+
+    /**
+     * 分片偶发失败时单独重试，不影响整体上传
+     */
+    @Test
+    public void testPartRetry() throws IOException {
+        byte[] data = randomBytes(4 * PART_SIZE + 1);
+        Path file = Files.write(workDir.resolve("lesson.tmp"), data);
+        oss.failUploadPart(3, 1);
+
+        String objectName = ossService.uploadFile(file.toString(), "lesson.mp4", "abc123");
+
+        assertArrayEquals(data, oss.getObject(objectName));
+        assertEquals(6, oss.getUploadPartCalls());
+        assertEquals(1, ossService.getMultipartMetrics().getPartRetries());
+    }
+
+    /**
+     * 分片重试耗尽后上传失败，检查点保留；再次上传时跳过已完成的分片
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws IOException {
+        byte[] data = randomBytes(5 * PART_SIZE);
+        Path file = Files.write(workDir.resolve("lesson.tmp"), data);
+        oss.failUploadPart(3, 100);
+
+        assertThrows(RuntimeException.class, () -> ossService.uploadFile(file.toString(), "lesson.mp4", "abc123"));
+        assertEquals(1, Files.list(checkpointDir).count());
+        assertEquals(1, oss.pendingUploads());
+
+        oss.clearFailures();
+        int callsBefore = oss.getUploadPartCalls();
+        String objectName = ossService.uploadFile(file.toString(), "lesson.mp4", "abc123");
+
+        assertArrayEquals(data, oss.getObject(objectName));
+        // 分片1、2在失败前已确认完成，续传时不再上传
+        assertTrue(oss.getUploadPartCalls() - callsBefore <= 3);
+        assertEquals(0, oss.pendingUploads());
+        assertEquals(0, Files.list(checkpointDir).count());
+    }
+
+    /**
+     * 合并时每次生成的临时文件路径不同：按对象名 + 内容MD5 找到检查点续传
+     */
+    @Test
+    public void testResumeFromDifferentTempFileWithSameContent() throws IOException {
+        byte[] data = randomBytes(5 * PART_SIZE);
+        Path first = Files.write(workDir.resolve("xc-merge-1.tmp"), data);
+        oss.failUploadPart(3, 100);
+        assertThrows(RuntimeException.class, () -> ossService.uploadFile(first.toString(), "lesson.mp4", "abc123"));
+        Files.delete(first);
+
+        oss.clearFailures();
+        int callsBefore = oss.getUploadPartCalls();
+        Path second = Files.write(workDir.resolve("xc-merge-2.tmp"), data);
+        String objectName = ossService.uploadFile(second.toString(), "lesson.mp4", "abc123");
+
+        assertArrayEquals(data, oss.getObject(objectName));
+        assertTrue(oss.getUploadPartCalls() - callsBefore <= 3);
+        assertEquals(0, oss.pendingUploads());
+    }
+
+    /**
+     * 不知道内容MD5的上传无法续传：失败时取消分片上传，不留检查点
+     */
+    @Test
+    public void testUploadWithoutMd5AbortedOnFailure() throws IOException {
+        Path file = Files.write(workDir.resolve("lesson.tmp"), randomBytes(5 * PART_SIZE));
+        oss.failUploadPart(3, 100);
+
+        assertThrows(RuntimeException.class, () -> ossService.putFile(file.toString(), "hls/x/lesson.mp4", null));
+        assertEquals(0, oss.pendingUploads());
+        assertFalse(Files.exists(checkpointDir) && Files.list(checkpointDir).findAny().isPresent());
+    }
+
+    /**
+     * 失败后一直没有重试的上传由清理任务取消
+     */
+    @Test
+    public void testAbortExpiredUploads() throws IOException {
+        Path file = Files.write(workDir.resolve("lesson.tmp"), randomBytes(5 * PART_SIZE));
+        oss.failUploadPart(3, 100);
+        assertThrows(RuntimeException.class, () -> ossService.uploadFile(file.toString(), "lesson.mp4", "abc123"));
+        assertEquals(1, oss.pendingUploads());
+
+        assertEquals(0, ossService.abortExpiredMultipartUploads(new Date(System.currentTimeMillis() - 60_000)));
+        assertEquals(1, ossService.abortExpiredMultipartUploads(new Date(System.currentTimeMillis() + 1000)));
+        assertEquals(0, oss.pendingUploads());
+        assertEquals(0, Files.list(checkpointDir).count());
+    }
+
+    /**
+     * 内容MD5相同、大小相同但本地内容不同时（未校验的MD5），已完成分片按 CRC64 重新确认
+     */
+    @Test
+    public void testResumedPartsRecheckedAgainstLocalFile() throws IOException {
+        byte[] data = randomBytes(5 * PART_SIZE);
+        Path file = Files.write(workDir.resolve("lesson.tmp"), data);
+        oss.failUploadPart(3, 100);
+        assertThrows(RuntimeException.class, () -> ossService.uploadFile(file.toString(), "lesson.mp4", "abc123"));
+
+        oss.clearFailures();
+        byte[] changed = data.clone();
+        changed[10] ^= 0x1;
+        Files.write(file, changed);
+        String objectName = ossService.uploadFile(file.toString(), "lesson.mp4", "abc123");
+
+        assertArrayEquals(changed, oss.getObject(objectName));
+    }
+
+    /**
+     * 本地文件变化后不复用旧检查点
+     */
+    @Test
+    public void testCheckpointIgnoredWhenFileChanged() throws IOException {
+        byte[] data = randomBytes(5 * PART_SIZE);
+        Path file = Files.write(workDir.resolve("lesson.tmp"), data);
+        oss.failUploadPart(3, 100);
+        assertThrows(RuntimeException.class, () -> ossService.uploadFile(file.toString(), "lesson.mp4", "abc123"));
+
+        oss.clearFailures();
+        byte[] changed = randomBytes(5 * PART_SIZE + 7);
+        Files.write(file, changed);
+        String objectName = ossService.uploadFile(file.toString(), "lesson.mp4", "abc123");
+
+        assertArrayEquals(changed, oss.getObject(objectName));
+        // 旧检查点对应的分片上传已取消
+        assertEquals(0, oss.pendingUploads());
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,207 @@
+package com.xuecheng.media;
+
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PartETag;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.impl.MediaIntegrityVerifier;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * OSS 对象校验测试：优先比对服务端元信息（不下载）、元信息不可用时按范围流式读取（不信任记录的 md5）、媒资完整性抽检
+ */
+public class OssVerifyTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private final Random random = new Random(42);
+
+    @BeforeAll
+    public static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), MediaFiles.class);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        oss = new LocalOssStub();
+        ossService = oss.newOssService();
+        ReflectionTestUtils.setField(ossService, "verifyRangeSize", 1000L);
+    }
+
+    @Test
+    public void testVerifyFileUsesMetadataWithoutDownload() throws IOException {
+        byte[] data = bytes(5000);
+        Path local = write("a.mp4", data);
+        String objectName = ossService.uploadFile(local.toString(), "a.mp4", DigestUtils.md5Hex(data));
+
+        assertTrue(ossService.verifyFileMd5(local.toString(), objectName));
+
+        // 同样大小、内容不同的本地文件
+        byte[] other = data.clone();
+        other[4000] ^= 0x1;
+        assertFalse(ossService.verifyFileMd5(write("b.mp4", other).toString(), objectName));
+        assertFalse(ossService.verifyFileMd5(local.toString(), "2025/01/01/missing.mp4"));
+        assertEquals(0, oss.getGetObjectCalls());
+    }
+
+    @Test
+    public void testLegacyMultipartObjectFallsBackToRangedStream() throws IOException {
+        byte[] data = bytes(2500);
+        String objectName = multipart("2025/01/01/legacy.mp4", data, null);
+        Path local = write("legacy.mp4", data);
+
+        // 分片上传的 ETag 不是内容MD5，有本地文件时按 CRC64 比对
+        assertTrue(ossService.verifyFileMd5(local.toString(), objectName));
+        assertEquals(0, oss.getGetObjectCalls());
+
+        // 没有本地文件也没有记录 md5：按 1000 字节的范围读取 3 次
+        assertTrue(ossService.verifyObjectMd5(objectName, DigestUtils.md5Hex(data).toUpperCase()));
+        assertEquals(3, oss.getGetObjectCalls());
+        assertFalse(ossService.verifyObjectMd5(objectName, DigestUtils.md5Hex("other")));
+        assertNull(ossService.verifyObjectMd5("2025/01/01/missing.mp4", DigestUtils.md5Hex(data)));
+    }
+
+    /**
+     * 上传时记录的 md5 可能未经验证（分片直传、跳过整文件MD5），不能据此判定一致
+     */
+    @Test
+    public void testRecordedMd5IsNotTrustedForMultipartObject() throws IOException {
+        byte[] data = bytes(2500);
+        byte[] corrupted = data.clone();
+        corrupted[1200] ^= 0x1;
+        String claimedMd5 = DigestUtils.md5Hex(data);
+        String objectName = multipart("2025/01/01/merged.mp4", corrupted, claimedMd5);
+
+        assertFalse(ossService.verifyObjectMd5(objectName, claimedMd5));
+        assertEquals(3, oss.getGetObjectCalls());
+        assertTrue(ossService.verifyObjectMd5(objectName, DigestUtils.md5Hex(corrupted)));
+
+        // 有本地文件时按服务端 CRC64 比对，不读取内容
+        assertFalse(ossService.verifyFileMd5(write("merged.mp4", data).toString(), objectName));
+        assertEquals(6, oss.getGetObjectCalls());
+    }
+
+    @Test
+    public void testIntegrityVerifierReportsMismatchedAndMissingObjects() throws InterruptedException {
+        List<MediaFiles> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            byte[] data = bytes(1500);
+            String id = DigestUtils.md5Hex(data);
+            String objectName = "2025/01/01/" + id + ".mp4";
+            files.add(mediaFiles(id, objectName));
+            if (i == 2) {
+                // 对象被覆盖为其他内容（旧版上传，没有记录 md5）
+                oss.client().putObject(LocalOssStub.BUCKET, objectName, new ByteArrayInputStream(bytes(1500)),
+                        new ObjectMetadata());
+            } else if (i < 2) {
+                ossService.putObject(objectName, new ByteArrayInputStream(data), data.length, id);
+            } else {
+                multipart(objectName, data, null);
+            }
+        }
+        MediaFiles missing = mediaFiles(DigestUtils.md5Hex("missing"), "2025/01/01/missing.mp4");
+        files.add(missing);
+        // 还未上传完成的媒资不抽检
+        files.add(mediaFiles(DigestUtils.md5Hex("uploading"), null));
+
+        MediaFilesMapper mapper = mock(MediaFilesMapper.class);
+        when(mapper.selectList(any())).thenAnswer(inv -> page(files, inv.getArgument(0)));
+        MediaIntegrityVerifier verifier = new MediaIntegrityVerifier();
+        ReflectionTestUtils.setField(verifier, "ossService", ossService);
+        ReflectionTestUtils.setField(verifier, "mediaFilesMapper", mapper);
+        ReflectionTestUtils.setField(verifier, "sampleRate", 1.0);
+        ReflectionTestUtils.setField(verifier, "batchSize", 2);
+        ReflectionTestUtils.setField(verifier, "threads", 3);
+
+        MediaIntegrityVerifier.Summary summary = verifier.verify(0, null);
+        assertEquals(5, summary.getSampled());
+        assertEquals(3, summary.getPassed());
+        assertEquals(1, summary.getFailed());
+        assertEquals(1, summary.getMissing());
+        assertEquals(0, summary.getErrors());
+        assertTrue(summary.getProblems().containsAll(Arrays.asList(files.get(2).getId(), missing.getId())));
+        // 只有没记录 md5 的分片上传对象需要读取内容（1500 字节，2 次范围读取）
+        assertEquals(2, oss.getGetObjectCalls());
+
+        assertEquals(2, verifier.verify(2, null).getSampled());
+    }
+
+    /**
+     * 按 id 升序分页（WHERE id > 上一页最后一个 LIMIT n）
+     */
+    private static List<MediaFiles> page(List<MediaFiles> files, LambdaQueryWrapper<MediaFiles> wrapper) {
+        String sql = wrapper.getSqlSegment();
+        assertTrue(sql.contains("ORDER BY id ASC"), sql);
+        Collection<Object> values = wrapper.getParamNameValuePairs().values();
+        String after = values.isEmpty() ? null : (String) values.iterator().next();
+        int limit = Integer.parseInt(sql.substring(sql.lastIndexOf("LIMIT ") + 6).trim());
+        return files.stream()
+                .filter(f -> after == null || f.getId().compareTo(after) > 0)
+                .sorted(Comparator.comparing(MediaFiles::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 以 1000 字节为一片分片上传
+     */
+    private String multipart(String objectName, byte[] data, String md5) {
+        String uploadId = ossService.initiateMultipartUpload(objectName, objectName, md5);
+        List<PartETag> partETags = new ArrayList<>();
+        for (int start = 0, part = 1; start < data.length; start += 1000, part++) {
+            int size = Math.min(1000, data.length - start);
+            partETags.add(ossService.uploadPart(objectName, uploadId, part,
+                    new ByteArrayInputStream(data, start, size), size));
+        }
+        ossService.completeMultipartUpload(objectName, uploadId, partETags);
+        return objectName;
+    }
+
+    private static MediaFiles mediaFiles(String id, String filePath) {
+        MediaFiles mediaFiles = new MediaFiles();
+        mediaFiles.setId(id);
+        mediaFiles.setFilePath(filePath);
+        return mediaFiles;
+    }
+
+    private byte[] bytes(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(tempDir.resolve(name), data);
+    }
+}
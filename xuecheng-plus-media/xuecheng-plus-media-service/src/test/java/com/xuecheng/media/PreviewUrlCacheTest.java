@@ -0,0 +1,166 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.mapper.MediaFilesMapper;
+import com.xuecheng.media.model.po.MediaFiles;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import com.xuecheng.media.service.impl.OssService;
+import com.xuecheng.media.service.impl.PreviewUrlCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 预览地址缓存测试：批量查库、签名URL缓存至临近过期、容量淘汰、入库后失效，单个预览接口仍返回相对路径
+ */
+public class PreviewUrlCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MediaFilesMapper mapper;
+
+    private OssService ossService;
+
+    private PreviewUrlCache cache;
+
+    private final AtomicInteger signed = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        mapper = mock(MediaFilesMapper.class);
+        // 以 missing 开头的媒资不存在，以 nourl 开头的没有访问路径，其余偶数号已转码（url）、奇数号为原始文件
+        when(mapper.selectBatchIds(anyCollection())).thenAnswer(inv -> {
+            Collection<?> ids = inv.getArgument(0);
+            List<MediaFiles> found = new ArrayList<>();
+            for (Object id : ids) {
+                String mediaId = (String) id;
+                if (mediaId.startsWith("missing")) {
+                    continue;
+                }
+                MediaFiles mediaFiles = new MediaFiles();
+                mediaFiles.setId(mediaId);
+                if (!mediaId.startsWith("nourl")) {
+                    int n = Integer.parseInt(mediaId.replaceAll("\\D", ""));
+                    mediaFiles.setFilePath("2025/01/01/" + mediaId + ".avi");
+                    mediaFiles.setUrl(n % 2 == 0 ? "hls/" + mediaId + "/master.m3u8" : null);
+                }
+                found.add(mediaFiles);
+            }
+            return found;
+        });
+        ossService = mock(OssService.class);
+        when(ossService.getPresignedUrl(anyString(), anyLong()))
+                .thenAnswer(inv -> "https://oss/" + inv.getArgument(0) + "?sig=" + signed.incrementAndGet());
+
+        cache = new PreviewUrlCache();
+        ReflectionTestUtils.setField(cache, "mediaFilesMapper", mapper);
+        ReflectionTestUtils.setField(cache, "ossService", ossService);
+    }
+
+    @Test
+    public void testBatchLoadsMissesInChunksAndKeepsOrder() {
+        ReflectionTestUtils.setField(cache, "batchSize", 80);
+        List<String> lessons = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lessons.add("m" + i);
+        }
+        lessons.add(5, "missing1");
+        lessons.add("nourl1");
+        lessons.add("m3");
+
+        Map<String, String> urls = cache.getAll(lessons);
+
+        assertEquals(200, urls.size());
+        assertEquals(lessons.stream().filter(id -> id.startsWith("m") && !id.startsWith("missing")).distinct()
+                .collect(Collectors.toList()), new ArrayList<>(urls.keySet()));
+        assertTrue(urls.get("m2").startsWith("https://oss/hls/m2/master.m3u8?sig="));
+        assertTrue(urls.get("m3").startsWith("https://oss/2025/01/01/m3.avi?sig="));
+        // 202 个不重复的媒资，每批 80 个
+        verify(mapper, times(3)).selectBatchIds(anyCollection());
+        verify(mapper, never()).selectById(any());
+        assertEquals(200, signed.get());
+
+        // 再次获取已存在的媒资全部命中缓存
+        cache.getAll(urls.keySet()).forEach((id, url) -> assertEquals(urls.get(id), url));
+        assertEquals(urls.get("m7"), cache.get("m7"));
+        verify(mapper, times(3)).selectBatchIds(anyCollection());
+        assertEquals(200, signed.get());
+    }
+
+    @Test
+    public void testUrlsResignedBeforeExpiry() {
+        ReflectionTestUtils.setField(cache, "expireSeconds", 3600L);
+        ReflectionTestUtils.setField(cache, "refreshBeforeSeconds", 3600L);
+        String first = cache.get("m1");
+        // 提前量不超过有效期的一半，仍可命中缓存
+        assertEquals(first, cache.get("m1"));
+        assertEquals(1, signed.get());
+
+        ReflectionTestUtils.setField(cache, "expireSeconds", 0L);
+        cache.evict("m1");
+        String second = cache.get("m1");
+        String third = cache.get("m1");
+        assertNotEquals(second, third);
+        assertEquals(3, signed.get());
+    }
+
+    @Test
+    public void testCacheBoundedAndEvictedOnSave() {
+        ReflectionTestUtils.setField(cache, "cacheSize", 10);
+        for (int i = 0; i < 30; i++) {
+            cache.get("m" + i);
+        }
+        assertEquals(30, signed.get());
+        // 最近访问的仍在缓存中，较早的已被淘汰
+        cache.getAll(Arrays.asList("m29", "m25", "m20"));
+        assertEquals(30, signed.get());
+        cache.get("m0");
+        assertEquals(31, signed.get());
+
+        cache.evict("m29");
+        assertNotNull(cache.get("m29"));
+        assertEquals(32, signed.get());
+        assertNull(cache.get("missing2"));
+        assertNull(cache.get("nourl2"));
+        assertTrue(cache.getStatistics().contains("缓存记录数：10"), cache.getStatistics());
+    }
+
+    /**
+     * 单个预览接口保持返回相对路径（前端用 OSS 前缀拼接），签名URL只由批量接口返回
+     */
+    @Test
+    public void testSinglePreviewKeepsObjectPath() {
+        MediaFiles transcoded = new MediaFiles();
+        transcoded.setId("m2");
+        transcoded.setFilePath("2025/01/01/m2.avi");
+        transcoded.setUrl("hls/m2/master.m3u8");
+        MediaFiles original = new MediaFiles();
+        original.setId("m3");
+        original.setFilePath("2025/01/01/m3.avi");
+        when(mapper.selectById("m2")).thenReturn(transcoded);
+        when(mapper.selectById("m3")).thenReturn(original);
+        MediaFileServiceImpl service = new MediaFileServiceFixture(tempDir).mediaFilesMapper(mapper)
+                .previewUrlCache(cache).service();
+
+        assertEquals("hls/m2/master.m3u8", service.getPreviewUrl("m2"));
+        assertEquals("2025/01/01/m3.avi", service.getPreviewUrl("m3"));
+        assertNull(service.getPreviewUrl("missing1"));
+        assertEquals(0, signed.get());
+        assertTrue(service.getPreviewUrls(Arrays.asList("m2", "m3")).get("m3")
+                .startsWith("https://oss/2025/01/01/m3.avi?sig="));
+    }
+}
@@ -0,0 +1,80 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.utils.ProcessSupervisor;
+import com.xuecheng.base.utils.VideoUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 进程监管测试：超时结束进程、输出只保留末尾、stdout/stderr 分开读取、解析 ffmpeg 进度
+ */
+@DisabledOnOs(OS.WINDOWS)
+public class ProcessSupervisorTest {
+
+    @Test
+    public void testTimeoutKillsProcess() throws Exception {
+        long start = System.nanoTime();
+        ProcessSupervisor.Result result = ProcessSupervisor.run(sh("echo started; sleep 30"),
+                300, TimeUnit.MILLISECONDS, null);
+
+        assertTrue(result.isTimedOut());
+        assertFalse(result.isSuccess());
+        assertEquals("started", result.getStdout().trim());
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+    }
+
+    @Test
+    public void testOutputKeepsTailOnly() throws Exception {
+        // 约1MB输出：不读取时管道写满会阻塞子进程
+        ProcessSupervisor.Execution execution = ProcessSupervisor.supervise(
+                new ProcessBuilder(sh("head -c 1000000 /dev/zero | tr '\\0' 'a'; echo END; echo oops >&2; exit 3"))
+                        .start(), 10, TimeUnit.SECONDS, null, 1024);
+        ProcessSupervisor.Result result = execution.future().get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, result.getExitCode());
+        assertFalse(result.isTimedOut());
+        assertEquals(1024, result.getStdout().length());
+        assertTrue(result.getStdout().endsWith("aaaEND\n"));
+        assertEquals("oops\n", result.getStderr());
+    }
+
+    @Test
+    public void testParsesFfmpegProgress() throws Exception {
+        List<long[]> progress = Collections.synchronizedList(new ArrayList<>());
+        ProcessSupervisor.Result result = ProcessSupervisor.run(sh(
+                "echo '  Duration: 00:01:40.00, start: 0.000000, bitrate: 800 kb/s' >&2;"
+                        + "printf 'frame=  10 fps=0.0 size=N/A time=-00:00:00.02 bitrate=N/A\\r' >&2;"
+                        + "printf 'frame= 250 fps=50 size=1024kB time=00:00:25.00 bitrate=335.5kbits/s\\r' >&2;"
+                        + "printf 'frame=1000 fps=50 size=4096kB time=00:01:15.50 bitrate=444.4kbits/s\\r' >&2"),
+                10, TimeUnit.SECONDS, (processed, total) -> progress.add(new long[]{processed, total}));
+
+        assertTrue(result.isSuccess());
+        assertEquals(100_000, result.getDurationMillis());
+        assertEquals(2, progress.size());
+        assertArrayEquals(new long[]{25_000, 100_000}, progress.get(0));
+        assertArrayEquals(new long[]{75_500, 100_000}, progress.get(1));
+    }
+
+    @Test
+    public void testVideoUtilWaitForReturnsMergedOutput() throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(sh("echo out; echo err >&2"));
+        builder.redirectErrorStream(true);
+
+        String output = new VideoUtil("ffmpeg").waitFor(builder.start());
+
+        assertTrue(output.contains("out") && output.contains("err"), output);
+    }
+
+    private List<String> sh(String script) {
+        return Arrays.asList("sh", "-c", script);
+    }
+}
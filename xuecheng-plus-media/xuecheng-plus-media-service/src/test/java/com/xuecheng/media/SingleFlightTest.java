@@ -0,0 +1,126 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.mapper.MergeLeaseMapper;
+import com.xuecheng.media.service.impl.SingleFlight;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按文件合并重复操作测试：并发调用只执行一次，结果和异常共享给所有调用方
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        AtomicInteger joins = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> singleFlight.execute("merge:abc", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "merged";
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("merge:abc", () -> {
+                    executions.incrementAndGet();
+                    return "duplicate";
+                }, joins::incrementAndGet)));
+            }
+            // 其他键不受影响
+            assertEquals("other", singleFlight.execute("merge:def", () -> "other"));
+
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("merged", future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS - 1, joins.get());
+
+        // 操作结束后再次调用会重新执行
+        assertEquals("again", singleFlight.execute("merge:abc", () -> "again"));
+    }
+
+    @Test
+    public void testFailureIsSharedWithJoiners() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> owner = executor.submit(() -> singleFlight.execute("upload:abc", () -> {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("上传失败");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Object> joiner = executor.submit(() -> singleFlight.execute("upload:abc", () -> "duplicate"));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<Object> future : new Future[]{owner, joiner}) {
+                Exception e = assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertEquals("上传失败", e.getCause().getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 租约被其他节点持有时等待释放后再执行，执行完释放自己的租约
+     */
+    @Test
+    public void testWaitsForLeaseHeldByOtherNode() {
+        MergeLeaseMapper leaseMapper = mock(MergeLeaseMapper.class);
+        when(leaseMapper.insert(anyString(), anyString(), anyLong())).thenReturn(0, 1);
+        when(leaseMapper.takeOver(anyString(), anyString(), anyLong())).thenReturn(0);
+        SingleFlight singleFlight = new SingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "mergeLeaseMapper", leaseMapper);
+        ReflectionTestUtils.setField(singleFlight, "leaseEnabled", true);
+
+        assertEquals("merged", singleFlight.execute("merge:abc", () -> "merged"));
+        verify(leaseMapper, times(2)).insert(eq("merge:abc"), anyString(), anyLong());
+        verify(leaseMapper).release(eq("merge:abc"), anyString());
+
+        // 等待超时
+        ReflectionTestUtils.setField(singleFlight, "leaseWaitSeconds", 0L);
+        when(leaseMapper.insert(anyString(), anyString(), anyLong())).thenReturn(0);
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("merge:abc", () -> "merged"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.xuecheng.media;
+
+import com.xuecheng.base.model.RestResponse;
+import com.xuecheng.media.model.dto.UploadFileParamsDto;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.MediaFileServiceImpl;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预分配文件分块存储测试：分块乱序并发定位写入，合并时不再拷贝
+ */
+public class SparseChunkStoreTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private MediaFileServiceFixture fixture;
+
+    private LocalOssStub oss;
+
+    private OssService ossService;
+
+    private MediaFileServiceImpl service;
+
+    private ChunkManifestStore manifestStore;
+
+    private byte[] content;
+
+    private String fileMd5;
+
+    @BeforeEach
+    public void setUp() {
+        content = new byte[CHUNK_SIZE * 7 + 1234];
+        new Random(42).nextBytes(content);
+        content[0] = (byte) System.nanoTime();
+        fileMd5 = DigestUtils.md5Hex(content);
+
+        fixture = new MediaFileServiceFixture(tempDir);
+        fixture.chunkStores(fixture.localStore(), fixture.sparseStore()).chunkMode("sparse");
+        oss = fixture.oss();
+        ossService = fixture.ossService();
+        service = fixture.service();
+        manifestStore = fixture.manifestStore();
+    }
+
+    /**
+     * 分块乱序并发写入，最后一块到达时文件已拼好，合并只做校验和上传
+     */
+    @Test
+    public void testOutOfOrderParallelUpload() throws Exception {
+        int total = chunkTotal();
+        assertEquals(total, service.missingChunks(fileMd5, total, CHUNK_SIZE, content.length).getResult().size());
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<RestResponse>> futures = new ArrayList<>();
+            for (int chunk : order) {
+                futures.add(executor.submit(() -> upload(chunk, chunk(chunk), null)));
+            }
+            for (Future<RestResponse> future : futures) {
+                assertEquals(0, future.get().getCode(), future.get().getMsg());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(service.missingChunks(fileMd5, total).getResult().isEmpty());
+        UploadFileParamsDto params = new UploadFileParamsDto();
+        params.setFilename("lesson.mp4");
+        RestResponse resp = service.mergechunks(1L, fileMd5, total, params);
+
+        assertEquals(0, resp.getCode(), resp.getMsg());
+        assertEquals(content.length, params.getFileSize());
+        assertArrayEquals(content, oss.getObject(ossService.buildObjectName(fileMd5, "lesson.mp4")));
+        assertFalse(Files.exists(tempDir.resolve(fileMd5)));
+    }
+
+    /**
+     * 校验失败的分块从清单撤销，需要重传
+     */
+    @Test
+    public void testCorruptChunkIsDropped() {
+        int total = chunkTotal();
+        service.missingChunks(fileMd5, total, CHUNK_SIZE, content.length);
+        assertEquals(0, upload(1, chunk(1), DigestUtils.md5Hex(chunk(1))).getCode());
+
+        byte[] corrupted = chunk(1);
+        corrupted[10] ^= 0x1;
+        RestResponse resp = upload(1, corrupted, DigestUtils.md5Hex(chunk(1)));
+
+        assertEquals("分块校验失败", resp.getMsg());
+        assertTrue(service.missingChunks(fileMd5, total).getResult().contains(1));
+    }
+
+    /**
+     * 切换到 local 模式后合并切换前开始的 sparse 上传：分块目录中只有预分配文件和清单，不能当作本地分块合并
+     */
+    @Test
+    public void testMergeSparseUploadAfterSwitchingToLocal() {
+        int total = chunkTotal();
+        service.missingChunks(fileMd5, total, CHUNK_SIZE, content.length);
+        for (int i = 0; i < total; i++) {
+            assertEquals(0, upload(i, chunk(i), null).getCode());
+        }
+
+        fixture.chunkMode("local");
+        UploadFileParamsDto params = new UploadFileParamsDto();
+        params.setFilename("lesson.mp4");
+        RestResponse resp = service.mergechunks(1L, fileMd5, total, params);
+
+        assertEquals(0, resp.getCode(), resp.getMsg());
+        assertArrayEquals(content, oss.getObject(ossService.buildObjectName(fileMd5, "lesson.mp4")));
+    }
+
+    @Test
+    public void testRejectWithoutLayoutOrWrongSize() {
+        assertNotEquals(0, upload(0, chunk(0), null).getCode());
+
+        service.missingChunks(fileMd5, chunkTotal(), CHUNK_SIZE, content.length);
+        assertNotEquals(0, upload(0, Arrays.copyOf(chunk(0), CHUNK_SIZE - 1), null).getCode());
+        assertEquals(0, upload(0, chunk(0), null).getCode());
+    }
+
+    private RestResponse upload(int chunk, byte[] data, String chunkMd5) {
+        return service.uploadChunk(fileMd5, chunk, new ByteArrayInputStream(data), data.length, "lesson.mp4",
+                chunkMd5);
+    }
+
+    private byte[] chunk(int chunk) {
+        int from = chunk * CHUNK_SIZE;
+        return Arrays.copyOfRange(content, from, Math.min(from + CHUNK_SIZE, content.length));
+    }
+
+    private int chunkTotal() {
+        return (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+}
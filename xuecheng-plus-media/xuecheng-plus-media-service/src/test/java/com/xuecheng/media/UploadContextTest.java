@@ -0,0 +1,92 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.service.UploadContext;
+import com.xuecheng.media.service.impl.OssService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上传上下文测试：落盘时计算的MD5直接用于OSS对象名
+ */
+public class UploadContextTest {
+
+    @Test
+    public void testTransferComputesDigest() throws IOException {
+        byte[] data = new byte[300 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        MockMultipartFile multipartFile = new MockMultipartFile("filedata", "cover.png", "image/png", data);
+        File target = File.createTempFile("xc-upload-context-", ".tmp");
+        try {
+            UploadContext context = UploadContext.transfer(multipartFile, target);
+
+            assertEquals(DigestUtils.md5Hex(data), context.getFileMd5());
+            assertEquals(data.length, context.getFileSize());
+            assertEquals("cover.png", context.getOriginalFilename());
+            assertEquals("image/png", context.getContentType());
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+
+            LocalOssStub oss = new LocalOssStub();
+            OssService ossService = oss.newOssService();
+            String objectName = ossService.uploadFile(context);
+
+            assertTrue(objectName.endsWith(context.getFileMd5() + ".png"));
+            assertArrayEquals(data, oss.getObject(objectName));
+        } finally {
+            target.delete();
+        }
+    }
+
+    /**
+     * 不超过内存阈值的文件不落盘，直接从内存上传
+     */
+    @Test
+    public void testReceiveSmallFileInMemory() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        new Random(2).nextBytes(data);
+        MockMultipartFile multipartFile = new MockMultipartFile("filedata", "doc.pdf", "application/pdf", data);
+
+        UploadContext context = UploadContext.receive(multipartFile, 1024 * 1024);
+
+        assertTrue(context.isInMemory());
+        assertNull(context.getLocalFilePath());
+        assertEquals(DigestUtils.md5Hex(data), context.getFileMd5());
+
+        LocalOssStub oss = new LocalOssStub();
+        String objectName = oss.newOssService().uploadFile(context);
+        assertArrayEquals(data, oss.getObject(objectName));
+        context.release();
+    }
+
+    /**
+     * 超过内存阈值时写入随机命名的临时文件，同名文件互不覆盖，release 后删除
+     */
+    @Test
+    public void testReceiveLargeFileSpooled() throws IOException {
+        byte[] first = new byte[200 * 1024];
+        byte[] second = new byte[200 * 1024];
+        new Random(3).nextBytes(first);
+        new Random(4).nextBytes(second);
+
+        UploadContext a = UploadContext.receive(new MockMultipartFile("filedata", "same.mp4", "video/mp4", first), 1024);
+        UploadContext b = UploadContext.receive(new MockMultipartFile("filedata", "same.mp4", "video/mp4", second), 1024);
+
+        assertFalse(a.isInMemory());
+        assertNotEquals(a.getLocalFilePath(), b.getLocalFilePath());
+        assertArrayEquals(first, Files.readAllBytes(new File(a.getLocalFilePath()).toPath()));
+        assertArrayEquals(second, Files.readAllBytes(new File(b.getLocalFilePath()).toPath()));
+        assertEquals(DigestUtils.md5Hex(second), b.getFileMd5());
+
+        a.release();
+        b.release();
+        assertFalse(new File(a.getLocalFilePath()).exists());
+        assertFalse(new File(b.getLocalFilePath()).exists());
+    }
+}
@@ -0,0 +1,210 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.service.impl.ChunkDirectory;
+import com.xuecheng.media.service.impl.ChunkManifestStore;
+import com.xuecheng.media.service.impl.MultipartChunkUploader;
+import com.xuecheng.media.service.impl.UploadSessionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分块上传会话登记测试：字节计数（重传不重复计算）、按最后访问时间取出过期会话、启动对账、配额准入
+ */
+public class UploadSessionRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private UploadSessionRegistry registry;
+
+    private ChunkManifestStore manifestStore;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new UploadSessionRegistry();
+        manifestStore = mock(ChunkManifestStore.class);
+        ReflectionTestUtils.setField(registry, "chunkDirectory", new ChunkDirectory(tempDir.toString()));
+        ReflectionTestUtils.setField(registry, "multipartChunkUploader", mock(MultipartChunkUploader.class));
+        ReflectionTestUtils.setField(registry, "chunkManifestStore", manifestStore);
+    }
+
+    @Test
+    public void testCountersFollowChunksAndFinish() {
+        registry.touch("md5a");
+        registry.recordChunk("md5a", 0, 100);
+        registry.recordChunk("md5a", 1, 100);
+        // 重传同一分块不重复计算
+        registry.recordChunk("md5a", 1, 100);
+        registry.recordChunk("md5b", 0, 50);
+
+        assertEquals(2, registry.getSessionCount());
+        assertEquals(250, registry.getTotalBytes());
+
+        registry.finish("md5a");
+        registry.finish("unknown");
+        assertEquals(1, registry.getSessionCount());
+        assertEquals(50, registry.getTotalBytes());
+    }
+
+    @Test
+    public void testPollExpiredReturnsOnlySessionsIdleBeforeThreshold() throws InterruptedException {
+        registry.recordChunk("old", 0, 10);
+        registry.recordChunk("recent", 0, 20);
+        Thread.sleep(5);
+        long threshold = System.currentTimeMillis();
+        Thread.sleep(5);
+        // 再次访问后移到索引末尾，不会被当作过期
+        registry.recordChunk("recent", 1, 20);
+        registry.touch("fresh");
+
+        List<UploadSessionRegistry.Session> expired = registry.pollExpired(threshold);
+        assertEquals(1, expired.size());
+        assertEquals("old", expired.get(0).getFileMd5());
+        assertEquals(10, expired.get(0).getBytes());
+        assertTrue(expired.get(0).getStartTime() <= expired.get(0).getLastTouch());
+
+        assertEquals(2, registry.getSessionCount());
+        assertEquals(40, registry.getTotalBytes());
+        assertTrue(registry.pollExpired(threshold).isEmpty());
+        assertEquals(2, registry.pollExpired(System.currentTimeMillis() + 1).size());
+        assertEquals(0, registry.getTotalBytes());
+    }
+
+    @Test
+    public void testReconcileRegistersLeftoverDirectoriesOnce() throws IOException {
+        long dayAgo = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(25);
+        Path leftover = Files.createDirectories(tempDir.resolve("leftover"));
+        Files.write(leftover.resolve("0"), new byte[300]);
+        Files.write(leftover.resolve("1"), new byte[200]);
+        Files.setLastModifiedTime(leftover, FileTime.fromMillis(dayAgo));
+        Files.createDirectories(tempDir.resolve("active")).resolve("0").toFile().createNewFile();
+        Files.write(tempDir.resolve("not-a-dir"), new byte[10]);
+
+        // 对账前已经开始的上传以接口登记为准
+        registry.recordChunk("active", 0, 1000);
+        assertFalse(registry.isReconciled());
+
+        assertEquals(1, registry.reconcile());
+        assertTrue(registry.isReconciled());
+        assertEquals(2, registry.getSessionCount());
+        assertEquals(1500, registry.getTotalBytes());
+        assertEquals(0, registry.reconcile());
+
+        List<UploadSessionRegistry.Session> expired = registry.pollExpired(
+                System.currentTimeMillis() - TimeUnit.HOURS.toMillis(24));
+        assertEquals(1, expired.size());
+        assertEquals("leftover", expired.get(0).getFileMd5());
+        assertEquals(500, expired.get(0).getBytes());
+        assertEquals(1000, registry.getTotalBytes());
+    }
+
+    @Test
+    public void testAdmissionRejectsWhenGlobalOrCompanyBudgetExhausted() {
+        ReflectionTestUtils.setField(registry, "totalBudget", 1000L);
+        ReflectionTestUtils.setField(registry, "companyBudget", 500L);
+        ReflectionTestUtils.setField(registry, "waitMillis", 0L);
+
+        assertTrue(registry.admit("a", 1L, 400));
+        assertFalse(registry.admit("b", 1L, 200));
+        assertTrue(registry.admit("c", 2L, 500));
+        assertFalse(registry.admit("d", null, 200));
+        // 已准入的会话继续上传不受影响
+        assertTrue(registry.admit("a", 1L, 400));
+        assertEquals(900, registry.getChargedBytes());
+
+        // 收到的字节数超过声明的大小时按实际占用
+        registry.recordChunk("a", 0, 300);
+        assertEquals(900, registry.getChargedBytes());
+        registry.recordChunk("a", 1, 300);
+        assertEquals(1100, registry.getChargedBytes());
+
+        registry.finish("a");
+        assertEquals(500, registry.getChargedBytes());
+        assertTrue(registry.admit("b", 1L, 200));
+        assertTrue(registry.getQuotaStatistics().contains("拒绝：2"), registry.getQuotaStatistics());
+    }
+
+    @Test
+    public void testAdmissionEvictsLeastRecentlyTouchedStaleSessions() throws Exception {
+        ReflectionTestUtils.setField(registry, "totalBudget", 1000L);
+        ReflectionTestUtils.setField(registry, "staleMinutes", 0L);
+        ReflectionTestUtils.setField(registry, "waitMillis", 0L);
+        for (String md5 : new String[]{"old1", "old2"}) {
+            Files.write(Files.createDirectories(tempDir.resolve(md5)).resolve("0"), new byte[400]);
+            assertTrue(registry.admit(md5, null, 0));
+            registry.recordChunk(md5, 0, 400);
+            Thread.sleep(5);
+        }
+
+        // 800 + 500 超出配额：只淘汰最久未访问的 old1
+        assertTrue(registry.admit("new", null, 500));
+        assertFalse(Files.exists(tempDir.resolve("old1")));
+        assertTrue(Files.exists(tempDir.resolve("old2")));
+        verify(manifestStore).evict("old1");
+        verify(manifestStore, never()).evict("old2");
+        assertEquals(900, registry.getChargedBytes());
+        assertEquals(2, registry.getSessionCount());
+
+        // 淘汰全部过期会话仍不足时不淘汰，直接拒绝
+        assertFalse(registry.admit("huge", null, 2000));
+        assertTrue(Files.exists(tempDir.resolve("old2")));
+    }
+
+    /**
+     * 合并中的会话即使已过期也不会被淘汰或清理，合并结束后恢复
+     */
+    @Test
+    public void testPinnedSessionIsNotEvictedOrExpired() throws Exception {
+        ReflectionTestUtils.setField(registry, "totalBudget", 1000L);
+        ReflectionTestUtils.setField(registry, "staleMinutes", 0L);
+        ReflectionTestUtils.setField(registry, "waitMillis", 0L);
+        Files.write(Files.createDirectories(tempDir.resolve("merging")).resolve("0"), new byte[800]);
+        assertTrue(registry.admit("merging", null, 0));
+        registry.recordChunk("merging", 0, 800);
+        registry.pin("merging");
+        Thread.sleep(5);
+
+        assertFalse(registry.admit("new", null, 500));
+        assertTrue(Files.exists(tempDir.resolve("merging")));
+        assertTrue(registry.pollExpired(System.currentTimeMillis() + 1).isEmpty());
+
+        registry.unpin("merging");
+        Thread.sleep(5);
+        assertTrue(registry.admit("new", null, 500));
+        assertFalse(Files.exists(tempDir.resolve("merging")));
+    }
+
+    @Test
+    public void testAdmissionWaitsForBudgetReleasedByFinish() throws Exception {
+        ReflectionTestUtils.setField(registry, "totalBudget", 1000L);
+        ReflectionTestUtils.setField(registry, "waitMillis", 10_000L);
+        assertTrue(registry.admit("a", null, 1000));
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> queued = pool.submit(() -> registry.admit("b", null, 600));
+            Thread.sleep(100);
+            assertFalse(queued.isDone());
+            registry.finish("a");
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+            assertEquals(600, registry.getChargedBytes());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
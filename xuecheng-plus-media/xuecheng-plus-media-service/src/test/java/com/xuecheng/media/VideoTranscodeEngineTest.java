@@ -0,0 +1,275 @@
+package com.xuecheng.media;
+
+import com.xuecheng.media.model.po.MediaProcess;
+import com.xuecheng.media.service.MediaProcessService;
+import com.xuecheng.media.service.impl.OssService;
+import com.xuecheng.media.service.impl.VideoTranscodeEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 视频转码引擎测试：用脚本代替 ffmpeg（把 -i 指定的源文件复制为最后一个参数），
+ * 验证分片查询、乐观领取、并发上限、成功入历史、失败计数、长视频分段转码、HLS 打包上传
+ */
+@DisabledOnOs(OS.WINDOWS)
+public class VideoTranscodeEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MediaProcessService mediaProcessService;
+
+    private OssService ossService;
+
+    private VideoTranscodeEngine engine;
+
+    private Path record;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Path locks = Files.createDirectories(tempDir.resolve("locks"));
+        record = tempDir.resolve("concurrency.log");
+        // 模拟 ffmpeg：-i 只输出时长（内容含 long 的为30分钟，否则10秒）；-f segment 切成3段；-f concat 按列表拼接；
+        // -f hls 写2个分段和播放列表（内容含 nohls 时失败）；
+        // 其余为转码：内容含 bad 时解码失败，否则复制源文件。转码期间在 locks 目录登记，用于统计同时运行的进程数
+        Path script = tempDir.resolve("ffmpeg.sh");
+        Files.write(script, Arrays.asList(
+                "#!/bin/sh",
+                "src=\"$2\"",
+                "for last; do :; done",
+                "duration() { if grep -q long \"$1\"; then echo 00:30:00.00; else echo 00:00:10.00; fi; }",
+                "if [ $# -eq 2 ]; then echo \"  Duration: $(duration \"$src\"), start: 0.000000\"; exit 1; fi",
+                "case \" $* \" in",
+                "*' -f segment '*)",
+                "  echo \"  Duration: $(duration \"$src\"), start: 0.000000\" >&2",
+                "  for i in 0 1 2; do { echo \"part $i\"; cat \"$src\"; } > \"$(printf \"$last\" $i)\"; done; exit 0;;",
+                "*' -f concat '*)",
+                "  sed -n \"s/^file '\\(.*\\)'$/\\1/p\" \"$6\" | while read f; do cat \"$f\"; done > \"$last\"; exit 0;;",
+                "*' -f hls '*)",
+                "  while [ \"$1\" != -hls_segment_filename ]; do shift; done",
+                "  if grep -q nohls \"$src\"; then echo 'Error opening output'; exit 1; fi",
+                "  for i in 0 1; do { echo \"ts $i\"; cat \"$src\"; } > \"$(printf \"$2\" $i)\"; done",
+                "  printf '#EXTM3U\\nseg_0000.ts\\nseg_0001.ts\\n' > \"$last\"; exit 0;;",
+                "esac",
+                "mkdir \"" + locks + "/$$\"",
+                "ls \"" + locks + "\" | wc -l >> \"" + record + "\"",
+                "sleep 0.3",
+                "rmdir \"" + locks + "/$$\"",
+                "if grep -q bad \"$src\"; then echo \"$src: Invalid data found when processing input\"; exit 1; fi",
+                "echo '  Duration: 00:00:10.00, start: 0.000000' >&2",
+                "printf 'frame=100 time=00:00:05.00 bitrate=1\\r' >&2",
+                "cp \"$src\" \"$last\""), StandardCharsets.UTF_8);
+        assertTrue(script.toFile().setExecutable(true));
+
+        mediaProcessService = mock(MediaProcessService.class);
+        ossService = mock(OssService.class);
+        doAnswer(inv -> {
+            String objectName = inv.getArgument(0);
+            String content = objectName.contains("bad") ? "bad video"
+                    : objectName.contains("long") ? "long video" : "video of " + objectName;
+            Files.write(Paths.get((String) inv.getArgument(1)), content.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(ossService).downloadFile(anyString(), anyString());
+        when(ossService.buildObjectName(anyString(), anyString()))
+                .thenAnswer(inv -> "2025/01/01/" + inv.getArgument(0) + ".mp4");
+
+        engine = new VideoTranscodeEngine();
+        ReflectionTestUtils.setField(engine, "mediaProcessService", mediaProcessService);
+        ReflectionTestUtils.setField(engine, "ossService", ossService);
+        ReflectionTestUtils.setField(engine, "ffmpegPath", script.toString());
+        ReflectionTestUtils.setField(engine, "threads", 2);
+        ReflectionTestUtils.setField(engine, "workDir", tempDir.resolve("work").toString());
+        ReflectionTestUtils.setField(engine, "hlsEnabled", false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testTranscodesClaimedTasksWithBoundedConcurrency() throws IOException {
+        ReflectionTestUtils.setField(engine, "threads", 3);
+        MediaProcess good = task(3L, "md5a", "Java基础.avi", "2025/01/01/md5a.avi");
+        MediaProcess other = task(6L, "md5b", "Spring.avi", "2025/01/01/md5b.avi");
+        MediaProcess taken = task(9L, "md5c", "MySQL.avi", "2025/01/01/md5c.avi");
+        when(mediaProcessService.getShardTasks(0, 3, 3)).thenReturn(Arrays.asList(good, other, taken));
+        when(mediaProcessService.claim(anyLong())).thenReturn(true);
+        when(mediaProcessService.claim(9L)).thenReturn(false);
+
+        VideoTranscodeEngine.Summary summary = engine.run(0, 3);
+
+        assertEquals(3, summary.getTotal());
+        assertEquals(2, summary.getSucceeded());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(0, summary.getFailed());
+        verify(mediaProcessService).saveSuccess(good, "2025/01/01/md5a.mp4", null);
+        verify(mediaProcessService).saveSuccess(other, "2025/01/01/md5b.mp4", null);
+        // 没领到的任务不下载
+        verify(ossService, never()).downloadFile(eq("2025/01/01/md5c.avi"), anyString());
+        verify(ossService).buildObjectName("md5a", "Java基础.mp4");
+        // 转码结果不带源文件MD5
+        verify(ossService).putFile(anyString(), eq("2025/01/01/md5a.mp4"), isNull());
+        verify(ossService, never()).uploadFile(anyString(), anyString(), anyString());
+
+        List<String> counts = Files.readAllLines(record);
+        assertEquals(2, counts.size());
+        assertTrue(counts.stream().mapToInt(c -> Integer.parseInt(c.trim())).max().getAsInt() <= 3);
+        // 工作目录和进度已清理
+        assertArrayEquals(new String[0], tempDir.resolve("work").toFile().list());
+        assertTrue(engine.getProgress().isEmpty());
+    }
+
+    @Test
+    public void testFailedTranscodeRecordsErrorAndSkipsUpload() throws IOException {
+        MediaProcess bad = task(4L, "md5bad", "损坏.avi", "2025/01/01/bad.avi");
+        when(mediaProcessService.getShardTasks(1, 2, 2)).thenReturn(Collections.singletonList(bad));
+        when(mediaProcessService.claim(4L)).thenReturn(true);
+
+        VideoTranscodeEngine.Summary summary = engine.run(1, 2);
+
+        assertEquals(1, summary.getFailed());
+        ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+        verify(mediaProcessService).saveFailed(eq(4L), error.capture());
+        assertTrue(error.getValue().contains("退出码 1"), error.getValue());
+        assertTrue(error.getValue().contains("Invalid data found"), error.getValue());
+        verify(ossService, never()).putFile(anyString(), anyString(), any());
+        verify(mediaProcessService, never()).saveSuccess(any(), any(), any());
+    }
+
+    @Test
+    public void testLongVideoTranscodedInParallelSegments() throws IOException {
+        ReflectionTestUtils.setField(engine, "segmentThreads", 3);
+        MediaProcess lecture = task(5L, "md5long", "第一章.avi", "2025/01/01/long.avi");
+        when(mediaProcessService.getShardTasks(0, 1, 2)).thenReturn(Collections.singletonList(lecture));
+        when(mediaProcessService.claim(5L)).thenReturn(true);
+        StringBuilder uploaded = new StringBuilder();
+        doAnswer(inv -> {
+            uploaded.append(new String(Files.readAllBytes(Paths.get((String) inv.getArgument(0))),
+                    StandardCharsets.UTF_8));
+            return null;
+        }).when(ossService).putFile(anyString(), eq("2025/01/01/md5long.mp4"), isNull());
+
+        VideoTranscodeEngine.Summary summary = engine.run(0, 1);
+
+        assertEquals(1, summary.getSucceeded());
+        verify(mediaProcessService).saveSuccess(lecture, "2025/01/01/md5long.mp4", null);
+        // 3个分段各转码一次，按顺序拼接
+        List<String> counts = Files.readAllLines(record);
+        assertEquals(3, counts.size());
+        assertTrue(counts.stream().mapToInt(c -> Integer.parseInt(c.trim())).max().getAsInt() <= 3);
+        assertEquals("part 0\nlong videopart 1\nlong videopart 2\nlong video", uploaded.toString());
+        assertArrayEquals(new String[0], tempDir.resolve("work").toFile().list());
+    }
+
+    @Test
+    public void testPackagesHlsAndUploadsMasterPlaylistLast() throws IOException {
+        ReflectionTestUtils.setField(engine, "hlsEnabled", true);
+        ReflectionTestUtils.setField(engine, "hlsRenditions", "1280x720:753k:63k,640x360:250k:48k");
+        MediaProcess avi = task(7L, "md5hls", "Redis.avi", "2025/01/01/md5hls.avi");
+        MediaProcess mp4 = task(8L, "md5mp4", "Nginx.mp4", "2025/01/01/md5mp4.mp4");
+        when(mediaProcessService.getShardTasks(0, 1, 2)).thenReturn(Arrays.asList(avi, mp4));
+        when(mediaProcessService.claim(anyLong())).thenReturn(true);
+        List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        Map<String, String> contents = new ConcurrentHashMap<>();
+        doAnswer(inv -> {
+            String objectName = inv.getArgument(1);
+            uploaded.add(objectName + " " + inv.getArgument(2));
+            contents.put(objectName, new String(Files.readAllBytes(Paths.get((String) inv.getArgument(0))),
+                    StandardCharsets.UTF_8));
+            return null;
+        }).when(ossService).putFile(anyString(), anyString(), anyString());
+
+        VideoTranscodeEngine.Summary summary = engine.run(0, 1);
+
+        assertEquals(2, summary.getSucceeded());
+        verify(mediaProcessService).saveSuccess(avi, "2025/01/01/md5hls.mp4", "hls/md5hls/master.m3u8");
+        // mp4 视频不再转 mp4，直接打包
+        verify(mediaProcessService).saveSuccess(mp4, "2025/01/01/md5mp4.mp4", "hls/md5mp4/master.m3u8");
+        verify(ossService).putFile(anyString(), eq("2025/01/01/md5hls.mp4"), isNull());
+        verify(ossService, never()).putFile(anyString(), eq("2025/01/01/md5mp4.mp4"), any());
+
+        List<String> objects = new ArrayList<>();
+        synchronized (uploaded) {
+            uploaded.stream().filter(u -> u.startsWith("hls/md5hls/")).forEach(objects::add);
+        }
+        // 2个清晰度 × (2个分段 + 播放列表) + 主播放列表，分段先于播放列表，主播放列表最后
+        assertEquals(7, objects.size());
+        assertEquals("hls/md5hls/master.m3u8 application/vnd.apple.mpegurl", objects.get(6));
+        assertTrue(objects.subList(0, 4).stream().allMatch(o -> o.endsWith(".ts video/mp2t")), objects.toString());
+        assertTrue(objects.contains("hls/md5hls/720p/index.m3u8 application/vnd.apple.mpegurl"));
+        assertTrue(objects.contains("hls/md5hls/360p/seg_0001.ts video/mp2t"));
+        assertEquals("ts 0\nvideo of 2025/01/01/md5hls.avi", contents.get("hls/md5hls/720p/seg_0000.ts"));
+        String master = contents.get("hls/md5hls/master.m3u8");
+        assertTrue(master.contains("#EXT-X-STREAM-INF:BANDWIDTH=816000,RESOLUTION=1280x720,NAME=\"720p\"\n720p/index.m3u8"),
+                master);
+        assertTrue(master.indexOf("720p") < master.indexOf("360p"), master);
+        assertArrayEquals(new String[0], tempDir.resolve("work").toFile().list());
+    }
+
+    @Test
+    public void testFailedHlsPackagingKeepsTaskForRetry() throws IOException {
+        ReflectionTestUtils.setField(engine, "hlsEnabled", true);
+        MediaProcess task = task(10L, "nohls", "Kafka.avi", "2025/01/01/nohls.avi");
+        when(mediaProcessService.getShardTasks(0, 1, 2)).thenReturn(Collections.singletonList(task));
+        when(mediaProcessService.claim(10L)).thenReturn(true);
+
+        VideoTranscodeEngine.Summary summary = engine.run(0, 1);
+
+        assertEquals(1, summary.getFailed());
+        ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+        verify(mediaProcessService).saveFailed(eq(10L), error.capture());
+        assertTrue(error.getValue().contains("HLS"), error.getValue());
+        verify(ossService, never()).putFile(anyString(), anyString(), anyString());
+        verify(mediaProcessService, never()).saveSuccess(any(), any(), any());
+    }
+
+    @Test
+    public void testConcurrencyLimitsFetchSize() {
+        when(mediaProcessService.getShardTasks(anyInt(), anyInt(), anyInt())).thenReturn(Collections.emptyList());
+
+        // 非分片调度（分片总数为0）按单分片处理
+        assertEquals(0, engine.run(0, 0).getTotal());
+        verify(mediaProcessService).getShardTasks(0, 1, 2);
+
+        ReflectionTestUtils.setField(engine, "threads", 0);
+        engine.run(2, 4);
+        int expected = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        verify(mediaProcessService).getShardTasks(2, 4, expected);
+        verify(mediaProcessService, never()).claim(anyLong());
+        assertFalse(new File(tempDir.toFile(), "work").exists());
+    }
+
+    private MediaProcess task(long id, String fileId, String filename, String filePath) {
+        MediaProcess mediaProcess = new MediaProcess();
+        mediaProcess.setId(id);
+        mediaProcess.setFileId(fileId);
+        mediaProcess.setFilename(filename);
+        mediaProcess.setFilePath(filePath);
+        mediaProcess.setStatus("1");
+        return mediaProcess;
+    }
+}